@@ -0,0 +1,414 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.basho.riak.client.core.RiakFuture;
+import com.basho.riak.client.core.RiakFutureListener;
+import com.basho.riak.client.core.query.timeseries.Cell;
+import com.basho.riak.client.core.query.timeseries.FullColumnDescription;
+import com.basho.riak.client.core.query.timeseries.QueryResult;
+import com.basho.riak.client.core.query.timeseries.Row;
+import com.basho.riak.client.core.query.timeseries.TableDefinition;
+import com.basho.riakts.jdbc.QueryParser.ParsedInsert;
+
+/***
+ * Runs the statements of a JDBC batch. INSERT statements with literal values are
+ * converted to rows and, along with rows bound from prepared INSERTs, written with the
+ * timeseries Store command, BatchSize rows per command with up to BatchParallelism
+ * commands in flight at once. Unless BatchGroupPartitions is off, rows of the same
+ * partition (partition key values and quantum) are put in the same commands so each
+ * command reaches as few vnodes as possible. Unless BatchCollapseDuplicates is off,
+ * rows with the same primary key are collapsed to the last of them before they are
+ * sent, as Riak TS would keep only the last anyway. Other statements, and INSERTs that
+ * can't be converted, are run as SQL in the order they were added once the rows of the
+ * INSERTs before them have been written.
+ */
+class BatchWriter {
+
+	private TimeSeriesProtocol _protocol;
+	private TableSchemaCache _schemaCache;
+	private RetryPolicy _retry;
+	private int _batchSize;
+	private int _parallelism;
+	private boolean _groupPartitions;
+	private boolean _collapseDuplicates;
+	private AtomicLong _collapsedRows = new AtomicLong();
+
+	BatchWriter(TimeSeriesProtocol protocol, TableSchemaCache schemaCache, RetryPolicy retry, Properties info) {
+		_protocol = protocol;
+		_schemaCache = schemaCache;
+		_retry = retry;
+		_batchSize = Math.max(1, DriverProperties.getInt(info, DriverProperties.BATCH_SIZE, DriverProperties.DEFAULT_BATCH_SIZE));
+		_parallelism = Math.max(1, DriverProperties.getInt(info, DriverProperties.BATCH_PARALLELISM,
+				DriverProperties.DEFAULT_BATCH_PARALLELISM));
+		_groupPartitions = DriverProperties.getBoolean(info, DriverProperties.BATCH_GROUP_PARTITIONS,
+				DriverProperties.DEFAULT_BATCH_GROUP_PARTITIONS);
+		_collapseDuplicates = DriverProperties.getBoolean(info, DriverProperties.BATCH_COLLAPSE_DUPLICATES,
+				DriverProperties.DEFAULT_BATCH_COLLAPSE_DUPLICATES);
+	}
+
+	/***
+	 * Returns the number of rows that weren't sent because a later row of the same
+	 * batch had the same primary key
+	 * @return long
+	 */
+	long getCollapsedRows() {
+		return _collapsedRows.get();
+	}
+
+	/***
+	 * Runs the statements of a batch, carrying on past any that fail
+	 * @param entries
+	 * @return update count of each entry: the number of rows written for INSERTs
+	 * @throws BatchUpdateException if any entry failed, with the update counts of all
+	 * the entries and EXECUTE_FAILED for those that failed
+	 */
+	int[] executeBatch(List<Entry> entries) throws BatchUpdateException {
+		int[] counts = new int[entries.size()];
+		Throwable[] errors = new Throwable[entries.size()];
+		List<PendingRow> pending = new ArrayList<PendingRow>();
+		for (int i = 0; i < entries.size(); i++) {
+			Entry entry = entries.get(i);
+			if (entry.rows == null) {
+				ParsedInsert insert = QueryParser.parseInsert(entry.sql);
+				List<Row> rows = insert == null ? null : toRows(insert);
+				if (rows != null) entry = new Entry(insert.getTable(), rows);
+			}
+			if (entry.rows != null) {
+				for (Row row : entry.rows) pending.add(new PendingRow(i, entry.table, row));
+				counts[i] = entry.rows.size();
+				continue;
+			}
+			// Statements run as SQL may depend on the rows before them, e.g. a DELETE
+			store(pending, errors);
+			pending.clear();
+			final String sql = entry.sql;
+			try {
+				counts[i] = _retry.call(new Callable<QueryResult>() {
+					public QueryResult call() throws Exception {
+						return _protocol.query(sql).get();
+					}
+				}).getRowsCount();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				errors[i] = e;
+			}
+			catch (Exception e) {
+				errors[i] = e instanceof ExecutionException ? e.getCause() : e;
+			}
+		}
+		store(pending, errors);
+		checkErrors(counts, errors);
+		return counts;
+	} // Tested
+
+	/***
+	 * Throws a BatchUpdateException if any statement failed
+	 */
+	static void checkErrors(int[] counts, Throwable[] errors) throws BatchUpdateException {
+		Throwable first = null;
+		int failed = 0;
+		for (int i = 0; i < errors.length; i++) {
+			if (errors[i] == null) continue;
+			counts[i] = java.sql.Statement.EXECUTE_FAILED;
+			if (first == null) first = errors[i];
+			failed++;
+		}
+		if (first != null) {
+			throw new BatchUpdateException(failed + " of " + counts.length + " statements in the batch failed: "
+					+ first.getMessage(), null, 0, Arrays.copyOf(counts, counts.length), first);
+		}
+	}
+
+	/***
+	 * Converts an INSERT statement with literal values to rows in the table's column order,
+	 * with null cells for columns that aren't listed
+	 * @param insert
+	 * @return List of rows or null if the driver can't convert the statement's values
+	 */
+	List<Row> toRows(ParsedInsert insert) {
+		InsertTemplate template = InsertTemplate.create(insert, _schemaCache.getTableDefinition(insert.getTable()));
+		if (template == null || template.getParameterCount() > 0) return null;
+		try {
+			return template.toRows(new Object[0]);
+		}
+		catch (SQLException e) {
+			return null;
+		}
+	} // Tested
+
+	/***
+	 * Writes the rows passed in, grouped by table, as Store commands of up to BatchSize
+	 * rows each with at most BatchParallelism in flight. A command that fails with a
+	 * retryable error is sent again on its own, per the RetryPolicy; one that still fails
+	 * marks every statement with a row in it as failed.
+	 * @param rows
+	 * @param errors error of each statement, set for statements whose rows failed
+	 */
+	void store(List<PendingRow> rows, Throwable[] errors) {
+		if (rows.isEmpty()) return;
+		Map<String, List<PendingRow>> byTable = new LinkedHashMap<String, List<PendingRow>>();
+		for (PendingRow row : rows) {
+			List<PendingRow> tableRows = byTable.get(row.table);
+			if (tableRows == null) {
+				tableRows = new ArrayList<PendingRow>();
+				byTable.put(row.table, tableRows);
+			}
+			tableRows.add(row);
+		}
+
+		List<List<PendingRow>> chunks = new ArrayList<List<PendingRow>>();
+		List<RiakFuture<Void, String>> futures = new ArrayList<RiakFuture<Void, String>>();
+		final Semaphore inFlight = new Semaphore(_parallelism);
+		boolean interrupted = false;
+		for (List<PendingRow> tableRows : byTable.values()) {
+			if (_collapseDuplicates) {
+				int size = tableRows.size();
+				tableRows = collapseDuplicates(tableRows, _schemaCache.getTableDefinition(tableRows.get(0).table));
+				_collapsedRows.addAndGet(size - tableRows.size());
+			}
+			if (_groupPartitions) {
+				tableRows = groupByPartition(tableRows, _schemaCache.getTableDefinition(tableRows.get(0).table));
+			}
+			for (int start = 0; start < tableRows.size() && !interrupted; start += _batchSize) {
+				List<PendingRow> chunk = tableRows.subList(start, Math.min(tableRows.size(), start + _batchSize));
+				try {
+					inFlight.acquire();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					interrupted = true;
+					for (PendingRow row : rows) {
+						if (errors[row.statement] == null) errors[row.statement] = e;
+					}
+					break;
+				}
+				List<Row> batch = new ArrayList<Row>();
+				for (PendingRow row : chunk) batch.add(row.row);
+				RiakFuture<Void, String> future = _protocol.store(chunk.get(0).table, batch);
+				future.addListener(new RiakFutureListener<Void, String>() {
+					public void handle(RiakFuture<Void, String> f) {
+						inFlight.release();
+					}
+				});
+				chunks.add(chunk);
+				futures.add(future);
+			}
+		}
+
+		for (int i = 0; i < futures.size(); i++) {
+			Throwable error = null;
+			try {
+				futures.get(i).await();
+				if (!futures.get(i).isSuccess()) error = replay(chunks.get(i), futures.get(i).cause());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				error = e;
+			}
+			if (error == null) continue;
+			for (PendingRow row : chunks.get(i)) {
+				// Rows a row replaced weren't written either
+				for (PendingRow r = row; r != null; r = r.replaced) {
+					if (errors[r.statement] == null) errors[r.statement] = error;
+				}
+			}
+		}
+	}
+
+	/***
+	 * Sends the rows of a Store command that failed again, per the RetryPolicy. Only
+	 * the failed command is replayed: writes are idempotent by primary key, so a command
+	 * that may have partly succeeded can safely be sent again.
+	 * @param chunk
+	 * @param failure error of the first attempt
+	 * @return null if a retry succeeded, otherwise the last error
+	 * @throws InterruptedException
+	 */
+	private Throwable replay(List<PendingRow> chunk, Throwable failure) throws InterruptedException {
+		final String table = chunk.get(0).table;
+		final List<Row> batch = new ArrayList<Row>();
+		for (PendingRow row : chunk) batch.add(row.row);
+		try {
+			_retry.retry(new Callable<Void>() {
+				public Void call() throws Exception {
+					return _protocol.store(table, batch).get();
+				}
+			}, failure);
+			return null;
+		}
+		catch (ExecutionException e) {
+			return e.getCause();
+		}
+	}
+
+	/***
+	 * Orders a table's rows so that rows of the same partition, i.e. with the same partition
+	 * key values and in the same quantum, are next to each other. Partitions keep the order
+	 * they were first seen in and rows keep their order within a partition.
+	 * @param rows rows of a single table
+	 * @param definition the table's definition, or null to leave the rows as they are
+	 * @return List of rows
+	 */
+	static List<PendingRow> groupByPartition(List<PendingRow> rows, TableDefinition definition) {
+		if (definition == null || rows.size() < 2) return rows;
+		List<FullColumnDescription> columns = new ArrayList<FullColumnDescription>(definition.getFullColumnDescriptions());
+		long quantumMillis = TableSchemaCache.getQuantumMillis(definition);
+		List<Integer> positions = new ArrayList<Integer>();
+		List<Boolean> quantized = new ArrayList<Boolean>();
+		for (FullColumnDescription column : SeriesCatalog.getSeriesColumns(definition)) {
+			positions.add(indexOf(columns, column.getName()));
+			quantized.add(false);
+		}
+		FullColumnDescription quantum = TableSchemaCache.getQuantumColumn(definition);
+		if (quantum != null && quantumMillis > 0) {
+			positions.add(indexOf(columns, quantum.getName()));
+			quantized.add(true);
+		}
+
+		Map<List<Object>, List<PendingRow>> partitions = new LinkedHashMap<List<Object>, List<PendingRow>>();
+		Cell[] cells = new Cell[columns.size()];
+		for (PendingRow row : rows) {
+			int c = getCells(row.row, cells);
+			// Cells compare by value, so they make up the key as they are
+			List<Object> key = new ArrayList<Object>(positions.size());
+			for (int i = 0; i < positions.size(); i++) {
+				Cell cell = positions.get(i) >= 0 && positions.get(i) < c ? cells[positions.get(i)] : null;
+				if (quantized.get(i) && cell != null && cell.hasTimestamp()) key.add(Math.floorDiv(cell.getTimestamp(), quantumMillis));
+				else key.add(cell);
+			}
+			List<PendingRow> partition = partitions.get(key);
+			if (partition == null) {
+				partition = new ArrayList<PendingRow>();
+				partitions.put(key, partition);
+			}
+			partition.add(row);
+		}
+		if (partitions.size() == 1) return rows;
+		List<PendingRow> grouped = new ArrayList<PendingRow>(rows.size());
+		for (List<PendingRow> partition : partitions.values()) grouped.addAll(partition);
+		return grouped;
+	} // Tested
+
+	/***
+	 * Collapses rows with the same primary key (the table's local key) to the last of
+	 * them, which takes the place of the first. Riak TS keeps the last write of a key, so
+	 * the rows before it would only be overwritten.
+	 * @param rows rows of a single table
+	 * @param definition the table's definition, or null to leave the rows as they are
+	 * @return List of rows, each linked to the rows with its key that it replaced
+	 */
+	static List<PendingRow> collapseDuplicates(List<PendingRow> rows, TableDefinition definition) {
+		if (definition == null || rows.size() < 2) return rows;
+		List<FullColumnDescription> columns = new ArrayList<FullColumnDescription>(definition.getFullColumnDescriptions());
+		List<Integer> positions = new ArrayList<Integer>();
+		for (FullColumnDescription column : definition.getLocalKeyColumnDescriptions()) {
+			positions.add(indexOf(columns, column.getName()));
+		}
+		if (positions.isEmpty()) return rows;
+
+		Map<List<Cell>, PendingRow> latest = new LinkedHashMap<List<Cell>, PendingRow>();
+		Cell[] cells = new Cell[columns.size()];
+		for (PendingRow row : rows) {
+			int c = getCells(row.row, cells);
+			List<Cell> key = new ArrayList<Cell>(positions.size());
+			for (int position : positions) key.add(position >= 0 && position < c ? cells[position] : null);
+			PendingRow previous = latest.get(key);
+			if (previous != null) row = new PendingRow(row.statement, row.table, row.row, previous);
+			latest.put(key, row);
+		}
+		if (latest.size() == rows.size()) return rows;
+		return new ArrayList<PendingRow>(latest.values());
+	} // Tested
+
+	/***
+	 * Copies a row's cells into the array passed in
+	 * @return number of cells copied
+	 */
+	private static int getCells(Row row, Cell[] cells) {
+		int c = 0;
+		for (Cell cell : row) {
+			if (c < cells.length) cells[c++] = cell;
+		}
+		return c;
+	}
+
+	private static int indexOf(List<FullColumnDescription> columns, String name) {
+		for (int i = 0; i < columns.size(); i++) {
+			if (columns.get(i).getName().equals(name)) return i;
+		}
+		return -1;
+	}
+
+
+	/***
+	 * A statement of a batch: either SQL text or rows already converted for a table
+	 */
+	static class Entry {
+		final String sql;
+		final String table;
+		final List<Row> rows;
+
+		Entry(String sql) {
+			this.sql = sql;
+			this.table = null;
+			this.rows = null;
+		}
+
+		Entry(String table, List<Row> rows) {
+			this.sql = null;
+			this.table = table;
+			this.rows = rows;
+		}
+	}
+
+	/***
+	 * A row waiting to be written, the index of the statement it came from and the
+	 * earlier row with the same key that it replaced, if any
+	 */
+	static class PendingRow {
+		final int statement;
+		final String table;
+		final Row row;
+		final PendingRow replaced;
+
+		PendingRow(int statement, String table, Row row) {
+			this(statement, table, row, null);
+		}
+
+		PendingRow(int statement, String table, Row row, PendingRow replaced) {
+			this.statement = statement;
+			this.table = table;
+			this.row = row;
+			this.replaced = replaced;
+		}
+	}
+
+}
@@ -0,0 +1,243 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.basho.riak.client.core.RiakFuture;
+import com.basho.riak.client.core.RiakFutureListener;
+import com.basho.riak.client.core.query.timeseries.Cell;
+import com.basho.riak.client.core.query.timeseries.FullColumnDescription;
+import com.basho.riak.client.core.query.timeseries.QueryResult;
+import com.basho.riak.client.core.query.timeseries.Row;
+import com.basho.riak.client.core.query.timeseries.TableDefinition;
+import com.basho.riakts.jdbc.QueryParser.ParsedQuery;
+import com.basho.riakts.jdbc.QueryPlan.SubQuery;
+import com.google.common.util.concurrent.RateLimiter;
+
+/***
+ * Runs DELETE FROM [table] WHERE [predicates] statements, which Riak TS only accepts
+ * for a single primary key, by querying the primary keys of the rows they match and
+ * deleting each with the timeseries Delete command. The keys are queried as the
+ * statement's SELECT would be planned (see QueryPlanner), one quantum at a time, so
+ * only one quantum's keys are held at once; deleting them overlaps with querying the
+ * next quantum. Up to DeleteParallelism Deletes are in flight at once, and no more
+ * than DeleteRateLimit are sent per second when it is set.
+ */
+public class BulkDeleter {
+
+	private TimeSeriesProtocol _protocol;
+	private TableSchemaCache _schemaCache;
+	private QueryPlanner _planner;
+	private QueryExecutor _executor;
+	private RetryPolicy _retry;
+	private int _parallelism;
+	private RateLimiter _rateLimiter = null;
+
+	private AtomicLong _deletedRows = new AtomicLong();
+	private AtomicLong _keyQueries = new AtomicLong();
+
+	BulkDeleter(TimeSeriesProtocol protocol, TableSchemaCache schemaCache, QueryPlanner planner, QueryExecutor executor,
+			RetryPolicy retry, Properties info) {
+		_protocol = protocol;
+		_schemaCache = schemaCache;
+		_planner = planner;
+		_executor = executor;
+		_retry = retry;
+		_parallelism = Math.max(1, DriverProperties.getInt(info, DriverProperties.DELETE_PARALLELISM,
+				DriverProperties.DEFAULT_DELETE_PARALLELISM));
+		int rateLimit = DriverProperties.getInt(info, DriverProperties.DELETE_RATE_LIMIT,
+				DriverProperties.DEFAULT_DELETE_RATE_LIMIT);
+		if (rateLimit > 0) _rateLimiter = RateLimiter.create(rateLimit);
+	}
+
+	/***
+	 * Deletes the rows a DELETE statement matches
+	 * @param sql DELETE FROM [table] WHERE [predicates]
+	 * @return number of rows deleted
+	 * @throws SQLException if the statement can't be parsed, its table can't be
+	 * described, or a query or Delete failed, after sending the Deletes of the keys
+	 * already read
+	 */
+	long delete(String sql) throws SQLException {
+		ParsedQuery query = QueryParser.parseDelete(sql);
+		if (query == null) throw new SQLException("Unsupported DELETE statement: " + sql);
+		TableDefinition definition = _schemaCache.getTableDefinition(query.getTable());
+		if (definition == null) throw new SQLException("Unable to describe table " + query.getTable());
+
+		// Selecting the local key columns in key order makes each row the key of a Delete
+		StringBuilder keys = new StringBuilder();
+		for (FullColumnDescription column : QueryPlanner.getLocalKey(definition)) {
+			keys.append(keys.length() == 0 ? "" : ", ").append(column.getName());
+		}
+		QueryPlan plan = _planner.plan("SELECT " + keys + query.getSql().substring("SELECT *".length()));
+		String table = query.getTable();
+
+		Semaphore inFlight = new Semaphore(_parallelism);
+		if (plan.getStrategy().equals(QueryPlan.FETCH)) {
+			return await(table, send(table, Collections.singletonList(plan.getFetchKey()), inFlight));
+		}
+		long deleted = 0;
+		List<DeleteRequest> previous = new ArrayList<DeleteRequest>();
+		try {
+			for (SubQuery subQuery : plan.getSubQueries()) {
+				// Sub-queries of a FAN_OUT plan are split by the branch plan that built them
+				QueryPlan owner = subQuery.getPlan() != null ? subQuery.getPlan() : plan;
+				for (SubQuery quantum : splitByQuantum(owner, subQuery)) {
+					List<List<Cell>> quantumKeys = new ArrayList<List<Cell>>();
+					for (QueryResult result : _executor.executeSubQueries(owner, Collections.singletonList(quantum))) {
+						for (Row row : result) quantumKeys.add(row.getCellsCopy());
+					}
+					_keyQueries.incrementAndGet();
+					List<DeleteRequest> sent = previous;
+					previous = send(table, quantumKeys, inFlight);
+					deleted += await(table, sent);
+				}
+			}
+		}
+		finally {
+			// Deletes already sent are waited for even if a query failed
+			deleted += await(table, previous);
+		}
+		return deleted;
+	} // Tested
+
+	/***
+	 * Splits a sub-query with a time range into one sub-query per quantum
+	 * @param plan the plan that built the sub-query
+	 * @param subQuery
+	 * @return List of SubQuery, just the sub-query if it can't be split
+	 */
+	private static List<SubQuery> splitByQuantum(QueryPlan plan, SubQuery subQuery) {
+		if (!subQuery.hasRange() || !plan.isSplittable()) return Collections.singletonList(subQuery);
+		List<SubQuery> quanta = new ArrayList<SubQuery>();
+		long quantumMillis = plan.getQuantumMillis();
+		for (long[] range : QueryPlanner.splitRange(subQuery.getRangeStart(), subQuery.getRangeEnd(), quantumMillis, quantumMillis)) {
+			quanta.add(plan.subQueryFor(range[0], range[1]));
+		}
+		return quanta;
+	}
+
+	private List<DeleteRequest> send(String table, List<List<Cell>> keys, final Semaphore inFlight) throws SQLException {
+		List<DeleteRequest> requests = new ArrayList<DeleteRequest>(keys.size());
+		try {
+			for (List<Cell> key : keys) {
+				inFlight.acquire();
+				if (_rateLimiter != null) _rateLimiter.acquire();
+				RiakFuture<Void, String> future = _protocol.delete(table, key);
+				future.addListener(new RiakFutureListener<Void, String>() {
+					public void handle(RiakFuture<Void, String> f) {
+						inFlight.release();
+					}
+				});
+				requests.add(new DeleteRequest(key, future));
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			await(table, requests);
+			throw new SQLException(e);
+		}
+		return requests;
+	}
+
+	/***
+	 * Waits for Deletes to complete, retrying those that failed per the RetryPolicy
+	 * @param table
+	 * @param requests
+	 * @return number of rows deleted, not counting keys that were already gone
+	 * @throws SQLException holding the first error, once every Delete has completed
+	 */
+	private long await(final String table, List<DeleteRequest> requests) throws SQLException {
+		long deleted = 0;
+		Throwable failure = null;
+		for (final DeleteRequest request : requests) {
+			try {
+				request.future.await();
+				if (!request.future.isSuccess()) {
+					if (isNotFound(request.future.cause())) continue;
+					_retry.retry(new Callable<Void>() {
+						public Void call() throws Exception {
+							return _protocol.delete(table, request.key).get();
+						}
+					}, request.future.cause());
+				}
+				deleted++;
+			}
+			catch (ExecutionException e) {
+				if (!isNotFound(e.getCause()) && failure == null) failure = e.getCause();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (failure == null) failure = e;
+			}
+		}
+		_deletedRows.addAndGet(deleted);
+		if (failure != null) throw new SQLException(failure);
+		return deleted;
+	}
+
+	/***
+	 * Returns true if a Delete failed because there was no row with its key
+	 * @param error
+	 * @return True or False
+	 */
+	private static boolean isNotFound(Throwable error) {
+		return error != null && error.getMessage() != null && error.getMessage().contains("notfound");
+	}
+
+
+	/***
+	 * Returns the number of rows deleted by DELETE statements and retention
+	 * @return long
+	 */
+	public long getDeletedRows() {
+		return _deletedRows.get();
+	}
+
+	/***
+	 * Returns the number of queries sent for the keys to delete, one per quantum
+	 * @return long
+	 */
+	public long getKeyQueries() {
+		return _keyQueries.get();
+	}
+
+	public void resetMetrics() {
+		_deletedRows.set(0);
+		_keyQueries.set(0);
+	}
+
+
+	private static class DeleteRequest {
+		final List<Cell> key;
+		final RiakFuture<Void, String> future;
+
+		DeleteRequest(List<Cell> key, RiakFuture<Void, String> future) {
+			this.key = key;
+			this.future = future;
+		}
+	}
+
+}
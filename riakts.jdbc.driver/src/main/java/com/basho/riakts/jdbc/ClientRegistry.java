@@ -0,0 +1,204 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.basho.riak.client.api.RiakClient;
+import com.basho.riak.client.core.RiakCluster;
+import com.basho.riak.client.core.util.HostAndPort;
+
+/***
+ * Shares one RiakClient, with its RiakCluster, Netty event loops and socket pools, among
+ * the connections to the same nodes, so opening a connection reuses sockets that are
+ * already connected. Clients are counted by reference; once the last connection using
+ * one closes it is kept for ClientLingerSeconds for the next connection, then shut down.
+ */
+class ClientRegistry {
+
+	private final static Map<String, SharedClient> CLIENTS = new HashMap<String, SharedClient>();
+	private static ScheduledExecutorService _reaper = null;
+
+	private ClientRegistry() {
+	}
+
+	/***
+	 * Returns the shared client of a set of nodes with the settings given, starting one
+	 * if there is none, counting a reference to it
+	 * @param nodes
+	 * @param settings
+	 * @return SharedClient to release when the connection closes
+	 * @throws UnknownHostException if a hostname couldn't be resolved
+	 */
+	static synchronized SharedClient acquire(List<HostAndPort> nodes, ClientSettings settings) throws UnknownHostException {
+		String key = keyOf(nodes, settings);
+		SharedClient shared = CLIENTS.get(key);
+		if (shared == null) {
+			shared = newClient(key, nodes, settings);
+			CLIENTS.put(key, shared);
+		}
+		if (shared._shutdown != null) {
+			shared._shutdown.cancel(false);
+			shared._shutdown = null;
+		}
+		shared._references++;
+		return shared;
+	} // Tested
+
+	/***
+	 * Starts a client of its own for a connection that doesn't share one
+	 * @param nodes
+	 * @param settings
+	 * @return SharedClient only the connection references
+	 * @throws UnknownHostException if a hostname couldn't be resolved
+	 */
+	static SharedClient acquireUnshared(List<HostAndPort> nodes, ClientSettings settings) throws UnknownHostException {
+		SharedClient client = newClient(null, nodes, settings);
+		client._references = 1;
+		return client;
+	}
+
+	/***
+	 * Drops a connection's reference to its client, shutting the client down once no
+	 * connection has used it for lingerSeconds
+	 * @param shared
+	 * @param lingerSeconds 0 to shut the client down as soon as it is unused
+	 */
+	static synchronized void release(final SharedClient shared, long lingerSeconds) {
+		if (shared._references <= 0 || --shared._references > 0) return;
+		if (shared._key == null || lingerSeconds <= 0) {
+			shutdown(shared);
+			return;
+		}
+		shared._shutdown = reaper().schedule(new Runnable() {
+			public void run() {
+				synchronized (ClientRegistry.class) {
+					if (shared._references == 0 && shared._shutdown != null) shutdown(shared);
+				}
+			}
+		}, lingerSeconds, TimeUnit.SECONDS);
+	} // Tested
+
+	/***
+	 * Returns the number of clients started and not yet shut down
+	 * @return int
+	 */
+	static synchronized int getClientCount() {
+		return CLIENTS.size();
+	}
+
+	private static void shutdown(SharedClient shared) {
+		shared._shutdown = null;
+		if (shared._key != null) CLIENTS.remove(shared._key);
+		shared._discovery.stop();
+		shared._client.shutdown();
+	}
+
+	private static SharedClient newClient(String key, List<HostAndPort> nodes, ClientSettings settings)
+			throws UnknownHostException {
+		NodeBalancer balancer = new NodeBalancer(settings.getBalancing());
+		NodeDiscovery discovery = new NodeDiscovery(nodes, settings.newNodeBuilder(), settings.getDiscoveryIntervalSeconds());
+		// The client would otherwise send every failed request again straight away, whatever
+		// the error; the RetryPolicy decides which to retry and backs off between attempts
+		RiakCluster cluster = settings.applyTo(new RiakCluster.Builder(discovery.resolve(), settings.newNodeBuilder()))
+				.withNodeManager(balancer).withExecutionAttempts(1).build();
+		cluster.start();
+		discovery.start(cluster);
+		return new SharedClient(key, new RiakClient(cluster), balancer, discovery,
+				new PingValidator(cluster, settings.getValidationCacheMillis()));
+	}
+
+	/***
+	 * Returns the key of a set of nodes and the properties of their client, the same
+	 * whatever order the nodes are listed in
+	 */
+	private static String keyOf(List<HostAndPort> nodes, ClientSettings settings) {
+		List<String> sorted = new ArrayList<String>();
+		for (HostAndPort node : nodes) sorted.add(node.getHost().toLowerCase() + ":" + node.getPort());
+		Collections.sort(sorted);
+		return sorted + " " + settings.getKey();
+	}
+
+	private static ScheduledExecutorService reaper() {
+		if (_reaper == null) {
+			_reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "riakts-jdbc-client-reaper");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return _reaper;
+	}
+
+
+	/***
+	 * A client, the balancer and discovery of its nodes, the validator of the connections
+	 * using it and their number
+	 */
+	static class SharedClient {
+		private final String _key;
+		private final RiakClient _client;
+		private final NodeBalancer _balancer;
+		private final NodeDiscovery _discovery;
+		private final PingValidator _validator;
+		private int _references = 0;
+		private ScheduledFuture<?> _shutdown = null;
+
+		private SharedClient(String key, RiakClient client, NodeBalancer balancer, NodeDiscovery discovery,
+				PingValidator validator) {
+			_key = key;
+			_client = client;
+			_balancer = balancer;
+			_discovery = discovery;
+			_validator = validator;
+		}
+
+		RiakClient getClient() {
+			return _client;
+		}
+
+		NodeBalancer getBalancer() {
+			return _balancer;
+		}
+
+		NodeDiscovery getDiscovery() {
+			return _discovery;
+		}
+
+		PingValidator getValidator() {
+			return _validator;
+		}
+
+		int getReferences() {
+			synchronized (ClientRegistry.class) {
+				return _references;
+			}
+		}
+	}
+
+}
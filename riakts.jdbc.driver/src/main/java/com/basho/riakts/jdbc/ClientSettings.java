@@ -0,0 +1,269 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.SQLException;
+import java.util.Properties;
+
+import com.basho.riak.client.core.RiakCluster;
+import com.basho.riak.client.core.RiakNode;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/***
+ * The settings of a connection's Riak client, read and checked from its properties: how
+ * requests are balanced over the nodes, how often their hostnames are resolved again,
+ * each node's pool of sockets (MinConnections, MaxConnections, BlockOnMaxConnections,
+ * IdleTimeoutMillis and ConnectTimeoutMillis) and the Netty event loop threads shared
+ * by the nodes (EventLoopThreads). With NativeTransport the event loops run Netty's
+ * native epoll transport, where the native library loads, and read and write through
+ * pooled direct buffers. ValidationCacheMillis is how long the outcome of a validation
+ * ping is reused. A ConnectionProfile of "low-latency" or "high-throughput" changes the
+ * defaults of the socket and thread settings; properties set explicitly still win.
+ * Connections with the same settings to the same nodes share a client.
+ */
+class ClientSettings {
+
+	final static String LOW_LATENCY = "low-latency";
+	final static String HIGH_THROUGHPUT = "high-throughput";
+	final static String EPOLL = "epoll";
+	final static String NIO = "nio";
+
+	private final String _balancing;
+	private final int _discoveryIntervalSeconds;
+	private final String _profile;
+	private final int _minConnections;
+	private final int _maxConnections;
+	private final boolean _blockOnMaxConnections;
+	private final int _idleTimeoutMillis;
+	private final int _connectTimeoutMillis;
+	private final int _eventLoopThreads;
+	private final boolean _nativeTransport;
+	private final int _validationCacheMillis;
+
+	// Shared by every client, its arenas are per thread
+	private final static PooledByteBufAllocator POOLED_DIRECT = new PooledByteBufAllocator(true);
+
+	/***
+	 * @param info connection properties
+	 * @throws SQLException if a setting is not a valid value
+	 */
+	ClientSettings(Properties info) throws SQLException {
+		_balancing = DriverProperties.getString(info, DriverProperties.LOAD_BALANCING,
+				DriverProperties.DEFAULT_LOAD_BALANCING).trim().toLowerCase();
+		if (!NodeBalancer.isPolicy(_balancing)) throw new SQLException("Unknown LoadBalancing policy: " + _balancing);
+		_discoveryIntervalSeconds = intOf(info, DriverProperties.DISCOVERY_INTERVAL_SECONDS,
+				DriverProperties.DEFAULT_DISCOVERY_INTERVAL_SECONDS);
+		String profile = DriverProperties.getString(info, DriverProperties.CONNECTION_PROFILE, null);
+		_profile = profile == null || profile.trim().length() == 0 ? null : profile.trim().toLowerCase();
+		if (_profile != null && !isProfile(_profile)) throw new SQLException("Unknown ConnectionProfile: " + profile);
+
+		Properties defaults = getProfileDefaults(_profile);
+		_minConnections = intOf(info, DriverProperties.MIN_CONNECTIONS, intOf(defaults, DriverProperties.MIN_CONNECTIONS, 0));
+		_maxConnections = intOf(info, DriverProperties.MAX_CONNECTIONS, intOf(defaults, DriverProperties.MAX_CONNECTIONS, 0));
+		_blockOnMaxConnections = booleanOf(info, DriverProperties.BLOCK_ON_MAX_CONNECTIONS,
+				booleanOf(defaults, DriverProperties.BLOCK_ON_MAX_CONNECTIONS, false));
+		_idleTimeoutMillis = intOf(info, DriverProperties.IDLE_TIMEOUT_MILLIS, intOf(defaults, DriverProperties.IDLE_TIMEOUT_MILLIS, 0));
+		_connectTimeoutMillis = intOf(info, DriverProperties.CONNECT_TIMEOUT_MILLIS,
+				intOf(defaults, DriverProperties.CONNECT_TIMEOUT_MILLIS, 0));
+		_eventLoopThreads = intOf(info, DriverProperties.EVENT_LOOP_THREADS, intOf(defaults, DriverProperties.EVENT_LOOP_THREADS, 0));
+		_nativeTransport = booleanOf(info, DriverProperties.NATIVE_TRANSPORT, DriverProperties.DEFAULT_NATIVE_TRANSPORT);
+		_validationCacheMillis = intOf(info, DriverProperties.VALIDATION_CACHE_MILLIS,
+				DriverProperties.DEFAULT_VALIDATION_CACHE_MILLIS);
+		if (_maxConnections > 0 && _maxConnections < _minConnections) {
+			throw new SQLException("MaxConnections " + _maxConnections + " is less than MinConnections " + _minConnections);
+		}
+	} // Tested
+
+	/***
+	 * Returns true if the name is one of the connection profiles
+	 * @param profile
+	 * @return True or False
+	 */
+	static boolean isProfile(String profile) {
+		if (profile == null) return false;
+		String name = profile.trim().toLowerCase();
+		return name.equals(LOW_LATENCY) || name.equals(HIGH_THROUGHPUT);
+	}
+
+	/***
+	 * Returns the socket and thread settings of a connection profile, or the Riak client's
+	 * defaults for none
+	 * @param profile low-latency, high-throughput or null
+	 * @return Properties
+	 */
+	static Properties getProfileDefaults(String profile) {
+		Properties defaults = new Properties();
+		if (LOW_LATENCY.equals(profile)) {
+			// Sockets connected up front and kept warm, a new one rather than a wait when
+			// all are busy, and a dead node given up on quickly
+			defaults.setProperty(DriverProperties.MIN_CONNECTIONS, "8");
+			defaults.setProperty(DriverProperties.MAX_CONNECTIONS, "0");
+			defaults.setProperty(DriverProperties.BLOCK_ON_MAX_CONNECTIONS, "false");
+			defaults.setProperty(DriverProperties.IDLE_TIMEOUT_MILLIS, "300000");
+			defaults.setProperty(DriverProperties.CONNECT_TIMEOUT_MILLIS, "1000");
+			defaults.setProperty(DriverProperties.EVENT_LOOP_THREADS,
+					Integer.toString(Runtime.getRuntime().availableProcessors()));
+		}
+		else if (HIGH_THROUGHPUT.equals(profile)) {
+			// Enough sockets to keep every node busy, capped so a burst queues for a socket
+			// instead of swamping the nodes with connections
+			defaults.setProperty(DriverProperties.MIN_CONNECTIONS, "16");
+			defaults.setProperty(DriverProperties.MAX_CONNECTIONS, "64");
+			defaults.setProperty(DriverProperties.BLOCK_ON_MAX_CONNECTIONS, "true");
+			defaults.setProperty(DriverProperties.IDLE_TIMEOUT_MILLIS, "60000");
+			defaults.setProperty(DriverProperties.CONNECT_TIMEOUT_MILLIS, "5000");
+			defaults.setProperty(DriverProperties.EVENT_LOOP_THREADS,
+					Integer.toString(2 * Runtime.getRuntime().availableProcessors()));
+		}
+		else {
+			defaults.setProperty(DriverProperties.MIN_CONNECTIONS, Integer.toString(RiakNode.Builder.DEFAULT_MIN_CONNECTIONS));
+			defaults.setProperty(DriverProperties.MAX_CONNECTIONS, Integer.toString(RiakNode.Builder.DEFAULT_MAX_CONNECTIONS));
+			defaults.setProperty(DriverProperties.BLOCK_ON_MAX_CONNECTIONS, "false");
+			defaults.setProperty(DriverProperties.IDLE_TIMEOUT_MILLIS, Integer.toString(RiakNode.Builder.DEFAULT_IDLE_TIMEOUT));
+			defaults.setProperty(DriverProperties.CONNECT_TIMEOUT_MILLIS,
+					Integer.toString(RiakNode.Builder.DEFAULT_CONNECTION_TIMEOUT));
+			// Netty's default of twice the processors
+			defaults.setProperty(DriverProperties.EVENT_LOOP_THREADS, "0");
+		}
+		return defaults;
+	} // Tested
+
+	/***
+	 * Returns a builder of nodes with the socket settings
+	 * @return RiakNode.Builder
+	 */
+	RiakNode.Builder newNodeBuilder() {
+		return new RiakNode.Builder().withMinConnections(_minConnections).withMaxConnections(_maxConnections)
+				.withBlockOnMaxConnections(_blockOnMaxConnections).withIdleTimeout(_idleTimeoutMillis)
+				.withConnectionTimeout(_connectTimeoutMillis);
+	}
+
+	/***
+	 * Gives a cluster its own event loop of EventLoopThreads threads if set, or with
+	 * NativeTransport an epoll event loop and pooled direct buffers, falling back to NIO
+	 * if epoll isn't available. The cluster shuts the event loop down with itself.
+	 * @param builder
+	 * @return the builder
+	 */
+	RiakCluster.Builder applyTo(RiakCluster.Builder builder) {
+		if (_eventLoopThreads <= 0 && !_nativeTransport) return builder;
+		// 0 threads is Netty's default of twice the processors
+		Bootstrap bootstrap = new Bootstrap();
+		if (getTransport().equals(EPOLL)) {
+			bootstrap.group(new EpollEventLoopGroup(_eventLoopThreads)).channel(EpollSocketChannel.class);
+		}
+		else {
+			bootstrap.group(new NioEventLoopGroup(_eventLoopThreads)).channel(NioSocketChannel.class);
+		}
+		// Netty only pools direct buffers by default where it can use Unsafe
+		if (_nativeTransport) bootstrap.option(ChannelOption.ALLOCATOR, POOLED_DIRECT);
+		return builder.withBootstrap(bootstrap);
+	}
+
+	/***
+	 * Returns the transport the client's sockets use: epoll with NativeTransport where the
+	 * native library loads, otherwise nio
+	 * @return epoll or nio
+	 */
+	String getTransport() {
+		return _nativeTransport && Epoll.isAvailable() ? EPOLL : NIO;
+	} // Tested
+
+	/***
+	 * Returns a key that is the same for the same settings
+	 * @return String
+	 */
+	String getKey() {
+		return _balancing + " " + _discoveryIntervalSeconds + " " + _minConnections + "/" + _maxConnections
+				+ (_blockOnMaxConnections ? "/block " : " ") + _idleTimeoutMillis + " " + _connectTimeoutMillis
+				+ " " + _eventLoopThreads + (_nativeTransport ? " native " : " ") + _validationCacheMillis;
+	}
+
+	private static int intOf(Properties info, String key, int defaultValue) throws SQLException {
+		String value = DriverProperties.getString(info, key, null);
+		if (value == null || value.trim().length() == 0) return defaultValue;
+		try {
+			int parsed = Integer.parseInt(value.trim());
+			if (parsed >= 0) return parsed;
+		}
+		catch (NumberFormatException e) {
+			// Reported below
+		}
+		throw new SQLException("Invalid " + key + ": " + value + ", expected a whole number of 0 or more");
+	}
+
+	private static boolean booleanOf(Properties info, String key, boolean defaultValue) throws SQLException {
+		String value = DriverProperties.getString(info, key, null);
+		if (value == null || value.trim().length() == 0) return defaultValue;
+		if (value.trim().equalsIgnoreCase("true")) return true;
+		if (value.trim().equalsIgnoreCase("false")) return false;
+		throw new SQLException("Invalid " + key + ": " + value + ", expected true or false");
+	}
+
+
+	String getBalancing() {
+		return _balancing;
+	}
+
+	int getDiscoveryIntervalSeconds() {
+		return _discoveryIntervalSeconds;
+	}
+
+	String getProfile() {
+		return _profile;
+	}
+
+	int getMinConnections() {
+		return _minConnections;
+	}
+
+	int getMaxConnections() {
+		return _maxConnections;
+	}
+
+	boolean getBlockOnMaxConnections() {
+		return _blockOnMaxConnections;
+	}
+
+	int getIdleTimeoutMillis() {
+		return _idleTimeoutMillis;
+	}
+
+	int getConnectTimeoutMillis() {
+		return _connectTimeoutMillis;
+	}
+
+	int getEventLoopThreads() {
+		return _eventLoopThreads;
+	}
+
+	boolean getNativeTransport() {
+		return _nativeTransport;
+	}
+
+	int getValidationCacheMillis() {
+		return _validationCacheMillis;
+	}
+
+}
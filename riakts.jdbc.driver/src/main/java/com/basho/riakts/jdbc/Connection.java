@@ -17,6 +17,7 @@ package com.basho.riakts.jdbc;
 
 import java.net.UnknownHostException;
 import java.sql.Array;
+import java.sql.BatchUpdateException;
 import java.sql.Blob;
 import java.sql.CallableStatement;
 import java.sql.Clob;
@@ -30,20 +31,44 @@ import java.sql.SQLXML;
 import java.sql.Savepoint;
 import java.sql.Statement;
 import java.sql.Struct;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 
 import com.basho.riak.client.api.RiakClient;
-import com.basho.riak.client.core.RiakNode;
+import com.basho.riak.client.core.query.timeseries.Cell;
+import com.basho.riak.client.core.query.timeseries.FullColumnDescription;
+import com.basho.riak.client.core.query.timeseries.QueryResult;
+import com.basho.riak.client.core.query.timeseries.Row;
+import com.basho.riak.client.core.query.timeseries.TableDefinition;
+import com.basho.riak.client.core.util.HostAndPort;
 
 public class Connection implements java.sql.Connection {
 	
 	RiakClient _client = null;
+	private ClientRegistry.SharedClient _shared = null;
+	private volatile boolean _closed = false;
+	TimeSeriesProtocol _protocol = null;
 	private DatabaseMetaData _metaData = null;
 	private Properties _properties = null;
+	private TableSchemaCache _schemaCache = null;
+	private QueryPlanner _planner = null;
+	private QueryExecutor _executor = null;
+	private HedgingPolicy _hedging = null;
+	private RetryPolicy _retry = null;
+	private SeriesCatalog _series = null;
+	private BatchWriter _batchWriter = null;
+	private InsertCoalescer _coalescer = null;
+	private WriteBehindBuffer _writeBehind = null;
+	private BulkDeleter _deleter = null;
+	private RetentionPruner _retention = null;
+	// Updatable result sets with rows waiting to be written
+	private final LinkedHashSet<ResultSetUpdater> _pendingUpdaters = new LinkedHashSet<ResultSetUpdater>();
 	
 	private final static boolean IS_READ_ONLY = false;
 	private final static boolean AUTO_COMMIT = true;
@@ -59,13 +84,59 @@ public class Connection implements java.sql.Connection {
 	 * @throws SQLException
 	 */
 	public Connection(String url, Properties info) throws UnknownHostException, SQLException {
+		// Start from any properties passed in so driver settings are kept when connecting by URL
+		Properties properties = new Properties();
+		if (info != null) properties.putAll(info);
 		if (Utility.validateRiakUrl(url)) { // Use the URL passed in to connect
-			info = Utility.getRiakPropertiesFromUrl(url);
+			properties.putAll(Utility.getRiakPropertiesFromUrl(url));
 		}
 		
-		_client = RiakClient.newClient(Integer.parseInt( info.getProperty("RiakPort") ), info.getProperty("RiakUrl"));
-		_metaData = new com.basho.riakts.jdbc.DatabaseMetaData(url);
-		_properties = info;
+		List<HostAndPort> nodes = Utility.getRiakNodes(properties);
+		ClientSettings settings = new ClientSettings(properties);
+		if (DriverProperties.getBoolean(properties, DriverProperties.SHARE_CLIENT, DriverProperties.DEFAULT_SHARE_CLIENT)) {
+			_shared = ClientRegistry.acquire(nodes, settings);
+		}
+		else {
+			_shared = ClientRegistry.acquireUnshared(nodes, settings);
+		}
+		// The client is referenced from here on, so it is released if the connection
+		// can't be opened, or it and its event loops would never be shut down
+		boolean opened = false;
+		try {
+			_client = _shared.getClient();
+			_protocol = new TimeSeriesProtocol(_client.getRiakCluster(), properties);
+			_metaData = new com.basho.riakts.jdbc.DatabaseMetaData(url);
+			_properties = properties;
+			_schemaCache = new TableSchemaCache(_client);
+			if (DriverProperties.getBoolean(properties, DriverProperties.SERIES_REGISTRY, DriverProperties.DEFAULT_SERIES_REGISTRY)) {
+				_series = new SeriesCatalog(_client, _schemaCache, properties);
+			}
+			_planner = new QueryPlanner(_schemaCache, _series, properties);
+			_retry = new RetryPolicy(properties);
+			_batchWriter = new BatchWriter(_protocol, _schemaCache, _retry, properties);
+			if (DriverProperties.getBoolean(properties, DriverProperties.WRITE_BEHIND, DriverProperties.DEFAULT_WRITE_BEHIND)) {
+				_writeBehind = new WriteBehindBuffer(this, properties);
+			}
+			else if (DriverProperties.getBoolean(properties, DriverProperties.COALESCE_INSERTS, DriverProperties.DEFAULT_COALESCE_INSERTS)) {
+				_coalescer = new InsertCoalescer(this, properties);
+			}
+			_hedging = new HedgingPolicy(properties);
+			_executor = new QueryExecutor(_protocol, _hedging, _retry);
+			_deleter = new BulkDeleter(_protocol, _schemaCache, _planner, _executor, _retry, properties);
+			if (DriverProperties.getString(properties, DriverProperties.RETENTION, "").trim().length() > 0) {
+				_retention = new RetentionPruner(this, properties);
+				_retention.start(DriverProperties.getInt(properties, DriverProperties.RETENTION_INTERVAL_SECONDS,
+						DriverProperties.DEFAULT_RETENTION_INTERVAL_SECONDS));
+			}
+			opened = true;
+		}
+		finally {
+			if (!opened) {
+				if (_retention != null) _retention.close();
+				if (_writeBehind != null) _writeBehind.close();
+				ClientRegistry.release(_shared, 0);
+			}
+		}
 	} // Tested
 
 	
@@ -78,9 +149,18 @@ public class Connection implements java.sql.Connection {
 	}
 
 	public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
-		return new com.basho.riakts.jdbc.Statement(_client, resultSetType, resultSetConcurrency, resultSetHoldability);
+		return createStatement(this, resultSetType, resultSetConcurrency, resultSetHoldability);
 	} // Tested
 	
+	/***
+	 * Creates a statement whose getConnection returns the handle it was created through,
+	 * such as a pooled connection's LogicalConnection
+	 */
+	Statement createStatement(java.sql.Connection handle, int resultSetType, int resultSetConcurrency,
+			int resultSetHoldability) throws SQLException {
+		return new com.basho.riakts.jdbc.Statement(this, handle, resultSetType, resultSetConcurrency, resultSetHoldability);
+	}
+	
 	
 	public PreparedStatement prepareStatement(String sql) throws SQLException {
 		return prepareStatement(sql, 0, 0, 0);
@@ -92,9 +172,18 @@ public class Connection implements java.sql.Connection {
 	
 	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) 
 			throws SQLException {
-		return new com.basho.riakts.jdbc.PreparedStatement(_client, sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+		return prepareStatement(this, sql, resultSetType, resultSetConcurrency, resultSetHoldability);
 	} // Tested
 	
+	/***
+	 * Prepares a statement whose getConnection returns the handle it was prepared through
+	 */
+	PreparedStatement prepareStatement(java.sql.Connection handle, String sql, int resultSetType, int resultSetConcurrency,
+			int resultSetHoldability) throws SQLException {
+		return new com.basho.riakts.jdbc.PreparedStatement(this, handle, sql, resultSetType, resultSetConcurrency,
+				resultSetHoldability);
+	}
+	
 	// TODO: Investigate/correct alternate prepareStatement invocations of PreparedStatement	
 	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
 		return prepareStatement(sql, 0, 0, 0);
@@ -109,18 +198,28 @@ public class Connection implements java.sql.Connection {
 	}
 	
 	public void close() throws SQLException {
-		_client.shutdown();
+		synchronized (this) {
+			if (_closed) return;
+			_closed = true;
+		}
+		try {
+			flushInserts();
+		}
+		finally {
+			if (_retention != null) _retention.close();
+			if (_writeBehind != null) _writeBehind.close();
+			// The client is shared with other connections to the same nodes
+			ClientRegistry.release(_shared, DriverProperties.getInt(_properties, DriverProperties.CLIENT_LINGER_SECONDS,
+					DriverProperties.DEFAULT_CLIENT_LINGER_SECONDS));
+		}
 	} // Tested
 
+	/***
+	 * Returns true once the connection has been closed; whether the nodes are answering
+	 * is up to isValid
+	 */
 	public boolean isClosed() throws SQLException {
-		// Retrieves a list of nodes, if at least one of the nodes
-		// is in RUNNING state returns false
-		List<RiakNode> nodes = _client.getRiakCluster().getNodes();
-		for (RiakNode node : nodes)
-		{
-		    if ( node.getNodeState().toString().equalsIgnoreCase("RUNNING") ) return false;
-		}
-		return true;
+		return _closed;
 	} // Tested
 	
 	public DatabaseMetaData getMetaData() throws SQLException {
@@ -158,13 +257,438 @@ public class Connection implements java.sql.Connection {
 		return null;
 	} // NOTE: Not yet implemented in Riak TS
 	
+	/***
+	 * Returns true if the connection is open and a node answers a Riak ping within the
+	 * timeout. Connections sharing a client share the ping in flight and its outcome
+	 * for ValidationCacheMillis.
+	 * @param timeout seconds to wait for the answer, 0 for no limit
+	 * @throws SQLException if the timeout is less than 0
+	 */
 	public boolean isValid(int timeout) throws SQLException {
-		if (isClosed()) {
-			return false;
+		if (timeout < 0) throw new SQLException("Invalid timeout: " + timeout);
+		if (_closed) return false;
+		return _shared.getValidator().validate(timeout);
+	} // Tested
+	
+	
+	/***
+	 * Plans and executes a query, splitting it into sub-queries where the
+	 * QueryPlanner decides to
+	 * @param sql
+	 * @return ResultSet
+	 * @throws SQLException
+	 */
+	ResultSet query(String sql) throws SQLException {
+		flushInserts();
+		if (QueryParser.isExplain(sql)) {
+			return explain(QueryParser.stripExplain(sql));
 		}
-		else {
-			return true;
+		return _executor.execute(_planner.plan(sql));
+	}
+	
+	/***
+	 * Executes a query, making the ResultSet updatable if CONCUR_UPDATABLE is asked for
+	 * and the query selects the primary key of a single table. Otherwise the ResultSet is
+	 * read only and has a warning saying why.
+	 * @param sql
+	 * @param concurrency ResultSet.CONCUR_READ_ONLY, CONCUR_UPDATABLE or 0
+	 * @return ResultSet
+	 * @throws SQLException
+	 */
+	ResultSet query(String sql, int concurrency) throws SQLException {
+		ResultSet rs = query(sql);
+		if (concurrency == ResultSet.CONCUR_UPDATABLE) rs.setUpdater(ResultSetUpdater.create(this, sql, rs));
+		return rs;
+	}
+	
+	/***
+	 * Returns the plan the driver would use to execute a query without running it
+	 * @param sql
+	 * @return ResultSet with one row per sub-query
+	 * @throws SQLException
+	 */
+	public ResultSet explain(String sql) throws SQLException {
+		return plan(sql).toResultSet();
+	}
+	
+	/***
+	 * Returns the plan the driver would use to execute a query without running it
+	 * @param sql
+	 * @return QueryPlan
+	 */
+	public QueryPlan plan(String sql) {
+		return _planner.plan(sql);
+	}
+	
+	/***
+	 * Fetches the rows of a table with each of the primary keys passed in, sending up to
+	 * FetchParallelism Fetches to Riak TS at once. Rows are returned in the order of the
+	 * keys; a key that isn't found has no row and is reported by a MissingKeyWarning
+	 * on the ResultSet.
+	 * @param table
+	 * @param keys the values of each key in the order of the table's primary key columns,
+	 * e.g. Arrays.asList("KBOS", 1470009600000L)
+	 * @return ResultSet with all of the table's columns
+	 * @throws SQLException if the table can't be described, a key doesn't match the table's
+	 * primary key or a Fetch fails
+	 */
+	public ResultSet fetchAll(String table, List<? extends List<?>> keys) throws SQLException {
+		TableDefinition definition = _schemaCache.getTableDefinition(table);
+		if (definition == null) throw new SQLException("Unable to describe table " + table);
+		List<FullColumnDescription> localKey = QueryPlanner.getLocalKey(definition);
+
+		List<List<Cell>> cells = new ArrayList<List<Cell>>();
+		for (int i = 0; i < keys.size(); i++) {
+			List<?> key = keys.get(i);
+			if (key == null || key.size() != localKey.size()) {
+				throw new SQLException("Key " + i + " must have " + localKey.size() + " values: " + key);
+			}
+			List<Cell> keyCells = new ArrayList<Cell>();
+			for (int k = 0; k < localKey.size(); k++) {
+				Cell cell = Utility.getCellFromObject(key.get(k), localKey.get(k).getType());
+				if (cell == null) {
+					throw new SQLException("Key " + i + " has an invalid value for " +
+							localKey.get(k).getName() + ": " + key.get(k));
+				}
+				keyCells.add(cell);
+			}
+			cells.add(keyCells);
 		}
+
+		List<QueryResult> results = _executor.fetchAll(table, cells, DriverProperties.getInt(_properties,
+				DriverProperties.FETCH_PARALLELISM, DriverProperties.DEFAULT_FETCH_PARALLELISM));
+		ResultSet rs = Utility.getResultSetFromQueryResults(results,
+				new ArrayList<FullColumnDescription>(definition.getFullColumnDescriptions()), null);
+		for (int i = 0; i < results.size(); i++) {
+			if (results.get(i).getRowsCount() == 0) rs.addWarning(new MissingKeyWarning(i, keys.get(i)));
+		}
+		return rs;
+	} // Tested
+
+	/***
+	 * Returns the statistics the driver has collected from queries against a table
+	 * @param table
+	 * @return TableStatistics
+	 */
+	public TableStatistics getTableStatistics(String table) {
+		return _planner.getStatistics(table);
+	}
+	
+	/***
+	 * Returns the connection's hedging policy, which holds the hedged read metrics
+	 * @return HedgingPolicy
+	 */
+	public HedgingPolicy getHedgingPolicy() {
+		return _hedging;
+	}
+	
+	/***
+	 * Returns the connection's retry policy, which holds the retry metrics
+	 * @return RetryPolicy
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return _retry;
+	}
+	
+	/***
+	 * Returns the connection's series catalog, which holds the series learned for each
+	 * table, or null if SeriesRegistry isn't enabled
+	 * @return SeriesCatalog
+	 */
+	public SeriesCatalog getSeriesCatalog() {
+		return _series;
+	}
+	
+	/***
+	 * Returns the connection's bulk deleter, which runs DELETE statements and holds
+	 * their metrics
+	 * @return BulkDeleter
+	 */
+	public BulkDeleter getBulkDeleter() {
+		return _deleter;
+	}
+	
+	/***
+	 * Returns the connection's retention pruner, or null if Retention isn't set
+	 * @return RetentionPruner
+	 */
+	public RetentionPruner getRetentionPruner() {
+		return _retention;
+	}
+	
+	/***
+	 * Returns the balancer choosing the node each request of the connection's client is
+	 * sent to, with the requests sent to each node
+	 * @return NodeBalancer
+	 */
+	public NodeBalancer getNodeBalancer() {
+		return _shared.getBalancer();
+	}
+	
+	/***
+	 * Returns the discovery resolving the hostnames of the connection's nodes, with the
+	 * nodes it has added and removed
+	 * @return NodeDiscovery
+	 */
+	public NodeDiscovery getNodeDiscovery() {
+		return _shared.getDiscovery();
+	}
+	
+	/***
+	 * Returns the validator pinging the nodes for isValid, with the pings sent and the
+	 * validations answered from its cache
+	 * @return PingValidator
+	 */
+	public PingValidator getPingValidator() {
+		return _shared.getValidator();
+	}
+	
+	TableSchemaCache getSchemaCache() {
+		return _schemaCache;
+	}
+	
+	/***
+	 * Runs the statements of a Statement's batch
+	 * @param entries
+	 * @return update count of each statement
+	 * @throws SQLException if any statement failed, or INSERTs coalesced before it
+	 */
+	int[] executeBatch(List<BatchWriter.Entry> entries) throws SQLException {
+		flushInserts();
+		return writeBatch(entries);
+	}
+	
+	int[] writeBatch(List<BatchWriter.Entry> entries) throws BatchUpdateException {
+		int[] counts;
+		try {
+			counts = _batchWriter.executeBatch(entries);
+		}
+		catch (BatchUpdateException e) {
+			counts = e.getUpdateCounts();
+			recordWrites(entries, counts);
+			throw e;
+		}
+		recordWrites(entries, counts);
+		return counts;
+	}
+	
+	private void recordWrites(List<BatchWriter.Entry> entries, int[] counts) {
+		for (int i = 0; i < entries.size() && _series != null; i++) {
+			if (counts[i] == Statement.EXECUTE_FAILED) continue;
+			if (entries.get(i).sql != null) _series.recordInsert(entries.get(i).sql);
+			else _series.recordRows(entries.get(i).table, entries.get(i).rows);
+		}
+	}
+	
+	/***
+	 * Runs a statement that isn't a query, retrying it per the RetryPolicy
+	 * @param sql
+	 * @return QueryResult
+	 * @throws SQLException
+	 */
+	QueryResult executeStatement(final String sql) throws SQLException {
+		try {
+			return _retry.call(new Callable<QueryResult>() {
+				public QueryResult call() throws Exception {
+					return _protocol.query(sql).get();
+				}
+			});
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException(e);
+		}
+		catch (ExecutionException e) {
+			throw new SQLException(e.getCause());
+		}
+	}
+	
+	/***
+	 * Writes rows to a table with the timeseries Store command
+	 * @param table
+	 * @param rows cells in the table's column order
+	 * @throws SQLException
+	 */
+	void store(final String table, final List<Row> rows) throws SQLException {
+		if (_writeBehind != null) {
+			_writeBehind.add(table, rows);
+			return;
+		}
+		if (_coalescer != null && _coalescer.add(null, table, rows)) return;
+		try {
+			_retry.call(new Callable<Void>() {
+				public Void call() throws Exception {
+					return _protocol.store(table, rows).get();
+				}
+			});
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException(e);
+		}
+		catch (ExecutionException e) {
+			throw new SQLException(e.getCause());
+		}
+		if (_series != null) _series.recordRows(table, rows);
+	}
+	
+	/***
+	 * Deletes the row of a table with the key passed in, retrying per the RetryPolicy
+	 * @param table
+	 * @param key key cells in local key order
+	 * @throws SQLException
+	 */
+	void delete(final String table, final List<Cell> key) throws SQLException {
+		try {
+			_retry.call(new Callable<Void>() {
+				public Void call() throws Exception {
+					return _protocol.delete(table, key).get();
+				}
+			});
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException(e);
+		}
+		catch (ExecutionException e) {
+			throw new SQLException(e.getCause());
+		}
+	}
+	
+	/***
+	 * Runs a DELETE statement with the BulkDeleter, after writing any INSERTs buffered
+	 * before it
+	 * @param sql
+	 * @return number of rows deleted, or -1 if the statement isn't a DELETE
+	 * @throws SQLException
+	 */
+	long executeDelete(String sql) throws SQLException {
+		if (!QueryParser.isDelete(sql)) return -1;
+		flushInserts();
+		return _deleter.delete(sql);
+	} // Tested
+	
+	/***
+	 * Notes that an updatable result set has rows waiting to be written, so that
+	 * flushInserts writes them
+	 * @param updater
+	 */
+	void addPendingUpdates(ResultSetUpdater updater) {
+		synchronized (_pendingUpdaters) {
+			_pendingUpdaters.add(updater);
+		}
+	}
+	
+	void removePendingUpdates(ResultSetUpdater updater) {
+		synchronized (_pendingUpdaters) {
+			_pendingUpdaters.remove(updater);
+		}
+	}
+	
+	/***
+	 * Runs a statement that isn't a query for Statement.executeUpdate. An INSERT is
+	 * buffered when WriteBehind or CoalesceInserts is enabled, and a DELETE by WHERE
+	 * clause goes through the BulkDeleter.
+	 * @param sql
+	 * @return number of rows an INSERT wrote or buffered, as executeBatch reports them,
+	 * or a DELETE deleted, otherwise the number Riak TS reports
+	 * @throws SQLException
+	 */
+	int executeUpdate(String sql) throws SQLException {
+		int count = executeWrite(sql);
+		if (count >= 0) return count;
+		return executeStatement(sql).getRowsCount();
+	} // Tested
+	
+	/***
+	 * Runs an INSERT or DELETE the way executeUpdate does, for Statement.execute to use
+	 * before running anything else as a query
+	 * @param sql
+	 * @return number of rows written, buffered or deleted, or -1 if the statement isn't
+	 * an INSERT or DELETE the driver handles
+	 * @throws SQLException
+	 */
+	int executeWrite(String sql) throws SQLException {
+		int buffered = bufferInsert(sql);
+		if (buffered >= 0) return buffered;
+		long deleted = executeDelete(sql);
+		if (deleted >= 0) return (int) Math.min(Integer.MAX_VALUE, deleted);
+		QueryParser.ParsedInsert insert = QueryParser.parseInsert(sql);
+		if (insert == null) return -1;
+		executeStatement(sql);
+		recordInsert(sql);
+		// Riak TS reports no rows for an INSERT, so count the rows of its VALUES
+		return insert.getRows().size();
+	} // Tested
+	
+	/***
+	 * Adds an INSERT to the write-behind buffer or the rows being coalesced, when
+	 * WriteBehind or CoalesceInserts is enabled. Any other statement first waits for the
+	 * rows buffered so far to be written, so it sees them.
+	 * @param sql
+	 * @return number of rows buffered, or -1 if the statement wasn't buffered and should
+	 * be run
+	 * @throws SQLException if the buffer is full, or writing the buffered rows failed
+	 */
+	int bufferInsert(String sql) throws SQLException {
+		if (_writeBehind != null || _coalescer != null) {
+			QueryParser.ParsedInsert insert = QueryParser.parseInsert(sql);
+			List<Row> rows = insert == null ? null : toRows(insert);
+			if (rows != null) {
+				if (_writeBehind != null) _writeBehind.add(insert.getTable(), rows);
+				else _coalescer.add(sql, insert.getTable(), rows);
+				return rows.size();
+			}
+		}
+		flushInserts();
+		return -1;
+	}
+	
+	/***
+	 * Writes any INSERTs buffered on this connection that are still waiting, and with
+	 * WriteBehind waits for the background writers to finish them. Also writes the rows
+	 * inserted or updated through updatable result sets that haven't been written yet.
+	 * @throws SQLException if writing any of the rows failed, including rows written in
+	 * the background since the last flush
+	 */
+	public void flushInserts() throws SQLException {
+		ResultSetUpdater[] updaters;
+		synchronized (_pendingUpdaters) {
+			updaters = _pendingUpdaters.toArray(new ResultSetUpdater[_pendingUpdaters.size()]);
+		}
+		for (ResultSetUpdater updater : updaters) updater.flush();
+		if (_coalescer != null) _coalescer.flush();
+		if (_writeBehind != null) _writeBehind.flush();
+	} // Tested
+	
+	/***
+	 * Returns the number of rows written in batches, coalesced or write-behind INSERTs
+	 * that weren't sent because a later row written with them had the same primary key
+	 * @return long
+	 */
+	public long getCollapsedRows() {
+		return _batchWriter.getCollapsedRows();
+	} // Tested
+	
+	/***
+	 * Returns the connection's write-behind buffer, which holds its metrics, or null if
+	 * WriteBehind isn't enabled
+	 * @return WriteBehindBuffer
+	 */
+	public WriteBehindBuffer getWriteBehindBuffer() {
+		return _writeBehind;
+	}
+	
+	List<Row> toRows(QueryParser.ParsedInsert insert) {
+		return _batchWriter.toRows(insert);
+	}
+	
+	/***
+	 * Registers the series written by an INSERT that has run successfully
+	 * @param sql
+	 */
+	void recordInsert(String sql) {
+		if (_series != null) _series.recordInsert(sql);
 	}
 	
 	
@@ -313,11 +837,12 @@ public class Connection implements java.sql.Connection {
 	}
 	
 	public <T> T unwrap(Class<T> iface) throws SQLException {
-		throw new UnsupportedOperationException();
+		if (iface.isInstance(this)) return iface.cast(this);
+		throw new SQLException("Not a wrapper for " + iface.getName());
 	}
 
 	public boolean isWrapperFor(Class<?> iface) throws SQLException {
-		throw new UnsupportedOperationException();
+		return iface.isInstance(this);
 	}
 
 }
@@ -0,0 +1,338 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+
+/***
+ * The connection pool behind DataSource. Idle connections are kept on a lock-free
+ * deque and the most recently used is handed out first, so its sockets are warm; a
+ * semaphore holds callers back once PoolMaxSize connections are in use, for up to
+ * PoolTimeoutMillis. A connection idle for longer than PoolValidationMillis is checked
+ * with isValid before being handed out. Connections handed back beyond PoolMaxIdle are
+ * closed, and a background thread closes those idle for PoolIdleTimeoutSeconds while
+ * keeping PoolMinIdle ready. As physical connections share one Riak client per set of
+ * nodes, closing them doesn't close sockets other connections are using.
+ */
+public class ConnectionPool implements ConnectionEventListener {
+
+	private final ConnectionPoolDataSource _source;
+	private final int _maxSize;
+	private final int _minIdle;
+	private final int _maxIdle;
+	private final long _timeoutMillis;
+	private final long _idleTimeoutMillis;
+	private final long _validationMillis;
+
+	private final ConcurrentLinkedDeque<PooledConnection> _idle = new ConcurrentLinkedDeque<PooledConnection>();
+	// ConcurrentLinkedDeque.size() walks the deque
+	private final AtomicInteger _idleCount = new AtomicInteger();
+	private final AtomicInteger _total = new AtomicInteger();
+	private final Semaphore _permits;
+	private volatile boolean _closed = false;
+	private ScheduledExecutorService _housekeeper = null;
+
+	private AtomicLong _checkouts = new AtomicLong();
+	private AtomicLong _created = new AtomicLong();
+	private AtomicLong _destroyed = new AtomicLong();
+	private AtomicLong _timeouts = new AtomicLong();
+	private AtomicLong _validationFailures = new AtomicLong();
+	private AtomicLong _waitNanos = new AtomicLong();
+
+	/***
+	 * @param source creates the pool's connections
+	 * @param info pool properties
+	 * @throws SQLException if the PoolMinIdle connections couldn't be opened
+	 */
+	ConnectionPool(ConnectionPoolDataSource source, Properties info) throws SQLException {
+		_source = source;
+		_maxSize = Math.max(1, DriverProperties.getInt(info, DriverProperties.POOL_MAX_SIZE,
+				DriverProperties.DEFAULT_POOL_MAX_SIZE));
+		_minIdle = Math.min(_maxSize, Math.max(0, DriverProperties.getInt(info, DriverProperties.POOL_MIN_IDLE,
+				DriverProperties.DEFAULT_POOL_MIN_IDLE)));
+		int maxIdle = DriverProperties.getInt(info, DriverProperties.POOL_MAX_IDLE, DriverProperties.DEFAULT_POOL_MAX_IDLE);
+		_maxIdle = maxIdle < 0 ? _maxSize : Math.max(_minIdle, maxIdle);
+		_timeoutMillis = Math.max(0, DriverProperties.getInt(info, DriverProperties.POOL_TIMEOUT_MILLIS,
+				DriverProperties.DEFAULT_POOL_TIMEOUT_MILLIS));
+		_idleTimeoutMillis = 1000L * DriverProperties.getInt(info, DriverProperties.POOL_IDLE_TIMEOUT_SECONDS,
+				DriverProperties.DEFAULT_POOL_IDLE_TIMEOUT_SECONDS);
+		_validationMillis = DriverProperties.getInt(info, DriverProperties.POOL_VALIDATION_MILLIS,
+				DriverProperties.DEFAULT_POOL_VALIDATION_MILLIS);
+		_permits = new Semaphore(_maxSize);
+
+		fillIdle();
+		if (_idleTimeoutMillis > 0 || _minIdle > 0) {
+			long period = _idleTimeoutMillis > 0 ? Math.max(1000, Math.min(30000, _idleTimeoutMillis / 2)) : 30000;
+			_housekeeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "riakts-jdbc-pool");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			_housekeeper.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					evictIdle();
+					try {
+						fillIdle();
+					}
+					catch (SQLException e) {
+						// Tried again on the next run
+					}
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+		}
+	} // Tested
+
+	/***
+	 * Hands out an idle connection, or opens one if there is none and fewer than
+	 * PoolMaxSize are open
+	 * @return Connection to close when done with, which hands it back
+	 * @throws SQLException if none was free within PoolTimeoutMillis, or opening one failed
+	 */
+	public java.sql.Connection getConnection() throws SQLException {
+		if (_closed) throw new SQLException("Connection pool is closed");
+		long start = System.nanoTime();
+		try {
+			if (!_permits.tryAcquire(_timeoutMillis, TimeUnit.MILLISECONDS)) {
+				_timeouts.incrementAndGet();
+				throw new SQLTransientConnectionException("Timed out after " + _timeoutMillis
+						+ "ms waiting for a connection, all " + _maxSize + " are in use");
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException(e);
+		}
+		try {
+			PooledConnection pooled;
+			while ((pooled = takeIdle()) != null) {
+				if (isUsable(pooled)) break;
+				_validationFailures.incrementAndGet();
+				destroy(pooled);
+			}
+			if (pooled == null) pooled = create();
+			java.sql.Connection connection = pooled.getConnection();
+			_checkouts.incrementAndGet();
+			_waitNanos.addAndGet(System.nanoTime() - start);
+			return connection;
+		}
+		catch (SQLException e) {
+			_permits.release();
+			throw e;
+		}
+	} // Tested
+
+	/***
+	 * Takes a connection handed back, keeping it idle unless PoolMaxIdle are already
+	 */
+	public void connectionClosed(ConnectionEvent event) {
+		PooledConnection pooled = (PooledConnection) event.getSource();
+		if (_closed || _idleCount.incrementAndGet() > _maxIdle) {
+			if (!_closed) _idleCount.decrementAndGet();
+			destroy(pooled);
+		}
+		else {
+			_idle.offerFirst(pooled);
+			// Closed meanwhile, after close emptied the deque
+			if (_closed && _idle.removeFirstOccurrence(pooled)) {
+				_idleCount.decrementAndGet();
+				destroy(pooled);
+			}
+		}
+		_permits.release();
+	} // Tested
+
+	/***
+	 * Closes a connection that failed rather than handing it out again
+	 */
+	public void connectionErrorOccurred(ConnectionEvent event) {
+		destroy((PooledConnection) event.getSource());
+		_permits.release();
+	}
+
+	/***
+	 * Closes the idle connections, and connections in use as they are handed back
+	 */
+	public void close() {
+		_closed = true;
+		if (_housekeeper != null) _housekeeper.shutdownNow();
+		PooledConnection pooled;
+		while ((pooled = takeIdle()) != null) destroy(pooled);
+	} // Tested
+
+	public boolean isClosed() {
+		return _closed;
+	}
+
+	private PooledConnection takeIdle() {
+		PooledConnection pooled = _idle.pollFirst();
+		if (pooled != null) _idleCount.decrementAndGet();
+		return pooled;
+	}
+
+	private boolean isUsable(PooledConnection pooled) {
+		try {
+			// Closed through unwrap, however recently it was used
+			if (pooled.getPhysicalConnection().isClosed()) return false;
+			if (System.currentTimeMillis() - pooled.getLastUsed() < _validationMillis) return true;
+			return pooled.getPhysicalConnection().isValid(1);
+		}
+		catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private PooledConnection create() throws SQLException {
+		PooledConnection pooled = (PooledConnection) _source.getPooledConnection();
+		pooled.addConnectionEventListener(this);
+		_total.incrementAndGet();
+		_created.incrementAndGet();
+		return pooled;
+	}
+
+	private void destroy(PooledConnection pooled) {
+		pooled.removeConnectionEventListener(this);
+		_total.decrementAndGet();
+		_destroyed.incrementAndGet();
+		try {
+			pooled.close();
+		}
+		catch (SQLException e) {
+			// The connection is dropped either way
+		}
+	}
+
+	/***
+	 * Closes connections idle for longer than PoolIdleTimeoutSeconds, oldest first,
+	 * while more than PoolMinIdle are idle
+	 */
+	void evictIdle() {
+		if (_idleTimeoutMillis <= 0) return;
+		long cutoff = System.currentTimeMillis() - _idleTimeoutMillis;
+		Iterator<PooledConnection> oldest = _idle.descendingIterator();
+		while (oldest.hasNext() && _idleCount.get() > _minIdle) {
+			PooledConnection pooled = oldest.next();
+			if (pooled.getLastUsed() > cutoff) break;
+			// Not removed if it was handed out meanwhile
+			if (_idle.removeLastOccurrence(pooled)) {
+				_idleCount.decrementAndGet();
+				destroy(pooled);
+			}
+		}
+	} // Tested
+
+	/***
+	 * Opens connections until PoolMinIdle are idle, without going over PoolMaxSize
+	 */
+	void fillIdle() throws SQLException {
+		while (!_closed && _idleCount.get() < _minIdle && _total.get() < _maxSize) {
+			PooledConnection pooled = create();
+			_idleCount.incrementAndGet();
+			_idle.offerLast(pooled);
+		}
+	}
+
+
+	public int getMaxSize() {
+		return _maxSize;
+	}
+
+	/***
+	 * Returns the number of connections open, in use or idle
+	 * @return int
+	 */
+	public int getTotalConnections() {
+		return _total.get();
+	}
+
+	public int getIdleConnections() {
+		return _idleCount.get();
+	}
+
+	public int getActiveConnections() {
+		return _maxSize - _permits.availablePermits();
+	}
+
+	/***
+	 * Returns the number of callers waiting for a connection
+	 * @return int
+	 */
+	public int getWaitingThreads() {
+		return _permits.getQueueLength();
+	}
+
+	public long getCheckouts() {
+		return _checkouts.get();
+	}
+
+	public long getCreatedConnections() {
+		return _created.get();
+	}
+
+	public long getDestroyedConnections() {
+		return _destroyed.get();
+	}
+
+	/***
+	 * Returns the number of getConnection calls that timed out waiting for a connection
+	 * @return long
+	 */
+	public long getTimeouts() {
+		return _timeouts.get();
+	}
+
+	/***
+	 * Returns the number of idle connections found not to be valid when handed out
+	 * @return long
+	 */
+	public long getValidationFailures() {
+		return _validationFailures.get();
+	}
+
+	/***
+	 * Returns the average time getConnection took to hand out a connection
+	 * @return microseconds
+	 */
+	public long getAverageWaitMicros() {
+		long checkouts = _checkouts.get();
+		return checkouts == 0 ? 0 : _waitNanos.get() / checkouts / 1000;
+	}
+
+	public void resetMetrics() {
+		_checkouts.set(0);
+		_created.set(0);
+		_destroyed.set(0);
+		_timeouts.set(0);
+		_validationFailures.set(0);
+		_waitNanos.set(0);
+	}
+
+}
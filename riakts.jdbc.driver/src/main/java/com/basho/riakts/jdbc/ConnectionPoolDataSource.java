@@ -0,0 +1,112 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.io.PrintWriter;
+import java.net.UnknownHostException;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/***
+ * Creates the PooledConnections of an application server's or other pool's connection
+ * pool. Set the url (riakts://host:port), or the RiakUrl and RiakPort properties, and
+ * any other driver properties. Physical connections to the same nodes share one Riak
+ * client (see ClientRegistry), so creating one doesn't open sockets of its own.
+ */
+public class ConnectionPoolDataSource implements javax.sql.ConnectionPoolDataSource {
+
+	private String _url = null;
+	private Properties _properties = new Properties();
+	private PrintWriter _logWriter = null;
+	private int _loginTimeout = 0;
+
+	public javax.sql.PooledConnection getPooledConnection() throws SQLException {
+		return new PooledConnection(connect());
+	} // Tested
+
+	/***
+	 * Riak TS has no users, so the user and password are ignored
+	 */
+	public javax.sql.PooledConnection getPooledConnection(String user, String password) throws SQLException {
+		return getPooledConnection();
+	}
+
+	/***
+	 * Opens a physical connection with the url and properties set
+	 * @return Connection
+	 * @throws SQLException if neither the url nor RiakUrl and RiakPort are valid
+	 */
+	Connection connect() throws SQLException {
+		String url = _url == null ? "" : _url;
+		if (!Utility.validateRiakUrl(url) && !Utility.validateRiakProperties(_properties)) {
+			throw new SQLException("Invalid url " + _url + " and no valid RiakUrl and RiakPort properties");
+		}
+		try {
+			return new Connection(url, _properties);
+		}
+		catch (UnknownHostException e) {
+			throw new SQLException(e);
+		}
+	}
+
+	public String getUrl() {
+		return _url;
+	}
+
+	public void setUrl(String url) {
+		_url = url;
+	}
+
+	/***
+	 * Returns the driver properties connections are opened with
+	 * @return Properties
+	 */
+	public Properties getProperties() {
+		return _properties;
+	}
+
+	public void setProperties(Properties properties) {
+		_properties = new Properties();
+		if (properties != null) _properties.putAll(properties);
+	}
+
+	public void setProperty(String name, String value) {
+		_properties.setProperty(name, value);
+	}
+
+	public PrintWriter getLogWriter() throws SQLException {
+		return _logWriter;
+	}
+
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		_logWriter = out;
+	}
+
+	public void setLoginTimeout(int seconds) throws SQLException {
+		_loginTimeout = seconds;
+	}
+
+	public int getLoginTimeout() throws SQLException {
+		return _loginTimeout;
+	}
+
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new UnsupportedOperationException();
+	}
+
+}
@@ -0,0 +1,707 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.sql.BatchUpdateException;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.basho.riak.client.core.query.timeseries.Cell;
+import com.basho.riak.client.core.query.timeseries.ColumnDescription;
+import com.basho.riak.client.core.query.timeseries.FullColumnDescription;
+import com.basho.riak.client.core.query.timeseries.Row;
+import com.basho.riak.client.core.query.timeseries.TableDefinition;
+import com.basho.riak.client.core.util.BinaryValue;
+
+/***
+ * Loads a CSV file into a Riak TS table. The file is memory mapped and split into ranges
+ * of whole lines that Threads workers parse in parallel, converting each field straight
+ * from its bytes to a cell of its column's type without making a String of the line,
+ * and writing the rows with the timeseries Store command in batches of BatchRows.
+ *
+ * Fields are in the table's column order unless setColumns says otherwise, separated by
+ * the delimiter and optionally quoted with double quotes (a quote inside a quoted field is
+ * doubled). An empty field is written as null. Timestamps are epoch milliseconds, ISO 8601
+ * dates as in SQL literals, or dates in the format given to setTimestampFormat (read as UTC).
+ * A line whose fields don't fit the table is skipped and counted as rejected, unless
+ * setInvalidAsNull is on, in which case the values that don't fit are written as null.
+ *
+ * Can also be run from the command line:
+ * CsvBulkLoader url table file [--threads n] [--header] [--delimiter c] [--columns a,b,c]
+ * [--timestamp-format pattern] [--invalid-as-null]
+ */
+public class CsvBulkLoader {
+
+	private final static int DEFAULT_BATCH_ROWS = 1000;
+	// Ranges per worker, so workers that finish early can take on more of the file
+	private final static int RANGES_PER_THREAD = 4;
+	// Largest range mapped at once
+	private final static long MAX_RANGE_BYTES = 256L * 1024 * 1024;
+	private final static int MAX_ERRORS = 10;
+
+	private final Connection _connection;
+	private final String _table;
+	private int _threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+	private int _batchRows = DEFAULT_BATCH_ROWS;
+	private boolean _header = false;
+	private byte _delimiter = ',';
+	private List<String> _columns = null;
+	private String _timestampFormat = null;
+	private boolean _invalidAsNull = false;
+	private ProgressListener _listener = null;
+	private long _progressMillis = 1000;
+
+	/***
+	 * @param connection connection to Riak TS
+	 * @param table table to load
+	 * @throws SQLException if the connection isn't a Riak TS connection
+	 */
+	public CsvBulkLoader(java.sql.Connection connection, String table) throws SQLException {
+		if (!(connection instanceof Connection)) throw new SQLException("Not a Riak TS connection");
+		_connection = (Connection) connection;
+		_table = table;
+	}
+
+	/***
+	 * Sets the number of workers parsing and writing the file, by default one per processor
+	 */
+	public void setThreads(int threads) {
+		_threads = Math.max(1, threads);
+	}
+
+	/***
+	 * Sets the number of rows each worker collects before writing them
+	 */
+	public void setBatchRows(int batchRows) {
+		_batchRows = Math.max(1, batchRows);
+	}
+
+	/***
+	 * Sets whether the first line of the file is a header to skip
+	 */
+	public void setHeader(boolean header) {
+		_header = header;
+	}
+
+	public void setDelimiter(char delimiter) {
+		_delimiter = (byte) delimiter;
+	}
+
+	/***
+	 * Sets the table column each field of a line is for, when they aren't in the table's
+	 * column order or not every column is in the file
+	 * @param columns column names in the order of the fields
+	 */
+	public void setColumns(List<String> columns) {
+		_columns = columns;
+	}
+
+	/***
+	 * Sets the SimpleDateFormat pattern of timestamps that aren't epoch milliseconds or
+	 * ISO 8601, e.g. "M/d/yyyy"
+	 */
+	public void setTimestampFormat(String pattern) {
+		_timestampFormat = pattern;
+	}
+
+	/***
+	 * Sets whether values that don't fit their column are written as null rather than
+	 * the line being rejected
+	 */
+	public void setInvalidAsNull(boolean invalidAsNull) {
+		_invalidAsNull = invalidAsNull;
+	}
+
+	/***
+	 * Sets a listener told of the load's progress every intervalMillis, and once at the end
+	 */
+	public void setProgressListener(ProgressListener listener, long intervalMillis) {
+		_listener = listener;
+		_progressMillis = Math.max(1, intervalMillis);
+	}
+
+	/***
+	 * Loads a file into the table
+	 * @param file
+	 * @return Report of the rows written, failed and rejected
+	 * @throws SQLException if the table can't be described or a column doesn't exist
+	 * @throws IOException if the file can't be read
+	 */
+	public Report load(File file) throws SQLException, IOException {
+		TableDefinition definition = _connection.getSchemaCache().getTableDefinition(_table);
+		if (definition == null) throw new SQLException("Unable to describe table " + _table);
+		List<FullColumnDescription> columns = new ArrayList<FullColumnDescription>(definition.getFullColumnDescriptions());
+		// Table column of each field
+		int[] targets = new int[_columns == null ? columns.size() : _columns.size()];
+		for (int f = 0; f < targets.length; f++) {
+			targets[f] = _columns == null ? f : -1;
+			for (int c = 0; _columns != null && c < columns.size(); c++) {
+				if (columns.get(c).getName().equalsIgnoreCase(_columns.get(f).trim())) targets[f] = c;
+			}
+			if (targets[f] < 0) throw new SQLException("Table " + _table + " has no column " + _columns.get(f));
+		}
+
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		final Report report = new Report(input.length());
+		ScheduledExecutorService progress = null;
+		try {
+			final FileChannel channel = input.getChannel();
+			long start = _header ? skipLine(channel, 0) : 0;
+			report.parsed(start);
+			final List<long[]> ranges = split(channel, start);
+			final AtomicInteger next = new AtomicInteger();
+			final Load load = new Load(columns, targets, report);
+			if (_listener != null) {
+				// A timer of the load's own, as the listener may be slow
+				progress = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "riakts-jdbc-bulk-load-progress");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+				progress.scheduleAtFixedRate(new Runnable() {
+					public void run() {
+						_listener.progress(report);
+					}
+				}, _progressMillis, _progressMillis, TimeUnit.MILLISECONDS);
+			}
+
+			List<Thread> workers = new ArrayList<Thread>();
+			final AtomicReference<IOException> ioError = new AtomicReference<IOException>();
+			for (int i = 0; i < Math.min(_threads, ranges.size()); i++) {
+				Thread worker = new Thread(new Runnable() {
+					public void run() {
+						Worker parser = new Worker(load);
+						int range;
+						try {
+							while ((range = next.getAndIncrement()) < ranges.size() && ioError.get() == null) {
+								long[] bounds = ranges.get(range);
+								parser.parse(channel.map(FileChannel.MapMode.READ_ONLY, bounds[0], bounds[1] - bounds[0]), bounds[0]);
+								report.parsed(bounds[1] - bounds[0]);
+							}
+						}
+						catch (IOException e) {
+							ioError.compareAndSet(null, e);
+						}
+						parser.write();
+					}
+				}, "riakts-jdbc-bulk-load-" + i);
+				worker.start();
+				workers.add(worker);
+			}
+			for (Thread worker : workers) {
+				try {
+					worker.join();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException(e);
+				}
+			}
+			if (ioError.get() != null) throw ioError.get();
+		}
+		finally {
+			if (progress != null) progress.shutdown();
+			input.close();
+		}
+		report.finish();
+		if (_listener != null) _listener.progress(report);
+		return report;
+	} // Tested
+
+	/***
+	 * Splits the file from start into ranges of whole lines
+	 * @return List of {start, end} byte offsets
+	 */
+	private List<long[]> split(FileChannel channel, long start) throws IOException {
+		long size = channel.size();
+		int count = (int) Math.max(_threads * RANGES_PER_THREAD, (size - start) / MAX_RANGE_BYTES + 1);
+		List<long[]> ranges = new ArrayList<long[]>();
+		long from = start;
+		for (int i = 1; i <= count && from < size; i++) {
+			long to = i == count ? size : skipLine(channel, Math.max(from, start + (size - start) * i / count));
+			if (to > from) ranges.add(new long[] { from, to });
+			from = to;
+		}
+		return ranges;
+	}
+
+	/***
+	 * Returns the offset of the start of the line after the one holding position
+	 */
+	private static long skipLine(FileChannel channel, long position) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (true) {
+			buffer.clear();
+			int read = channel.read(buffer, position);
+			if (read <= 0) return channel.size();
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') return position + i + 1;
+			}
+			position += read;
+		}
+	}
+
+	/***
+	 * Parses a double from ASCII digits with an optional sign, decimal point and exponent.
+	 * Values of up to 15 significant digits scaled by a power of ten up to 22 are exact
+	 * as doubles, so dividing or multiplying them gives the correctly rounded result
+	 * without making a String; other values fall back to Double.parseDouble.
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return double
+	 * @throws NumberFormatException if the bytes aren't a number
+	 */
+	static double parseDouble(byte[] bytes, int offset, int length) {
+		int i = offset;
+		int end = offset + length;
+		boolean negative = i < end && bytes[i] == '-';
+		if (i < end && (bytes[i] == '-' || bytes[i] == '+')) i++;
+		long mantissa = 0;
+		int digits = 0;
+		int scale = 0;
+		boolean point = false;
+		boolean any = false;
+		for (; i < end; i++) {
+			byte b = bytes[i];
+			if (b >= '0' && b <= '9') {
+				any = true;
+				if (mantissa == 0 && b == '0') {
+					if (point) scale--;
+					continue;
+				}
+				if (++digits > 15) return Double.parseDouble(new String(bytes, offset, length, StandardCharsets.ISO_8859_1));
+				mantissa = mantissa * 10 + (b - '0');
+				if (point) scale--;
+			}
+			else if (b == '.' && !point) {
+				point = true;
+			}
+			else {
+				break;
+			}
+		}
+		if (i < end && (bytes[i] == 'e' || bytes[i] == 'E') && any) {
+			long exponent = parseLong(bytes, i + 1, end - i - 1);
+			if (Math.abs(exponent) > 400) return Double.parseDouble(new String(bytes, offset, length, StandardCharsets.ISO_8859_1));
+			scale += (int) exponent;
+			i = end;
+		}
+		if (!any || i != end) throw new NumberFormatException(new String(bytes, offset, length, StandardCharsets.ISO_8859_1));
+		double value = mantissa;
+		if (mantissa != 0 && scale != 0) {
+			if (scale < -22 || scale > 22) return Double.parseDouble(new String(bytes, offset, length, StandardCharsets.ISO_8859_1));
+			value = scale < 0 ? value / POWERS_OF_TEN[-scale] : value * POWERS_OF_TEN[scale];
+		}
+		return negative ? -value : value;
+	} // Tested
+
+	private final static double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+	}
+
+	/***
+	 * Parses a long from ASCII digits with an optional sign
+	 * @throws NumberFormatException if the bytes aren't a number or it overflows
+	 */
+	static long parseLong(byte[] bytes, int offset, int length) {
+		int i = offset;
+		int end = offset + length;
+		boolean negative = i < end && bytes[i] == '-';
+		if (i < end && (bytes[i] == '-' || bytes[i] == '+')) i++;
+		if (i == end) throw new NumberFormatException(new String(bytes, offset, length, StandardCharsets.ISO_8859_1));
+		long value = 0;
+		for (; i < end; i++) {
+			int digit = bytes[i] - '0';
+			if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+				throw new NumberFormatException(new String(bytes, offset, length, StandardCharsets.ISO_8859_1));
+			}
+			// Accumulate negatively so Long.MIN_VALUE can be read
+			value = value * 10 - digit;
+		}
+		if (!negative && value == Long.MIN_VALUE) throw new NumberFormatException(new String(bytes, offset, length, StandardCharsets.ISO_8859_1));
+		return negative ? value : -value;
+	} // Tested
+
+
+	/***
+	 * State shared by the workers of a load
+	 */
+	private class Load {
+		final List<FullColumnDescription> columns;
+		final int[] targets;
+		final Report report;
+
+		Load(List<FullColumnDescription> columns, int[] targets, Report report) {
+			this.columns = columns;
+			this.targets = targets;
+			this.report = report;
+		}
+	}
+
+	/***
+	 * Parses ranges of the file into rows and writes them, one per thread
+	 */
+	private class Worker {
+		private final Load _load;
+		private final int _fields;
+		// Bytes of each field of the current line, unquoted
+		private final byte[][] _values;
+		private final int[] _lengths;
+		private final Cell[] _cells;
+		private final SimpleDateFormat _dateFormat;
+		private List<BatchWriter.Entry> _pending = new ArrayList<BatchWriter.Entry>();
+
+		Worker(Load load) {
+			_load = load;
+			_fields = load.targets.length;
+			_values = new byte[_fields][64];
+			_lengths = new int[_fields];
+			_cells = new Cell[load.columns.size()];
+			if (_timestampFormat != null) {
+				_dateFormat = new SimpleDateFormat(_timestampFormat);
+				_dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+				_dateFormat.setLenient(false);
+			}
+			else {
+				_dateFormat = null;
+			}
+		}
+
+		void parse(MappedByteBuffer buffer, long base) {
+			int limit = buffer.limit();
+			int position = 0;
+			while (position < limit) {
+				int lineStart = position;
+				int field = 0;
+				boolean blank = true;
+				while (true) {
+					byte[] value = field < _fields ? _values[field] : null;
+					int length = 0;
+					// Skip leading spaces
+					while (position < limit && buffer.get(position) == ' ') position++;
+					if (position < limit && buffer.get(position) == '"') {
+						blank = false;
+						position++;
+						while (position < limit) {
+							byte b = buffer.get(position++);
+							if (b == '"') {
+								if (position < limit && buffer.get(position) == '"') position++;
+								else break;
+							}
+							if (value != null) value = append(field, value, length++, b);
+						}
+						// Skip anything between the closing quote and the delimiter
+						while (position < limit && buffer.get(position) != _delimiter && buffer.get(position) != '\n') position++;
+					}
+					else {
+						while (position < limit) {
+							byte b = buffer.get(position);
+							if (b == _delimiter || b == '\n') break;
+							if (value != null) value = append(field, value, length++, b);
+							position++;
+						}
+						while (length > 0 && (value[length - 1] == ' ' || value[length - 1] == '\r')) length--;
+						if (length > 0) blank = false;
+					}
+					if (field < _fields) _lengths[field] = length;
+					field++;
+					if (position >= limit || buffer.get(position) == '\n') {
+						position++;
+						break;
+					}
+					// Past the delimiter
+					position++;
+					blank = false;
+				}
+				if (blank) continue;
+				if (field != _fields) {
+					reject(base + lineStart, "expected " + _fields + " fields but found " + field);
+					continue;
+				}
+				Row row = toRow(base + lineStart);
+				if (row != null) add(row);
+			}
+		}
+
+		private byte[] append(int field, byte[] value, int length, byte b) {
+			if (length == value.length) {
+				value = Arrays.copyOf(value, value.length * 2);
+				_values[field] = value;
+			}
+			value[length] = b;
+			return value;
+		}
+
+		private Row toRow(long offset) {
+			Arrays.fill(_cells, null);
+			for (int f = 0; f < _fields; f++) {
+				FullColumnDescription column = _load.columns.get(_load.targets[f]);
+				if (_lengths[f] == 0) continue;
+				Cell cell = toCell(_values[f], _lengths[f], column.getType());
+				if (cell == null && !_invalidAsNull) {
+					reject(offset, "column " + column.getName() + " can't hold '"
+							+ new String(_values[f], 0, _lengths[f], StandardCharsets.UTF_8) + "'");
+					return null;
+				}
+				_cells[_load.targets[f]] = cell;
+			}
+			return new Row(Arrays.asList(Arrays.copyOf(_cells, _cells.length)));
+		}
+
+		private Cell toCell(byte[] value, int length, ColumnDescription.ColumnType type) {
+			try {
+				switch (type) {
+					case VARCHAR:
+						return new Cell(BinaryValue.unsafeCreate(Arrays.copyOf(value, length)));
+					case BLOB:
+						return new Cell(Arrays.copyOf(value, length));
+					case SINT64:
+						return new Cell(parseLong(value, 0, length));
+					case DOUBLE:
+						return new Cell(parseDouble(value, 0, length));
+					case BOOLEAN:
+						String text = new String(value, 0, length, StandardCharsets.ISO_8859_1);
+						if (text.equalsIgnoreCase("true")) return new Cell(true);
+						if (text.equalsIgnoreCase("false")) return new Cell(false);
+						return null;
+					case TIMESTAMP:
+						return toTimestamp(value, length);
+					default:
+						return null;
+				}
+			}
+			catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		private Cell toTimestamp(byte[] value, int length) {
+			boolean digits = true;
+			for (int i = 0; i < length && digits; i++) digits = (value[i] >= '0' && value[i] <= '9') || (i == 0 && value[i] == '-');
+			if (digits) return Cell.newTimestamp(parseLong(value, 0, length));
+			String text = new String(value, 0, length, StandardCharsets.UTF_8);
+			if (_dateFormat != null) {
+				ParsePosition position = new ParsePosition(0);
+				Date date = _dateFormat.parse(text, position);
+				if (date != null && position.getIndex() == text.length()) return Cell.newTimestamp(date.getTime());
+			}
+			Long timestamp = Utility.parseTimestampLiteral("'" + text + "'");
+			return timestamp == null ? null : Cell.newTimestamp(timestamp);
+		}
+
+		private void add(Row row) {
+			_pending.add(new BatchWriter.Entry(_table, Arrays.asList(row)));
+			if (_pending.size() >= _batchRows) write();
+		}
+
+		private void reject(long offset, String reason) {
+			_load.report.reject("Line at byte " + offset + ": " + reason);
+		}
+
+		/***
+		 * Writes the rows collected, one entry per row so a failed Store command counts
+		 * only the rows that were in it
+		 */
+		void write() {
+			if (_pending.isEmpty()) return;
+			List<BatchWriter.Entry> batch = _pending;
+			_pending = new ArrayList<BatchWriter.Entry>();
+			try {
+				_connection.writeBatch(batch);
+				_load.report.written(batch.size(), 0, null);
+			}
+			catch (BatchUpdateException e) {
+				int failed = 0;
+				for (int count : e.getUpdateCounts()) {
+					if (count == java.sql.Statement.EXECUTE_FAILED) failed++;
+				}
+				_load.report.written(batch.size() - failed, failed, e.getMessage());
+			}
+		}
+	}
+
+
+	/***
+	 * Receives the progress of a load
+	 */
+	public interface ProgressListener {
+		void progress(Report report);
+	}
+
+	/***
+	 * Progress, and at the end the outcome, of a load
+	 */
+	public static class Report {
+		private final long _totalBytes;
+		private final long _start = System.nanoTime();
+		private volatile long _end = 0;
+		private AtomicLong _bytes = new AtomicLong();
+		private AtomicLong _rows = new AtomicLong();
+		private AtomicLong _failedRows = new AtomicLong();
+		private AtomicLong _rejectedLines = new AtomicLong();
+		private List<String> _errors = new ArrayList<String>();
+
+		Report(long totalBytes) {
+			_totalBytes = totalBytes;
+		}
+
+		void written(int rows, int failed, String error) {
+			_rows.addAndGet(rows);
+			_failedRows.addAndGet(failed);
+			if (error != null) addError(error);
+		}
+
+		void parsed(long bytes) {
+			_bytes.addAndGet(bytes);
+		}
+
+		void reject(String error) {
+			_rejectedLines.incrementAndGet();
+			addError(error);
+		}
+
+		private synchronized void addError(String error) {
+			if (_errors.size() < MAX_ERRORS) _errors.add(error);
+		}
+
+		void finish() {
+			_end = System.nanoTime();
+		}
+
+		public long getTotalBytes() {
+			return _totalBytes;
+		}
+
+		/***
+		 * Returns the number of bytes of the file parsed so far, in whole ranges
+		 * @return long
+		 */
+		public long getBytesParsed() {
+			return _bytes.get();
+		}
+
+		/***
+		 * Returns the number of rows written so far
+		 * @return long
+		 */
+		public long getRows() {
+			return _rows.get();
+		}
+
+		/***
+		 * Returns the number of rows Riak TS failed to store
+		 * @return long
+		 */
+		public long getFailedRows() {
+			return _failedRows.get();
+		}
+
+		/***
+		 * Returns the number of lines skipped because their fields didn't fit the table
+		 * @return long
+		 */
+		public long getRejectedLines() {
+			return _rejectedLines.get();
+		}
+
+		/***
+		 * Returns the first few errors: lines rejected and Store commands that failed
+		 * @return List of messages
+		 */
+		public synchronized List<String> getErrors() {
+			return new ArrayList<String>(_errors);
+		}
+
+		public long getElapsedMillis() {
+			return TimeUnit.NANOSECONDS.toMillis((_end == 0 ? System.nanoTime() : _end) - _start);
+		}
+
+		public double getRowsPerSecond() {
+			long millis = getElapsedMillis();
+			return millis == 0 ? 0 : getRows() * 1000.0 / millis;
+		}
+
+		public boolean isFinished() {
+			return _end != 0;
+		}
+
+		public String toString() {
+			return String.format("%.0f%% parsed, %d rows written, %d failed, %d lines rejected in %.1fs (%.0f rows/s)%s",
+					_totalBytes == 0 ? 100.0 : getBytesParsed() * 100.0 / _totalBytes, getRows(), getFailedRows(), getRejectedLines(), getElapsedMillis() / 1000.0, getRowsPerSecond(),
+					isFinished() ? "" : "...");
+		}
+	}
+
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.err.println("Usage: CsvBulkLoader url table file [--threads n] [--header] [--delimiter c] "
+					+ "[--columns a,b,c] [--timestamp-format pattern] [--invalid-as-null]");
+			System.exit(1);
+		}
+		Class.forName("com.basho.riakts.jdbc.Driver");
+		java.sql.Connection conn = DriverManager.getConnection(args[0]);
+		try {
+			CsvBulkLoader loader = new CsvBulkLoader(conn, args[1]);
+			for (int i = 3; i < args.length; i++) {
+				if (args[i].equals("--threads")) loader.setThreads(Integer.parseInt(args[++i]));
+				else if (args[i].equals("--header")) loader.setHeader(true);
+				else if (args[i].equals("--delimiter")) loader.setDelimiter(args[++i].charAt(0));
+				else if (args[i].equals("--columns")) loader.setColumns(Arrays.asList(args[++i].split(",")));
+				else if (args[i].equals("--timestamp-format")) loader.setTimestampFormat(args[++i]);
+				else if (args[i].equals("--invalid-as-null")) loader.setInvalidAsNull(true);
+				else throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+			loader.setProgressListener(new ProgressListener() {
+				public void progress(Report report) {
+					System.out.println(report);
+				}
+			}, 1000);
+			Report report = loader.load(new File(args[2]));
+			for (String error : report.getErrors()) System.out.println(error);
+		}
+		finally {
+			conn.close();
+		}
+	}
+
+}
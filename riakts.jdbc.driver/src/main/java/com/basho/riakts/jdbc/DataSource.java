@@ -0,0 +1,136 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.io.PrintWriter;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/***
+ * A DataSource handing out connections from its own ConnectionPool, opened with the url
+ * (riakts://host:port), or the RiakUrl and RiakPort properties, and any other driver
+ * properties set. The pool is sized by the PoolMaxSize, PoolMinIdle and PoolMaxIdle
+ * properties and started by the first getConnection. Close connections when done with
+ * them to hand them back, and close the DataSource to close the pool.
+ */
+public class DataSource implements javax.sql.DataSource {
+
+	private final ConnectionPoolDataSource _source = new ConnectionPoolDataSource();
+	private volatile ConnectionPool _pool = null;
+
+	public java.sql.Connection getConnection() throws SQLException {
+		return getPool().getConnection();
+	} // Tested
+
+	/***
+	 * Riak TS has no users, so the user and password are ignored
+	 */
+	public java.sql.Connection getConnection(String username, String password) throws SQLException {
+		return getConnection();
+	}
+
+	/***
+	 * Returns the pool connections are handed out from, with its metrics, starting it
+	 * if it hasn't been
+	 * @return ConnectionPool
+	 * @throws SQLException if the PoolMinIdle connections couldn't be opened
+	 */
+	public ConnectionPool getPool() throws SQLException {
+		ConnectionPool pool = _pool;
+		if (pool != null) return pool;
+		synchronized (this) {
+			if (_pool == null) _pool = new ConnectionPool(_source, _source.getProperties());
+			return _pool;
+		}
+	} // Tested
+
+	/***
+	 * Closes the pool; the next getConnection starts another
+	 */
+	public synchronized void close() {
+		if (_pool != null) _pool.close();
+		_pool = null;
+	} // Tested
+
+	public String getUrl() {
+		return _source.getUrl();
+	}
+
+	public void setUrl(String url) {
+		_source.setUrl(url);
+	}
+
+	public Properties getProperties() {
+		return _source.getProperties();
+	}
+
+	/***
+	 * Sets the driver and pool properties, which apply to connections opened afterwards
+	 * and to a pool started afterwards
+	 * @param properties
+	 */
+	public void setProperties(Properties properties) {
+		_source.setProperties(properties);
+	}
+
+	public void setProperty(String name, String value) {
+		_source.setProperty(name, value);
+	}
+
+	public void setMaxPoolSize(int size) {
+		setProperty(DriverProperties.POOL_MAX_SIZE, Integer.toString(size));
+	}
+
+	public void setMinIdle(int connections) {
+		setProperty(DriverProperties.POOL_MIN_IDLE, Integer.toString(connections));
+	}
+
+	public void setMaxIdle(int connections) {
+		setProperty(DriverProperties.POOL_MAX_IDLE, Integer.toString(connections));
+	}
+
+	public PrintWriter getLogWriter() throws SQLException {
+		return _source.getLogWriter();
+	}
+
+	public void setLogWriter(PrintWriter out) throws SQLException {
+		_source.setLogWriter(out);
+	}
+
+	public void setLoginTimeout(int seconds) throws SQLException {
+		_source.setLoginTimeout(seconds);
+	}
+
+	public int getLoginTimeout() throws SQLException {
+		return _source.getLoginTimeout();
+	}
+
+	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+		throw new UnsupportedOperationException();
+	}
+
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) return iface.cast(this);
+		throw new SQLException("Not a wrapper for " + iface.getName());
+	}
+
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this);
+	}
+
+}
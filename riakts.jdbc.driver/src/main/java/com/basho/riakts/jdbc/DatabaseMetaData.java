@@ -709,29 +709,26 @@ public class DatabaseMetaData implements java.sql.DatabaseMetaData {
 	}
 
 	public boolean supportsResultSetType(int type) throws SQLException {
-		// TODO Auto-generated method stub
-		return false;
+		return type == ResultSet.TYPE_FORWARD_ONLY || type == ResultSet.TYPE_SCROLL_INSENSITIVE;
 	}
 
 	public boolean supportsResultSetConcurrency(int type, int concurrency)
 			throws SQLException {
-		// TODO Auto-generated method stub
-		return false;
+		return supportsResultSetType(type) && (concurrency == ResultSet.CONCUR_READ_ONLY
+				|| concurrency == ResultSet.CONCUR_UPDATABLE);
 	}
 
 	public boolean ownUpdatesAreVisible(int type) throws SQLException {
-		// TODO Auto-generated method stub
-		return false;
+		// Changes made through an updatable ResultSet show in its rows
+		return supportsResultSetType(type);
 	}
 
 	public boolean ownDeletesAreVisible(int type) throws SQLException {
-		// TODO Auto-generated method stub
-		return false;
+		return supportsResultSetType(type);
 	}
 
 	public boolean ownInsertsAreVisible(int type) throws SQLException {
-		// TODO Auto-generated method stub
-		return false;
+		return supportsResultSetType(type);
 	}
 
 	public boolean othersUpdatesAreVisible(int type) throws SQLException {
@@ -750,8 +747,7 @@ public class DatabaseMetaData implements java.sql.DatabaseMetaData {
 	}
 
 	public boolean updatesAreDetected(int type) throws SQLException {
-		// TODO Auto-generated method stub
-		return false;
+		return supportsResultSetType(type);
 	}
 
 	public boolean deletesAreDetected(int type) throws SQLException {
@@ -760,8 +756,7 @@ public class DatabaseMetaData implements java.sql.DatabaseMetaData {
 	}
 
 	public boolean insertsAreDetected(int type) throws SQLException {
-		// TODO Auto-generated method stub
-		return false;
+		return supportsResultSetType(type);
 	}
 
 	public boolean supportsBatchUpdates() throws SQLException {
@@ -21,6 +21,8 @@ import java.sql.DriverManager;
 import java.sql.DriverPropertyInfo;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.logging.Logger;
 
@@ -88,12 +90,84 @@ public class Driver implements java.sql.Driver {
 		return JDBC_COMPLIANT;
 	}
 
-	// Unsupported Driver methods
-	
+	/***
+	 * Describes the properties used to connect, with the value each would take given the
+	 * url and info, and checks the values of those set
+	 * @param url Riak connection URL, may be null when connecting via properties
+	 * @param info java.util.Properties - list of tag/value pairs, may be null
+	 * @return DriverPropertyInfo for each connection property
+	 * @throws SQLException if a property is set to a value that isn't valid
+	 */
 	public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) throws SQLException {
-		throw new UnsupportedOperationException();
+		Properties properties = new Properties();
+		if (info != null) properties.putAll(info);
+		boolean validUrl = Utility.validateRiakUrl(url);
+		if (validUrl) properties.putAll(Utility.getRiakPropertiesFromUrl(url));
+		String nodes = properties.getProperty(DriverProperties.RIAK_NODES);
+		if (nodes != null && !Utility.validateRiakProperties(properties)) {
+			throw new SQLException("Invalid RiakNodes: " + nodes);
+		}
+		ClientSettings settings = new ClientSettings(properties);
+		
+		List<DriverPropertyInfo> list = new ArrayList<DriverPropertyInfo>();
+		list.add(property(properties, DriverProperties.RIAK_URL, null, !validUrl && nodes == null,
+				"Host name or IP address of a Riak TS node"));
+		list.add(property(properties, DriverProperties.RIAK_PORT, null, !validUrl && nodes == null,
+				"Protocol buffers port of the Riak TS node"));
+		list.add(property(properties, DriverProperties.RIAK_NODES, null, false,
+				"Comma separated host:port list of the nodes of the cluster"));
+		list.add(property(properties, DriverProperties.LOAD_BALANCING, settings.getBalancing(), false,
+				"How requests are spread over the nodes", NodeBalancer.ROUND_ROBIN, NodeBalancer.LEAST_OUTSTANDING,
+				NodeBalancer.LATENCY));
+		list.add(property(properties, DriverProperties.DISCOVERY_INTERVAL_SECONDS,
+				Integer.toString(settings.getDiscoveryIntervalSeconds()), false,
+				"How often hostnames are resolved again to find added and removed nodes, 0 never"));
+		list.add(property(properties, DriverProperties.SHARE_CLIENT, Boolean.toString(DriverProperties.DEFAULT_SHARE_CLIENT),
+				false, "Share one Riak client among the connections to the same nodes", "true", "false"));
+		list.add(property(properties, DriverProperties.CLIENT_LINGER_SECONDS,
+				Integer.toString(DriverProperties.DEFAULT_CLIENT_LINGER_SECONDS), false,
+				"How long a shared client is kept after its last connection closes"));
+		list.add(property(properties, DriverProperties.CONNECTION_PROFILE, settings.getProfile(), false,
+				"Defaults of the socket and thread settings below", ClientSettings.LOW_LATENCY,
+				ClientSettings.HIGH_THROUGHPUT));
+		list.add(property(properties, DriverProperties.MIN_CONNECTIONS, Integer.toString(settings.getMinConnections()),
+				false, "Sockets kept open to each node"));
+		list.add(property(properties, DriverProperties.MAX_CONNECTIONS, Integer.toString(settings.getMaxConnections()),
+				false, "Most sockets open to each node, 0 for no limit"));
+		list.add(property(properties, DriverProperties.BLOCK_ON_MAX_CONNECTIONS,
+				Boolean.toString(settings.getBlockOnMaxConnections()), false,
+				"Wait for a socket when MaxConnections are busy, rather than trying the next node", "true", "false"));
+		list.add(property(properties, DriverProperties.IDLE_TIMEOUT_MILLIS, Integer.toString(settings.getIdleTimeoutMillis()),
+				false, "How long a socket above MinConnections may be idle before it is closed"));
+		list.add(property(properties, DriverProperties.CONNECT_TIMEOUT_MILLIS,
+				Integer.toString(settings.getConnectTimeoutMillis()), false,
+				"How long to wait for a socket to connect, 0 for Netty's default"));
+		list.add(property(properties, DriverProperties.EVENT_LOOP_THREADS, Integer.toString(settings.getEventLoopThreads()),
+				false, "Netty threads handling the sockets, 0 for twice the processors"));
+		list.add(property(properties, DriverProperties.NATIVE_TRANSPORT, Boolean.toString(settings.getNativeTransport()),
+				false, "Use Netty's native epoll transport and pooled direct buffers, NIO where epoll isn't available",
+				"true", "false"));
+		list.add(property(properties, DriverProperties.VALIDATION_CACHE_MILLIS,
+				Integer.toString(settings.getValidationCacheMillis()), false,
+				"How long the outcome of the ping Connection.isValid sends is reused, 0 not at all"));
+		list.add(property(properties, DriverProperties.WIRE_ENCODING, TimeSeriesProtocol.getEncoding(properties), false,
+				"Encoding of queries, stores and fetches: Erlang term-to-binary or protocol buffers",
+				TimeSeriesProtocol.TTB, TimeSeriesProtocol.PB));
+		return list.toArray(new DriverPropertyInfo[list.size()]);
+	} // Tested
+	
+	private static DriverPropertyInfo property(Properties info, String name, String defaultValue, boolean required,
+			String description, String... choices) {
+		DriverPropertyInfo property = new DriverPropertyInfo(name, info.getProperty(name, defaultValue));
+		property.required = required;
+		property.description = description;
+		if (choices.length > 0) property.choices = choices;
+		return property;
 	}
 	
+	// Unsupported Driver methods
+	
+
 	public Logger getParentLogger() throws SQLFeatureNotSupportedException {
 		throw new UnsupportedOperationException();
 	}
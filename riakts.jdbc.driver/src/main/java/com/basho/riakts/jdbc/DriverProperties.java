@@ -0,0 +1,220 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.Properties;
+
+/***
+ * Names and default values of the connection properties understood by
+ * the driver, along with helpers to read them from a Properties object
+ */
+public class DriverProperties {
+
+	// Connection information
+	public final static String RIAK_URL = "RiakUrl";
+	public final static String RIAK_PORT = "RiakPort";
+	// Comma separated host:port list of the nodes of a cluster
+	public final static String RIAK_NODES = "RiakNodes";
+	// round-robin, least-outstanding or latency
+	public final static String LOAD_BALANCING = "LoadBalancing";
+	// How often hostnames are resolved again to pick up added and removed nodes, 0 never
+	public final static String DISCOVERY_INTERVAL_SECONDS = "DiscoveryIntervalSeconds";
+	public final static String SHARE_CLIENT = "ShareClient";
+	public final static String CLIENT_LINGER_SECONDS = "ClientLingerSeconds";
+	// How long the outcome of the ping Connection.isValid sends is reused
+	public final static String VALIDATION_CACHE_MILLIS = "ValidationCacheMillis";
+
+	// Sockets and threads of the Riak client, defaults per ConnectionProfile
+	public final static String CONNECTION_PROFILE = "ConnectionProfile";
+	public final static String MIN_CONNECTIONS = "MinConnections";
+	public final static String MAX_CONNECTIONS = "MaxConnections";
+	public final static String BLOCK_ON_MAX_CONNECTIONS = "BlockOnMaxConnections";
+	public final static String IDLE_TIMEOUT_MILLIS = "IdleTimeoutMillis";
+	public final static String CONNECT_TIMEOUT_MILLIS = "ConnectTimeoutMillis";
+	public final static String EVENT_LOOP_THREADS = "EventLoopThreads";
+	// Netty's native epoll transport with pooled direct buffers, NIO where epoll isn't available
+	public final static String NATIVE_TRANSPORT = "NativeTransport";
+
+	// Connection pool of DataSource
+	public final static String POOL_MAX_SIZE = "PoolMaxSize";
+	public final static String POOL_MIN_IDLE = "PoolMinIdle";
+	public final static String POOL_MAX_IDLE = "PoolMaxIdle";
+	public final static String POOL_TIMEOUT_MILLIS = "PoolTimeoutMillis";
+	public final static String POOL_IDLE_TIMEOUT_SECONDS = "PoolIdleTimeoutSeconds";
+	public final static String POOL_VALIDATION_MILLIS = "PoolValidationMillis";
+
+	// Query planning
+	public final static String MAX_QUANTA_PER_QUERY = "MaxQuantaPerQuery";
+	public final static String QUERY_PARALLELISM = "QueryParallelism";
+	public final static String TARGET_ROWS_PER_QUERY = "TargetRowsPerQuery";
+	public final static String TARGET_QUERY_MILLIS = "TargetQueryMillis";
+	public final static String FETCH_PARALLELISM = "FetchParallelism";
+	public final static String MAX_FAN_OUT = "MaxFanOut";
+
+	// Batch writes
+	public final static String BATCH_SIZE = "BatchSize";
+	public final static String BATCH_PARALLELISM = "BatchParallelism";
+	public final static String BATCH_GROUP_PARTITIONS = "BatchGroupPartitions";
+	public final static String BATCH_COLLAPSE_DUPLICATES = "BatchCollapseDuplicates";
+	public final static String COALESCE_INSERTS = "CoalesceInserts";
+	public final static String COALESCE_ROWS = "CoalesceRows";
+	public final static String COALESCE_BYTES = "CoalesceBytes";
+	public final static String COALESCE_LINGER_MILLIS = "CoalesceLingerMillis";
+	public final static String WRITE_BEHIND = "WriteBehind";
+	public final static String WRITE_BEHIND_CAPACITY = "WriteBehindCapacity";
+	public final static String WRITE_BEHIND_THREADS = "WriteBehindThreads";
+	public final static String WRITE_BEHIND_WHEN_FULL = "WriteBehindWhenFull";
+
+	// Bulk deletes and retention
+	public final static String DELETE_PARALLELISM = "DeleteParallelism";
+	public final static String DELETE_RATE_LIMIT = "DeleteRateLimit";
+	public final static String RETENTION = "Retention";
+	public final static String RETENTION_INTERVAL_SECONDS = "RetentionIntervalSeconds";
+	public final static String RETENTION_LOOKBACK = "RetentionLookback";
+
+	// Wire encoding of time series requests, "ttb" or "pb"
+	public final static String WIRE_ENCODING = "WireEncoding";
+
+	// Retries
+	public final static String RETRY_MAX_ATTEMPTS = "RetryMaxAttempts";
+	public final static String RETRY_BASE_DELAY_MILLIS = "RetryBaseDelayMillis";
+	public final static String RETRY_MAX_DELAY_MILLIS = "RetryMaxDelayMillis";
+
+	// Series registry
+	public final static String SERIES_REGISTRY = "SeriesRegistry";
+	public final static String SERIES_TABLE = "SeriesTable";
+	public final static String SERIES_REFRESH_SECONDS = "SeriesRefreshSeconds";
+
+	// Hedged reads
+	public final static String HEDGE_READS = "HedgeReads";
+	public final static String HEDGE_PERCENTILE = "HedgePercentile";
+	public final static String HEDGE_MIN_DELAY_MILLIS = "HedgeMinDelayMillis";
+	public final static String HEDGE_MAX_PERCENT = "HedgeMaxPercent";
+
+	public final static String DEFAULT_LOAD_BALANCING = NodeBalancer.ROUND_ROBIN;
+	public final static int DEFAULT_DISCOVERY_INTERVAL_SECONDS = 60;
+	public final static boolean DEFAULT_SHARE_CLIENT = true;
+	// How long a shared client is kept after its last connection closes, for the next one
+	public final static int DEFAULT_CLIENT_LINGER_SECONDS = 5;
+	public final static int DEFAULT_VALIDATION_CACHE_MILLIS = 500;
+	public final static boolean DEFAULT_NATIVE_TRANSPORT = false;
+
+	public final static int DEFAULT_POOL_MAX_SIZE = 10;
+	public final static int DEFAULT_POOL_MIN_IDLE = 0;
+	// Defaults to PoolMaxSize
+	public final static int DEFAULT_POOL_MAX_IDLE = -1;
+	public final static int DEFAULT_POOL_TIMEOUT_MILLIS = 30000;
+	public final static int DEFAULT_POOL_IDLE_TIMEOUT_SECONDS = 600;
+	// Connections used more recently than this are handed out without validating them
+	public final static int DEFAULT_POOL_VALIDATION_MILLIS = 1000;
+
+	// Matches the default riak_kv.query.timeseries.max_quanta_span setting in Riak TS
+	public final static int DEFAULT_MAX_QUANTA_PER_QUERY = 5000;
+	public final static int DEFAULT_QUERY_PARALLELISM = 4;
+	public final static int DEFAULT_TARGET_ROWS_PER_QUERY = 10000;
+	// 0 disables sizing sub-queries by latency
+	public final static int DEFAULT_TARGET_QUERY_MILLIS = 0;
+	public final static int DEFAULT_FETCH_PARALLELISM = 16;
+	// Most sub-queries an IN list on the partition key may be expanded to
+	public final static int DEFAULT_MAX_FAN_OUT = 1000;
+
+	// Rows per Store command, small enough to stay well under the protocol buffers message limit
+	public final static int DEFAULT_BATCH_SIZE = 100;
+	public final static int DEFAULT_BATCH_PARALLELISM = 4;
+	public final static boolean DEFAULT_BATCH_GROUP_PARTITIONS = true;
+	public final static boolean DEFAULT_BATCH_COLLAPSE_DUPLICATES = true;
+	public final static boolean DEFAULT_COALESCE_INSERTS = false;
+	public final static int DEFAULT_COALESCE_ROWS = 100;
+	public final static int DEFAULT_COALESCE_BYTES = 1024 * 1024;
+	public final static int DEFAULT_COALESCE_LINGER_MILLIS = 50;
+	public final static boolean DEFAULT_WRITE_BEHIND = false;
+	// Rows held waiting to be written
+	public final static int DEFAULT_WRITE_BEHIND_CAPACITY = 100000;
+	public final static int DEFAULT_WRITE_BEHIND_THREADS = 4;
+	// "block" or "reject"
+	public final static String DEFAULT_WRITE_BEHIND_WHEN_FULL = "block";
+
+	public final static int DEFAULT_DELETE_PARALLELISM = 8;
+	// Deletes sent per second, 0 for no limit
+	public final static int DEFAULT_DELETE_RATE_LIMIT = 0;
+	public final static int DEFAULT_RETENTION_INTERVAL_SECONDS = 3600;
+	// How far before its first cutoff the retention pruner looks for rows
+	public final static String DEFAULT_RETENTION_LOOKBACK = "7d";
+
+	public final static String DEFAULT_WIRE_ENCODING = TimeSeriesProtocol.TTB;
+
+	// Attempts in all, so 1 disables retries
+	public final static int DEFAULT_RETRY_MAX_ATTEMPTS = 3;
+	public final static int DEFAULT_RETRY_BASE_DELAY_MILLIS = 50;
+	public final static int DEFAULT_RETRY_MAX_DELAY_MILLIS = 2000;
+
+	public final static boolean DEFAULT_SERIES_REGISTRY = false;
+	public final static int DEFAULT_SERIES_REFRESH_SECONDS = 60;
+
+	public final static boolean DEFAULT_HEDGE_READS = false;
+	public final static int DEFAULT_HEDGE_PERCENTILE = 95;
+	public final static int DEFAULT_HEDGE_MIN_DELAY_MILLIS = 5;
+	// Hedges sent as a percentage of reads, enforced as a token bucket
+	public final static int DEFAULT_HEDGE_MAX_PERCENT = 10;
+
+
+	/***
+	 * Returns the value of an integer property, or the default value if the
+	 * property is missing or can't be parsed
+	 * @param info Properties object to read from, may be null
+	 * @param key property name
+	 * @param defaultValue value returned if the property isn't set
+	 * @return int
+	 */
+	public static int getInt(Properties info, String key, int defaultValue) {
+		String value = getString(info, key, null);
+		if (value == null) return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		}
+		catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/***
+	 * Returns the value of a boolean property, or the default value if the
+	 * property is missing
+	 * @param info Properties object to read from, may be null
+	 * @param key property name
+	 * @param defaultValue value returned if the property isn't set
+	 * @return boolean
+	 */
+	public static boolean getBoolean(Properties info, String key, boolean defaultValue) {
+		String value = getString(info, key, null);
+		if (value == null || value.trim().length() == 0) return defaultValue;
+		return Boolean.parseBoolean(value.trim());
+	}
+
+	/***
+	 * Returns the value of a property, or the default value if the property is missing
+	 * @param info Properties object to read from, may be null
+	 * @param key property name
+	 * @param defaultValue value returned if the property isn't set
+	 * @return String
+	 */
+	public static String getString(Properties info, String key, String defaultValue) {
+		if (info == null) return defaultValue;
+		String value = info.getProperty(key);
+		return value == null ? defaultValue : value;
+	}
+
+}
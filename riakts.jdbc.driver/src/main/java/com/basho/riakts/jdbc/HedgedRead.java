@@ -0,0 +1,144 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.basho.riak.client.core.FutureOperation;
+import com.basho.riak.client.core.RiakCluster;
+import com.basho.riak.client.core.RiakFuture;
+import com.basho.riak.client.core.RiakFutureListener;
+import com.basho.riak.client.core.RiakNode;
+import com.basho.riak.client.core.query.timeseries.QueryResult;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/***
+ * A single read sent to one node of the cluster, with a duplicate sent to a
+ * different node if the first hasn't answered within the HedgingPolicy's delay.
+ * The first successful answer completes the read; the read only fails once
+ * every request sent has failed.
+ */
+class HedgedRead {
+
+	private final TimeSeriesProtocol _protocol;
+	private final RiakCluster _cluster;
+	private final HedgingPolicy _policy;
+	private final String _sql;
+	private final SettableFuture<QueryResult> _result = SettableFuture.create();
+	private final List<RiakNode> _nodes = new ArrayList<RiakNode>();
+	private int _primaryIndex;
+	private long _started;
+	private int _outstanding = 0;
+	private boolean _hedged = false;
+	private Throwable _firstError = null;
+	private ScheduledFuture<?> _hedgeTask = null;
+
+	HedgedRead(TimeSeriesProtocol protocol, HedgingPolicy policy, String sql) {
+		_protocol = protocol;
+		_cluster = protocol.getCluster();
+		_policy = policy;
+		_sql = sql;
+	}
+
+	/***
+	 * Sends the read and schedules its hedge
+	 * @return future completed by whichever request answers first
+	 */
+	ListenableFuture<QueryResult> start() {
+		for (RiakNode node : _cluster.getNodes()) {
+			if (node.getNodeState() == RiakNode.State.RUNNING) _nodes.add(node);
+		}
+		_policy.recordRead();
+		_started = System.nanoTime();
+		_primaryIndex = _nodes.isEmpty() ? 0 : _policy.nextNodeIndex() % _nodes.size();
+		synchronized (this) {
+			send(false);
+		}
+
+		long delay = _policy.getHedgeDelayMicros();
+		if (delay >= 0 && !_result.isDone()) {
+			ScheduledFuture<?> task = HedgingPolicy.getScheduler().schedule(new Runnable() {
+				public void run() {
+					hedge();
+				}
+			}, delay, TimeUnit.MICROSECONDS);
+			synchronized (this) {
+				_hedgeTask = task;
+			}
+		}
+		return _result;
+	}
+
+	private synchronized void hedge() {
+		if (_result.isDone() || _hedged || !_policy.tryAcquireHedge()) return;
+		_hedged = true;
+		send(true);
+	}
+
+	/***
+	 * Sends a request for the read, the primary to the next node in rotation and the
+	 * hedge to the node after it. Falls back to letting the cluster choose a node if the
+	 * chosen node has no connection available.
+	 */
+	private void send(final boolean isHedge) {
+		final FutureOperation<QueryResult, ?, String> operation = _protocol.newQuery(_sql);
+		final long sent = System.nanoTime();
+		operation.addListener(new RiakFutureListener<QueryResult, String>() {
+			public void handle(RiakFuture<QueryResult, String> f) {
+				complete(operation, isHedge, System.nanoTime() - sent);
+			}
+		});
+		_outstanding++;
+
+		boolean executed = false;
+		if (!_nodes.isEmpty()) {
+			RiakNode node = _nodes.get((_primaryIndex + (isHedge ? 1 : 0)) % _nodes.size());
+			try {
+				executed = node.execute(operation);
+			}
+			catch (IllegalStateException e) {
+				// The node stopped running after it was chosen
+				executed = false;
+			}
+		}
+		if (!executed) _cluster.execute(operation);
+	}
+
+	private synchronized void complete(FutureOperation<QueryResult, ?, String> operation, boolean isHedge, long nanos) {
+		_outstanding--;
+		if (operation.isSuccess()) {
+			_policy.recordAttempt(nanos);
+			if (_result.set(operation.getNow())) {
+				_policy.recordResult(System.nanoTime() - _started, isHedge);
+				// The request that lost can't be cancelled once sent, its answer is ignored
+				if (_hedgeTask != null) _hedgeTask.cancel(false);
+			}
+		}
+		else {
+			if (_firstError == null || !isHedge) _firstError = operation.cause();
+			if (_outstanding == 0) {
+				// Nothing left in flight, so don't wait for the hedge delay before giving up
+				if (_hedgeTask != null) _hedgeTask.cancel(false);
+				_result.setException(_firstError);
+			}
+		}
+	}
+
+}
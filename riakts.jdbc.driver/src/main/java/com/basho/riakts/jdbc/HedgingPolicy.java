@@ -0,0 +1,215 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Decides when a read should be hedged: if it hasn't completed after the configured
+ * percentile of recent latency a duplicate is sent to another node and whichever
+ * answers first is used. The number of hedges is capped at a percentage of reads
+ * so that a slow cluster isn't sent twice the load. Also keeps the metrics needed
+ * to see what hedging is doing to tail latency.
+ */
+public class HedgingPolicy {
+
+	// Hedging only starts once this many latency samples have been collected
+	final static int MIN_SAMPLES = 20;
+	private final static int SAMPLE_CAPACITY = 1000;
+	// The hedge delay is worked out again after this many new samples or this long
+	private final static int DELAY_REFRESH_SAMPLES = 50;
+	private final static long DELAY_REFRESH_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+	// Largest burst of hedges the rate cap allows
+	private final static double MAX_BURST = 10;
+
+	private static ScheduledExecutorService _scheduler = null;
+
+	private boolean _enabled;
+	private int _percentile;
+	private long _minDelayMicros;
+	private double _maxRatio;
+	private double _tokens = MAX_BURST;
+
+	// Latency of every request sent to Riak TS, primary or hedge
+	private LatencyTracker _attemptLatency = new LatencyTracker(SAMPLE_CAPACITY);
+	// Latency seen by the caller, i.e. of whichever request answered first
+	private LatencyTracker _readLatency = new LatencyTracker(SAMPLE_CAPACITY);
+	// The last hedge delay worked out, so reads don't sort the samples each time. Racing
+	// reads may both work it out, which does no harm.
+	private volatile long _hedgeDelayMicros = -1;
+	private volatile long _delaySamples = -1;
+	private volatile long _delayAt = 0;
+
+	private AtomicLong _reads = new AtomicLong();
+	private AtomicLong _hedgesSent = new AtomicLong();
+	private AtomicLong _hedgeWins = new AtomicLong();
+	private AtomicLong _hedgesCapped = new AtomicLong();
+	private AtomicLong _nextNode = new AtomicLong();
+
+	HedgingPolicy(Properties info) {
+		_enabled = DriverProperties.getBoolean(info, DriverProperties.HEDGE_READS, DriverProperties.DEFAULT_HEDGE_READS);
+		_percentile = Math.min(100, Math.max(1, DriverProperties.getInt(info,
+				DriverProperties.HEDGE_PERCENTILE, DriverProperties.DEFAULT_HEDGE_PERCENTILE)));
+		_minDelayMicros = TimeUnit.MILLISECONDS.toMicros(Math.max(0, DriverProperties.getInt(info,
+				DriverProperties.HEDGE_MIN_DELAY_MILLIS, DriverProperties.DEFAULT_HEDGE_MIN_DELAY_MILLIS)));
+		_maxRatio = Math.min(100, Math.max(0, DriverProperties.getInt(info,
+				DriverProperties.HEDGE_MAX_PERCENT, DriverProperties.DEFAULT_HEDGE_MAX_PERCENT))) / 100.0;
+	}
+
+	public boolean isEnabled() {
+		return _enabled;
+	}
+
+	public int getPercentile() {
+		return _percentile;
+	}
+
+	/***
+	 * Returns how long a read should be left before it is hedged: the configured percentile
+	 * of recent request latency, but never less than HedgeMinDelayMillis. The percentile is
+	 * worked out again every DELAY_REFRESH_SAMPLES samples or DELAY_REFRESH_NANOS.
+	 * @return microseconds or -1 if there aren't enough samples yet to decide
+	 */
+	public long getHedgeDelayMicros() {
+		if (_attemptLatency.getCount() < MIN_SAMPLES) return -1;
+		long recorded = _attemptLatency.getRecorded();
+		long now = System.nanoTime();
+		if (_delaySamples < 0 || recorded - _delaySamples >= DELAY_REFRESH_SAMPLES || now - _delayAt >= DELAY_REFRESH_NANOS) {
+			_hedgeDelayMicros = Math.max(_minDelayMicros, _attemptLatency.getPercentileMicros(_percentile));
+			_delaySamples = recorded;
+			_delayAt = now;
+		}
+		return _hedgeDelayMicros;
+	} // Tested
+
+	/***
+	 * Records that a read has started. Each read earns the rate cap HedgeMaxPercent / 100
+	 * of a hedge, up to a small burst.
+	 */
+	synchronized void recordRead() {
+		_reads.incrementAndGet();
+		_tokens = Math.min(MAX_BURST, _tokens + _maxRatio);
+	}
+
+	/***
+	 * Asks the rate cap for permission to send a hedge
+	 * @return True if the hedge may be sent
+	 */
+	synchronized boolean tryAcquireHedge() {
+		if (_tokens < 1) {
+			_hedgesCapped.incrementAndGet();
+			return false;
+		}
+		_tokens -= 1;
+		_hedgesSent.incrementAndGet();
+		return true;
+	} // Tested
+
+	void recordAttempt(long nanos) {
+		_attemptLatency.record(nanos);
+	}
+
+	void recordResult(long nanos, boolean hedgeWon) {
+		_readLatency.record(nanos);
+		if (hedgeWon) _hedgeWins.incrementAndGet();
+	}
+
+	/***
+	 * Returns a rotating index used to spread primaries across the cluster's nodes
+	 */
+	int nextNodeIndex() {
+		return (int) (_nextNode.getAndIncrement() & Integer.MAX_VALUE);
+	}
+
+
+	public long getReads() {
+		return _reads.get();
+	}
+
+	public long getHedgesSent() {
+		return _hedgesSent.get();
+	}
+
+	/***
+	 * Returns the number of reads answered by the hedge rather than the original request
+	 * @return long
+	 */
+	public long getHedgeWins() {
+		return _hedgeWins.get();
+	}
+
+	/***
+	 * Returns the number of hedges that weren't sent because of the HedgeMaxPercent cap
+	 * @return long
+	 */
+	public long getHedgesCapped() {
+		return _hedgesCapped.get();
+	}
+
+	/***
+	 * Returns a percentile of the latency of individual requests to Riak TS, which is
+	 * what reads would see without hedging
+	 * @param percentile between 0 and 100
+	 * @return milliseconds or -1 if there are no samples
+	 */
+	public double getRequestLatencyMillis(double percentile) {
+		return _attemptLatency.getPercentileMillis(percentile);
+	}
+
+	/***
+	 * Returns a percentile of the latency of reads as seen by the caller
+	 * @param percentile between 0 and 100
+	 * @return milliseconds or -1 if there are no samples
+	 */
+	public double getReadLatencyMillis(double percentile) {
+		return _readLatency.getPercentileMillis(percentile);
+	}
+
+	/***
+	 * Clears the metrics, leaving the latency samples used to time hedges in place
+	 */
+	public void resetMetrics() {
+		_readLatency.reset();
+		_reads.set(0);
+		_hedgesSent.set(0);
+		_hedgeWins.set(0);
+		_hedgesCapped.set(0);
+	}
+
+
+	/***
+	 * Returns the scheduler hedges are sent from, shared by all connections
+	 * @return ScheduledExecutorService
+	 */
+	static synchronized ScheduledExecutorService getScheduler() {
+		if (_scheduler == null) {
+			_scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "riakts-jdbc-hedging");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return _scheduler;
+	}
+
+}
@@ -0,0 +1,189 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.basho.riak.client.core.query.timeseries.Row;
+import com.basho.riakts.jdbc.QueryParser.ParsedInsert;
+
+/***
+ * Coalesces consecutive INSERTs into the same table on a connection into a single
+ * batch written with the timeseries Store command. The batch is written once it holds
+ * CoalesceRows rows or CoalesceBytes bytes of SQL, CoalesceLingerMillis after its first
+ * row, when an INSERT into another table or any other statement is run, and when the
+ * connection is closed. Batches left to linger are written from a thread of the
+ * coalescers' own, so a slow Store doesn't hold up the timers of other connections.
+ *
+ * An INSERT that is coalesced returns straight away with the number of rows it added,
+ * the update count of an INSERT that is written. If writing a batch fails, the
+ * BatchUpdateException saying which of its statements failed is thrown by the next call
+ * on the connection that writes or flushes.
+ */
+class InsertCoalescer {
+
+	// The timer only hands lingering batches to the writers, which may block on Store
+	// and its retries
+	private static ScheduledExecutorService _timer = null;
+	private static ExecutorService _writers = null;
+
+	private final Connection _connection;
+	private final int _maxRows;
+	private final long _maxBytes;
+	private final long _lingerMillis;
+
+	private String _table = null;
+	private List<BatchWriter.Entry> _pending = new ArrayList<BatchWriter.Entry>();
+	private int _rows = 0;
+	private long _bytes = 0;
+	private ScheduledFuture<?> _lingerTask = null;
+	// Counts the lingers scheduled, so one firing after its batch was flushed leaves the next be
+	private long _lingers = 0;
+	private SQLException _deferred = null;
+
+	InsertCoalescer(Connection connection, Properties info) {
+		_connection = connection;
+		_maxRows = Math.max(1, DriverProperties.getInt(info, DriverProperties.COALESCE_ROWS, DriverProperties.DEFAULT_COALESCE_ROWS));
+		_maxBytes = Math.max(1, DriverProperties.getInt(info, DriverProperties.COALESCE_BYTES, DriverProperties.DEFAULT_COALESCE_BYTES));
+		_lingerMillis = Math.max(0, DriverProperties.getInt(info, DriverProperties.COALESCE_LINGER_MILLIS,
+				DriverProperties.DEFAULT_COALESCE_LINGER_MILLIS));
+	}
+
+	/***
+	 * Adds an INSERT to the batch if it can be written with the Store command
+	 * @param sql the statement, or null if its rows were bound from parameters
+	 * @param table table the rows are for, if passed in
+	 * @param rows the statement's rows if already converted, otherwise null to parse them
+	 * from the SQL
+	 * @return True if the statement was coalesced, False if it should be run as usual
+	 * @throws SQLException if an earlier batch failed, or writing the batch failed
+	 */
+	synchronized boolean add(String sql, String table, List<Row> rows) throws SQLException {
+		throwDeferred();
+		if (rows == null) {
+			ParsedInsert insert = QueryParser.parseInsert(sql);
+			rows = insert == null ? null : _connection.toRows(insert);
+			if (rows == null) return false;
+			table = insert.getTable();
+		}
+		if (_table != null && !_table.equalsIgnoreCase(table)) flush();
+
+		_table = table;
+		_pending.add(new BatchWriter.Entry(table, rows));
+		_rows += rows.size();
+		// Rows bound from parameters have no SQL, so count roughly what the SQL would have been
+		_bytes += sql != null ? sql.length() : rows.size() * 64L;
+		if (_rows >= _maxRows || _bytes >= _maxBytes) flush();
+		else if (_lingerTask == null) scheduleLinger();
+		return true;
+	}
+
+	/***
+	 * Writes the rows waiting in the batch
+	 * @throws SQLException if the batch, or an earlier one, failed
+	 */
+	synchronized void flush() throws SQLException {
+		if (_lingerTask != null) {
+			_lingerTask.cancel(false);
+			_lingerTask = null;
+		}
+		if (!_pending.isEmpty()) {
+			List<BatchWriter.Entry> batch = _pending;
+			_pending = new ArrayList<BatchWriter.Entry>();
+			_table = null;
+			_rows = 0;
+			_bytes = 0;
+			try {
+				_connection.writeBatch(batch);
+			}
+			catch (BatchUpdateException e) {
+				_deferred = e;
+			}
+		}
+		throwDeferred();
+	} // Tested
+
+	synchronized int getPendingRows() {
+		return _rows;
+	}
+
+	private void throwDeferred() throws SQLException {
+		SQLException error = _deferred;
+		_deferred = null;
+		if (error != null) throw error;
+	}
+
+	private void scheduleLinger() {
+		final long linger = ++_lingers;
+		final Runnable write = new Runnable() {
+			public void run() {
+				synchronized (InsertCoalescer.this) {
+					if (_lingerTask == null || _lingers != linger) return;
+					_lingerTask = null;
+					try {
+						flush();
+					}
+					catch (SQLException e) {
+						// Keep it for the next call on the connection
+						_deferred = e;
+					}
+				}
+			}
+		};
+		_lingerTask = timer().schedule(new Runnable() {
+			public void run() {
+				writers().execute(write);
+			}
+		}, _lingerMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private static synchronized ScheduledExecutorService timer() {
+		if (_timer == null) {
+			_timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "riakts-jdbc-coalesce-timer");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return _timer;
+	}
+
+	private static synchronized ExecutorService writers() {
+		if (_writers == null) {
+			_writers = Executors.newCachedThreadPool(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "riakts-jdbc-coalesce");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return _writers;
+	}
+
+}
@@ -0,0 +1,134 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.basho.riak.client.core.query.timeseries.Cell;
+import com.basho.riak.client.core.query.timeseries.FullColumnDescription;
+import com.basho.riak.client.core.query.timeseries.Row;
+import com.basho.riak.client.core.query.timeseries.TableDefinition;
+import com.basho.riakts.jdbc.QueryParser.ParsedInsert;
+
+/***
+ * A prepared INSERT compiled against its table's definition, so each execution turns
+ * the bound parameters straight into rows for the timeseries Store command without
+ * formatting them as SQL. Each cell of each row is either a literal from the statement,
+ * converted once, or the index of the parameter that supplies it.
+ */
+class InsertTemplate {
+
+	private final String _table;
+	private final List<FullColumnDescription> _columns;
+	// Per row and table column: the parameter index (from 0), or -1 for a constant
+	private final int[][] _parameters;
+	private final Cell[][] _constants;
+	private final int _parameterCount;
+
+	private InsertTemplate(String table, List<FullColumnDescription> columns, int[][] parameters, Cell[][] constants,
+			int parameterCount) {
+		_table = table;
+		_columns = columns;
+		_parameters = parameters;
+		_constants = constants;
+		_parameterCount = parameterCount;
+	}
+
+	/***
+	 * Compiles an INSERT statement whose values are literals or ? parameters
+	 * @param insert
+	 * @param definition definition of the table inserted into
+	 * @return InsertTemplate or null if a column or literal doesn't fit the table
+	 */
+	static InsertTemplate create(ParsedInsert insert, TableDefinition definition) {
+		if (insert == null || definition == null) return null;
+		List<FullColumnDescription> columns = new ArrayList<FullColumnDescription>(definition.getFullColumnDescriptions());
+		List<String> names = insert.getColumns();
+		int width = names == null ? columns.size() : names.size();
+
+		// Position of each table column in the statement's rows
+		int[] positions = new int[columns.size()];
+		int listed = 0;
+		for (int c = 0; c < columns.size(); c++) {
+			positions[c] = names == null ? c : -1;
+			for (int n = 0; names != null && n < names.size(); n++) {
+				if (names.get(n).equalsIgnoreCase(columns.get(c).getName())) positions[c] = n;
+			}
+			if (positions[c] >= 0) listed++;
+		}
+		if (listed != width) return null;
+
+		int[][] parameters = new int[insert.getRows().size()][columns.size()];
+		Cell[][] constants = new Cell[insert.getRows().size()][columns.size()];
+		int parameterCount = 0;
+		for (int r = 0; r < insert.getRows().size(); r++) {
+			List<String> values = insert.getRows().get(r);
+			if (values.size() != width) return null;
+			// Parameters are numbered in the order they appear in the statement
+			int[] numbers = new int[width];
+			for (int v = 0; v < width; v++) numbers[v] = values.get(v).equals("?") ? parameterCount++ : -1;
+			for (int c = 0; c < columns.size(); c++) {
+				parameters[r][c] = positions[c] < 0 ? -1 : numbers[positions[c]];
+				if (positions[c] >= 0 && parameters[r][c] < 0) {
+					constants[r][c] = Utility.getCellFromLiteral(values.get(positions[c]), columns.get(c).getType());
+					if (constants[r][c] == null) return null;
+				}
+			}
+		}
+		return new InsertTemplate(insert.getTable(), columns, parameters, constants, parameterCount);
+	} // Tested
+
+	String getTable() {
+		return _table;
+	}
+
+	int getParameterCount() {
+		return _parameterCount;
+	}
+
+	/***
+	 * Builds the statement's rows from the values of its parameters
+	 * @param values parameter values, index 0 for the first parameter
+	 * @return List of rows in the table's column order
+	 * @throws SQLException if a parameter isn't set or can't be stored in its column
+	 */
+	List<Row> toRows(Object[] values) throws SQLException {
+		List<Row> rows = new ArrayList<Row>(_parameters.length);
+		for (int r = 0; r < _parameters.length; r++) {
+			List<Cell> cells = new ArrayList<Cell>(_columns.size());
+			for (int c = 0; c < _columns.size(); c++) {
+				int parameter = _parameters[r][c];
+				if (parameter < 0) {
+					cells.add(_constants[r][c]);
+					continue;
+				}
+				Object value = values[parameter];
+				if (value == PreparedStatement.UNSET) throw new SQLException("Parameter " + (parameter + 1) + " is not set");
+				Cell cell = Utility.getCellFromObject(value, _columns.get(c).getType());
+				if (cell == null && value != null) {
+					throw new SQLException("Parameter " + (parameter + 1) + " can't be stored in column "
+							+ _columns.get(c).getName() + " of type " + _columns.get(c).getType());
+				}
+				cells.add(cell);
+			}
+			rows.add(new Row(cells));
+		}
+		return rows;
+	} // Tested
+
+}
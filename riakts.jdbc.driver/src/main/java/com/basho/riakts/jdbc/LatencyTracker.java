@@ -0,0 +1,101 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/***
+ * Keeps the most recent latency samples in a ring buffer so that percentiles
+ * of recent latency can be calculated cheaply
+ */
+public class LatencyTracker {
+
+	private final long[] _samples;
+	private int _next = 0;
+	private int _count = 0;
+	private long _recorded = 0;
+
+	/***
+	 * @param capacity number of recent samples to keep
+	 */
+	public LatencyTracker(int capacity) {
+		_samples = new long[Math.max(1, capacity)];
+	}
+
+	/***
+	 * Records a latency sample
+	 * @param nanos
+	 */
+	public synchronized void record(long nanos) {
+		_samples[_next] = TimeUnit.NANOSECONDS.toMicros(nanos);
+		_next = (_next + 1) % _samples.length;
+		if (_count < _samples.length) _count++;
+		_recorded++;
+	}
+
+	/***
+	 * Returns the number of samples recorded since the tracker was created, including
+	 * those since dropped from the buffer
+	 * @return long
+	 */
+	public synchronized long getRecorded() {
+		return _recorded;
+	}
+
+	/***
+	 * Returns the number of samples currently held
+	 * @return int
+	 */
+	public synchronized int getCount() {
+		return _count;
+	}
+
+	/***
+	 * Returns a percentile of the samples held, using the nearest rank method
+	 * @param percentile between 0 and 100
+	 * @return microseconds or -1 if no samples have been recorded
+	 */
+	public long getPercentileMicros(double percentile) {
+		long[] sorted;
+		synchronized (this) {
+			if (_count == 0) return -1;
+			sorted = Arrays.copyOf(_samples, _count);
+		}
+		Arrays.sort(sorted);
+		int rank = (int) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	} // Tested
+
+	/***
+	 * Returns a percentile of the samples held in milliseconds
+	 * @param percentile between 0 and 100
+	 * @return milliseconds or -1 if no samples have been recorded
+	 */
+	public double getPercentileMillis(double percentile) {
+		long micros = getPercentileMicros(percentile);
+		return micros < 0 ? -1 : micros / 1000.0;
+	}
+
+	/***
+	 * Discards all samples
+	 */
+	public synchronized void reset() {
+		_next = 0;
+		_count = 0;
+	}
+
+}
@@ -0,0 +1,305 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.Array;
+import java.sql.Blob;
+import java.sql.CallableStatement;
+import java.sql.Clob;
+import java.sql.DatabaseMetaData;
+import java.sql.NClob;
+import java.sql.PreparedStatement;
+import java.sql.SQLClientInfoException;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLWarning;
+import java.sql.SQLXML;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Struct;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/***
+ * The handle a PooledConnection gives out for its physical connection. Closing the
+ * handle writes any rows still buffered on the connection and hands it back to its
+ * PooledConnection, which tells the pool; the handle can't be used after that. The
+ * driver's own methods, such as getBulkDeleter, are reached with
+ * unwrap(com.basho.riakts.jdbc.Connection.class). Statements created through the handle
+ * return it from getConnection, so closing that hands the connection back too.
+ */
+class LogicalConnection implements java.sql.Connection {
+
+	private final PooledConnection _pooled;
+	private final AtomicReference<Connection> _physical;
+
+	LogicalConnection(PooledConnection pooled, Connection physical) {
+		_pooled = pooled;
+		_physical = new AtomicReference<Connection>(physical);
+	}
+
+	private Connection physical() throws SQLException {
+		Connection physical = _physical.get();
+		if (physical == null) throw new SQLNonTransientConnectionException("Connection is closed", "08003");
+		return physical;
+	}
+
+	/***
+	 * Stops the handle being used, without handing the connection back, when its
+	 * PooledConnection gives out another handle or is closed
+	 */
+	void detach() {
+		_physical.set(null);
+	}
+
+	public void close() throws SQLException {
+		Connection physical = _physical.getAndSet(null);
+		if (physical == null) return;
+		try {
+			// The next user of the connection mustn't be left to write this one's rows
+			physical.flushInserts();
+		}
+		catch (SQLException e) {
+			_pooled.connectionError(e);
+			throw e;
+		}
+		_pooled.connectionClosed();
+	} // Tested
+
+	public boolean isClosed() throws SQLException {
+		Connection physical = _physical.get();
+		return physical == null || physical.isClosed();
+	} // Tested
+
+	public boolean isValid(int timeout) throws SQLException {
+		Connection physical = _physical.get();
+		return physical != null && physical.isValid(timeout);
+	}
+
+	public void abort(Executor executor) throws SQLException {
+		if (_physical.getAndSet(null) != null) {
+			_pooled.connectionError(new SQLNonTransientConnectionException("Connection aborted", "08003"));
+		}
+	}
+
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface.isInstance(this)) return iface.cast(this);
+		return physical().unwrap(iface);
+	} // Tested
+
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface.isInstance(this) || physical().isWrapperFor(iface);
+	}
+
+	public Statement createStatement() throws SQLException {
+		return physical().createStatement(this, 0, 0, 0);
+	}
+
+	public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+		return physical().createStatement(this, resultSetType, resultSetConcurrency, 0);
+	}
+
+	public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		return physical().createStatement(this, resultSetType, resultSetConcurrency, resultSetHoldability);
+	}
+
+	public PreparedStatement prepareStatement(String sql) throws SQLException {
+		return physical().prepareStatement(this, sql, 0, 0, 0);
+	}
+
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		return physical().prepareStatement(this, sql, resultSetType, resultSetConcurrency, 0);
+	}
+
+	public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		return physical().prepareStatement(this, sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+	}
+
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+		return physical().prepareStatement(this, sql, 0, 0, 0);
+	}
+
+	public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+		return physical().prepareStatement(this, sql, 0, 0, 0);
+	}
+
+	public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+		return physical().prepareStatement(this, sql, 0, 0, 0);
+	}
+
+	public DatabaseMetaData getMetaData() throws SQLException {
+		return physical().getMetaData();
+	}
+
+	public boolean isReadOnly() throws SQLException {
+		return physical().isReadOnly();
+	}
+
+	public String getCatalog() throws SQLException {
+		return physical().getCatalog();
+	}
+
+	public int getTransactionIsolation() throws SQLException {
+		return physical().getTransactionIsolation();
+	}
+
+	public int getHoldability() throws SQLException {
+		return physical().getHoldability();
+	}
+
+	public boolean getAutoCommit() throws SQLException {
+		return physical().getAutoCommit();
+	}
+
+	public int getNetworkTimeout() throws SQLException {
+		return physical().getNetworkTimeout();
+	}
+
+	public void setCatalog(String catalog) throws SQLException {
+		physical().setCatalog(catalog);
+	}
+
+	public String getSchema() throws SQLException {
+		return physical().getSchema();
+	}
+
+	public void setClientInfo(String name, String value) throws SQLClientInfoException {
+		Connection physical = _physical.get();
+		if (physical == null) throw new SQLClientInfoException("Connection is closed", null);
+		physical.setClientInfo(name, value);
+	}
+
+	public void setClientInfo(Properties properties) throws SQLClientInfoException {
+		Connection physical = _physical.get();
+		if (physical == null) throw new SQLClientInfoException("Connection is closed", null);
+		physical.setClientInfo(properties);
+	}
+
+	public String getClientInfo(String name) throws SQLException {
+		return physical().getClientInfo(name);
+	}
+
+	public Properties getClientInfo() throws SQLException {
+		return physical().getClientInfo();
+	}
+
+	public CallableStatement prepareCall(String sql) throws SQLException {
+		return physical().prepareCall(sql);
+	}
+
+	public String nativeSQL(String sql) throws SQLException {
+		return physical().nativeSQL(sql);
+	}
+
+	public void setAutoCommit(boolean autoCommit) throws SQLException {
+		physical().setAutoCommit(autoCommit);
+	}
+
+	public void commit() throws SQLException {
+		physical().commit();
+	}
+
+	public void rollback() throws SQLException {
+		physical().rollback();
+	}
+
+	public void setReadOnly(boolean readOnly) throws SQLException {
+		physical().setReadOnly(readOnly);
+	}
+
+	public void setTransactionIsolation(int level) throws SQLException {
+		physical().setTransactionIsolation(level);
+	}
+
+	public SQLWarning getWarnings() throws SQLException {
+		return physical().getWarnings();
+	}
+
+	public void clearWarnings() throws SQLException {
+		physical().clearWarnings();
+	}
+
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+		return physical().prepareCall(sql, resultSetType, resultSetConcurrency);
+	}
+
+	public Map<String, Class<?>> getTypeMap() throws SQLException {
+		return physical().getTypeMap();
+	}
+
+	public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+		physical().setTypeMap(map);
+	}
+
+	public void setHoldability(int holdability) throws SQLException {
+		physical().setHoldability(holdability);
+	}
+
+	public Savepoint setSavepoint() throws SQLException {
+		return physical().setSavepoint();
+	}
+
+	public Savepoint setSavepoint(String name) throws SQLException {
+		return physical().setSavepoint(name);
+	}
+
+	public void rollback(Savepoint savepoint) throws SQLException {
+		physical().rollback(savepoint);
+	}
+
+	public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+		physical().releaseSavepoint(savepoint);
+	}
+
+	public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+		return physical().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+	}
+
+	public Clob createClob() throws SQLException {
+		return physical().createClob();
+	}
+
+	public Blob createBlob() throws SQLException {
+		return physical().createBlob();
+	}
+
+	public NClob createNClob() throws SQLException {
+		return physical().createNClob();
+	}
+
+	public SQLXML createSQLXML() throws SQLException {
+		return physical().createSQLXML();
+	}
+
+	public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+		return physical().createArrayOf(typeName, elements);
+	}
+
+	public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+		return physical().createStruct(typeName, attributes);
+	}
+
+	public void setSchema(String schema) throws SQLException {
+		physical().setSchema(schema);
+	}
+
+	public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+		physical().setNetworkTimeout(executor, milliseconds);
+	}
+
+}
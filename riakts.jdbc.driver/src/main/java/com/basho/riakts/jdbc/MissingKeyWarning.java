@@ -0,0 +1,57 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.SQLWarning;
+import java.util.List;
+
+/***
+ * Warning added to the ResultSet returned by Connection.fetchAll for each key
+ * that wasn't found, identifying the key by its position in the list passed in
+ */
+public class MissingKeyWarning extends SQLWarning {
+
+	private static final long serialVersionUID = 1L;
+
+	// SQLSTATE class 02 is "no data"
+	private final static String SQL_STATE = "02000";
+
+	private int _index;
+	private List<?> _key;
+
+	MissingKeyWarning(int index, List<?> key) {
+		super("Key not found: " + key + " (index " + index + ")", SQL_STATE);
+		_index = index;
+		_key = key;
+	}
+
+	/***
+	 * Returns the position of the missing key in the list of keys passed to fetchAll
+	 * @return int
+	 */
+	public int getIndex() {
+		return _index;
+	}
+
+	/***
+	 * Returns the missing key as it was passed to fetchAll
+	 * @return List
+	 */
+	public List<?> getKey() {
+		return _key;
+	}
+
+}
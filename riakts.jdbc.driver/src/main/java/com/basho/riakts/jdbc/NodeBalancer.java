@@ -0,0 +1,263 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.basho.riak.client.core.FutureOperation;
+import com.basho.riak.client.core.NodeManager;
+import com.basho.riak.client.core.RiakFuture;
+import com.basho.riak.client.core.RiakFutureListener;
+import com.basho.riak.client.core.RiakNode;
+
+/***
+ * Chooses the node of the cluster each request is sent to, per the LoadBalancing
+ * property: "round-robin" (the default) takes the healthy nodes in turn,
+ * "least-outstanding" the node with the fewest requests in flight, ties going to the
+ * next node in turn, and "latency" a node at random weighted by the inverse of its
+ * moving average latency times its requests in flight, so a slow node gets less
+ * traffic without being starved of the requests that show it has recovered. Nodes
+ * the client is health checking are skipped until they are running again. If the
+ * chosen node has no connection free the request goes to the next one.
+ */
+public class NodeBalancer implements NodeManager {
+
+	public final static String ROUND_ROBIN = "round-robin";
+	public final static String LEAST_OUTSTANDING = "least-outstanding";
+	public final static String LATENCY = "latency";
+
+	private final String _policy;
+	private final List<RiakNode> _healthy = new CopyOnWriteArrayList<RiakNode>();
+	private final List<RiakNode> _unhealthy = new CopyOnWriteArrayList<RiakNode>();
+	private final Map<RiakNode, NodeStatistics> _statistics = new ConcurrentHashMap<RiakNode, NodeStatistics>();
+	private final AtomicInteger _next = new AtomicInteger();
+
+	/***
+	 * @param policy round-robin, least-outstanding or latency
+	 * @throws IllegalArgumentException if the policy isn't one of those
+	 */
+	NodeBalancer(String policy) {
+		if (!isPolicy(policy)) throw new IllegalArgumentException("Unknown LoadBalancing policy: " + policy);
+		_policy = policy.trim().toLowerCase();
+	}
+
+	/***
+	 * Returns true if the name is one of the balancing policies
+	 * @param policy
+	 * @return True or False
+	 */
+	static boolean isPolicy(String policy) {
+		if (policy == null) return false;
+		String name = policy.trim().toLowerCase();
+		return name.equals(ROUND_ROBIN) || name.equals(LEAST_OUTSTANDING) || name.equals(LATENCY);
+	}
+
+	public String getPolicy() {
+		return _policy;
+	}
+
+	public void init(List<RiakNode> nodes) {
+		for (RiakNode node : nodes) addNode(node);
+	}
+
+	public void addNode(RiakNode node) {
+		_statistics.put(node, new NodeStatistics());
+		_healthy.add(node);
+	}
+
+	public boolean removeNode(RiakNode node) {
+		boolean removed = _healthy.remove(node) | _unhealthy.remove(node);
+		_statistics.remove(node);
+		return removed;
+	}
+
+	public void nodeStateChanged(RiakNode node, RiakNode.State state) {
+		switch (state) {
+			case RUNNING:
+				if (_unhealthy.remove(node)) _healthy.add(node);
+				break;
+			case HEALTH_CHECKING:
+				if (_healthy.remove(node)) _unhealthy.add(node);
+				break;
+			case SHUTTING_DOWN:
+			case SHUTDOWN:
+				_healthy.remove(node);
+				_unhealthy.remove(node);
+				break;
+			default:
+				break;
+		}
+	}
+
+	/***
+	 * Sends a request to the node the policy chooses, or the next node with a connection
+	 * free, avoiding the node a retried request was last sent to if there is another
+	 * @return False if no node could take the request
+	 */
+	@SuppressWarnings("rawtypes")
+	public boolean executeOnNode(FutureOperation operation, RiakNode previousNode) {
+		RiakNode[] nodes = _healthy.toArray(new RiakNode[0]);
+		if (nodes.length == 0) return false;
+		int first = (_next.getAndIncrement() & Integer.MAX_VALUE) % nodes.length;
+		int chosen = choose(nodes, first);
+		if (nodes.length > 1 && nodes[chosen] == previousNode) chosen = (chosen + 1) % nodes.length;
+		for (int i = 0; i < nodes.length; i++) {
+			if (execute(nodes[(chosen + i) % nodes.length], operation)) return true;
+		}
+		return false;
+	} // Tested
+
+	/***
+	 * Returns the index of the node the policy prefers, scanning from first so ties go
+	 * to the next node in turn
+	 */
+	private int choose(RiakNode[] nodes, int first) {
+		if (_policy.equals(ROUND_ROBIN)) return first;
+		if (_policy.equals(LATENCY)) return chooseByLatency(nodes);
+		int best = first;
+		long fewest = Long.MAX_VALUE;
+		for (int i = 0; i < nodes.length; i++) {
+			int index = (first + i) % nodes.length;
+			NodeStatistics statistics = _statistics.get(nodes[index]);
+			if (statistics != null && statistics.outstanding.get() < fewest) {
+				best = index;
+				fewest = statistics.outstanding.get();
+			}
+		}
+		return best;
+	}
+
+	/***
+	 * Picks a node at random, weighted by the inverse of its average latency times its
+	 * requests in flight plus one. A node without latency samples yet is weighted as the
+	 * fastest node.
+	 */
+	private int chooseByLatency(RiakNode[] nodes) {
+		NodeStatistics[] statistics = new NodeStatistics[nodes.length];
+		long fastest = Long.MAX_VALUE;
+		for (int i = 0; i < nodes.length; i++) {
+			statistics[i] = _statistics.get(nodes[i]);
+			if (statistics[i] != null && statistics[i].latencyNanos > 0) fastest = Math.min(fastest, statistics[i].latencyNanos);
+		}
+		if (fastest == Long.MAX_VALUE) fastest = 1;
+		double[] weights = new double[nodes.length];
+		double total = 0;
+		for (int i = 0; i < nodes.length; i++) {
+			long latency = statistics[i] == null || statistics[i].latencyNanos <= 0 ? fastest : statistics[i].latencyNanos;
+			long outstanding = statistics[i] == null ? 0 : statistics[i].outstanding.get();
+			weights[i] = 1.0 / ((double) latency * (outstanding + 1));
+			total += weights[i];
+		}
+		double pick = ThreadLocalRandom.current().nextDouble(total);
+		for (int i = 0; i < nodes.length; i++) {
+			pick -= weights[i];
+			if (pick < 0) return i;
+		}
+		return nodes.length - 1;
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private boolean execute(RiakNode node, FutureOperation operation) {
+		final NodeStatistics statistics = _statistics.get(node);
+		if (statistics == null) return node.execute(operation);
+		statistics.outstanding.incrementAndGet();
+		final long start = System.nanoTime();
+		if (!node.execute(operation)) {
+			statistics.outstanding.decrementAndGet();
+			return false;
+		}
+		statistics.requests.incrementAndGet();
+		// Called straight away if the response is already in
+		operation.addListener(new RiakFutureListener() {
+			public void handle(RiakFuture future) {
+				statistics.outstanding.decrementAndGet();
+				statistics.record(System.nanoTime() - start);
+			}
+		});
+		return true;
+	}
+
+
+	/***
+	 * Returns the number of requests sent to each node
+	 * @return Map of host:port to requests
+	 */
+	public Map<String, Long> getRequests() {
+		Map<String, Long> requests = new LinkedHashMap<String, Long>();
+		for (Map.Entry<RiakNode, NodeStatistics> entry : _statistics.entrySet()) {
+			requests.put(nameOf(entry.getKey()), entry.getValue().requests.get());
+		}
+		return requests;
+	}
+
+	/***
+	 * Returns the number of requests in flight to each node
+	 * @return Map of host:port to requests
+	 */
+	public Map<String, Long> getOutstanding() {
+		Map<String, Long> outstanding = new LinkedHashMap<String, Long>();
+		for (Map.Entry<RiakNode, NodeStatistics> entry : _statistics.entrySet()) {
+			outstanding.put(nameOf(entry.getKey()), entry.getValue().outstanding.get());
+		}
+		return outstanding;
+	}
+
+	/***
+	 * Returns the moving average latency of each node's requests
+	 * @return Map of host:port to microseconds
+	 */
+	public Map<String, Long> getLatencyMicros() {
+		Map<String, Long> latency = new LinkedHashMap<String, Long>();
+		for (Map.Entry<RiakNode, NodeStatistics> entry : _statistics.entrySet()) {
+			latency.put(nameOf(entry.getKey()), entry.getValue().latencyNanos / 1000);
+		}
+		return latency;
+	}
+
+	/***
+	 * Returns the number of nodes requests can be sent to
+	 * @return int
+	 */
+	public int getHealthyNodes() {
+		return _healthy.size();
+	}
+
+	private static String nameOf(RiakNode node) {
+		return node.getRemoteAddress() + ":" + node.getPort();
+	}
+
+
+	private static class NodeStatistics {
+		final AtomicLong outstanding = new AtomicLong();
+		final AtomicLong requests = new AtomicLong();
+		// Exponentially weighted moving average, updated without a lock: a lost sample
+		// only makes it a little less current
+		volatile long latencyNanos = 0;
+
+		void record(long nanos) {
+			long average = latencyNanos;
+			latencyNanos = average == 0 ? nanos : average + (nanos - average) / 8;
+		}
+	}
+
+}
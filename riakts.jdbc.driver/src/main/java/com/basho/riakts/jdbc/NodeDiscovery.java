@@ -0,0 +1,217 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.basho.riak.client.core.RiakCluster;
+import com.basho.riak.client.core.RiakNode;
+import com.basho.riak.client.core.util.HostAndPort;
+import com.google.common.net.InetAddresses;
+
+/***
+ * Resolves the hosts of a connection URL or RiakNodes to a node per address, so a DNS
+ * name with a record for every member of the cluster connects to all of them. While a
+ * hostname is listed, the names are resolved again every DiscoveryIntervalSeconds in
+ * the background: nodes at new addresses are added to the cluster, and nodes whose
+ * address has gone are taken out of balancing and shut down once the requests in
+ * flight to them have been answered. A lookup that fails keeps the nodes there are.
+ */
+public class NodeDiscovery {
+
+	private static ScheduledExecutorService _resolver = null;
+
+	private final List<HostAndPort> _hosts;
+	private final RiakNode.Builder _nodeBuilder;
+	private final long _intervalSeconds;
+	private RiakCluster _cluster = null;
+	private ScheduledFuture<?> _refresh = null;
+
+	private AtomicLong _lookups = new AtomicLong();
+	private AtomicLong _failedLookups = new AtomicLong();
+	private AtomicLong _added = new AtomicLong();
+	private AtomicLong _removed = new AtomicLong();
+
+	/***
+	 * @param hosts nodes as listed, by hostname or address
+	 * @param nodeBuilder builds the nodes of new addresses
+	 * @param intervalSeconds how often to resolve the hostnames again, 0 never
+	 */
+	NodeDiscovery(List<HostAndPort> hosts, RiakNode.Builder nodeBuilder, long intervalSeconds) {
+		_hosts = new ArrayList<HostAndPort>(hosts);
+		_nodeBuilder = nodeBuilder;
+		_intervalSeconds = intervalSeconds;
+	}
+
+	/***
+	 * Returns a node per address of the hosts, addresses listed more than once only once
+	 * @return List of HostAndPort with IP addresses
+	 * @throws UnknownHostException if a hostname couldn't be resolved
+	 */
+	List<HostAndPort> resolve() throws UnknownHostException {
+		Map<String, HostAndPort> nodes = new LinkedHashMap<String, HostAndPort>();
+		for (HostAndPort host : _hosts) {
+			if (InetAddresses.isInetAddress(host.getHost())) {
+				nodes.put(nameOf(host.getHost(), host.getPort()), host);
+				continue;
+			}
+			_lookups.incrementAndGet();
+			for (InetAddress address : lookup(host.getHost())) {
+				String ip = address.getHostAddress();
+				nodes.put(nameOf(ip, host.getPort()), HostAndPort.fromParts(ip, host.getPort()));
+			}
+		}
+		return new ArrayList<HostAndPort>(nodes.values());
+	} // Tested
+
+	/***
+	 * Returns every A and AAAA record of a hostname
+	 */
+	InetAddress[] lookup(String host) throws UnknownHostException {
+		return InetAddress.getAllByName(host);
+	}
+
+	/***
+	 * Starts resolving the hostnames again every DiscoveryIntervalSeconds, if any are
+	 * listed, adding and removing nodes of the cluster
+	 * @param cluster the cluster started with the nodes resolve returned
+	 */
+	synchronized void start(RiakCluster cluster) {
+		_cluster = cluster;
+		if (_intervalSeconds <= 0 || !hasHostnames()) return;
+		_refresh = resolver().scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				refresh();
+			}
+		}, _intervalSeconds, _intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	synchronized void stop() {
+		if (_refresh != null) _refresh.cancel(false);
+		_refresh = null;
+		_cluster = null;
+	}
+
+	/***
+	 * Resolves the hostnames and brings the cluster's nodes in line with the addresses
+	 */
+	synchronized void refresh() {
+		if (_cluster == null) return;
+		List<HostAndPort> resolved;
+		try {
+			resolved = resolve();
+		}
+		catch (UnknownHostException e) {
+			_failedLookups.incrementAndGet();
+			return;
+		}
+		if (resolved.isEmpty()) return;
+
+		Map<String, RiakNode> current = new LinkedHashMap<String, RiakNode>();
+		for (RiakNode node : _cluster.getNodes()) current.put(nameOf(node.getRemoteAddress(), node.getPort()), node);
+		for (HostAndPort node : resolved) {
+			if (current.remove(nameOf(node.getHost(), node.getPort())) != null) continue;
+			try {
+				_cluster.addNode(_nodeBuilder.withRemoteAddress(node).build());
+				_added.incrementAndGet();
+			}
+			catch (UnknownHostException e) {
+				_failedLookups.incrementAndGet();
+			}
+		}
+		// Left with the nodes whose address has gone. Shutting a node down closes its idle
+		// connections and waits for those in use before closing them.
+		for (RiakNode node : current.values()) {
+			if (_cluster.removeNode(node)) {
+				node.shutdown();
+				_removed.incrementAndGet();
+			}
+		}
+	} // Tested
+
+	private boolean hasHostnames() {
+		for (HostAndPort host : _hosts) {
+			if (!InetAddresses.isInetAddress(host.getHost())) return true;
+		}
+		return false;
+	}
+
+	private static String nameOf(String host, int port) {
+		return host.toLowerCase() + ":" + port;
+	}
+
+	private static synchronized ScheduledExecutorService resolver() {
+		if (_resolver == null) {
+			_resolver = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "riakts-jdbc-discovery");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return _resolver;
+	}
+
+
+	public long getIntervalSeconds() {
+		return _intervalSeconds;
+	}
+
+	/***
+	 * Returns the number of hostnames looked up
+	 * @return long
+	 */
+	public long getLookups() {
+		return _lookups.get();
+	}
+
+	/***
+	 * Returns the number of refreshes that kept the nodes as they were because a
+	 * hostname couldn't be resolved
+	 * @return long
+	 */
+	public long getFailedLookups() {
+		return _failedLookups.get();
+	}
+
+	public long getAddedNodes() {
+		return _added.get();
+	}
+
+	public long getRemovedNodes() {
+		return _removed.get();
+	}
+
+	public void resetMetrics() {
+		_lookups.set(0);
+		_failedLookups.set(0);
+		_added.set(0);
+		_removed.set(0);
+	}
+
+}
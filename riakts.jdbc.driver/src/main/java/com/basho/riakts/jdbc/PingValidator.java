@@ -0,0 +1,189 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.basho.riak.client.core.RiakCluster;
+import com.basho.riak.client.core.RiakFuture;
+import com.basho.riak.client.core.RiakFutureListener;
+import com.basho.riak.client.core.operations.PingOperation;
+
+/***
+ * Checks a client's cluster is answering for Connection.isValid by sending a Riak ping
+ * to one of its nodes. Its outcome is kept for ValidationCacheMillis, and a check made
+ * while a ping is in flight waits for that ping rather than sending another, so a pool
+ * validating a burst of connections sharing the client costs one round trip. Each
+ * check waits no longer than its own timeout for the answer.
+ */
+public class PingValidator {
+
+	private final RiakCluster _cluster;
+	private final long _cacheNanos;
+	private final AtomicReference<Ping> _inFlight = new AtomicReference<Ping>();
+	private volatile Outcome _last = null;
+
+	private AtomicLong _validations = new AtomicLong();
+	private AtomicLong _pings = new AtomicLong();
+	private AtomicLong _cached = new AtomicLong();
+	private AtomicLong _failures = new AtomicLong();
+
+	/***
+	 * @param cluster
+	 * @param cacheMillis how long the outcome of a ping is reused, 0 not at all
+	 */
+	PingValidator(RiakCluster cluster, long cacheMillis) {
+		_cluster = cluster;
+		_cacheNanos = TimeUnit.MILLISECONDS.toNanos(cacheMillis);
+	}
+
+	/***
+	 * Returns true if a node answered a ping within the timeout, or within the last
+	 * ValidationCacheMillis
+	 * @param timeoutSeconds how long to wait for the answer, 0 for no limit
+	 * @return True or False
+	 */
+	boolean validate(int timeoutSeconds) {
+		_validations.incrementAndGet();
+		long timeoutNanos = TimeUnit.SECONDS.toNanos(timeoutSeconds);
+		while (true) {
+			Outcome last = _last;
+			if (last != null && System.nanoTime() - last.at < _cacheNanos) {
+				_cached.incrementAndGet();
+				return last.valid;
+			}
+			Ping current = _inFlight.get();
+			// Answered, but its listener may not have run yet
+			if (current != null && current.operation.isDone()) {
+				finish(current);
+				if (_cacheNanos > 0) continue;
+				current = null;
+			}
+			if (current != null && (timeoutNanos == 0 || System.nanoTime() - current.sentAt < timeoutNanos)) {
+				return await(current, timeoutSeconds);
+			}
+			// None in flight, or one unanswered for longer than the timeout, so a ping lost
+			// on a dead socket isn't waited on forever
+			Ping sent = new Ping(new PingOperation(), System.nanoTime());
+			if (!_inFlight.compareAndSet(current, sent)) continue;
+			send(sent);
+			return await(sent, timeoutSeconds);
+		}
+	} // Tested
+
+	private void send(final Ping sent) {
+		_pings.incrementAndGet();
+		// Called straight away if the cluster fails the ping without sending it
+		sent.operation.addListener(new RiakFutureListener<Void, Void>() {
+			public void handle(RiakFuture<Void, Void> future) {
+				if (!future.isSuccess()) _failures.incrementAndGet();
+				finish(sent);
+			}
+		});
+		_cluster.execute(sent.operation);
+	}
+
+	/***
+	 * Keeps the outcome of an answered ping, once
+	 */
+	private void finish(Ping ping) {
+		if (_inFlight.compareAndSet(ping, null)) _last = new Outcome(ping.operation.isSuccess(), System.nanoTime());
+	}
+
+	private static boolean await(Ping ping, int timeoutSeconds) {
+		try {
+			if (timeoutSeconds == 0) {
+				ping.operation.await();
+				return ping.operation.isSuccess();
+			}
+			return ping.operation.await(timeoutSeconds, TimeUnit.SECONDS) && ping.operation.isSuccess();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+
+	public long getCacheMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(_cacheNanos);
+	}
+
+	/***
+	 * Returns the number of times the connections were validated
+	 * @return long
+	 */
+	public long getValidations() {
+		return _validations.get();
+	}
+
+	/***
+	 * Returns the number of pings sent, fewer than the validations when they were
+	 * answered from the cache or waited for a ping already in flight
+	 * @return long
+	 */
+	public long getPings() {
+		return _pings.get();
+	}
+
+	/***
+	 * Returns the number of validations answered with the outcome of an earlier ping
+	 * @return long
+	 */
+	public long getCachedValidations() {
+		return _cached.get();
+	}
+
+	/***
+	 * Returns the number of pings that failed, timeouts not included as the ping may
+	 * still be answered
+	 * @return long
+	 */
+	public long getFailedPings() {
+		return _failures.get();
+	}
+
+	public void resetMetrics() {
+		_validations.set(0);
+		_pings.set(0);
+		_cached.set(0);
+		_failures.set(0);
+	}
+
+
+	private static class Ping {
+		final PingOperation operation;
+		final long sentAt;
+
+		Ping(PingOperation operation, long sentAt) {
+			this.operation = operation;
+			this.sentAt = sentAt;
+		}
+	}
+
+	private static class Outcome {
+		final boolean valid;
+		final long at;
+
+		Outcome(boolean valid, long at) {
+			this.valid = valid;
+			this.at = at;
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.StatementEventListener;
+
+/***
+ * A physical connection held by a pool, which gives out a LogicalConnection handle
+ * for each use and tells its listeners when the handle is closed, or when the
+ * connection failed and shouldn't be used again
+ */
+public class PooledConnection implements javax.sql.PooledConnection {
+
+	private final Connection _physical;
+	private final List<ConnectionEventListener> _listeners = new CopyOnWriteArrayList<ConnectionEventListener>();
+	private LogicalConnection _handle = null;
+	private volatile long _lastUsed = System.currentTimeMillis();
+
+	PooledConnection(Connection physical) {
+		_physical = physical;
+	}
+
+	/***
+	 * Returns a handle for the physical connection. Any handle given out before is
+	 * closed without telling the listeners, as the JDBC specification requires.
+	 */
+	public synchronized java.sql.Connection getConnection() throws SQLException {
+		if (_physical.isClosed()) throw new SQLException("PooledConnection is closed");
+		if (_handle != null) _handle.detach();
+		_handle = new LogicalConnection(this, _physical);
+		return _handle;
+	} // Tested
+
+	public void close() throws SQLException {
+		synchronized (this) {
+			if (_handle != null) _handle.detach();
+			_handle = null;
+		}
+		_physical.close();
+	} // Tested
+
+	Connection getPhysicalConnection() {
+		return _physical;
+	}
+
+	/***
+	 * Returns when the connection was last handed back
+	 * @return epoch milliseconds
+	 */
+	long getLastUsed() {
+		return _lastUsed;
+	}
+
+	void connectionClosed() {
+		synchronized (this) {
+			_handle = null;
+		}
+		_lastUsed = System.currentTimeMillis();
+		ConnectionEvent event = new ConnectionEvent(this);
+		for (ConnectionEventListener listener : _listeners) listener.connectionClosed(event);
+	}
+
+	void connectionError(SQLException e) {
+		synchronized (this) {
+			_handle = null;
+		}
+		ConnectionEvent event = new ConnectionEvent(this, e);
+		for (ConnectionEventListener listener : _listeners) listener.connectionErrorOccurred(event);
+	}
+
+	public void addConnectionEventListener(ConnectionEventListener listener) {
+		_listeners.add(listener);
+	}
+
+	public void removeConnectionEventListener(ConnectionEventListener listener) {
+		_listeners.remove(listener);
+	}
+
+	// Statements aren't pooled, so there are no statement events
+
+	public void addStatementEventListener(StatementEventListener listener) {
+	}
+
+	public void removeStatementEventListener(StatementEventListener listener) {
+	}
+
+}
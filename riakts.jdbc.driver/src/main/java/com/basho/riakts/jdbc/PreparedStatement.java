@@ -35,78 +35,78 @@ import java.sql.SQLWarning;
 import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.List;
 
 import com.basho.riak.client.api.RiakClient;
-import com.basho.riak.client.api.commands.timeseries.Query;
-import com.basho.riak.client.core.query.timeseries.QueryResult;
+import com.basho.riak.client.core.query.timeseries.Row;
 
 public class PreparedStatement implements java.sql.PreparedStatement {
 	
+	private com.basho.riakts.jdbc.Connection _connection;
+	// The connection the statement was prepared through, returned by getConnection
+	private Connection _handle;
 	private RiakClient _client;
 	private ResultSet _resultSet;
 	private String _sqlQuery;
 	private boolean _isClosed;
+	private int _concurrency;
+	private List<BatchWriter.Entry> _batch = new ArrayList<BatchWriter.Entry>();
+	private Object[] _parameters;
+	private InsertTemplate _template = null;
+	private boolean _templateChecked = false;
 	
+	// Value of a parameter that hasn't been set, as null is a valid value
+	final static Object UNSET = new Object();
 	
-	PreparedStatement(RiakClient client, String sql, int type, int concurrency, int holdability) { 
-		if ( type != 0 || concurrency != 0 || holdability != 0 ) throw new UnsupportedOperationException(  );
-		
-		_client = client;
+	
+	PreparedStatement(com.basho.riakts.jdbc.Connection connection, Connection handle, String sql, int type, int concurrency,
+			int holdability) { 
+		Statement.checkResultSetOptions(type, concurrency, holdability);
+		
+		_connection = connection;
+		_handle = handle;
+		_concurrency = concurrency == 0 ? ResultSet.CONCUR_READ_ONLY : concurrency;
+		_client = connection._client;
 		_sqlQuery = sql;
 		_isClosed = false;
+		_parameters = new Object[QueryParser.countParameters(sql)];
+		Arrays.fill(_parameters, UNSET);
 	}
 	
 
 	public ResultSet executeQuery(String sql) throws SQLException {
-		try {
-			_resultSet = Utility.query(_client, sql);
-			return _resultSet;
-		} 
-		catch (Exception e) {
-			throw new SQLException(e);
-		}
+		_resultSet = _connection.query(sql, _concurrency);
+		return _resultSet;
 	}
 	
 	public ResultSet executeQuery() throws SQLException {
-		try {
-			_resultSet = Utility.query(_client, _sqlQuery);
-			return _resultSet;
-		} 
-		catch (Exception e) {
-			throw new SQLException(e);
-		}
+		_resultSet = _connection.query(getBoundSql(), _concurrency);
+		return _resultSet;
 	}
 	
 	public boolean execute() throws SQLException {
-		try {
-			_resultSet = Utility.query(_client, _sqlQuery);
-			return true;
-		} 
-		catch (Exception e) {
-			throw new SQLException(e);
+		if (getTemplate() != null) {
+			executeUpdate();
+			_resultSet = null;
+			return false;
 		}
+		return execute(getBoundSql());
 	}
 	
 	public boolean execute(String sql) throws SQLException {
-		try {
-			_resultSet = Utility.query(_client, sql);
-			return true;
-		} 
-		catch (Exception e) {
-			throw new SQLException(e);
+		if (_connection.executeWrite(sql) >= 0) {
+			_resultSet = null;
+			return false;
 		}
+		_resultSet = _connection.query(sql, _concurrency);
+		return true;
 	}
 	
 	public int executeUpdate(String sql) throws SQLException {
-		Query query = new Query.Builder(sql).build();
-		try {
-			QueryResult queryResult = _client.execute(query);
-			return queryResult.getRowsCount();
-		}
-		catch (Exception e) {
-			throw new SQLException(e);
-		}
+		return _connection.executeUpdate(sql);
 	}
 	
 	public ResultSet getResultSet() throws SQLException {
@@ -115,6 +115,7 @@ public class PreparedStatement implements java.sql.PreparedStatement {
 
 
 	public void close() throws SQLException {
+		_connection = null;
 		_client = null;
 		_resultSet = null;
 		_sqlQuery = null;
@@ -213,8 +214,7 @@ public class PreparedStatement implements java.sql.PreparedStatement {
 	}
 
 	public int getResultSetConcurrency() throws SQLException {
-		// TODO Auto-generated method stub
-		return 0;
+		return _concurrency;
 	}
 
 	public int getResultSetType() throws SQLException {
@@ -223,23 +223,21 @@ public class PreparedStatement implements java.sql.PreparedStatement {
 	}
 
 	public void addBatch(String sql) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		_batch.add(new BatchWriter.Entry(sql));
 	}
 
 	public void clearBatch() throws SQLException {
-		// TODO Auto-generated method stub
-		
+		_batch.clear();
 	}
 
 	public int[] executeBatch() throws SQLException {
-		// TODO Auto-generated method stub
-		return null;
-	}
+		List<BatchWriter.Entry> batch = new ArrayList<BatchWriter.Entry>(_batch);
+		_batch.clear();
+		return _connection.executeBatch(batch);
+	} // Tested
 
 	public Connection getConnection() throws SQLException {
-		// TODO Auto-generated method stub
-		return null;
+		return _handle;
 	}
 
 	public boolean getMoreResults(int current) throws SQLException {
@@ -314,92 +312,86 @@ public class PreparedStatement implements java.sql.PreparedStatement {
 	}
 
 	public <T> T unwrap(Class<T> iface) throws SQLException {
-		// TODO Auto-generated method stub
-		return null;
+		if (iface.isInstance(this)) return iface.cast(this);
+		throw new SQLException("Not a wrapper for " + iface.getName());
 	}
 
 	public boolean isWrapperFor(Class<?> iface) throws SQLException {
-		// TODO Auto-generated method stub
-		return false;
+		return iface.isInstance(this);
 	}
 
 
 
+	/***
+	 * Runs the statement with the parameters bound. An INSERT whose values are ? parameters
+	 * (and literals) is written with the timeseries Store command, the parameters converted
+	 * straight to cells of their columns' types rather than formatted as SQL.
+	 * @return number of rows written for such INSERTs, otherwise as executeUpdate(sql)
+	 */
 	public int executeUpdate() throws SQLException {
-		// TODO Auto-generated method stub
-		return 0;
-	}
+		InsertTemplate template = getTemplate();
+		if (template == null) return executeUpdate(getBoundSql());
+		List<Row> rows = template.toRows(_parameters);
+		_connection.store(template.getTable(), rows);
+		return rows.size();
+	} // Tested
 
 	public void setNull(int parameterIndex, int sqlType) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, null);
 	}
 
 	public void setBoolean(int parameterIndex, boolean x) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 	public void setByte(int parameterIndex, byte x) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 	public void setShort(int parameterIndex, short x) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 	public void setInt(int parameterIndex, int x) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 	public void setLong(int parameterIndex, long x) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 	public void setFloat(int parameterIndex, float x) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 	public void setDouble(int parameterIndex, double x) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 	public void setBigDecimal(int parameterIndex, BigDecimal x)
 			throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 	public void setString(int parameterIndex, String x) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 	public void setBytes(int parameterIndex, byte[] x) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 	public void setDate(int parameterIndex, Date x) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 	public void setTime(int parameterIndex, Time x) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 	public void setTimestamp(int parameterIndex, Timestamp x)
 			throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 	public void setAsciiStream(int parameterIndex, InputStream x, int length)
@@ -421,28 +413,64 @@ public class PreparedStatement implements java.sql.PreparedStatement {
 	}
 
 	public void clearParameters() throws SQLException {
-		// TODO Auto-generated method stub
-		
+		Arrays.fill(_parameters, UNSET);
 	}
 
 	public void setObject(int parameterIndex, Object x, int targetSqlType)
 			throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 	public void setObject(int parameterIndex, Object x) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 
 
 	public void addBatch() throws SQLException {
-		// TODO Auto-generated method stub
-		
+		InsertTemplate template = getTemplate();
+		if (template == null) _batch.add(new BatchWriter.Entry(getBoundSql()));
+		else _batch.add(new BatchWriter.Entry(template.getTable(), template.toRows(_parameters)));
+	} // Tested
+
+	/***
+	 * Returns the compiled form of the statement if it's an INSERT with parameters that
+	 * can be written with the Store command, compiling it on first use
+	 */
+	private InsertTemplate getTemplate() {
+		if (!_templateChecked) {
+			QueryParser.ParsedInsert insert = _parameters.length == 0 ? null : QueryParser.parseInsert(_sqlQuery);
+			if (insert != null) _template = InsertTemplate.create(insert, _connection.getSchemaCache().getTableDefinition(insert.getTable()));
+			_templateChecked = true;
+		}
+		return _template;
 	}
 
+	private void setParameter(int parameterIndex, Object value) throws SQLException {
+		if (parameterIndex < 1 || parameterIndex > _parameters.length) {
+			throw new SQLException("Parameter index " + parameterIndex + " is out of range, the statement has "
+					+ _parameters.length + " parameters");
+		}
+		_parameters[parameterIndex - 1] = value;
+	}
+
+	/***
+	 * Returns the statement's SQL with each parameter replaced by its value as a literal
+	 * @return String
+	 * @throws SQLException if a parameter isn't set or has no literal form
+	 */
+	String getBoundSql() throws SQLException {
+		if (_parameters.length == 0) return _sqlQuery;
+		List<String> literals = new ArrayList<String>();
+		for (int i = 0; i < _parameters.length; i++) {
+			if (_parameters[i] == UNSET) throw new SQLException("Parameter " + (i + 1) + " is not set");
+			String literal = Utility.getLiteralFromObject(_parameters[i]);
+			if (literal == null) throw new SQLException("Parameter " + (i + 1) + " can't be written as a SQL literal");
+			literals.add(literal);
+		}
+		return QueryParser.bindParameters(_sqlQuery, literals);
+	} // Tested
+
 	public void setCharacterStream(int parameterIndex, Reader reader, int length)
 			throws SQLException {
 		// TODO Auto-generated method stub
@@ -455,8 +483,7 @@ public class PreparedStatement implements java.sql.PreparedStatement {
 	}
 
 	public void setBlob(int parameterIndex, Blob x) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x == null ? null : x.getBytes(1, (int) x.length()));
 	}
 
 	public void setClob(int parameterIndex, Clob x) throws SQLException {
@@ -476,8 +503,8 @@ public class PreparedStatement implements java.sql.PreparedStatement {
 
 	public void setDate(int parameterIndex, Date x, Calendar cal)
 			throws SQLException {
-		// TODO Auto-generated method stub
-		
+		// Dates are instants, stored as epoch milliseconds whatever the calendar
+		setParameter(parameterIndex, x);
 	}
 
 	public void setTime(int parameterIndex, Time x, Calendar cal)
@@ -488,14 +515,13 @@ public class PreparedStatement implements java.sql.PreparedStatement {
 
 	public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal)
 			throws SQLException {
-		// TODO Auto-generated method stub
-		
+		// Timestamps are instants, stored as epoch milliseconds whatever the calendar
+		setParameter(parameterIndex, x);
 	}
 
 	public void setNull(int parameterIndex, int sqlType, String typeName)
 			throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, null);
 	}
 
 	public void setURL(int parameterIndex, URL x) throws SQLException {
@@ -515,8 +541,7 @@ public class PreparedStatement implements java.sql.PreparedStatement {
 
 	public void setNString(int parameterIndex, String value)
 			throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, value);
 	}
 
 	public void setNCharacterStream(int parameterIndex, Reader value,
@@ -556,8 +581,7 @@ public class PreparedStatement implements java.sql.PreparedStatement {
 
 	public void setObject(int parameterIndex, Object x, int targetSqlType,
 			int scaleOrLength) throws SQLException {
-		// TODO Auto-generated method stub
-		
+		setParameter(parameterIndex, x);
 	}
 
 	public void setAsciiStream(int parameterIndex, InputStream x, long length)
@@ -0,0 +1,364 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.basho.riak.client.core.RiakFuture;
+import com.basho.riak.client.core.RiakFutureListener;
+import com.basho.riak.client.core.query.timeseries.Cell;
+import com.basho.riak.client.core.query.timeseries.ColumnDescription;
+import com.basho.riak.client.core.query.timeseries.QueryResult;
+import com.basho.riakts.jdbc.QueryPlan.SubQuery;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/***
+ * Executes a QueryPlan against Riak TS, running its sub-queries concurrently
+ * (bounded by the plan's parallelism) and merging their results in plan order,
+ * or in time order for FAN_OUT plans over several partition keys.
+ * Sub-queries Riak TS rejects for returning too much data are bisected and 
+ * retried rather than failing the whole query, and those that fail with a retryable
+ * error are sent again (see RetryPolicy). When hedging is enabled, reads that
+ * are slow to answer are also sent to a second node (see HedgingPolicy).
+ */
+public class QueryExecutor {
+
+	private TimeSeriesProtocol _protocol;
+	private HedgingPolicy _hedging;
+	private RetryPolicy _retry;
+
+	QueryExecutor(TimeSeriesProtocol protocol, HedgingPolicy hedging, RetryPolicy retry) {
+		_protocol = protocol;
+		_hedging = hedging;
+		_retry = retry;
+	}
+
+	/***
+	 * Executes the plan and returns the combined results, merged in time order for
+	 * FAN_OUT plans with a merge column
+	 * @param plan
+	 * @return java.sql.ResultSet
+	 * @throws SQLException
+	 */
+	public ResultSet execute(QueryPlan plan) throws SQLException {
+		if (plan.getStrategy().equals(QueryPlan.FETCH)) return executeFetch(plan);
+		List<QueryResult> results = executeSubQueries(plan, plan.getSubQueries());
+		int mergeIndex = plan.getMergeColumn() == null ? -1 : indexOfColumn(results, plan.getMergeColumn());
+		if (mergeIndex >= 0) {
+			// Each sub-query is ordered by the merge column so a k-way merge puts the rows in order
+			return Utility.getResultSetFromQueryResults(results, null, null, new TimeOrderedMerge(results, mergeIndex));
+		}
+		return Utility.getResultSetFromQueryResults(results);
+	}
+
+	/***
+	 * Reads the single row of a FETCH plan by its primary key
+	 * @param plan
+	 * @return java.sql.ResultSet with the row, or no rows if the key wasn't found
+	 * @throws SQLException
+	 */
+	ResultSet executeFetch(QueryPlan plan) throws SQLException {
+		QueryResult result;
+		try {
+			result = fetch(plan.getTable(), plan.getFetchKey(), null);
+		}
+		catch (ExecutionException e) {
+			throw new SQLException(e.getCause());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException(e);
+		}
+		List<QueryResult> results = new ArrayList<QueryResult>();
+		results.add(result);
+		return Utility.getResultSetFromQueryResults(results, plan.getColumns(), plan.getProjection());
+	}
+
+	/***
+	 * Fetches the rows of a table with the keys passed in, never allowing more than
+	 * parallelism Fetches to be in flight at once
+	 * @param table
+	 * @param keys key cells of each row, in local key order
+	 * @param parallelism
+	 * @return List of QueryResults in the same order as the keys, QueryResult.EMPTY where
+	 * a key wasn't found
+	 * @throws SQLException
+	 */
+	List<QueryResult> fetchAll(String table, List<List<Cell>> keys, int parallelism) throws SQLException {
+		List<Future<QueryResult>> futures = new ArrayList<Future<QueryResult>>();
+		final Semaphore inFlight = new Semaphore(Math.max(1, parallelism));
+		try {
+			for (List<Cell> key : keys) {
+				inFlight.acquire();
+				RiakFuture<QueryResult, String> future = _protocol.fetch(table, key);
+				future.addListener(new RiakFutureListener<QueryResult, String>() {
+					public void handle(RiakFuture<QueryResult, String> f) {
+						inFlight.release();
+					}
+				});
+				futures.add(future);
+			}
+
+			List<QueryResult> results = new ArrayList<QueryResult>();
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					results.add(futures.get(i).get());
+				}
+				catch (ExecutionException e) {
+					results.add(fetch(table, keys.get(i), e.getCause()));
+				}
+			}
+			return results;
+		}
+		catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new SQLException(e);
+		}
+		catch (ExecutionException e) {
+			cancel(futures);
+			throw new SQLException(e.getCause());
+		}
+	}
+
+	/***
+	 * Runs each of the sub-queries passed in, never allowing more than the plan's
+	 * parallelism to be in flight at once
+	 * @param plan
+	 * @param subQueries
+	 * @return List of QueryResults in the same order as the sub-queries, with the
+	 * results of any bisected sub-query in place of the original
+	 * @throws SQLException
+	 */
+	List<QueryResult> executeSubQueries(QueryPlan plan, List<SubQuery> subQueries) throws SQLException {
+		List<Future<QueryResult>> futures = new ArrayList<Future<QueryResult>>();
+		final long[] started = new long[subQueries.size()];
+		final long[] latencies = new long[subQueries.size()];
+		final Semaphore inFlight = new Semaphore(plan.getParallelism());
+		try {
+			for (int i = 0; i < subQueries.size(); i++) {
+				inFlight.acquire();
+				final int index = i;
+				started[i] = System.nanoTime();
+				latencies[i] = -1;
+				Future<QueryResult> future = submit(subQueries.get(i).getSql(), new Runnable() {
+					public void run() {
+						latencies[index] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started[index]);
+						inFlight.release();
+					}
+				});
+				futures.add(future);
+			}
+
+			List<QueryResult> results = new ArrayList<QueryResult>();
+			for (int i = 0; i < futures.size(); i++) {
+				SubQuery subQuery = subQueries.get(i);
+				// Sub-queries of a FAN_OUT plan are bisected and sized by the branch plan that built them
+				QueryPlan owner = subQuery.getPlan() != null ? subQuery.getPlan() : plan;
+				try {
+					QueryResult result = futures.get(i).get();
+					// The listener may not have run yet when get() returns
+					long latency = latencies[i] >= 0 ? latencies[i] : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started[i]);
+					recordStatistics(owner, subQuery, result, latency);
+					results.add(result);
+				}
+				catch (ExecutionException e) {
+					if (isTooMuchDataError(e.getCause()) && canBisect(owner, subQuery)) {
+						if (owner.getStatistics() != null) owner.getStatistics().recordTooMuchData(owner.coverage(subQuery));
+						results.addAll(executeSubQueries(plan, bisect(owner, subQuery)));
+					}
+					else {
+						results.add(resubmit(subQuery.getSql(), e.getCause()));
+					}
+				}
+			}
+			return results;
+		}
+		catch (InterruptedException e) {
+			cancel(futures);
+			Thread.currentThread().interrupt();
+			throw new SQLException(e);
+		}
+		catch (ExecutionException e) {
+			cancel(futures);
+			throw new SQLException(e.getCause());
+		}
+		catch (SQLException e) {
+			cancel(futures);
+			throw e;
+		}
+	}
+
+
+	/***
+	 * Fetches a row by its key, retrying per the RetryPolicy
+	 * @param table
+	 * @param key
+	 * @param failure error of a first attempt already made, or null
+	 * @return QueryResult, QueryResult.EMPTY if the key wasn't found
+	 * @throws ExecutionException
+	 * @throws InterruptedException
+	 */
+	private QueryResult fetch(final String table, final List<Cell> key, Throwable failure) throws ExecutionException, InterruptedException {
+		try {
+			return _retry.retry(new Callable<QueryResult>() {
+				public QueryResult call() throws Exception {
+					return _protocol.fetch(table, key).get();
+				}
+			}, failure);
+		}
+		catch (ExecutionException e) {
+			if (isNotFoundError(e.getCause())) return QueryResult.EMPTY;
+			throw e;
+		}
+	}
+
+	/***
+	 * Sends a statement whose first attempt failed again, per the RetryPolicy
+	 * @param sql
+	 * @param failure error of the first attempt
+	 * @return QueryResult
+	 * @throws ExecutionException holding the last error if no attempt succeeded
+	 * @throws InterruptedException
+	 */
+	private QueryResult resubmit(final String sql, Throwable failure) throws ExecutionException, InterruptedException {
+		return _retry.retry(new Callable<QueryResult>() {
+			public QueryResult call() throws Exception {
+				return submit(sql, NO_OP).get();
+			}
+		}, failure);
+	}
+
+	private final static Runnable NO_OP = new Runnable() {
+		public void run() {
+		}
+	};
+
+	/***
+	 * Sends a single statement to Riak TS, hedged if hedging is enabled and the statement is a SELECT
+	 * @param sql
+	 * @param onComplete run once the statement has completed, successfully or not
+	 * @return Future holding the statement's results
+	 */
+	private Future<QueryResult> submit(String sql, final Runnable onComplete) {
+		if (_hedging != null && _hedging.isEnabled() && QueryParser.isSelect(sql)) {
+			ListenableFuture<QueryResult> future = new HedgedRead(_protocol, _hedging, sql).start();
+			future.addListener(onComplete, MoreExecutors.directExecutor());
+			return future;
+		}
+		RiakFuture<QueryResult, String> future = _protocol.query(sql);
+		future.addListener(new RiakFutureListener<QueryResult, String>() {
+			public void handle(RiakFuture<QueryResult, String> f) {
+				onComplete.run();
+			}
+		});
+		return future;
+	}
+
+
+	/***
+	 * Returns true if the error is Riak TS refusing a query because its results would
+	 * exceed riak_kv.query.timeseries.max_returned_data_size
+	 * @param error
+	 * @return True or False
+	 */
+	static boolean isTooMuchDataError(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			String message = cause.getMessage();
+			if (message == null) continue;
+			message = message.toLowerCase();
+			if (message.contains("too much data") || message.contains("too_much_data")
+					|| message.contains("max_returned_data_size")) return true;
+		}
+		return false;
+	} // Tested
+
+	/***
+	 * Returns true if the error is Riak TS reporting that a fetched key doesn't exist
+	 * @param error
+	 * @return True or False
+	 */
+	static boolean isNotFoundError(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			String message = cause.getMessage();
+			if (message != null && message.toLowerCase().contains("notfound")) return true;
+		}
+		return false;
+	}
+
+	/***
+	 * Returns the index of a column in the results, matched by name ignoring case
+	 * @param results
+	 * @param column
+	 * @return index or -1 if none of the results has the column
+	 */
+	static int indexOfColumn(List<QueryResult> results, String column) {
+		for (QueryResult result : results) {
+			List<ColumnDescription> descriptions = result.getColumnDescriptionsCopy();
+			for (int i = 0; i < descriptions.size(); i++) {
+				if (descriptions.get(i).getName().equalsIgnoreCase(column)) return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean canBisect(QueryPlan plan, SubQuery subQuery) {
+		return plan.isSplittable() && subQuery.hasRange() && subQuery.getRangeEnd() - subQuery.getRangeStart() > 1;
+	}
+
+	/***
+	 * Splits a sub-query's time range in two, on a quantum boundary when the range
+	 * covers more than one quantum
+	 * @param plan
+	 * @param subQuery
+	 * @return List with the two halves
+	 */
+	static List<SubQuery> bisect(QueryPlan plan, SubQuery subQuery) {
+		long start = subQuery.getRangeStart();
+		long end = subQuery.getRangeEnd();
+		long middle = start + (end - start) / 2;
+		long quantum = plan.getQuantumMillis();
+		long aligned = Math.floorDiv(middle, quantum) * quantum;
+		if (aligned > start && aligned < end) middle = aligned;
+		else if (aligned + quantum > start && aligned + quantum < end) middle = aligned + quantum;
+
+		List<SubQuery> halves = new ArrayList<SubQuery>();
+		halves.add(plan.subQueryFor(start, middle));
+		halves.add(plan.subQueryFor(middle, end));
+		return halves;
+	} // Tested
+
+	private void recordStatistics(QueryPlan plan, SubQuery subQuery, QueryResult result, long latencyMillis) {
+		if (plan.getStatistics() != null && subQuery.hasRange()) {
+			plan.getStatistics().recordQuery(plan.coverage(subQuery), result.getRowsCount(), latencyMillis);
+		}
+	}
+
+	private static void cancel(List<Future<QueryResult>> futures) {
+		for (Future<QueryResult> future : futures) {
+			if (!future.isDone()) future.cancel(true);
+		}
+	}
+
+}
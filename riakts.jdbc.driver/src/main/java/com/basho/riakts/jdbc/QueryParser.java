@@ -0,0 +1,619 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/***
+ * Lightweight parser for the subset of Riak TS SQL the driver needs to
+ * understand in order to plan queries. Statements the parser doesn't
+ * recognize are passed through to Riak TS untouched.
+ */
+public class QueryParser {
+
+	private final static String EXPLAIN = "EXPLAIN";
+	final static String IN = "IN";
+
+	/***
+	 * Returns true if the statement starts with the EXPLAIN keyword
+	 * @param sql
+	 * @return True or False
+	 */
+	public static boolean isExplain(String sql) {
+		String trimmed = sql.trim();
+		return trimmed.length() > EXPLAIN.length()
+				&& trimmed.substring(0, EXPLAIN.length()).equalsIgnoreCase(EXPLAIN)
+				&& Character.isWhitespace(trimmed.charAt(EXPLAIN.length()));
+	}
+
+	/***
+	 * Returns true if the statement is a SELECT, i.e. only reads data
+	 * @param sql
+	 * @return True or False
+	 */
+	public static boolean isSelect(String sql) {
+		String trimmed = sql.trim();
+		return trimmed.length() > 6 && trimmed.substring(0, 6).equalsIgnoreCase("SELECT")
+				&& Character.isWhitespace(trimmed.charAt(6));
+	} // Tested
+
+	/***
+	 * Returns true if the statement is a DELETE
+	 * @param sql
+	 * @return True or False
+	 */
+	public static boolean isDelete(String sql) {
+		String trimmed = sql.trim();
+		return trimmed.length() > 6 && trimmed.substring(0, 6).equalsIgnoreCase("DELETE")
+				&& Character.isWhitespace(trimmed.charAt(6));
+	} // Tested
+
+	/***
+	 * Removes the leading EXPLAIN keyword from a statement
+	 * @param sql
+	 * @return the statement being explained
+	 */
+	public static String stripExplain(String sql) {
+		return sql.trim().substring(EXPLAIN.length()).trim();
+	}
+
+
+	/***
+	 * Parses a SELECT statement of the form
+	 * SELECT [columns] FROM [table] WHERE [predicates] [GROUP BY/ORDER BY/LIMIT/OFFSET ...]
+	 * @param sql
+	 * @return ParsedQuery or null if the statement isn't a SELECT the parser understands
+	 */
+	public static ParsedQuery parse(String sql) {
+		List<Token> tokens = tokenize(sql);
+		if (tokens == null || tokens.size() < 4 || !tokens.get(0).is("SELECT")) return null;
+
+		int from = indexOfKeyword(tokens, "FROM", 1);
+		if (from < 2 || from + 1 >= tokens.size()) return null;
+		Token table = tokens.get(from + 1);
+		if (table.type != Token.IDENTIFIER) return null;
+
+		ParsedQuery query = new ParsedQuery();
+		query.sql = sql;
+		query.selectList = sql.substring(tokens.get(1).start, tokens.get(from - 1).end);
+		query.table = table.text;
+
+		int position = from + 2;
+		if (position < tokens.size() && tokens.get(position).is("WHERE")) {
+			int end = indexOfTail(tokens, position + 1);
+			query.predicates = parsePredicates(sql, tokens, position + 1, end);
+			if (query.predicates == null) return null;
+			position = end;
+		}
+		if (position < tokens.size()) {
+			if (indexOfTail(tokens, position) != position) return null;
+			query.tail = sql.substring(tokens.get(position).start, tokens.get(tokens.size() - 1).end);
+		}
+		return query;
+	} // Tested
+
+
+	/***
+	 * Parses a DELETE statement of the form DELETE FROM [table] WHERE [predicates] as the
+	 * SELECT * of the rows it deletes
+	 * @param sql
+	 * @return ParsedQuery or null if the statement isn't a DELETE the parser understands,
+	 * or has anything after its predicates
+	 */
+	public static ParsedQuery parseDelete(String sql) {
+		List<Token> tokens = tokenize(sql);
+		if (tokens == null || tokens.size() < 4 || !tokens.get(0).is("DELETE") || !tokens.get(1).is("FROM")) return null;
+		ParsedQuery query = parse("SELECT *" + sql.substring(tokens.get(0).end));
+		return query == null || query.getTail() != null ? null : query;
+	} // Tested
+
+
+	/***
+	 * Parses an INSERT statement of the form
+	 * INSERT INTO [table] [(columns)] VALUES ([literals]) [, ([literals]) ...]
+	 * where any of the literals may be a ? parameter
+	 * @param sql
+	 * @return ParsedInsert or null if the statement isn't an INSERT of literal values
+	 */
+	public static ParsedInsert parseInsert(String sql) {
+		List<Token> tokens = tokenize(sql);
+		if (tokens == null || tokens.size() < 6 || !tokens.get(0).is("INSERT") || !tokens.get(1).is("INTO")
+				|| tokens.get(2).type != Token.IDENTIFIER) return null;
+
+		ParsedInsert insert = new ParsedInsert();
+		insert.table = tokens.get(2).value;
+		int position = 3;
+		if (tokens.get(position).is("(")) {
+			insert.columns = new ArrayList<String>();
+			position++;
+			while (position + 1 < tokens.size() && tokens.get(position).type == Token.IDENTIFIER) {
+				insert.columns.add(tokens.get(position).value);
+				Token separator = tokens.get(position + 1);
+				position += 2;
+				if (separator.is(")")) break;
+				if (!separator.is(",")) return null;
+			}
+			if (!tokens.get(position - 1).is(")")) return null;
+		}
+		if (position >= tokens.size() || !tokens.get(position).is("VALUES")) return null;
+		position++;
+
+		while (position < tokens.size()) {
+			if (!tokens.get(position).is("(")) return null;
+			List<String> row = new ArrayList<String>();
+			position++;
+			while (position + 1 < tokens.size() && (tokens.get(position).isLiteral() || tokens.get(position).is("?"))) {
+				row.add(tokens.get(position).text);
+				Token separator = tokens.get(position + 1);
+				position += 2;
+				if (separator.is(")")) break;
+				if (!separator.is(",")) return null;
+			}
+			if (!tokens.get(position - 1).is(")")) return null;
+			if (insert.columns != null && row.size() != insert.columns.size()) return null;
+			insert.rows.add(row);
+			if (position < tokens.size()) {
+				if (!tokens.get(position).is(",")) return null;
+				position++;
+			}
+		}
+		return insert.rows.isEmpty() ? null : insert;
+	} // Tested
+
+
+	/***
+	 * Returns the number of ? parameters in a statement
+	 * @param sql
+	 * @return int, 0 if the statement can't be tokenized
+	 */
+	public static int countParameters(String sql) {
+		List<Token> tokens = tokenize(sql);
+		int count = 0;
+		for (int i = 0; tokens != null && i < tokens.size(); i++) {
+			if (tokens.get(i).is("?")) count++;
+		}
+		return count;
+	} // Tested
+
+	/***
+	 * Replaces each ? parameter in a statement with a SQL literal
+	 * @param sql
+	 * @param literals literal for each parameter in the order they appear
+	 * @return String
+	 */
+	public static String bindParameters(String sql, List<String> literals) {
+		List<Token> tokens = tokenize(sql);
+		if (tokens == null) return sql;
+		StringBuilder bound = new StringBuilder();
+		int copied = 0;
+		int parameter = 0;
+		for (Token token : tokens) {
+			if (!token.is("?") || parameter >= literals.size()) continue;
+			bound.append(sql, copied, token.start).append(literals.get(parameter++));
+			copied = token.end;
+		}
+		return bound.append(sql.substring(copied)).toString();
+	} // Tested
+
+
+	/***
+	 * Splits the WHERE clause into its top level AND separated predicates
+	 */
+	private static List<Predicate> parsePredicates(String sql, List<Token> tokens, int start, int end) {
+		List<Predicate> predicates = new ArrayList<Predicate>();
+		int depth = 0;
+		int predicateStart = start;
+		for (int i = start; i < end; i++) {
+			Token token = tokens.get(i);
+			if (token.is("(")) depth++;
+			else if (token.is(")")) depth--;
+			else if (depth == 0 && token.is("AND")) {
+				if (i == predicateStart) return null;
+				predicates.add(parsePredicate(sql, tokens, predicateStart, i));
+				predicateStart = i + 1;
+			}
+		}
+		if (predicateStart >= end) return null;
+		predicates.add(parsePredicate(sql, tokens, predicateStart, end));
+		return predicates;
+	}
+
+	/***
+	 * Parses a single predicate, recognizing simple [column] [operator] [literal]
+	 * comparisons, [column] IN ([literal], ...) and parenthesized OR chains of equality
+	 * on a single column, which are treated as IN. Anything else is kept as opaque text.
+	 */
+	private static Predicate parsePredicate(String sql, List<Token> tokens, int start, int end) {
+		Predicate predicate = new Predicate();
+		predicate.text = sql.substring(tokens.get(start).start, tokens.get(end - 1).end);
+		if (end - start == 3) {
+			Token column = tokens.get(start);
+			Token operator = tokens.get(start + 1);
+			Token value = tokens.get(start + 2);
+			if (column.type == Token.IDENTIFIER && operator.type == Token.OPERATOR && value.isLiteral()) {
+				predicate.column = column.text;
+				predicate.operator = operator.text.equals("<>") ? "!=" : operator.text;
+				predicate.values.add(value.text);
+			}
+		}
+		else if (end - start >= 5 && tokens.get(start).type == Token.IDENTIFIER && tokens.get(start + 1).is(IN)) {
+			List<String> values = parseInList(tokens, start + 2, end);
+			if (values != null) {
+				predicate.column = tokens.get(start).text;
+				predicate.operator = IN;
+				predicate.values = values;
+			}
+		}
+		else if (end - start >= 9 && tokens.get(start).is("(") && tokens.get(end - 1).is(")")) {
+			List<String> values = parseOrChain(tokens, start + 1, end - 1);
+			if (values != null) {
+				predicate.column = tokens.get(start + 1).text;
+				predicate.operator = IN;
+				predicate.values = values;
+			}
+		}
+		return predicate;
+	}
+
+	/***
+	 * Parses ( [literal] , [literal] ... ) between start and end
+	 * @return the literals as written or null if the tokens aren't a list of literals
+	 */
+	private static List<String> parseInList(List<Token> tokens, int start, int end) {
+		if (!tokens.get(start).is("(") || !tokens.get(end - 1).is(")") || (end - start) % 2 != 1) return null;
+		List<String> values = new ArrayList<String>();
+		for (int i = start + 1; i < end - 1; i++) {
+			Token token = tokens.get(i);
+			if ((i - start) % 2 == 1 && token.isLiteral()) values.add(token.text);
+			else if ((i - start) % 2 == 0 && token.is(",")) continue;
+			else return null;
+		}
+		return values;
+	}
+
+	/***
+	 * Parses [column] = [literal] OR [column] = [literal] ... between start and end
+	 * @return the literals as written or null unless every term is equality on the same column
+	 */
+	private static List<String> parseOrChain(List<Token> tokens, int start, int end) {
+		if ((end - start + 1) % 4 != 0) return null;
+		String column = tokens.get(start).text;
+		List<String> values = new ArrayList<String>();
+		for (int i = start; i < end; i += 4) {
+			if (i > start && !tokens.get(i - 1).is("OR")) return null;
+			Token name = tokens.get(i);
+			if (name.type != Token.IDENTIFIER || !name.text.equalsIgnoreCase(column)) return null;
+			if (!tokens.get(i + 1).text.equals("=") || !tokens.get(i + 2).isLiteral()) return null;
+			values.add(tokens.get(i + 2).text);
+		}
+		return values;
+	}
+
+	/***
+	 * Returns the value of a literal as written in a statement, without quotes
+	 * and with doubled single quotes unescaped
+	 * @param literal
+	 * @return String
+	 */
+	public static String unquote(String literal) {
+		if (literal.length() >= 2 && literal.startsWith("'") && literal.endsWith("'")) {
+			return literal.substring(1, literal.length() - 1).replace("''", "'");
+		}
+		return literal;
+	} // Tested
+
+	private static int indexOfKeyword(List<Token> tokens, String keyword, int start) {
+		int depth = 0;
+		for (int i = start; i < tokens.size(); i++) {
+			Token token = tokens.get(i);
+			if (token.is("(")) depth++;
+			else if (token.is(")")) depth--;
+			else if (depth == 0 && token.is(keyword)) return i;
+		}
+		return -1;
+	}
+
+	/***
+	 * Returns the index of the first GROUP BY, ORDER BY, LIMIT or OFFSET keyword
+	 * at or after start, or the number of tokens if there are none
+	 */
+	private static int indexOfTail(List<Token> tokens, int start) {
+		int depth = 0;
+		for (int i = start; i < tokens.size(); i++) {
+			Token token = tokens.get(i);
+			if (token.is("(")) depth++;
+			else if (token.is(")")) depth--;
+			else if (depth == 0 && (token.is("GROUP") || token.is("ORDER") || token.is("LIMIT") || token.is("OFFSET"))) {
+				return i;
+			}
+		}
+		return tokens.size();
+	}
+
+
+	/***
+	 * Splits a SQL statement into tokens, dropping a trailing semicolon
+	 * @param sql
+	 * @return List of tokens or null if the statement can't be tokenized
+	 */
+	static List<Token> tokenize(String sql) {
+		List<Token> tokens = new ArrayList<Token>();
+		int length = sql.length();
+		int i = 0;
+		while (i < length) {
+			char c = sql.charAt(i);
+			int start = i;
+			if (Character.isWhitespace(c)) {
+				i++;
+				continue;
+			}
+			if (c == ';') {
+				// Only allowed as the final character of the statement
+				if (sql.substring(i + 1).trim().length() > 0) return null;
+				break;
+			}
+			if (c == '\'') {
+				i++;
+				StringBuilder value = new StringBuilder();
+				while (true) {
+					if (i >= length) return null;
+					char s = sql.charAt(i);
+					if (s == '\'') {
+						if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+							value.append('\'');
+							i += 2;
+							continue;
+						}
+						i++;
+						break;
+					}
+					value.append(s);
+					i++;
+				}
+				tokens.add(new Token(Token.STRING, sql.substring(start, i), value.toString(), start, i));
+			}
+			else if (c == '"') {
+				int close = sql.indexOf('"', i + 1);
+				if (close < 0) return null;
+				i = close + 1;
+				tokens.add(new Token(Token.IDENTIFIER, sql.substring(start, i), sql.substring(start + 1, close), start, i));
+			}
+			else if (Character.isDigit(c) || (c == '-' && i + 1 < length && Character.isDigit(sql.charAt(i + 1)) && isValueExpected(tokens))) {
+				i++;
+				while (i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.'
+						|| sql.charAt(i) == 'e' || sql.charAt(i) == 'E')) i++;
+				tokens.add(new Token(Token.NUMBER, sql.substring(start, i), sql.substring(start, i), start, i));
+			}
+			else if (Character.isLetter(c) || c == '_') {
+				while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_')) i++;
+				String word = sql.substring(start, i);
+				tokens.add(new Token(Token.IDENTIFIER, word, word, start, i));
+			}
+			else if (c == '<' || c == '>' || c == '=' || c == '!') {
+				i++;
+				if (i < length && (sql.charAt(i) == '=' || (c == '<' && sql.charAt(i) == '>'))) i++;
+				String operator = sql.substring(start, i);
+				if (operator.equals("!")) return null;
+				tokens.add(new Token(Token.OPERATOR, operator, operator, start, i));
+			}
+			else {
+				i++;
+				tokens.add(new Token(Token.SYMBOL, String.valueOf(c), String.valueOf(c), start, i));
+			}
+		}
+		return tokens;
+	} // Tested
+
+	private static boolean isValueExpected(List<Token> tokens) {
+		if (tokens.isEmpty()) return true;
+		Token last = tokens.get(tokens.size() - 1);
+		return last.type == Token.OPERATOR || last.is("(") || last.is(",")
+				|| last.is("AND") || last.is("OR") || last.is("IN") || last.is("BETWEEN");
+	}
+
+
+	/***
+	 * A single token of a SQL statement. The text holds the token as written,
+	 * the value holds string literals unquoted and identifiers without quotes.
+	 */
+	static class Token {
+		final static int IDENTIFIER = 0;
+		final static int NUMBER = 1;
+		final static int STRING = 2;
+		final static int OPERATOR = 3;
+		final static int SYMBOL = 4;
+
+		final int type;
+		final String text;
+		final String value;
+		final int start;
+		final int end;
+
+		Token(int type, String text, String value, int start, int end) {
+			this.type = type;
+			this.text = text;
+			this.value = value;
+			this.start = start;
+			this.end = end;
+		}
+
+		boolean is(String keyword) {
+			return (type == IDENTIFIER || type == SYMBOL) && text.equalsIgnoreCase(keyword);
+		}
+
+		boolean isLiteral() {
+			return type == NUMBER || type == STRING
+					|| (type == IDENTIFIER && (text.equalsIgnoreCase("true") || text.equalsIgnoreCase("false")));
+		}
+	}
+
+
+	/***
+	 * A SELECT statement broken down into the parts the planner works with
+	 */
+	public static class ParsedQuery {
+		String sql;
+		String selectList;
+		String table;
+		List<Predicate> predicates = new ArrayList<Predicate>();
+		String tail;
+
+		public String getSql() {
+			return sql;
+		}
+
+		public String getSelectList() {
+			return selectList;
+		}
+
+		public String getTable() {
+			return table;
+		}
+
+		public List<Predicate> getPredicates() {
+			return predicates;
+		}
+
+		/***
+		 * Returns the GROUP BY, ORDER BY, LIMIT and OFFSET clauses as written, or null
+		 */
+		public String getTail() {
+			return tail;
+		}
+
+		/***
+		 * Returns true if the results of running the query over adjacent time ranges can
+		 * simply be concatenated, i.e. the query has no aggregates, grouping, ordering or limits
+		 * @return True or False
+		 */
+		public boolean isSplittable() {
+			return tail == null && selectList.indexOf('(') < 0;
+		}
+
+		/***
+		 * Returns the column the query is ordered by when its only trailing clause
+		 * is ORDER BY [column] or ORDER BY [column] ASC
+		 * @return column name or null
+		 */
+		public String getAscendingOrderColumn() {
+			if (tail == null) return null;
+			List<Token> tokens = tokenize(tail);
+			if (tokens == null || tokens.size() < 3 || tokens.size() > 4) return null;
+			if (!tokens.get(0).is("ORDER") || !tokens.get(1).is("BY") || tokens.get(2).type != Token.IDENTIFIER) return null;
+			if (tokens.size() == 4 && !tokens.get(3).is("ASC")) return null;
+			return tokens.get(2).value;
+		} // Tested
+
+		/***
+		 * Returns the columns named in the select list
+		 * @return List of column names, empty for SELECT *, or null if the select
+		 * list contains anything other than plain column names
+		 */
+		public List<String> getSelectedColumns() {
+			List<Token> tokens = tokenize(selectList);
+			List<String> columns = new ArrayList<String>();
+			if (tokens == null || tokens.isEmpty()) return null;
+			if (tokens.size() == 1 && tokens.get(0).is("*")) return columns;
+			for (int i = 0; i < tokens.size(); i++) {
+				Token token = tokens.get(i);
+				if (i % 2 == 0 && token.type == Token.IDENTIFIER) columns.add(token.value);
+				else if (i % 2 == 1 && token.is(",")) continue;
+				else return null;
+			}
+			return tokens.size() % 2 == 1 ? columns : null;
+		} // Tested
+
+		/***
+		 * Returns the predicates that reference the column passed in
+		 * @param column
+		 * @return List of predicates, empty if there are none
+		 */
+		public List<Predicate> getPredicatesOn(String column) {
+			List<Predicate> matches = new ArrayList<Predicate>();
+			for (Predicate predicate : predicates) {
+				if (predicate.column != null && predicate.column.equalsIgnoreCase(column)) matches.add(predicate);
+			}
+			return matches;
+		}
+	}
+
+
+	/***
+	 * An INSERT statement's table, column list and rows of literal values
+	 */
+	public static class ParsedInsert {
+		String table;
+		List<String> columns;
+		List<List<String>> rows = new ArrayList<List<String>>();
+
+		public String getTable() {
+			return table;
+		}
+
+		/***
+		 * Returns the columns listed after the table name, or null if the values are in table order
+		 */
+		public List<String> getColumns() {
+			return columns;
+		}
+
+		/***
+		 * Returns the literals of each row as written, string literals quoted and
+		 * parameters as ?
+		 */
+		public List<List<String>> getRows() {
+			return rows;
+		}
+	}
+
+
+	/***
+	 * A single predicate from the WHERE clause. Column and operator are only set
+	 * for predicates the parser understands, text always holds the predicate as written.
+	 */
+	public static class Predicate {
+		String column;
+		String operator;
+		List<String> values = new ArrayList<String>();
+		String text;
+
+		public String getColumn() {
+			return column;
+		}
+
+		public String getOperator() {
+			return operator;
+		}
+
+		public List<String> getValues() {
+			return values;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		public boolean isLowerBound() {
+			return ">".equals(operator) || ">=".equals(operator);
+		}
+
+		public boolean isUpperBound() {
+			return "<".equals(operator) || "<=".equals(operator);
+		}
+	}
+
+}
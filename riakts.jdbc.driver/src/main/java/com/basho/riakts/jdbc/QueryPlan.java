@@ -0,0 +1,336 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.basho.riak.client.core.query.timeseries.Cell;
+import com.basho.riak.client.core.query.timeseries.FullColumnDescription;
+import com.basho.riakts.jdbc.QueryParser.ParsedQuery;
+import com.basho.riakts.jdbc.QueryParser.Predicate;
+
+/***
+ * Describes how the driver will execute a query: the sub-queries it sends
+ * to Riak TS, how many run at once and how many rows they are expected to return
+ */
+public class QueryPlan {
+
+	// Strategies the planner can choose for a query
+	public final static String PASS_THROUGH = "PASS_THROUGH";
+	public final static String SPLIT = "SPLIT";
+	public final static String FETCH = "FETCH";
+	public final static String FAN_OUT = "FAN_OUT";
+
+	// Sources a sub-query can be served from
+	public final static String SOURCE_RIAK = "RIAK";
+
+	private String _sql;
+	private String _table;
+	private String _strategy;
+	private long _quantumMillis;
+	private int _parallelism = 1;
+	private TableStatistics _statistics;
+	private List<SubQuery> _subQueries = new ArrayList<SubQuery>();
+	
+	// Used to build sub-queries for arbitrary time ranges when a sub-query has to be bisected
+	private ParsedQuery _query;
+	private String _timeColumn;
+	private Predicate _lower;
+	private Predicate _upper;
+	private long _start;
+	private long _end;
+
+	// Used by FETCH plans: the primary key of the row, the table's columns and the columns selected
+	private List<Cell> _fetchKey;
+	private List<FullColumnDescription> _columns;
+	private int[] _projection;
+
+	// Used by FAN_OUT plans ordered by time: the column whose values the branch results are merged on
+	private String _mergeColumn;
+
+	QueryPlan(String sql, String table, String strategy) {
+		_sql = sql;
+		_table = table;
+		_strategy = strategy;
+	}
+
+	/***
+	 * Creates a plan that sends the statement to Riak TS unchanged
+	 * @param sql
+	 * @param table table name or null if unknown
+	 * @return QueryPlan
+	 */
+	static QueryPlan passThrough(String sql, String table) {
+		QueryPlan plan = new QueryPlan(sql, table, PASS_THROUGH);
+		plan.addSubQuery(new SubQuery(sql));
+		return plan;
+	}
+
+	void addSubQuery(SubQuery subQuery) {
+		if (subQuery._plan == null) subQuery._plan = this;
+		_subQueries.add(subQuery);
+	}
+
+	public String getSql() {
+		return _sql;
+	}
+
+	public String getTable() {
+		return _table;
+	}
+
+	public String getStrategy() {
+		return _strategy;
+	}
+
+	public long getQuantumMillis() {
+		return _quantumMillis;
+	}
+
+	void setQuantumMillis(long quantumMillis) {
+		_quantumMillis = quantumMillis;
+	}
+
+	public int getParallelism() {
+		return _parallelism;
+	}
+
+	void setParallelism(int parallelism) {
+		_parallelism = Math.max(1, parallelism);
+	}
+
+	TableStatistics getStatistics() {
+		return _statistics;
+	}
+
+	void setStatistics(TableStatistics statistics) {
+		_statistics = statistics;
+	}
+
+	public List<SubQuery> getSubQueries() {
+		return _subQueries;
+	}
+
+	/***
+	 * Records the parsed query and its time range [start, end) on the quantum column,
+	 * allowing the plan to build sub-queries for any part of that range
+	 */
+	void setTimeRange(ParsedQuery query, String timeColumn, Predicate lower, Predicate upper, long start, long end) {
+		_query = query;
+		_timeColumn = timeColumn;
+		_lower = lower;
+		_upper = upper;
+		_start = start;
+		_end = end;
+	}
+
+	/***
+	 * Records the key of the single row a FETCH plan reads
+	 * @param key primary key cells in local key order
+	 * @param columns every column of the table in table order
+	 * @param projection index of the table column for each selected column, or null for all
+	 */
+	void setFetch(List<Cell> key, List<FullColumnDescription> columns, int[] projection) {
+		_fetchKey = key;
+		_columns = columns;
+		_projection = projection;
+	}
+
+	List<Cell> getFetchKey() {
+		return _fetchKey;
+	}
+
+	List<FullColumnDescription> getColumns() {
+		return _columns;
+	}
+
+	int[] getProjection() {
+		return _projection;
+	}
+
+	/***
+	 * Returns the column the results of a FAN_OUT plan are merged in order of
+	 * @return column name, or null if the results are concatenated in sub-query order
+	 */
+	public String getMergeColumn() {
+		return _mergeColumn;
+	}
+
+	void setMergeColumn(String mergeColumn) {
+		_mergeColumn = mergeColumn;
+	}
+
+	/***
+	 * Returns true if the query can be split into sub-queries over smaller time ranges
+	 * @return True or False
+	 */
+	public boolean isSplittable() {
+		return _query != null && _query.isSplittable() && _quantumMillis > 0;
+	}
+
+	/***
+	 * Builds the sub-query covering the time range [rangeStart, rangeEnd)
+	 * @param rangeStart epoch milliseconds, inclusive
+	 * @param rangeEnd epoch milliseconds, exclusive
+	 * @return SubQuery
+	 */
+	SubQuery subQueryFor(long rangeStart, long rangeEnd) {
+		String sql = QueryPlanner.buildSubQuery(_query, _timeColumn, _lower, _upper, rangeStart, rangeEnd, _start, _end);
+		SubQuery subQuery = new SubQuery(sql, rangeStart, rangeEnd, QueryPlanner.countQuanta(rangeStart, rangeEnd, _quantumMillis));
+		subQuery._plan = this;
+		if (_statistics != null) subQuery.setEstimatedRows(_statistics.estimateRows(coverage(subQuery)));
+		return subQuery;
+	}
+
+	/***
+	 * Returns the number of quanta covered by a sub-query's time range, including fractions
+	 * of a quantum, used to learn rows and latency per quantum
+	 * @param subQuery
+	 * @return number of quanta or 0 if the sub-query has no time range
+	 */
+	double coverage(SubQuery subQuery) {
+		if (!subQuery.hasRange() || _quantumMillis <= 0) return 0;
+		return (double) (subQuery.getRangeEnd() - subQuery.getRangeStart()) / _quantumMillis;
+	}
+
+	/***
+	 * Returns the total number of quanta touched by the plan's sub-queries
+	 * @return number of quanta or 0 if unknown
+	 */
+	public long getQuantaTouched() {
+		long quanta = 0;
+		for (SubQuery subQuery : _subQueries) quanta += subQuery.getQuanta();
+		return quanta;
+	}
+
+	/***
+	 * Returns the total number of rows the plan is expected to return
+	 * @return estimated rows or -1 if unknown
+	 */
+	public long getEstimatedRows() {
+		long rows = 0;
+		for (SubQuery subQuery : _subQueries) {
+			if (subQuery.getEstimatedRows() < 0) return -1;
+			rows += subQuery.getEstimatedRows();
+		}
+		return rows;
+	}
+
+
+	private final static String[] EXPLAIN_COLUMNS = { "Step", "Strategy", "Table", "Sub Query", "Range Start",
+			"Range End", "Quanta", "Parallelism", "Source", "Estimated Rows" };
+	private final static int[] EXPLAIN_TYPES = { Types.BIGINT, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+			Types.TIMESTAMP, Types.TIMESTAMP, Types.BIGINT, Types.BIGINT, Types.VARCHAR, Types.BIGINT };
+
+	/***
+	 * Converts the plan to a ResultSet with one row per sub-query, returned
+	 * by Statement.executeQuery("EXPLAIN ...")
+	 * @return java.sql.ResultSet
+	 * @throws SQLException
+	 */
+	public ResultSet toResultSet() throws SQLException {
+		List<Object[]> rows = new ArrayList<Object[]>();
+		long step = 1;
+		for (SubQuery subQuery : _subQueries) {
+			rows.add(new Object[] {
+					step++,
+					_strategy,
+					_table,
+					subQuery.getSql(),
+					subQuery.hasRange() ? new Timestamp(subQuery.getRangeStart()) : null,
+					subQuery.hasRange() ? new Timestamp(subQuery.getRangeEnd()) : null,
+					subQuery.getQuanta(),
+					(long) _parallelism,
+					subQuery.getSource(),
+					subQuery.getEstimatedRows() });
+		}
+		return Utility.getResultSetFromRows(EXPLAIN_COLUMNS, EXPLAIN_TYPES, rows);
+	}
+
+
+	/***
+	 * A single statement sent to Riak TS as part of a plan. Time ranges are
+	 * held as [rangeStart, rangeEnd) in epoch milliseconds.
+	 */
+	public static class SubQuery {
+		private String _sql;
+		private boolean _hasRange = false;
+		private long _rangeStart;
+		private long _rangeEnd;
+		private long _quanta;
+		private long _estimatedRows = -1;
+		private String _source = SOURCE_RIAK;
+		// The plan that built the sub-query, which differs from the plan executing it for FAN_OUT
+		private QueryPlan _plan;
+
+		SubQuery(String sql) {
+			_sql = sql;
+		}
+
+		SubQuery(String sql, long rangeStart, long rangeEnd, long quanta) {
+			_sql = sql;
+			_hasRange = true;
+			_rangeStart = rangeStart;
+			_rangeEnd = rangeEnd;
+			_quanta = quanta;
+		}
+
+		public String getSql() {
+			return _sql;
+		}
+
+		public boolean hasRange() {
+			return _hasRange;
+		}
+
+		public long getRangeStart() {
+			return _rangeStart;
+		}
+
+		public long getRangeEnd() {
+			return _rangeEnd;
+		}
+
+		public long getQuanta() {
+			return _quanta;
+		}
+
+		public long getEstimatedRows() {
+			return _estimatedRows;
+		}
+
+		void setEstimatedRows(long estimatedRows) {
+			_estimatedRows = estimatedRows;
+		}
+
+		public String getSource() {
+			return _source;
+		}
+
+		void setSource(String source) {
+			_source = source;
+		}
+
+		QueryPlan getPlan() {
+			return _plan;
+		}
+	}
+
+}
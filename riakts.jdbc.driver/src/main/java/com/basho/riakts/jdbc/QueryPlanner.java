@@ -0,0 +1,490 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.basho.riak.client.core.query.timeseries.Cell;
+import com.basho.riak.client.core.query.timeseries.FullColumnDescription;
+import com.basho.riak.client.core.query.timeseries.TableDefinition;
+import com.basho.riakts.jdbc.QueryParser.ParsedQuery;
+import com.basho.riakts.jdbc.QueryParser.Predicate;
+import com.basho.riakts.jdbc.QueryPlan.SubQuery;
+
+/***
+ * Turns a SQL statement into a QueryPlan. SELECT statements with a time range
+ * on the table's quantum column are split into adjacent sub-queries that can run 
+ * in parallel when the range spans more quanta than a single Riak TS query may
+ * cover, or when the rows and latency learned from earlier queries against the
+ * table suggest a single query would return more than the target response size.
+ * SELECTs with an equality predicate on every primary key column are planned as a
+ * FETCH of the single row, bypassing the Riak TS query engine. IN lists (or OR chains)
+ * on partition key columns, which Riak TS doesn't accept, are fanned out into one
+ * branch per key that is planned as above, as are queries missing part of the
+ * partition key when the series registry knows the table's series.
+ */
+public class QueryPlanner {
+
+	private TableSchemaCache _schemaCache;
+	private ConcurrentMap<String, TableStatistics> _statistics = new ConcurrentHashMap<String, TableStatistics>();
+	private int _maxQuantaPerQuery;
+	private int _parallelism;
+	private int _targetRowsPerQuery;
+	private int _targetQueryMillis;
+	private int _maxFanOut;
+	private SeriesCatalog _series;
+
+	QueryPlanner(TableSchemaCache schemaCache, Properties info) {
+		this(schemaCache, null, info);
+	}
+
+	/***
+	 * @param schemaCache
+	 * @param series registered series used to fan out queries missing the partition key, may be null
+	 * @param info connection properties
+	 */
+	QueryPlanner(TableSchemaCache schemaCache, SeriesCatalog series, Properties info) {
+		_schemaCache = schemaCache;
+		_series = series;
+		_maxQuantaPerQuery = Math.max(1, DriverProperties.getInt(info,
+				DriverProperties.MAX_QUANTA_PER_QUERY, DriverProperties.DEFAULT_MAX_QUANTA_PER_QUERY));
+		_parallelism = Math.max(1, DriverProperties.getInt(info,
+				DriverProperties.QUERY_PARALLELISM, DriverProperties.DEFAULT_QUERY_PARALLELISM));
+		_targetRowsPerQuery = DriverProperties.getInt(info,
+				DriverProperties.TARGET_ROWS_PER_QUERY, DriverProperties.DEFAULT_TARGET_ROWS_PER_QUERY);
+		_targetQueryMillis = DriverProperties.getInt(info,
+				DriverProperties.TARGET_QUERY_MILLIS, DriverProperties.DEFAULT_TARGET_QUERY_MILLIS);
+		_maxFanOut = DriverProperties.getInt(info, DriverProperties.MAX_FAN_OUT, DriverProperties.DEFAULT_MAX_FAN_OUT);
+	}
+
+	/***
+	 * Returns the statistics the driver has collected for a table
+	 * @param table table name
+	 * @return TableStatistics
+	 */
+	public TableStatistics getStatistics(String table) {
+		String key = table.toLowerCase();
+		TableStatistics statistics = _statistics.get(key);
+		if (statistics == null) {
+			statistics = new TableStatistics();
+			TableStatistics existing = _statistics.putIfAbsent(key, statistics);
+			if (existing != null) statistics = existing;
+		}
+		return statistics;
+	}
+
+	/***
+	 * Plans the execution of a SQL statement
+	 * @param sql
+	 * @return QueryPlan
+	 */
+	public QueryPlan plan(String sql) {
+		ParsedQuery query = QueryParser.parse(sql);
+		if (query == null) return QueryPlan.passThrough(sql, null);
+
+		TableDefinition definition = _schemaCache.getTableDefinition(query.getTable());
+		// Registered series cover IN lists on the partition key too, as filters on the series
+		QueryPlan fanOut = planSeriesFanOut(query, definition);
+		if (fanOut == null) fanOut = planFanOut(query, definition);
+		if (fanOut != null) return fanOut;
+		return planQuery(query, definition);
+	}
+
+	/***
+	 * Plans a parsed SELECT against a single partition
+	 * @param query
+	 * @param definition the table's definition or null if it couldn't be described
+	 * @return QueryPlan
+	 */
+	QueryPlan planQuery(ParsedQuery query, TableDefinition definition) {
+		String sql = query.getSql();
+		QueryPlan fetch = planFetch(query, definition);
+		if (fetch != null) return fetch;
+
+		FullColumnDescription timeColumn = TableSchemaCache.getQuantumColumn(definition);
+		long quantumMillis = TableSchemaCache.getQuantumMillis(definition);
+		if (timeColumn == null || quantumMillis <= 0) return QueryPlan.passThrough(sql, query.getTable());
+
+		// Find the single lower and upper bound on the quantum column
+		Predicate lower = null;
+		Predicate upper = null;
+		for (Predicate predicate : query.getPredicatesOn(timeColumn.getName())) {
+			if (predicate.isLowerBound() && lower == null) lower = predicate;
+			else if (predicate.isUpperBound() && upper == null) upper = predicate;
+			else return QueryPlan.passThrough(sql, query.getTable());
+		}
+		if (lower == null || upper == null) return QueryPlan.passThrough(sql, query.getTable());
+
+		Long lowerValue = Utility.parseTimestampLiteral(lower.getValues().get(0));
+		Long upperValue = Utility.parseTimestampLiteral(upper.getValues().get(0));
+		if (lowerValue == null || upperValue == null) return QueryPlan.passThrough(sql, query.getTable());
+
+		// Normalize the range to [start, end)
+		long start = lower.getOperator().equals(">") ? lowerValue + 1 : lowerValue;
+		long end = upper.getOperator().equals("<=") ? upperValue + 1 : upperValue;
+		if (end <= start) return QueryPlan.passThrough(sql, query.getTable());
+
+		TableStatistics statistics = getStatistics(query.getTable());
+		long quanta = countQuanta(start, end, quantumMillis);
+		long rangeMillis = getRangeMillis(statistics, quantumMillis);
+
+		QueryPlan plan;
+		if (!query.isSplittable() || end - start <= rangeMillis) {
+			plan = new QueryPlan(sql, query.getTable(), QueryPlan.PASS_THROUGH);
+			plan.addSubQuery(new SubQuery(sql, start, end, quanta));
+		}
+		else {
+			plan = new QueryPlan(sql, query.getTable(), QueryPlan.SPLIT);
+			plan.setParallelism(_parallelism);
+		}
+		plan.setQuantumMillis(quantumMillis);
+		plan.setStatistics(statistics);
+		plan.setTimeRange(query, timeColumn.getName(), lower, upper, start, end);
+		if (plan.getStrategy().equals(QueryPlan.SPLIT)) {
+			long alignMillis = Math.min(rangeMillis, quantumMillis);
+			for (long[] range : splitRange(start, end, alignMillis, rangeMillis)) {
+				plan.addSubQuery(plan.subQueryFor(range[0], range[1]));
+			}
+		}
+		else {
+			SubQuery subQuery = plan.getSubQueries().get(0);
+			subQuery.setEstimatedRows(statistics.estimateRows(plan.coverage(subQuery)));
+		}
+		return plan;
+	}
+
+	/***
+	 * Plans a query with IN lists on partition key columns as a FAN_OUT with one branch
+	 * for each combination of values, in the order they are listed. Each branch replaces
+	 * the IN lists with equality and is planned like any other query. The results are
+	 * concatenated, or merged in time order when the query is ORDER BY the quantum column.
+	 * @param query
+	 * @param definition
+	 * @return QueryPlan or null if the query has no IN list on the partition key or its
+	 * branches' results can't be combined (aggregates, GROUP BY, LIMIT, other ORDER BYs)
+	 */
+	QueryPlan planFanOut(ParsedQuery query, TableDefinition definition) {
+		if (definition == null) return null;
+		FullColumnDescription timeColumn = TableSchemaCache.getQuantumColumn(definition);
+		List<FullColumnDescription> partitionKey = new ArrayList<FullColumnDescription>(definition.getPartitionKeyColumnDescriptions());
+
+		List<Predicate> lists = new ArrayList<Predicate>();
+		List<List<String>> values = new ArrayList<List<String>>();
+		long branches = 1;
+		for (Predicate predicate : query.getPredicates()) {
+			if (!QueryParser.IN.equals(predicate.getOperator())) continue;
+			if (indexOf(partitionKey, predicate.getColumn()) < 0) return null;
+			if (timeColumn != null && timeColumn.getName().equalsIgnoreCase(predicate.getColumn())) return null;
+			// Duplicate values would return the same rows twice
+			List<String> distinct = new ArrayList<String>(new LinkedHashSet<String>(predicate.getValues()));
+			lists.add(predicate);
+			values.add(distinct);
+			branches *= distinct.size();
+			if (branches > _maxFanOut) return null;
+		}
+		if (lists.isEmpty() || !canCombine(query, timeColumn)) return null;
+
+		List<String> branchSql = new ArrayList<String>();
+		int[] choice = new int[lists.size()];
+		for (long branch = 0; branch < branches; branch++) {
+			// The first IN list varies slowest so branches follow the order values are listed
+			long rest = branch;
+			for (int i = lists.size() - 1; i >= 0; i--) {
+				choice[i] = (int) (rest % values.get(i).size());
+				rest /= values.get(i).size();
+			}
+			List<String> equalities = new ArrayList<String>();
+			for (int i = 0; i < lists.size(); i++) {
+				equalities.add(lists.get(i).getColumn() + " = " + values.get(i).get(choice[i]));
+			}
+			branchSql.add(buildBranch(query, new ArrayList<String>(), lists, equalities));
+		}
+		return buildFanOut(query, definition, branchSql);
+	}
+
+	/***
+	 * Plans a query that is missing equality on some of the partition key columns as a
+	 * FAN_OUT over the series registered for the table that match the partition key
+	 * predicates it does have (equality or IN)
+	 * @param query
+	 * @param definition
+	 * @return QueryPlan or null if there is no registry, the query has the whole partition
+	 * key, no series have been registered or the results can't be combined
+	 */
+	QueryPlan planSeriesFanOut(ParsedQuery query, TableDefinition definition) {
+		if (_series == null || definition == null) return null;
+		List<FullColumnDescription> columns = SeriesCatalog.getSeriesColumns(definition);
+		if (columns.isEmpty()) return null;
+
+		List<Set<String>> allowed = new ArrayList<Set<String>>();
+		List<Predicate> keyPredicates = new ArrayList<Predicate>();
+		boolean missing = false;
+		for (FullColumnDescription column : columns) {
+			Set<String> values = null;
+			for (Predicate predicate : query.getPredicatesOn(column.getName())) {
+				if (!"=".equals(predicate.getOperator()) && !QueryParser.IN.equals(predicate.getOperator())) continue;
+				Set<String> canonical = new HashSet<String>();
+				for (String literal : predicate.getValues()) {
+					String value = SeriesCatalog.canonical(literal, column.getType());
+					if (value == null) return null;
+					canonical.add(value);
+				}
+				// Several predicates on the same column must all hold
+				if (values == null) values = canonical;
+				else values.retainAll(canonical);
+				keyPredicates.add(predicate);
+			}
+			if (values == null) missing = true;
+			allowed.add(values);
+		}
+		if (!missing || !canCombine(query, TableSchemaCache.getQuantumColumn(definition))) return null;
+
+		SeriesRegistry registry = _series.getRegistry(query.getTable());
+		if (registry == null || registry.size() == 0) return null;
+		List<List<String>> series = registry.match(allowed);
+		if (series.size() > _maxFanOut) return null;
+
+		List<String> branchSql = new ArrayList<String>();
+		List<String> dropped = new ArrayList<String>();
+		for (int i = 0; i < keyPredicates.size(); i++) dropped.add(null);
+		for (List<String> literals : series) {
+			List<String> equalities = new ArrayList<String>();
+			for (int i = 0; i < columns.size(); i++) equalities.add(columns.get(i).getName() + " = " + literals.get(i));
+			branchSql.add(buildBranch(query, equalities, keyPredicates, dropped));
+		}
+		return buildFanOut(query, definition, branchSql);
+	}
+
+	/***
+	 * Returns true if the results of running the query separately for several partitions
+	 * can be combined: it selects plain columns and has no GROUP BY, LIMIT or ORDER BY other
+	 * than ORDER BY the quantum column, which must be selected
+	 */
+	private static boolean canCombine(ParsedQuery query, FullColumnDescription timeColumn) {
+		if (query.getSelectList().indexOf('(') >= 0) return false;
+		if (query.getTail() == null) return true;
+		String orderColumn = query.getAscendingOrderColumn();
+		if (orderColumn == null || timeColumn == null || !orderColumn.equalsIgnoreCase(timeColumn.getName())) return false;
+		List<String> selected = query.getSelectedColumns();
+		return selected != null && (selected.isEmpty() || indexOfName(selected, orderColumn) >= 0);
+	}
+
+	/***
+	 * Builds a FAN_OUT plan from the SQL of each branch, planning each branch like any
+	 * other query. The results are merged in time order when the query is ORDER BY the
+	 * quantum column.
+	 */
+	private QueryPlan buildFanOut(ParsedQuery query, TableDefinition definition, List<String> branchSql) {
+		QueryPlan plan = new QueryPlan(query.getSql(), query.getTable(), QueryPlan.FAN_OUT);
+		plan.setParallelism(_parallelism);
+		if (query.getTail() != null) plan.setMergeColumn(TableSchemaCache.getQuantumColumn(definition).getName());
+		plan.setQuantumMillis(TableSchemaCache.getQuantumMillis(definition));
+		plan.setStatistics(getStatistics(query.getTable()));
+		for (String sql : branchSql) {
+			ParsedQuery branchQuery = QueryParser.parse(sql);
+			if (branchQuery == null) return null;
+			QueryPlan branchPlan = planQuery(branchQuery, definition);
+			if (branchPlan.getStrategy().equals(QueryPlan.FETCH)) {
+				// Branches are combined from query results, so single rows are read as queries too
+				SubQuery subQuery = new SubQuery(branchQuery.getSql());
+				subQuery.setEstimatedRows(1);
+				plan.addSubQuery(subQuery);
+			}
+			else {
+				for (SubQuery subQuery : branchPlan.getSubQueries()) plan.addSubQuery(subQuery);
+			}
+		}
+		return plan;
+	}
+
+	/***
+	 * Rebuilds the query for one branch of a FAN_OUT: the leading predicates come first,
+	 * then the query's own predicates with each of those in replaced swapped for its
+	 * replacement (or dropped if the replacement is null)
+	 */
+	static String buildBranch(ParsedQuery query, List<String> leading, List<Predicate> replaced, List<String> replacements) {
+		List<String> predicates = new ArrayList<String>(leading);
+		for (Predicate predicate : query.getPredicates()) {
+			int index = replaced.indexOf(predicate);
+			if (index < 0) predicates.add(predicate.getText());
+			else if (replacements.get(index) != null) predicates.add(replacements.get(index));
+		}
+		StringBuilder sql = new StringBuilder();
+		sql.append("SELECT ").append(query.getSelectList()).append(" FROM ").append(query.getTable());
+		for (int i = 0; i < predicates.size(); i++) sql.append(i == 0 ? " WHERE " : " AND ").append(predicates.get(i));
+		if (query.getTail() != null) sql.append(" ").append(query.getTail());
+		return sql.toString();
+	}
+
+	/***
+	 * Plans a query as a FETCH of a single row when its WHERE clause is nothing but
+	 * equality predicates on every column of the table's primary key and it selects
+	 * plain columns with no GROUP BY, ORDER BY, LIMIT or OFFSET
+	 * @param query
+	 * @param definition
+	 * @return QueryPlan or null if the query can't be answered by a FETCH
+	 */
+	QueryPlan planFetch(ParsedQuery query, TableDefinition definition) {
+		if (definition == null || query.getTail() != null) return null;
+		List<String> selected = query.getSelectedColumns();
+		if (selected == null) return null;
+
+		List<FullColumnDescription> columns = new ArrayList<FullColumnDescription>(definition.getFullColumnDescriptions());
+		List<FullColumnDescription> localKey = getLocalKey(definition);
+		if (localKey.isEmpty() || query.getPredicates().size() != localKey.size()) return null;
+
+		Cell[] key = new Cell[localKey.size()];
+		for (Predicate predicate : query.getPredicates()) {
+			if (predicate.getColumn() == null || !"=".equals(predicate.getOperator())) return null;
+			int index = indexOf(localKey, predicate.getColumn());
+			if (index < 0 || key[index] != null) return null;
+			key[index] = Utility.getCellFromLiteral(predicate.getValues().get(0), localKey.get(index).getType());
+			if (key[index] == null) return null;
+		}
+
+		int[] projection = null;
+		if (!selected.isEmpty()) {
+			projection = new int[selected.size()];
+			for (int i = 0; i < projection.length; i++) {
+				projection[i] = indexOf(columns, selected.get(i));
+				if (projection[i] < 0) return null;
+			}
+		}
+
+		QueryPlan plan = new QueryPlan(query.getSql(), query.getTable(), QueryPlan.FETCH);
+		SubQuery subQuery = new SubQuery(query.getSql());
+		subQuery.setEstimatedRows(1);
+		plan.addSubQuery(subQuery);
+		plan.setFetch(Arrays.asList(key), columns, projection);
+		return plan;
+	}
+
+	/***
+	 * Returns the columns of the table's local (primary) key in key order
+	 * @param definition
+	 * @return List of columns
+	 */
+	static List<FullColumnDescription> getLocalKey(TableDefinition definition) {
+		List<FullColumnDescription> localKey = new ArrayList<FullColumnDescription>(definition.getLocalKeyColumnDescriptions());
+		Collections.sort(localKey, new Comparator<FullColumnDescription>() {
+			public int compare(FullColumnDescription a, FullColumnDescription b) {
+				return a.getLocalKeyOrdinal().compareTo(b.getLocalKeyOrdinal());
+			}
+		});
+		return localKey;
+	}
+
+	private static int indexOfName(List<String> names, String name) {
+		for (int i = 0; i < names.size(); i++) {
+			if (names.get(i).equalsIgnoreCase(name)) return i;
+		}
+		return -1;
+	}
+
+	private static int indexOf(List<FullColumnDescription> columns, String name) {
+		for (int i = 0; i < columns.size(); i++) {
+			if (columns.get(i).getName().equalsIgnoreCase(name)) return i;
+		}
+		return -1;
+	}
+
+	/***
+	 * Returns the length of time each sub-query should cover: at most MaxQuantaPerQuery
+	 * quanta (or fewer once Riak TS has rejected larger queries for returning too much
+	 * data), reduced so the learned rows and latency per quantum stay within the targets.
+	 * Ranges of a quantum or more are rounded down to a whole number of quanta.
+	 * @param statistics
+	 * @param quantumMillis
+	 * @return milliseconds
+	 */
+	long getRangeMillis(TableStatistics statistics, long quantumMillis) {
+		double quanta = _maxQuantaPerQuery;
+		if (statistics.getMaxSafeQuanta() > 0) quanta = Math.min(quanta, statistics.getMaxSafeQuanta());
+		if (_targetRowsPerQuery > 0 && statistics.getRowsPerQuantum() > 0) {
+			quanta = Math.min(quanta, _targetRowsPerQuery / statistics.getRowsPerQuantum());
+		}
+		if (_targetQueryMillis > 0 && statistics.getMillisPerQuantum() > 0) {
+			quanta = Math.min(quanta, _targetQueryMillis / statistics.getMillisPerQuantum());
+		}
+		long rangeMillis = Math.max(1, (long) (quanta * quantumMillis));
+		if (rangeMillis >= quantumMillis) rangeMillis = (rangeMillis / quantumMillis) * quantumMillis;
+		return rangeMillis;
+	} // Tested
+
+
+	/***
+	 * Returns the number of quanta the time range [start, end) touches
+	 * @param start epoch milliseconds, inclusive
+	 * @param end epoch milliseconds, exclusive
+	 * @param quantumMillis
+	 * @return number of quanta
+	 */
+	static long countQuanta(long start, long end, long quantumMillis) {
+		return Math.floorDiv(end - 1, quantumMillis) - Math.floorDiv(start, quantumMillis) + 1;
+	} // Tested
+
+	/***
+	 * Splits the time range [start, end) into adjacent ranges of at most rangeMillis,
+	 * with boundaries aligned on multiples of alignMillis (normally the quantum)
+	 * @param start epoch milliseconds, inclusive
+	 * @param end epoch milliseconds, exclusive
+	 * @param alignMillis
+	 * @param rangeMillis
+	 * @return List of {start, end} pairs
+	 */
+	static List<long[]> splitRange(long start, long end, long alignMillis, long rangeMillis) {
+		List<long[]> ranges = new ArrayList<long[]>();
+		long rangeStart = start;
+		long boundary = Math.floorDiv(start, alignMillis) * alignMillis + rangeMillis;
+		while (rangeStart < end) {
+			long rangeEnd = Math.min(boundary, end);
+			ranges.add(new long[] { rangeStart, rangeEnd });
+			rangeStart = rangeEnd;
+			boundary += rangeMillis;
+		}
+		return ranges;
+	} // Tested
+
+	/***
+	 * Rebuilds the query restricted to [rangeStart, rangeEnd). The original bound
+	 * predicates are kept as written at the ends of the overall range [start, end).
+	 */
+	static String buildSubQuery(ParsedQuery query, String timeColumn, Predicate lower, Predicate upper,
+			long rangeStart, long rangeEnd, long start, long end) {
+		StringBuilder sql = new StringBuilder();
+		sql.append("SELECT ").append(query.getSelectList()).append(" FROM ").append(query.getTable()).append(" WHERE ");
+		for (Predicate predicate : query.getPredicates()) {
+			if (predicate == lower || predicate == upper) continue;
+			sql.append(predicate.getText()).append(" AND ");
+		}
+		sql.append(rangeStart == start ? lower.getText() : timeColumn + " >= " + rangeStart);
+		sql.append(" AND ");
+		sql.append(rangeEnd == end ? upper.getText() : timeColumn + " < " + rangeEnd);
+		if (query.getTail() != null) sql.append(" ").append(query.getTail());
+		return sql.toString();
+	}
+
+}
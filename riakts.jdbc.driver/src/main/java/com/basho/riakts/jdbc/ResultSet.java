@@ -34,7 +34,10 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Set;
 
 public class ResultSet implements java.sql.ResultSet {
 
@@ -53,6 +56,13 @@ public class ResultSet implements java.sql.ResultSet {
 	private Object[] _currentRow;
 	private Object[] _insertRow;
 	private boolean _inserting = false;
+	private SQLWarning _warnings = null;
+	// Writes changes back to Riak TS for CONCUR_UPDATABLE result sets, otherwise null
+	private ResultSetUpdater _updater = null;
+	// New values of the current row, until updateRow or cancelRowUpdates
+	private Object[] _updateRow;
+	private Set<Object[]> _insertedRows = Collections.newSetFromMap(new IdentityHashMap<Object[], Boolean>());
+	private Set<Object[]> _updatedRows = Collections.newSetFromMap(new IdentityHashMap<Object[], Boolean>());
 	
 	
 	ResultSet() { 
@@ -62,6 +72,7 @@ public class ResultSet implements java.sql.ResultSet {
 	}
 	
 	public void close() throws SQLException {
+		if (_updater != null && !_closed) _updater.flush();
 		_rowData = null;
 		_currentRow = null;
 		_rowPosition = -1;
@@ -73,9 +84,18 @@ public class ResultSet implements java.sql.ResultSet {
 	}
 	
 	
+	/***
+	 * Makes the ResultSet updatable, its changes written to Riak TS by the updater
+	 * @param updater ResultSetUpdater, or null to leave the ResultSet read only
+	 */
+	void setUpdater(ResultSetUpdater updater) {
+		_updater = updater;
+	}
+	
 	public void moveToInsertRow() throws SQLException {
-		// Throw exception if there are no columns or rows in the QueryResult
-		if (_rsMetaData.getColumnCount() == 0 || _rsMetaData.getRowCount() == 0) throw new SQLException();
+		// Throw exception if there are no columns or rows in the QueryResult, though rows
+		// can be inserted through an updatable ResultSet that is empty
+		if (_rsMetaData.getColumnCount() == 0 || (_rsMetaData.getRowCount() == 0 && _updater == null)) throw new SQLException();
 		
 		// Create a new Object[] to store column values
 		_insertRow = new Object[_rsMetaData.getColumnCount()];
@@ -85,6 +105,16 @@ public class ResultSet implements java.sql.ResultSet {
 	}
 	
 	public void insertRow() throws SQLException {
+		if (_updater != null) {
+			if (!_inserting) throw new SQLException("Not on the insert row");
+			_updater.insert(_insertRow);
+			_insertedRows.add(_insertRow);
+			_rowData.add(_insertRow);
+			// Stay on the insert row, as JDBC expects, with its values cleared
+			_insertRow = new Object[_rsMetaData.getColumnCount()];
+			return;
+		}
+		
 		// Add the new row to the rowData ArrayList<Object[]>
 		_rowData.add(_insertRow);
 		
@@ -111,6 +141,12 @@ public class ResultSet implements java.sql.ResultSet {
 		if (_inserting) {
 			_insertRow[columnIndex] = value;
 		}
+		else if (_updater != null) {
+			// Keep the current values until updateRow
+			if (_currentRow == null) throw new SQLException("Not on a row");
+			if (_updateRow == null) _updateRow = _currentRow.clone();
+			_updateRow[columnIndex] = value;
+		}
 		else {
 			_currentRow[columnIndex] = value;
 		}
@@ -202,6 +238,7 @@ public class ResultSet implements java.sql.ResultSet {
 	 */
 	private void setCurrentRow(int i) throws SQLException {
 		_currentRow = _rowData.get(i);
+		_updateRow = null;
 	} // Tested
 	
 	public boolean isBeforeFirst() throws SQLException {
@@ -323,25 +360,26 @@ public class ResultSet implements java.sql.ResultSet {
 	}
 
 	public int getConcurrency() throws SQLException {
-		return CONCUR_READ_ONLY;
-	}
+		return _updater == null ? CONCUR_READ_ONLY : CONCUR_UPDATABLE;
+	} // Tested
 
 	public boolean rowUpdated() throws SQLException {
-		return false;
-	}
+		return _currentRow != null && _updatedRows.contains(_currentRow);
+	} // Tested
 
 	public boolean rowInserted() throws SQLException {
-		return false;
-	}
+		return _currentRow != null && _insertedRows.contains(_currentRow);
+	} // Tested
 
 	public boolean rowDeleted() throws SQLException {
 		return false;
 	}
 	
 	
-	// Update Column Methods
+	// Update Column Methods - JDBC column indexes start at 1, so as with the get methods
+	// one is subtracted from the index
 	public void updateNull(int columnIndex) throws SQLException {
-		setColumnValue(columnIndex, null);
+		setColumnValue(columnIndex - 1, null);
 	}
 	
 	public void updateNull(String columnLabel) throws SQLException {
@@ -349,7 +387,7 @@ public class ResultSet implements java.sql.ResultSet {
 	}
 	
 	public void updateBlob(int columnIndex, Blob x) throws SQLException { 
-		setColumnValue(columnIndex, x);
+		setColumnValue(columnIndex - 1, x);
 	}
 	
 	public void updateBlob(String columnLabel, Blob x) throws SQLException { 
@@ -357,7 +395,7 @@ public class ResultSet implements java.sql.ResultSet {
 	}
 
 	public void updateBoolean(int columnIndex, boolean x) throws SQLException {
-		setColumnValue(columnIndex, x);
+		setColumnValue(columnIndex - 1, x);
 	}
 	
 	public void updateBoolean(String columnLabel, boolean x) throws SQLException {
@@ -365,7 +403,7 @@ public class ResultSet implements java.sql.ResultSet {
 	}
 
 	public void updateLong(int columnIndex, long x) throws SQLException {
-		setColumnValue(columnIndex, x);
+		setColumnValue(columnIndex - 1, x);
 	}
 	
 	public void updateLong(String columnLabel, long x) throws SQLException {
@@ -373,7 +411,7 @@ public class ResultSet implements java.sql.ResultSet {
 	}
 
 	public void updateDouble(int columnIndex, double x) throws SQLException {
-		setColumnValue(columnIndex, x);
+		setColumnValue(columnIndex - 1, x);
 	}
 	
 	public void updateDouble(String columnLabel, double x) throws SQLException {
@@ -381,7 +419,7 @@ public class ResultSet implements java.sql.ResultSet {
 	}
 
 	public void updateString(int columnIndex, String x) throws SQLException {
-		setColumnValue(columnIndex, x);
+		setColumnValue(columnIndex - 1, x);
 	}
 
 	public void updateString(String columnLabel, String x) throws SQLException {
@@ -389,7 +427,7 @@ public class ResultSet implements java.sql.ResultSet {
 	}
 	
 	public void updateDate(int columnIndex, Date x) throws SQLException {
-		setColumnValue(columnIndex, x);
+		setColumnValue(columnIndex - 1, x);
 	}
 	
 	public void updateDate(String columnLabel, Date x) throws SQLException {
@@ -401,7 +439,31 @@ public class ResultSet implements java.sql.ResultSet {
 	}
 	
 	public void updateTimestamp(int columnIndex, Timestamp x) throws SQLException { 
-		setColumnValue(columnIndex, x);
+		setColumnValue(columnIndex - 1, x);
+	}
+	
+	public void updateInt(int columnIndex, int x) throws SQLException {
+		setColumnValue(columnIndex - 1, (long) x);
+	}
+	
+	public void updateInt(String columnLabel, int x) throws SQLException {
+		setColumnValue( _rsMetaData.getColumnIndexByLabel(columnLabel), (long) x);
+	}
+	
+	public void updateBytes(int columnIndex, byte[] x) throws SQLException {
+		setColumnValue(columnIndex - 1, x);
+	}
+	
+	public void updateBytes(String columnLabel, byte[] x) throws SQLException {
+		setColumnValue( _rsMetaData.getColumnIndexByLabel(columnLabel), x);
+	}
+	
+	public void updateObject(int columnIndex, Object x) throws SQLException {
+		setColumnValue(columnIndex - 1, x);
+	}
+	
+	public void updateObject(String columnLabel, Object x) throws SQLException {
+		setColumnValue( _rsMetaData.getColumnIndexByLabel(columnLabel), x);
 	}
 
 
@@ -412,10 +474,6 @@ public class ResultSet implements java.sql.ResultSet {
 	 * Method not implemented - no value returned
 	 */
 	public void updateFloat(int columnIndex, float x) throws SQLException { }
-	/***
-	 * Method not implemented - no value returned
-	 */
-	public void updateBytes(int columnIndex, byte[] x) throws SQLException { }
 	/***
 	 * Method not implemented - no value returned
 	 */
@@ -424,10 +482,6 @@ public class ResultSet implements java.sql.ResultSet {
 	 * Method not implemented - no value returned
 	 */
 	public void updateShort(int columnIndex, short x) throws SQLException { }
-	/***
-	 * Method not implemented - no value returned
-	 */
-	public void updateInt(int columnIndex, int x) throws SQLException { }
 	/***
 	 * Method not implemented - no value returned
 	 */
@@ -452,10 +506,6 @@ public class ResultSet implements java.sql.ResultSet {
 	 * Method not implemented - no value returned
 	 */
 	public void updateObject(int columnIndex, Object x, int scaleOrLength) throws SQLException { }
-	/***
-	 * Method not implemented - no value returned
-	 */
-	public void updateObject(int columnIndex, Object x) throws SQLException { }
 	/***
 	 * Method not implemented - no value returned
 	 */
@@ -484,10 +534,6 @@ public class ResultSet implements java.sql.ResultSet {
 	 * Method not implemented - no value returned
 	 */
 	public void updateObject(String columnLabel, Object x, int scaleOrLength) throws SQLException { }
-	/***
-	 * Method not implemented - no value returned
-	 */
-	public void updateObject(String columnLabel, Object x) throws SQLException { }
 	/***
 	 * Method not implemented - no value returned
 	 */
@@ -496,14 +542,6 @@ public class ResultSet implements java.sql.ResultSet {
 	 * Method not implemented - no value returned
 	 */
 	public void updateShort(String columnLabel, short x) throws SQLException { }
-	/***
-	 * Method not implemented - no value returned
-	 */
-	public void updateInt(String columnLabel, int x) throws SQLException { }
-	/***
-	 * Method not implemented - no value returned
-	 */
-	public void updateBytes(String columnLabel, byte[] x) throws SQLException { }
 	/***
 	 * Method not implemented - no value returned
 	 */
@@ -668,15 +706,32 @@ public class ResultSet implements java.sql.ResultSet {
 
 	
 	/***
-	 * Method not implemented - no value returned
+	 * Writes the new values of the current row to Riak TS, for an updatable ResultSet.
+	 * The row is buffered and stored with the rows inserted or updated after it.
 	 */
 	public void updateRow() throws SQLException {
-		
-	}
+		if (_updater == null || _inserting || _currentRow == null) throw new SQLException("No row to update");
+		if (_updateRow == null) return;
+		_updater.update(_currentRow, _updateRow);
+		System.arraycopy(_updateRow, 0, _currentRow, 0, _currentRow.length);
+		_updatedRows.add(_currentRow);
+		_updateRow = null;
+	} // Tested
 
+	/***
+	 * Removes the current row, deleting it from Riak TS by its primary key for an
+	 * updatable ResultSet. The cursor is left before the next row.
+	 */
 	public void deleteRow() throws SQLException {
+		if (_updater != null) {
+			if (_inserting || _currentRow == null) throw new SQLException("No row to delete");
+			_updater.delete(_currentRow);
+		}
 		_rowData.remove(_rowPosition);
-	}
+		_rowPosition--;
+		_currentRow = null;
+		_updateRow = null;
+	} // Tested
 
 	/***
 	 * Method not implemented - no value returned
@@ -685,19 +740,14 @@ public class ResultSet implements java.sql.ResultSet {
 		
 	}
 
-	/***
-	 * Method not implemented - no value returned
-	 */
 	public void cancelRowUpdates() throws SQLException {
-		
+		_updateRow = null;
 	}
 
-	/***
-	 * Method not implemented - no value returned
-	 */
 	public void moveToCurrentRow() throws SQLException {
-		
-	}
+		_insertRow = null;
+		_inserting = false;
+	} // Tested
 
 	/***
 	 * Method not implemented - null value returned
@@ -1126,10 +1176,21 @@ public class ResultSet implements java.sql.ResultSet {
 	
 	
 	public SQLWarning getWarnings() throws SQLException {
-		return null;
+		return _warnings;
 	}
 
-	public void clearWarnings() throws SQLException { }
+	public void clearWarnings() throws SQLException {
+		_warnings = null;
+	}
+	
+	/***
+	 * Adds a warning to the end of the ResultSet's warning chain
+	 * @param warning
+	 */
+	void addWarning(SQLWarning warning) {
+		if (_warnings == null) _warnings = warning;
+		else _warnings.setNextWarning(warning);
+	}
 
 	public String getCursorName() throws SQLException {
 		return null;
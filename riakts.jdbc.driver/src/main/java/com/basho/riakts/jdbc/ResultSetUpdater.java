@@ -0,0 +1,222 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.Blob;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.basho.riak.client.core.query.timeseries.Cell;
+import com.basho.riak.client.core.query.timeseries.FullColumnDescription;
+import com.basho.riak.client.core.query.timeseries.Row;
+import com.basho.riak.client.core.query.timeseries.TableDefinition;
+import com.basho.riakts.jdbc.QueryParser.ParsedQuery;
+
+/***
+ * Writes the changes made through a CONCUR_UPDATABLE ResultSet back to its table.
+ * Inserted and updated rows are converted to typed rows in the table's column order
+ * and buffered, then written BatchSize at a time with the timeseries Store command,
+ * when the ResultSet is closed, or when the connection runs another statement or
+ * flushInserts. Deleted rows are removed straight away with the timeseries Delete
+ * command, by primary key, after the rows buffered before them are written.
+ */
+class ResultSetUpdater {
+
+	private final Connection _connection;
+	private final String _table;
+	private final List<FullColumnDescription> _columns;
+	// Per table column: the ResultSet column (from 0) holding it, or -1
+	private final int[] _positions;
+	private final List<FullColumnDescription> _localKey;
+	// Per local key column: the ResultSet column (from 0) holding it
+	private final int[] _keyPositions;
+	private final boolean _allColumns;
+	private final int _batchSize;
+	private List<Row> _pending = new ArrayList<Row>();
+
+	private ResultSetUpdater(Connection connection, String table, List<FullColumnDescription> columns, int[] positions,
+			List<FullColumnDescription> localKey, int[] keyPositions, int batchSize) {
+		_connection = connection;
+		_table = table;
+		_columns = columns;
+		_positions = positions;
+		_localKey = localKey;
+		_keyPositions = keyPositions;
+		_batchSize = batchSize;
+		boolean allColumns = true;
+		for (int position : positions) allColumns &= position >= 0;
+		_allColumns = allColumns;
+	}
+
+	/***
+	 * Creates the updater of a query's ResultSet if the query selects plain columns of a
+	 * single table, the table's local key among them; otherwise adds a warning to the
+	 * ResultSet saying why it is read only
+	 * @param connection
+	 * @param sql the query
+	 * @param rs the query's ResultSet
+	 * @return ResultSetUpdater or null
+	 * @throws SQLException
+	 */
+	static ResultSetUpdater create(Connection connection, String sql, ResultSet rs) throws SQLException {
+		ParsedQuery query = QueryParser.parse(sql);
+		if (query == null || (query.getTail() != null && query.getTail().toUpperCase().contains("GROUP BY"))) {
+			rs.addWarning(new SQLWarning("ResultSet is read only: not a SELECT of a single table"));
+			return null;
+		}
+		TableDefinition definition = connection.getSchemaCache().getTableDefinition(query.getTable());
+		if (definition == null) {
+			rs.addWarning(new SQLWarning("ResultSet is read only: unable to describe table " + query.getTable()));
+			return null;
+		}
+		List<FullColumnDescription> columns = new ArrayList<FullColumnDescription>(definition.getFullColumnDescriptions());
+		List<String> names = new ArrayList<String>();
+		for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) names.add(rs.getMetaData().getColumnName(i));
+
+		int[] positions = new int[columns.size()];
+		int found = 0;
+		for (int c = 0; c < columns.size(); c++) {
+			positions[c] = indexOfName(names, columns.get(c).getName());
+			if (positions[c] >= 0) found++;
+		}
+		if (found != names.size()) {
+			rs.addWarning(new SQLWarning("ResultSet is read only: not every column is a column of " + query.getTable()));
+			return null;
+		}
+		List<FullColumnDescription> localKey = QueryPlanner.getLocalKey(definition);
+		int[] keyPositions = new int[localKey.size()];
+		for (int k = 0; k < localKey.size(); k++) {
+			keyPositions[k] = indexOfName(names, localKey.get(k).getName());
+			if (keyPositions[k] < 0) {
+				rs.addWarning(new SQLWarning("ResultSet is read only: primary key column " + localKey.get(k).getName()
+						+ " isn't selected"));
+				return null;
+			}
+		}
+		int batchSize = Math.max(1, DriverProperties.getInt(connection.getClientInfo(), DriverProperties.BATCH_SIZE,
+				DriverProperties.DEFAULT_BATCH_SIZE));
+		return new ResultSetUpdater(connection, query.getTable(), columns, positions, localKey, keyPositions, batchSize);
+	} // Tested
+
+	String getTable() {
+		return _table;
+	}
+
+	/***
+	 * Buffers a new row, writing the rows buffered so far once there are BatchSize
+	 * @param values the ResultSet row, columns missing from it are left null
+	 * @throws SQLException if a value can't be stored in its column, or writing failed
+	 */
+	void insert(Object[] values) throws SQLException {
+		add(toRow(values));
+	} // Tested
+
+	/***
+	 * Buffers the new values of an existing row. If its primary key changed, the row
+	 * with the old key is deleted first.
+	 * @param original the ResultSet row before the update
+	 * @param values the ResultSet row after the update
+	 * @throws SQLException if the ResultSet doesn't have every column of the table, a
+	 * value can't be stored in its column, or writing failed
+	 */
+	void update(Object[] original, Object[] values) throws SQLException {
+		// A Store replaces the whole row, so columns that weren't selected would be lost
+		if (!_allColumns) throw new SQLException("updateRow needs every column of " + _table + " in the ResultSet");
+		Row row = toRow(values);
+		List<Cell> oldKey = toKey(original);
+		if (!oldKey.equals(toKey(values))) delete(original);
+		add(row);
+	} // Tested
+
+	/***
+	 * Deletes a row by its primary key, after writing the rows buffered before it
+	 * @param values the ResultSet row
+	 * @throws SQLException
+	 */
+	void delete(Object[] values) throws SQLException {
+		List<Cell> key = toKey(values);
+		flush();
+		_connection.delete(_table, key);
+	} // Tested
+
+	/***
+	 * Writes the rows buffered so far with the timeseries Store command
+	 * @throws SQLException if any of the rows couldn't be written
+	 */
+	synchronized void flush() throws SQLException {
+		if (_pending.isEmpty()) return;
+		List<Row> rows = _pending;
+		_pending = new ArrayList<Row>();
+		_connection.removePendingUpdates(this);
+		_connection.writeBatch(Collections.singletonList(new BatchWriter.Entry(_table, rows)));
+	} // Tested
+
+	private void add(Row row) throws SQLException {
+		boolean full;
+		synchronized (this) {
+			if (_pending.isEmpty()) _connection.addPendingUpdates(this);
+			_pending.add(row);
+			full = _pending.size() >= _batchSize;
+		}
+		if (full) flush();
+	}
+
+	private Row toRow(Object[] values) throws SQLException {
+		List<Cell> cells = new ArrayList<Cell>(_columns.size());
+		for (int c = 0; c < _columns.size(); c++) {
+			cells.add(_positions[c] < 0 ? null : toCell(values[_positions[c]], _columns.get(c)));
+		}
+		for (int k = 0; k < _keyPositions.length; k++) {
+			if (values[_keyPositions[k]] == null) {
+				throw new SQLException("Primary key column " + _localKey.get(k).getName() + " can't be null");
+			}
+		}
+		return new Row(cells);
+	}
+
+	private List<Cell> toKey(Object[] values) throws SQLException {
+		List<Cell> key = new ArrayList<Cell>(_keyPositions.length);
+		for (int k = 0; k < _keyPositions.length; k++) {
+			Cell cell = toCell(values[_keyPositions[k]], _localKey.get(k));
+			if (cell == null) throw new SQLException("Primary key column " + _localKey.get(k).getName() + " can't be null");
+			key.add(cell);
+		}
+		return key;
+	}
+
+	private static Cell toCell(Object value, FullColumnDescription column) throws SQLException {
+		// Blobs read from Riak TS come back as java.sql.Blob
+		if (value instanceof Blob) value = ((Blob) value).getBytes(1, (int) ((Blob) value).length());
+		Cell cell = Utility.getCellFromObject(value, column.getType());
+		if (cell == null && value != null) {
+			throw new SQLException("Value " + (value instanceof byte[] ? Arrays.toString((byte[]) value) : value)
+					+ " can't be stored in column " + column.getName() + " of type " + column.getType());
+		}
+		return cell;
+	}
+
+	private static int indexOfName(List<String> names, String name) {
+		for (int i = 0; i < names.size(); i++) {
+			if (names.get(i).equalsIgnoreCase(name)) return i;
+		}
+		return -1;
+	}
+
+}
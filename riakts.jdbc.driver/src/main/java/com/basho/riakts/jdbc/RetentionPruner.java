@@ -0,0 +1,221 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.basho.riak.client.core.query.timeseries.FullColumnDescription;
+import com.basho.riak.client.core.query.timeseries.TableDefinition;
+
+/***
+ * Deletes rows older than a configured age from tables, every RetentionIntervalSeconds
+ * in the background. Retention lists each table and the age its rows are kept for,
+ * e.g. "weather:30d,readings:12h" (units s, m, h or d as for quanta). Each run deletes
+ * the rows between the point the previous run reached and the new cutoff with a DELETE
+ * on the table's quantum column (see BulkDeleter); the first run starts RetentionLookback
+ * (default 7d) before its cutoff. As Riak TS queries need the whole partition key,
+ * tables with more than the quantum in their partition key need the SeriesRegistry so
+ * the DELETE can be fanned out over their series.
+ */
+public class RetentionPruner {
+
+	private Connection _connection;
+	private Map<String, Long> _ages;
+	private long _lookbackMillis;
+	// Per table: the cutoff of its last successful run
+	private Map<String, Long> _prunedUntil = new ConcurrentHashMap<String, Long>();
+	private ScheduledExecutorService _scheduler;
+
+	private AtomicLong _runs = new AtomicLong();
+	private AtomicLong _prunedRows = new AtomicLong();
+	private AtomicLong _failures = new AtomicLong();
+	private volatile SQLException _lastError = null;
+
+	/***
+	 * @param connection
+	 * @param info connection properties
+	 * @throws SQLException if Retention or RetentionLookback can't be parsed
+	 */
+	RetentionPruner(Connection connection, Properties info) throws SQLException {
+		_connection = connection;
+		_ages = parseRetention(DriverProperties.getString(info, DriverProperties.RETENTION, ""));
+		String lookback = DriverProperties.getString(info, DriverProperties.RETENTION_LOOKBACK,
+				DriverProperties.DEFAULT_RETENTION_LOOKBACK);
+		_lookbackMillis = parseAge(lookback);
+		if (_lookbackMillis < 0) throw new SQLException("Invalid RetentionLookback: " + lookback);
+	}
+
+	/***
+	 * Starts pruning every intervalSeconds on a daemon thread, the first run one interval
+	 * from now
+	 * @param intervalSeconds
+	 */
+	void start(long intervalSeconds) {
+		_scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "riakts-jdbc-retention");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		long interval = Math.max(1, intervalSeconds);
+		_scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					prune();
+				}
+				catch (SQLException e) {
+					// Recorded by prune, the next run starts from the same point
+				}
+			}
+		}, interval, interval, TimeUnit.SECONDS);
+	}
+
+	void close() {
+		if (_scheduler != null) _scheduler.shutdownNow();
+	}
+
+	/***
+	 * Deletes the rows of each table older than its retention age now, rather than
+	 * waiting for the next scheduled run
+	 * @return number of rows deleted
+	 * @throws SQLException holding the first table's error, after pruning the others
+	 */
+	public synchronized long prune() throws SQLException {
+		_runs.incrementAndGet();
+		long now = System.currentTimeMillis();
+		long pruned = 0;
+		SQLException failure = null;
+		for (Map.Entry<String, Long> entry : _ages.entrySet()) {
+			String table = entry.getKey();
+			long cutoff = now - entry.getValue();
+			Long from = _prunedUntil.get(table);
+			if (from == null) from = cutoff - _lookbackMillis;
+			if (cutoff <= from) continue;
+			try {
+				TableDefinition definition = _connection.getSchemaCache().getTableDefinition(table);
+				FullColumnDescription timeColumn = TableSchemaCache.getQuantumColumn(definition);
+				if (timeColumn == null) throw new SQLException("Table " + table + " has no quantum to prune by");
+				// Straight to the deleter: flushing the application's pending writes from
+				// this thread would race its own flushes and take their errors as ours
+				long rows = _connection.getBulkDeleter().delete("DELETE FROM " + table + " WHERE " + timeColumn.getName()
+						+ " >= " + from + " AND " + timeColumn.getName() + " < " + cutoff);
+				_prunedUntil.put(table, cutoff);
+				_prunedRows.addAndGet(rows);
+				pruned += rows;
+			}
+			catch (SQLException e) {
+				_failures.incrementAndGet();
+				_lastError = e;
+				if (failure == null) failure = e;
+			}
+		}
+		if (failure != null) throw failure;
+		return pruned;
+	} // Tested
+
+	/***
+	 * Parses a Retention property of table:age pairs separated by commas
+	 * @param retention
+	 * @return Map of table name to age in milliseconds, in the order listed
+	 * @throws SQLException if a pair or age can't be parsed
+	 */
+	static Map<String, Long> parseRetention(String retention) throws SQLException {
+		Map<String, Long> ages = new LinkedHashMap<String, Long>();
+		for (String pair : retention.split(",")) {
+			if (pair.trim().length() == 0) continue;
+			int colon = pair.lastIndexOf(':');
+			long age = colon <= 0 ? -1 : parseAge(pair.substring(colon + 1));
+			if (age <= 0) throw new SQLException("Invalid Retention entry, expected table:age: " + pair.trim());
+			ages.put(pair.substring(0, colon).trim(), age);
+		}
+		return Collections.unmodifiableMap(ages);
+	} // Tested
+
+	/***
+	 * Parses an age such as 30d, 12h, 15m or 90s, or a number of milliseconds
+	 * @param age
+	 * @return milliseconds, or -1 if the age can't be parsed
+	 */
+	static long parseAge(String age) {
+		String value = age.trim().toLowerCase();
+		if (value.length() == 0) return -1;
+		TimeUnit unit = TimeUnit.MILLISECONDS;
+		switch (value.charAt(value.length() - 1)) {
+			case 'd': unit = TimeUnit.DAYS; break;
+			case 'h': unit = TimeUnit.HOURS; break;
+			case 'm': unit = TimeUnit.MINUTES; break;
+			case 's': unit = TimeUnit.SECONDS; break;
+		}
+		if (unit != TimeUnit.MILLISECONDS) value = value.substring(0, value.length() - 1).trim();
+		try {
+			long amount = Long.parseLong(value);
+			return amount < 0 ? -1 : unit.toMillis(amount);
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	} // Tested
+
+
+	/***
+	 * Returns the age rows of each table are kept for
+	 * @return Map of table name to milliseconds
+	 */
+	public Map<String, Long> getRetention() {
+		return _ages;
+	}
+
+	/***
+	 * Returns the time each table has been pruned up to
+	 * @param table
+	 * @return epoch milliseconds, or null if the table hasn't been pruned yet
+	 */
+	public Long getPrunedUntil(String table) {
+		return _prunedUntil.get(table);
+	}
+
+	public long getRuns() {
+		return _runs.get();
+	}
+
+	public long getPrunedRows() {
+		return _prunedRows.get();
+	}
+
+	public long getFailures() {
+		return _failures.get();
+	}
+
+	/***
+	 * Returns the error of the last table that failed to be pruned
+	 * @return SQLException or null
+	 */
+	public SQLException getLastError() {
+		return _lastError;
+	}
+
+}
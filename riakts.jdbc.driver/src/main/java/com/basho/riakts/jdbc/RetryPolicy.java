@@ -0,0 +1,192 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.basho.riak.client.core.NoNodesAvailableException;
+
+/***
+ * Decides whether a request that failed should be sent again, and how long to wait
+ * first. Only errors that say nothing about the request itself are retried: no node
+ * being available, connection failures, timeouts and nodes reporting that they are
+ * overloaded. Riak TS writes are idempotent by primary key, so writes are retried the
+ * same as reads. Waits grow exponentially from RetryBaseDelayMillis up to
+ * RetryMaxDelayMillis, each chosen at random up to that limit ("full jitter") so that
+ * clients that failed together don't retry together.
+ */
+public class RetryPolicy {
+
+	private final static String[] RETRYABLE_MESSAGES = { "overload", "timeout", "timed out", "unavailable",
+			"insufficient_vnodes", "all_nodes_down" };
+
+	private int _maxAttempts;
+	private long _baseDelayMillis;
+	private long _maxDelayMillis;
+
+	private AtomicLong _retries = new AtomicLong();
+	private AtomicLong _recoveries = new AtomicLong();
+	private AtomicLong _giveUps = new AtomicLong();
+
+	RetryPolicy(Properties info) {
+		_maxAttempts = Math.max(1, DriverProperties.getInt(info, DriverProperties.RETRY_MAX_ATTEMPTS,
+				DriverProperties.DEFAULT_RETRY_MAX_ATTEMPTS));
+		_baseDelayMillis = Math.max(0, DriverProperties.getInt(info, DriverProperties.RETRY_BASE_DELAY_MILLIS,
+				DriverProperties.DEFAULT_RETRY_BASE_DELAY_MILLIS));
+		_maxDelayMillis = Math.max(_baseDelayMillis, DriverProperties.getInt(info, DriverProperties.RETRY_MAX_DELAY_MILLIS,
+				DriverProperties.DEFAULT_RETRY_MAX_DELAY_MILLIS));
+	}
+
+	public int getMaxAttempts() {
+		return _maxAttempts;
+	}
+
+	/***
+	 * Runs an operation, running it again while it fails with a retryable error and
+	 * attempts remain
+	 * @param operation
+	 * @return the operation's result
+	 * @throws ExecutionException holding the last error if the operation didn't succeed
+	 * @throws InterruptedException
+	 */
+	<T> T call(Callable<T> operation) throws ExecutionException, InterruptedException {
+		return retry(operation, null);
+	}
+
+	/***
+	 * Retries an operation whose first attempt, made elsewhere (e.g. asynchronously),
+	 * failed with the error passed in
+	 * @param operation
+	 * @param failure error of the first attempt, or null if it hasn't been made
+	 * @return the operation's result
+	 * @throws ExecutionException holding the last error if the operation didn't succeed
+	 * @throws InterruptedException
+	 */
+	<T> T retry(Callable<T> operation, Throwable failure) throws ExecutionException, InterruptedException {
+		Throwable error = failure;
+		int attempts = failure == null ? 0 : 1;
+		while (true) {
+			if (error != null) {
+				if (!shouldRetry(error, attempts)) throw new ExecutionException(error);
+				Thread.sleep(getBackoffMillis(attempts));
+			}
+			try {
+				T result = operation.call();
+				if (attempts > 0) _recoveries.incrementAndGet();
+				return result;
+			}
+			catch (InterruptedException e) {
+				throw e;
+			}
+			catch (ExecutionException e) {
+				error = e.getCause();
+			}
+			catch (Exception e) {
+				error = e;
+			}
+			attempts++;
+		}
+	} // Tested
+
+	/***
+	 * Returns true if a request that has failed attempts times, most recently with the
+	 * error passed in, should be sent again, counting the retry or the give up
+	 * @param error
+	 * @param attempts
+	 * @return True or False
+	 */
+	boolean shouldRetry(Throwable error, int attempts) {
+		if (!isRetryable(error)) return false;
+		if (attempts >= _maxAttempts) {
+			_giveUps.incrementAndGet();
+			return false;
+		}
+		_retries.incrementAndGet();
+		return true;
+	}
+
+	/***
+	 * Returns how long to wait before the retry that follows the attempts made so far:
+	 * a random time up to RetryBaseDelayMillis doubled for each attempt after the first,
+	 * capped at RetryMaxDelayMillis
+	 * @param attempts
+	 * @return milliseconds
+	 */
+	long getBackoffMillis(int attempts) {
+		long limit = _baseDelayMillis << Math.min(30, Math.max(0, attempts - 1));
+		limit = Math.min(_maxDelayMillis, limit);
+		return limit <= 0 ? 0 : ThreadLocalRandom.current().nextLong(limit + 1);
+	} // Tested
+
+	/***
+	 * Returns true if the error is one that a later attempt of the same request may not
+	 * get: no node available, a connection failure, a timeout or an overloaded node
+	 * @param error
+	 * @return True or False
+	 */
+	static boolean isRetryable(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if (cause instanceof NoNodesAvailableException || cause instanceof IOException
+					|| cause instanceof TimeoutException) return true;
+			String message = cause.getMessage();
+			if (message == null) continue;
+			message = message.toLowerCase();
+			for (String retryable : RETRYABLE_MESSAGES) {
+				if (message.contains(retryable)) return true;
+			}
+		}
+		return false;
+	} // Tested
+
+
+	/***
+	 * Returns the number of requests sent again after a retryable error
+	 * @return long
+	 */
+	public long getRetries() {
+		return _retries.get();
+	}
+
+	/***
+	 * Returns the number of requests that succeeded after being retried
+	 * @return long
+	 */
+	public long getRecoveries() {
+		return _recoveries.get();
+	}
+
+	/***
+	 * Returns the number of requests that still failed with a retryable error after
+	 * RetryMaxAttempts attempts
+	 * @return long
+	 */
+	public long getGiveUps() {
+		return _giveUps.get();
+	}
+
+	public void resetMetrics() {
+		_retries.set(0);
+		_recoveries.set(0);
+		_giveUps.set(0);
+	}
+
+}
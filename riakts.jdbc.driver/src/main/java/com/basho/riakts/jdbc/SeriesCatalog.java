@@ -0,0 +1,367 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.basho.riak.client.api.RiakClient;
+import com.basho.riak.client.api.commands.timeseries.Query;
+import com.basho.riak.client.core.query.timeseries.Cell;
+import com.basho.riak.client.core.query.timeseries.ColumnDescription;
+import com.basho.riak.client.core.query.timeseries.FullColumnDescription;
+import com.basho.riak.client.core.query.timeseries.QueryResult;
+import com.basho.riak.client.core.query.timeseries.Row;
+import com.basho.riak.client.core.query.timeseries.TableDefinition;
+import com.basho.riakts.jdbc.QueryParser.ParsedInsert;
+import com.basho.riakts.jdbc.QueryParser.Token;
+
+/***
+ * Keeps a SeriesRegistry for each table, learning series from the INSERT statements
+ * run through the driver. When SeriesTable is set the registries are also persisted
+ * to, and loaded from, that Riak TS table:
+ *
+ * CREATE TABLE SeriesRegistry (table_name VARCHAR NOT NULL, registered TIMESTAMP NOT NULL,
+ *   series VARCHAR NOT NULL, PRIMARY KEY ((table_name, QUANTUM(registered, 365, 'd')),
+ *   table_name, registered, series))
+ *
+ * Each row holds one series as its SQL literals separated by commas. Registries are
+ * refreshed every SeriesRefreshSeconds by reading only the rows registered since the
+ * last refresh. Series that couldn't be written to the side table are kept and written
+ * again with the next new series or refresh of their table.
+ */
+public class SeriesCatalog {
+
+	// Rows registered this close to a refresh are read again in case of clock skew between clients
+	private final static long CLOCK_SKEW_MILLIS = 60000;
+
+	private RiakClient _client;
+	private TableSchemaCache _schemaCache;
+	private String _sideTable;
+	private long _refreshMillis;
+	private ConcurrentMap<String, Entry> _entries = new ConcurrentHashMap<String, Entry>();
+
+	private AtomicLong _failedPersists = new AtomicLong();
+
+	SeriesCatalog(RiakClient client, TableSchemaCache schemaCache, Properties info) {
+		_client = client;
+		_schemaCache = schemaCache;
+		_sideTable = DriverProperties.getString(info, DriverProperties.SERIES_TABLE, null);
+		if (_sideTable != null && _sideTable.trim().length() == 0) _sideTable = null;
+		_refreshMillis = TimeUnit.SECONDS.toMillis(Math.max(0, DriverProperties.getInt(info,
+				DriverProperties.SERIES_REFRESH_SECONDS, DriverProperties.DEFAULT_SERIES_REFRESH_SECONDS)));
+	}
+
+	/***
+	 * Returns the registry of a table, first reading any series added to the side
+	 * table since the last refresh if a refresh is due
+	 * @param table
+	 * @return SeriesRegistry or null if the table can't be described or has no series columns
+	 */
+	public SeriesRegistry getRegistry(String table) {
+		Entry entry = getEntry(table);
+		if (entry == null) return null;
+		if (_sideTable != null && System.currentTimeMillis() - entry.lastRefresh >= _refreshMillis) {
+			try {
+				refresh(table);
+			}
+			catch (SQLException e) {
+				// Keep using the series already known, the next query tries again
+			}
+		}
+		return entry.registry;
+	}
+
+	/***
+	 * Reads the series added to the side table since the last refresh
+	 * @param table
+	 * @return number of series that weren't already registered
+	 * @throws SQLException
+	 */
+	public int refresh(String table) throws SQLException {
+		Entry entry = getEntry(table);
+		if (entry == null || _sideTable == null) return 0;
+		synchronized (entry) {
+			long now = System.currentTimeMillis();
+			long from = Math.max(0, entry.loadedUntil - CLOCK_SKEW_MILLIS);
+			String sql = "SELECT series FROM " + _sideTable + " WHERE table_name = " + quote(entry.name)
+					+ " AND registered >= " + from + " AND registered < " + (now + CLOCK_SKEW_MILLIS);
+			QueryResult result;
+			try {
+				result = _client.execute(new Query.Builder(sql).build());
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException(e);
+			}
+			catch (Exception e) {
+				throw new SQLException(e);
+			}
+			int added = 0;
+			for (Row row : result) {
+				Cell cell = row.iterator().next();
+				if (cell == null || !cell.hasVarcharValue()) continue;
+				List<String> series = parseSeries(cell.getVarcharAsUTF8String(), entry.columns);
+				if (series != null && entry.registry.add(series)) added++;
+			}
+			entry.loadedUntil = now;
+			entry.lastRefresh = now;
+			// The side table is answering, so write any series it missed before
+			persist(entry, new ArrayList<List<String>>());
+			return added;
+		}
+	}
+
+	/***
+	 * Registers the series of each row of an INSERT statement that has run successfully,
+	 * adding new ones to the side table
+	 * @param sql
+	 */
+	void recordInsert(String sql) {
+		ParsedInsert insert = QueryParser.parseInsert(sql);
+		if (insert == null) return;
+		Entry entry = getEntry(insert.getTable());
+		if (entry == null) return;
+
+		List<FullColumnDescription> tableColumns = new ArrayList<FullColumnDescription>(
+				_schemaCache.getTableDefinition(insert.getTable()).getFullColumnDescriptions());
+		int[] positions = new int[entry.columns.size()];
+		for (int i = 0; i < positions.length; i++) {
+			String name = entry.columns.get(i).getName();
+			positions[i] = -1;
+			List<String> names = insert.getColumns();
+			for (int c = 0; c < (names == null ? tableColumns.size() : names.size()); c++) {
+				String column = names == null ? tableColumns.get(c).getName() : names.get(c);
+				if (column.equalsIgnoreCase(name)) positions[i] = c;
+			}
+			if (positions[i] < 0) return;
+		}
+
+		List<List<String>> added = new ArrayList<List<String>>();
+		for (List<String> row : insert.getRows()) {
+			List<String> literals = new ArrayList<String>();
+			for (int i = 0; i < positions.length; i++) {
+				if (positions[i] >= row.size()) return;
+				literals.add(row.get(positions[i]));
+			}
+			List<String> series = canonical(literals, entry.columns);
+			if (series != null && entry.registry.add(series)) added.add(series);
+		}
+		persist(entry, added);
+	}
+
+	/***
+	 * Registers the series of rows written with the timeseries Store command, adding
+	 * new ones to the side table
+	 * @param table
+	 * @param rows cells in the table's column order
+	 */
+	void recordRows(String table, List<Row> rows) {
+		Entry entry = getEntry(table);
+		if (entry == null) return;
+		List<FullColumnDescription> tableColumns = new ArrayList<FullColumnDescription>(
+				_schemaCache.getTableDefinition(table).getFullColumnDescriptions());
+		int[] positions = new int[entry.columns.size()];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = -1;
+			for (int c = 0; c < tableColumns.size(); c++) {
+				if (tableColumns.get(c).getName().equals(entry.columns.get(i).getName())) positions[i] = c;
+			}
+		}
+
+		List<List<String>> added = new ArrayList<List<String>>();
+		for (Row row : rows) {
+			List<Cell> cells = row.getCellsCopy();
+			List<String> literals = new ArrayList<String>();
+			for (int position : positions) {
+				String literal = position < 0 || position >= cells.size() ? null : Utility.getLiteralFromCell(cells.get(position));
+				if (literal == null) break;
+				literals.add(literal);
+			}
+			if (literals.size() < positions.length) continue;
+			List<String> series = canonical(literals, entry.columns);
+			if (series != null && entry.registry.add(series)) added.add(series);
+		}
+		persist(entry, added);
+	}
+
+	/***
+	 * Writes new series to the side table, along with any an earlier write failed to.
+	 * The series stay registered on this connection if the write fails, and are kept to
+	 * be written again with the table's next new series or refresh.
+	 */
+	private void persist(Entry entry, List<List<String>> series) {
+		if (_sideTable == null) return;
+		List<List<String>> pending;
+		synchronized (entry.unpersisted) {
+			entry.unpersisted.addAll(series);
+			if (entry.unpersisted.isEmpty()) return;
+			pending = new ArrayList<List<String>>(entry.unpersisted);
+			entry.unpersisted.clear();
+		}
+		long now = System.currentTimeMillis();
+		StringBuilder sql = new StringBuilder("INSERT INTO ").append(_sideTable).append(" VALUES ");
+		for (int i = 0; i < pending.size(); i++) {
+			if (i > 0) sql.append(", ");
+			sql.append("(").append(quote(entry.name)).append(", ").append(now).append(", ")
+					.append(quote(joinSeries(pending.get(i)))).append(")");
+		}
+		try {
+			_client.execute(new Query.Builder(sql.toString()).build());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failedPersist(entry, pending);
+		}
+		catch (Exception e) {
+			failedPersist(entry, pending);
+		}
+	}
+
+	private void failedPersist(Entry entry, List<List<String>> series) {
+		_failedPersists.incrementAndGet();
+		synchronized (entry.unpersisted) {
+			entry.unpersisted.addAll(0, series);
+		}
+	}
+
+	/***
+	 * Returns the number of writes of series to the side table that failed
+	 * @return long
+	 */
+	public long getFailedPersists() {
+		return _failedPersists.get();
+	}
+
+	/***
+	 * Returns the number of series waiting to be written to the side table again
+	 * @return int
+	 */
+	public int getUnpersistedSeries() {
+		int count = 0;
+		for (Entry entry : _entries.values()) {
+			synchronized (entry.unpersisted) {
+				count += entry.unpersisted.size();
+			}
+		}
+		return count;
+	}
+
+	private Entry getEntry(String table) {
+		String key = table.toLowerCase();
+		Entry entry = _entries.get(key);
+		if (entry == null) {
+			TableDefinition definition = _schemaCache.getTableDefinition(table);
+			if (definition == null) return null;
+			List<FullColumnDescription> columns = getSeriesColumns(definition);
+			if (columns.isEmpty()) return null;
+			entry = new Entry(key, columns);
+			Entry existing = _entries.putIfAbsent(key, entry);
+			if (existing != null) entry = existing;
+		}
+		return entry;
+	}
+
+	/***
+	 * Returns the partition key columns other than the quantum, in partition key order
+	 * @param definition
+	 * @return List of columns
+	 */
+	static List<FullColumnDescription> getSeriesColumns(TableDefinition definition) {
+		FullColumnDescription quantum = TableSchemaCache.getQuantumColumn(definition);
+		List<FullColumnDescription> columns = new ArrayList<FullColumnDescription>();
+		for (FullColumnDescription column : definition.getPartitionKeyColumnDescriptions()) {
+			if (quantum == null || !quantum.getName().equals(column.getName())) columns.add(column);
+		}
+		Collections.sort(columns, new Comparator<FullColumnDescription>() {
+			public int compare(FullColumnDescription a, FullColumnDescription b) {
+				return a.getPartitionKeyOrdinal().compareTo(b.getPartitionKeyOrdinal());
+			}
+		});
+		return columns;
+	}
+
+	/***
+	 * Returns the canonical form of a literal for a column type, so that e.g. 'a' and
+	 * timestamps written as dates or epoch milliseconds match
+	 * @param literal
+	 * @param type
+	 * @return literal or null if it isn't a valid value for the type
+	 */
+	static String canonical(String literal, ColumnDescription.ColumnType type) {
+		return Utility.getLiteralFromCell(Utility.getCellFromLiteral(literal, type));
+	} // Tested
+
+	private static List<String> canonical(List<String> literals, List<FullColumnDescription> columns) {
+		List<String> series = new ArrayList<String>();
+		for (int i = 0; i < columns.size(); i++) {
+			String literal = canonical(literals.get(i), columns.get(i).getType());
+			if (literal == null) return null;
+			series.add(literal);
+		}
+		return series;
+	}
+
+	static String joinSeries(List<String> series) {
+		StringBuilder text = new StringBuilder();
+		for (String literal : series) {
+			if (text.length() > 0) text.append(", ");
+			text.append(literal);
+		}
+		return text.toString();
+	}
+
+	static List<String> parseSeries(String text, List<FullColumnDescription> columns) {
+		List<Token> tokens = QueryParser.tokenize(text);
+		if (tokens == null || tokens.size() != columns.size() * 2 - 1) return null;
+		List<String> literals = new ArrayList<String>();
+		for (int i = 0; i < tokens.size(); i += 2) {
+			if (!tokens.get(i).isLiteral() || (i > 0 && !tokens.get(i - 1).is(","))) return null;
+			literals.add(tokens.get(i).text);
+		}
+		return canonical(literals, columns);
+	} // Tested
+
+	private static String quote(String value) {
+		return "'" + value.replace("'", "''") + "'";
+	}
+
+
+	private static class Entry {
+		final String name;
+		final List<FullColumnDescription> columns;
+		final SeriesRegistry registry;
+		// Series the side table hasn't been written with yet
+		final List<List<String>> unpersisted = new ArrayList<List<String>>();
+		volatile long loadedUntil = 0;
+		volatile long lastRefresh = Long.MIN_VALUE / 2;
+
+		Entry(String name, List<FullColumnDescription> columns) {
+			this.name = name;
+			this.columns = columns;
+			this.registry = new SeriesRegistry(columns.size());
+		}
+	}
+
+}
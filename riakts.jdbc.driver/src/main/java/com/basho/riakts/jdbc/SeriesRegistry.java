@@ -0,0 +1,180 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/***
+ * The set of series (distinct values of the partition key columns other than the
+ * quantum) known for a table. Each column's values are dictionary encoded and the
+ * series are stored as packed arrays of dictionary ids with an open addressing hash
+ * table on top, so a registry of a million series costs a few bytes per series
+ * rather than a list of strings each.
+ */
+public class SeriesRegistry {
+
+	private final static int INITIAL_CAPACITY = 64;
+
+	private final int _width;
+	// Per column: literal -> id, and id -> literal
+	private final List<Map<String, Integer>> _ids = new ArrayList<Map<String, Integer>>();
+	private final List<List<String>> _values = new ArrayList<List<String>>();
+	// Series i is stored in _keys[i * _width] ... _keys[i * _width + _width - 1]
+	private int[] _keys;
+	private int _count = 0;
+	// Series index + 1 for each used slot, 0 for an empty slot
+	private int[] _slots;
+
+	/***
+	 * @param width number of columns in a series key
+	 */
+	SeriesRegistry(int width) {
+		_width = width;
+		for (int i = 0; i < width; i++) {
+			_ids.add(new HashMap<String, Integer>());
+			_values.add(new ArrayList<String>());
+		}
+		_keys = new int[INITIAL_CAPACITY * width];
+		_slots = new int[INITIAL_CAPACITY * 2];
+	}
+
+	public int getWidth() {
+		return _width;
+	}
+
+	public synchronized int size() {
+		return _count;
+	}
+
+	/***
+	 * Adds a series
+	 * @param literals canonical SQL literal of each column's value
+	 * @return True if the series wasn't already registered
+	 */
+	public synchronized boolean add(List<String> literals) {
+		if (literals.size() != _width) throw new IllegalArgumentException("Series must have " + _width + " values");
+		int[] key = new int[_width];
+		for (int i = 0; i < _width; i++) {
+			Integer id = _ids.get(i).get(literals.get(i));
+			if (id == null) {
+				id = _values.get(i).size();
+				_ids.get(i).put(literals.get(i), id);
+				_values.get(i).add(literals.get(i));
+			}
+			key[i] = id;
+		}
+
+		int slot = findSlot(key);
+		if (_slots[slot] != 0) return false;
+		if (_count * _width == _keys.length) _keys = Arrays.copyOf(_keys, _keys.length * 2);
+		System.arraycopy(key, 0, _keys, _count * _width, _width);
+		_count++;
+		_slots[slot] = _count;
+		// Keep the hash table at most half full
+		if (_count * 2 > _slots.length) rehash(_slots.length * 2);
+		return true;
+	} // Tested
+
+	/***
+	 * Returns true if the series is registered
+	 * @param literals canonical SQL literal of each column's value
+	 * @return True or False
+	 */
+	public synchronized boolean contains(List<String> literals) {
+		int[] key = new int[_width];
+		for (int i = 0; i < _width; i++) {
+			Integer id = _ids.get(i).get(literals.get(i));
+			if (id == null) return false;
+			key[i] = id;
+		}
+		return _slots[findSlot(key)] != 0;
+	}
+
+	/***
+	 * Returns the registered series whose value for each column is one of those allowed
+	 * @param allowed canonical literals allowed for each column, null for any value
+	 * @return List of series in the order they were registered
+	 */
+	public synchronized List<List<String>> match(List<Set<String>> allowed) {
+		// Translate the allowed literals to ids once rather than comparing strings per series
+		boolean[][] allowedIds = new boolean[_width][];
+		for (int i = 0; i < _width; i++) {
+			if (allowed == null || allowed.get(i) == null) continue;
+			allowedIds[i] = new boolean[_values.get(i).size()];
+			for (String literal : allowed.get(i)) {
+				Integer id = _ids.get(i).get(literal);
+				if (id != null) allowedIds[i][id] = true;
+			}
+		}
+
+		List<List<String>> series = new ArrayList<List<String>>();
+		for (int s = 0; s < _count; s++) {
+			boolean matches = true;
+			for (int i = 0; i < _width && matches; i++) {
+				matches = allowedIds[i] == null || allowedIds[i][_keys[s * _width + i]];
+			}
+			if (matches) series.add(get(s));
+		}
+		return series;
+	} // Tested
+
+	private List<String> get(int index) {
+		List<String> literals = new ArrayList<String>(_width);
+		for (int i = 0; i < _width; i++) literals.add(_values.get(i).get(_keys[index * _width + i]));
+		return literals;
+	}
+
+	/***
+	 * Returns the slot holding the key, or the empty slot it would go in
+	 */
+	private int findSlot(int[] key) {
+		int mask = _slots.length - 1;
+		int slot = hash(key, 0) & mask;
+		while (_slots[slot] != 0 && !equalsKey(_slots[slot] - 1, key)) slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private int hash(int[] values, int offset) {
+		int hash = 1;
+		for (int i = 0; i < _width; i++) hash = 31 * hash + values[offset + i];
+		// Spread the bits so sequential ids don't cluster
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+
+	private boolean equalsKey(int index, int[] key) {
+		for (int i = 0; i < _width; i++) {
+			if (_keys[index * _width + i] != key[i]) return false;
+		}
+		return true;
+	}
+
+	private void rehash(int capacity) {
+		_slots = new int[capacity];
+		int mask = capacity - 1;
+		for (int s = 0; s < _count; s++) {
+			int slot = hash(_keys, s * _width) & mask;
+			while (_slots[slot] != 0) slot = (slot + 1) & mask;
+			_slots[slot] = s + 1;
+		}
+	}
+
+}
@@ -15,59 +15,89 @@
  */
 package com.basho.riakts.jdbc;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.basho.riak.client.api.RiakClient;
-import com.basho.riak.client.api.commands.timeseries.Query;
-import com.basho.riak.client.core.query.timeseries.QueryResult;
 
 public class Statement implements java.sql.Statement {
 	
+	private com.basho.riakts.jdbc.Connection _connection;
+	// The connection the statement was created through, returned by getConnection
+	private Connection _handle;
 	private RiakClient _client;
 	private ResultSet _resultSet;
 	private boolean _isClosed;
+	private int _concurrency;
+	private List<String> _batch = new ArrayList<String>();
 	
 	
-	Statement(RiakClient client, int type, int concurrency, int holdability) {
-		if ( type != 0 || concurrency != 0 || holdability != 0 )
-            throw new UnsupportedOperationException(  );
-		_client = client;
+	Statement(com.basho.riakts.jdbc.Connection connection, Connection handle, int type, int concurrency, int holdability) {
+		checkResultSetOptions(type, concurrency, holdability);
+		_connection = connection;
+		_handle = handle;
+		_concurrency = concurrency == 0 ? ResultSet.CONCUR_READ_ONLY : concurrency;
+		_client = connection._client;
 		_isClosed = false;
 	}
 	
 	public int executeUpdate(String sql) throws SQLException {
-		Query query = new Query.Builder(sql).build();
-		try {
-			QueryResult queryResult = _client.execute(query);
-			return queryResult.getRowsCount();
-		}
-		catch (Exception e) {
-			throw new SQLException(e);
-		}
+		return _connection.executeUpdate(sql);
 	} // Tested
 
 	public ResultSet executeQuery(String sql) throws SQLException {
-		try {
-			_resultSet = Utility.query(_client, sql);
-			return _resultSet;
-		} 
-		catch (Exception e) {
-			throw new SQLException(e);
-		}
+		_resultSet = _connection.query(sql, _concurrency);
+		return _resultSet;
 	} // Tested
 	
+	/***
+	 * Runs an INSERT or DELETE as executeUpdate does and returns false, otherwise runs the
+	 * statement as a query
+	 */
 	public boolean execute(String sql) throws SQLException {
-		try {
-			_resultSet = Utility.query(_client, sql);
-			return true;
-		} 
-		catch (Exception e) {
-			throw new SQLException();
+		if (_connection.executeWrite(sql) >= 0) {
+			_resultSet = null;
+			return false;
 		}
+		_resultSet = _connection.query(sql, _concurrency);
+		return true;
+	} // Tested
+	
+	/***
+	 * Throws UnsupportedOperationException unless the ResultSet type, concurrency and
+	 * holdability are ones the driver supports, 0 standing for the default of each.
+	 * ResultSets are held in memory, so TYPE_SCROLL_INSENSITIVE is the same as
+	 * TYPE_FORWARD_ONLY; CONCUR_UPDATABLE ResultSets write their changes to Riak TS.
+	 * @param type
+	 * @param concurrency
+	 * @param holdability
+	 */
+	static void checkResultSetOptions(int type, int concurrency, int holdability) {
+		if (type != 0 && type != ResultSet.TYPE_FORWARD_ONLY && type != ResultSet.TYPE_SCROLL_INSENSITIVE)
+			throw new UnsupportedOperationException("ResultSet type " + type);
+		if (concurrency != 0 && concurrency != ResultSet.CONCUR_READ_ONLY && concurrency != ResultSet.CONCUR_UPDATABLE)
+			throw new UnsupportedOperationException("ResultSet concurrency " + concurrency);
+		if (holdability != 0 && holdability != ResultSet.HOLD_CURSORS_OVER_COMMIT)
+			throw new UnsupportedOperationException("ResultSet holdability " + holdability);
 	} // Tested
+	
+	/***
+	 * Returns the plan the driver would use to execute a query without running it,
+	 * the same output as executeQuery("EXPLAIN " + sql). Available via
+	 * statement.unwrap(com.basho.riakts.jdbc.Statement.class).explain(sql)
+	 * @param sql
+	 * @return ResultSet with one row per sub-query
+	 * @throws SQLException
+	 */
+	public ResultSet explain(String sql) throws SQLException {
+		_resultSet = _connection.explain(sql);
+		return _resultSet;
+	}
 
 	public ResultSet getResultSet() throws SQLException {
 		return _resultSet;
@@ -76,6 +106,7 @@ public class Statement implements java.sql.Statement {
 	public void close() throws SQLException {
 		_resultSet = null;
 		_client = null;
+		_connection = null;
 		_isClosed = true;
 	} // Tested
 	
@@ -115,8 +146,7 @@ public class Statement implements java.sql.Statement {
 	
 	
 	public Connection getConnection() throws SQLException {
-		// TODO Auto-generated method stub
-		return null;
+		return _handle;
 	}
 
 	
@@ -181,7 +211,7 @@ public class Statement implements java.sql.Statement {
 	}
 
 	public int getResultSetConcurrency() throws SQLException {
-		return 0;
+		return _concurrency;
 	}
 
 	public int getResultSetType() throws SQLException {
@@ -189,16 +219,26 @@ public class Statement implements java.sql.Statement {
 	}
 
 	public void addBatch(String sql) throws SQLException {
-		
-	}
+		_batch.add(sql);
+	} // Tested
 
 	public void clearBatch() throws SQLException {
-		
+		_batch.clear();
 	}
 
+	/***
+	 * Runs the statements added with addBatch. Rows of INSERT statements are written
+	 * BatchSize at a time with the timeseries Store command rather than one statement per
+	 * round trip. The batch is cleared whether or not every statement succeeds.
+	 * @return update count of each statement, the number of rows written for INSERTs
+	 * @throws BatchUpdateException if any statement failed, after running the others
+	 */
 	public int[] executeBatch() throws SQLException {
-		throw new UnsupportedOperationException(  );
-	}
+		List<BatchWriter.Entry> batch = new ArrayList<BatchWriter.Entry>();
+		for (String sql : _batch) batch.add(new BatchWriter.Entry(sql));
+		_batch.clear();
+		return _connection.executeBatch(batch);
+	} // Tested
 
 	public boolean getMoreResults(int current) throws SQLException {
 		return false;
@@ -230,11 +270,12 @@ public class Statement implements java.sql.Statement {
 	}
 	
 	public <T> T unwrap(Class<T> iface) throws SQLException {
-		throw new UnsupportedOperationException(  );
+		if (iface.isInstance(this)) return iface.cast(this);
+		throw new SQLException("Not a wrapper for " + iface.getName());
 	}
 
 	public boolean isWrapperFor(Class<?> iface) throws SQLException {
-		throw new UnsupportedOperationException(  );
+		return iface.isInstance(this);
 	}
 	
 	public int getUpdateCount() throws SQLException {
@@ -0,0 +1,100 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.basho.riak.client.api.RiakClient;
+import com.basho.riak.client.api.commands.timeseries.DescribeTable;
+import com.basho.riak.client.core.query.timeseries.FullColumnDescription;
+import com.basho.riak.client.core.query.timeseries.Quantum;
+import com.basho.riak.client.core.query.timeseries.TableDefinition;
+
+/***
+ * Caches the DESCRIBE output (columns, primary key and quantum) of the tables
+ * the driver has planned queries against so that it is only fetched once
+ */
+public class TableSchemaCache {
+
+	private RiakClient _client;
+	private ConcurrentMap<String, TableDefinition> _definitions = new ConcurrentHashMap<String, TableDefinition>();
+
+	TableSchemaCache(RiakClient client) {
+		_client = client;
+	}
+
+	/***
+	 * Returns the definition of the table passed in, fetching it from Riak TS
+	 * the first time the table is seen
+	 * @param table table name
+	 * @return TableDefinition or null if the table couldn't be described
+	 */
+	public TableDefinition getTableDefinition(String table) {
+		String key = table.toLowerCase();
+		TableDefinition definition = _definitions.get(key);
+		if (definition == null) {
+			try {
+				definition = _client.execute(new DescribeTable(table));
+			}
+			catch (Exception e) {
+				// Failures aren't cached so the next query tries again
+				return null;
+			}
+			if (definition == null) return null;
+			// TableDefinition works out its keys and quantum lazily and isn't safe to do so
+			// from several threads at once, so do it before the definition is shared
+			definition.getPartitionKeyColumnDescriptions();
+			definition.getLocalKeyColumnDescriptions();
+			definition.getQuantumDescription();
+			TableDefinition existing = _definitions.putIfAbsent(key, definition);
+			if (existing != null) definition = existing;
+		}
+		return definition;
+	}
+
+	/***
+	 * Removes a table from the cache, e.g. after it has been dropped or recreated
+	 * @param table table name
+	 */
+	public void invalidate(String table) {
+		_definitions.remove(table.toLowerCase());
+	}
+
+
+	/***
+	 * Returns the column the table is quantized on
+	 * @param definition
+	 * @return FullColumnDescription or null if the table has no quantum
+	 */
+	public static FullColumnDescription getQuantumColumn(TableDefinition definition) {
+		if (definition == null) return null;
+		return definition.getQuantumDescription();
+	}
+
+	/***
+	 * Returns the size of the table's quantum in milliseconds
+	 * @param definition
+	 * @return quantum size in milliseconds or 0 if the table has no quantum
+	 */
+	public static long getQuantumMillis(TableDefinition definition) {
+		FullColumnDescription column = getQuantumColumn(definition);
+		if (column == null || !column.hasQuantum()) return 0;
+		Quantum quantum = column.getQuantum();
+		return quantum.getUnit().toMillis(quantum.getInterval());
+	}
+
+}
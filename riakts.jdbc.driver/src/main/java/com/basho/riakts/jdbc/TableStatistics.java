@@ -0,0 +1,106 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+/***
+ * Statistics the driver learns about a table from the queries it runs, used
+ * by the QueryPlanner to estimate the size of a query and to choose how much
+ * of a time range each sub-query should cover
+ */
+public class TableStatistics {
+
+	// Weight given to the newest observation in the moving averages
+	private final static double SMOOTHING = 0.2;
+
+	private double _rowsPerQuantum = -1;
+	private double _millisPerQuantum = -1;
+	private long _observations = 0;
+	private double _maxSafeQuanta = -1;
+	private long _tooMuchDataErrors = 0;
+
+	/***
+	 * Records the number of rows returned by a query that covered the number of quanta passed in
+	 * @param quanta number of quanta the query touched, may be fractional for sub-quantum ranges
+	 * @param rows number of rows returned
+	 * @param latencyMillis time taken by the query
+	 */
+	public synchronized void recordQuery(double quanta, int rows, long latencyMillis) {
+		if (quanta <= 0) return;
+		_rowsPerQuantum = average(_rowsPerQuantum, rows / quanta);
+		if (latencyMillis >= 0) _millisPerQuantum = average(_millisPerQuantum, latencyMillis / quanta);
+		_observations++;
+	}
+
+	/***
+	 * Records that a query covering the number of quanta passed in was rejected by Riak TS
+	 * for returning too much data. Later plans won't cover more than half that many quanta
+	 * per sub-query.
+	 * @param quanta number of quanta the rejected query touched, may be fractional
+	 */
+	public synchronized void recordTooMuchData(double quanta) {
+		double safe = quanta / 2;
+		if (_maxSafeQuanta < 0 || safe < _maxSafeQuanta) _maxSafeQuanta = safe;
+		_tooMuchDataErrors++;
+	}
+
+	private double average(double current, double observation) {
+		return current < 0 ? observation : (SMOOTHING * observation) + ((1 - SMOOTHING) * current);
+	}
+
+	/***
+	 * Returns the average number of rows per quantum seen so far
+	 * @return rows per quantum or -1 if no queries have been recorded
+	 */
+	public synchronized double getRowsPerQuantum() {
+		return _rowsPerQuantum;
+	}
+
+	/***
+	 * Returns the average query latency per quantum seen so far
+	 * @return milliseconds per quantum or -1 if no queries have been recorded
+	 */
+	public synchronized double getMillisPerQuantum() {
+		return _millisPerQuantum;
+	}
+
+	/***
+	 * Returns the largest number of quanta a sub-query may cover without Riak TS
+	 * rejecting it for returning too much data
+	 * @return number of quanta or -1 if the limit has never been hit
+	 */
+	public synchronized double getMaxSafeQuanta() {
+		return _maxSafeQuanta;
+	}
+
+	/***
+	 * Estimates the number of rows a query touching the number of quanta passed in will return
+	 * @param quanta
+	 * @return estimated rows or -1 if there isn't enough information to estimate
+	 */
+	public synchronized long estimateRows(double quanta) {
+		if (_observations == 0 || quanta <= 0) return -1;
+		return Math.round(_rowsPerQuantum * quanta);
+	}
+
+	public synchronized long getObservations() {
+		return _observations;
+	}
+
+	public synchronized long getTooMuchDataErrors() {
+		return _tooMuchDataErrors;
+	}
+
+}
@@ -0,0 +1,107 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import com.basho.riak.client.core.query.timeseries.Cell;
+import com.basho.riak.client.core.query.timeseries.QueryResult;
+import com.basho.riak.client.core.query.timeseries.Row;
+
+/***
+ * Streams the rows of several QueryResults, each already in time order, as a single
+ * sequence in time order (a k-way merge). Rows with the same time keep the order of
+ * the results they came from.
+ */
+class TimeOrderedMerge implements Iterator<Row> {
+
+	private final int _cellIndex;
+	private final PriorityQueue<Cursor> _queue;
+
+	/***
+	 * @param results QueryResults whose rows are each sorted by the time cell
+	 * @param cellIndex index of the time cell in each row
+	 */
+	TimeOrderedMerge(List<QueryResult> results, int cellIndex) {
+		_cellIndex = cellIndex;
+		_queue = new PriorityQueue<Cursor>(Math.max(1, results.size()), new Comparator<Cursor>() {
+			public int compare(Cursor a, Cursor b) {
+				int compare = Long.compare(a.time, b.time);
+				return compare != 0 ? compare : Integer.compare(a.source, b.source);
+			}
+		});
+		for (int i = 0; i < results.size(); i++) {
+			Cursor cursor = new Cursor(results.get(i).iterator(), i);
+			if (advance(cursor)) _queue.add(cursor);
+		}
+	}
+
+	public boolean hasNext() {
+		return !_queue.isEmpty();
+	}
+
+	public Row next() {
+		Cursor cursor = _queue.poll();
+		if (cursor == null) throw new NoSuchElementException();
+		Row row = cursor.row;
+		if (advance(cursor)) _queue.add(cursor);
+		return row;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private boolean advance(Cursor cursor) {
+		if (!cursor.rows.hasNext()) return false;
+		cursor.row = cursor.rows.next();
+		cursor.time = timeOf(cursor.row, _cellIndex);
+		return true;
+	}
+
+	/***
+	 * Returns the value of a row's timestamp (or sint64) cell, ordering nulls first
+	 * @param row
+	 * @param cellIndex
+	 * @return long
+	 */
+	static long timeOf(Row row, int cellIndex) {
+		Iterator<Cell> cells = row.iterator();
+		for (int i = 0; i < cellIndex && cells.hasNext(); i++) cells.next();
+		Cell cell = cells.hasNext() ? cells.next() : null;
+		if (cell == null) return Long.MIN_VALUE;
+		if (cell.hasTimestamp()) return cell.getTimestamp();
+		if (cell.hasLong()) return cell.getLong();
+		return Long.MIN_VALUE;
+	}
+
+	private static class Cursor {
+		final Iterator<Row> rows;
+		final int source;
+		Row row;
+		long time;
+
+		Cursor(Iterator<Row> rows, int source) {
+			this.rows = rows;
+			this.source = source;
+		}
+	}
+
+}
@@ -0,0 +1,225 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+
+import com.basho.riak.client.core.FutureOperation;
+import com.basho.riak.client.core.RiakCluster;
+import com.basho.riak.client.core.RiakFuture;
+import com.basho.riak.client.core.operations.PBFutureOperation;
+import com.basho.riak.client.core.operations.ts.DeleteOperation;
+import com.basho.riak.client.core.operations.ts.FetchOperation;
+import com.basho.riak.client.core.operations.ts.QueryOperation;
+import com.basho.riak.client.core.operations.ts.StoreOperation;
+import com.basho.riak.client.core.query.timeseries.Cell;
+import com.basho.riak.client.core.query.timeseries.PbResultFactory;
+import com.basho.riak.client.core.query.timeseries.QueryResult;
+import com.basho.riak.client.core.query.timeseries.Row;
+
+import shaded.com.basho.riak.protobuf.RiakMessageCodes;
+import shaded.com.basho.riak.protobuf.RiakTsPB;
+import shaded.com.google.protobuf.ByteString;
+
+/***
+ * Creates the time series Query, Store and Fetch requests sent for statements in the
+ * connection's WireEncoding. "ttb" (the default) sends them as Erlang term-to-binary
+ * terms as the Riak client does, which take fewer bytes than protocol buffers; "pb"
+ * sends protocol buffers messages, which the client decodes with less CPU. Other
+ * requests, such as DESCRIBE and Delete, are always protocol buffers.
+ */
+class TimeSeriesProtocol {
+
+	public final static String TTB = "ttb";
+	public final static String PB = "pb";
+
+	private final RiakCluster _cluster;
+	private final boolean _pb;
+
+	/***
+	 * @param cluster
+	 * @param info connection properties
+	 * @throws SQLException if WireEncoding is neither ttb nor pb
+	 */
+	TimeSeriesProtocol(RiakCluster cluster, Properties info) throws SQLException {
+		_cluster = cluster;
+		_pb = getEncoding(info).equals(PB);
+	}
+
+	/***
+	 * Returns the WireEncoding of the connection properties
+	 * @param info
+	 * @return "ttb" or "pb"
+	 * @throws SQLException if it is set to neither
+	 */
+	static String getEncoding(Properties info) throws SQLException {
+		String encoding = DriverProperties.getString(info, DriverProperties.WIRE_ENCODING,
+				DriverProperties.DEFAULT_WIRE_ENCODING);
+		String name = encoding == null || encoding.trim().length() == 0 ? DriverProperties.DEFAULT_WIRE_ENCODING
+				: encoding.trim().toLowerCase();
+		if (!name.equals(TTB) && !name.equals(PB)) throw new SQLException("Invalid WireEncoding: " + encoding);
+		return name;
+	} // Tested
+
+	RiakCluster getCluster() {
+		return _cluster;
+	}
+
+	/***
+	 * Returns the encoding requests are sent in
+	 * @return "ttb" or "pb"
+	 */
+	String getEncoding() {
+		return _pb ? PB : TTB;
+	}
+
+	/***
+	 * Sends a statement
+	 * @param sql
+	 * @return RiakFuture holding the statement's results
+	 */
+	RiakFuture<QueryResult, String> query(String sql) {
+		return _cluster.execute(newQuery(sql));
+	}
+
+	/***
+	 * Writes rows to a table with the Store command
+	 * @param table
+	 * @param rows cells in the table's column order
+	 * @return RiakFuture completed once the rows are written
+	 */
+	RiakFuture<Void, String> store(String table, List<Row> rows) {
+		return _cluster.execute(newStore(table, rows));
+	}
+
+	/***
+	 * Fetches the row of a table with the key passed in
+	 * @param table
+	 * @param key key cells in local key order
+	 * @return RiakFuture holding the row, failing with "notfound" if there is none
+	 */
+	RiakFuture<QueryResult, String> fetch(String table, List<Cell> key) {
+		return _cluster.execute(newFetch(table, key));
+	}
+
+	/***
+	 * Deletes the row of a table with the key passed in. Riak TS only takes Delete as
+	 * protocol buffers, whatever the WireEncoding.
+	 * @param table
+	 * @param key key cells in local key order
+	 * @return RiakFuture completed once the row is deleted
+	 */
+	RiakFuture<Void, String> delete(String table, List<Cell> key) {
+		return _cluster.execute(new DeleteOperation.Builder(table, key).build());
+	}
+
+	/***
+	 * Returns a Query request that hasn't been sent, for callers that choose the node
+	 * @param sql
+	 * @return FutureOperation
+	 */
+	FutureOperation<QueryResult, ?, String> newQuery(String sql) {
+		if (_pb) return new PbQueryOperation(sql);
+		return new QueryOperation.Builder(sql).build();
+	} // Tested
+
+	FutureOperation<Void, ?, String> newStore(String table, List<Row> rows) {
+		if (_pb) return new PbStoreOperation(table, rows);
+		return new StoreOperation.Builder(table).withRows(rows).build();
+	} // Tested
+
+	FutureOperation<QueryResult, ?, String> newFetch(String table, List<Cell> key) {
+		if (_pb) return new PbFetchOperation(table, key);
+		return new FetchOperation.Builder(table, key).build();
+	} // Tested
+
+
+	/***
+	 * TsQueryReq answered with a single TsQueryResp
+	 */
+	static class PbQueryOperation extends PBFutureOperation<QueryResult, RiakTsPB.TsQueryResp, String> {
+		private final String _sql;
+
+		PbQueryOperation(String sql) {
+			super(RiakMessageCodes.MSG_TsQueryReq, RiakMessageCodes.MSG_TsQueryResp,
+					RiakTsPB.TsQueryReq.newBuilder().setQuery(
+							RiakTsPB.TsInterpolation.newBuilder().setBase(ByteString.copyFromUtf8(sql))),
+					RiakTsPB.TsQueryResp.PARSER);
+			_sql = sql;
+		}
+
+		protected QueryResult convert(List<RiakTsPB.TsQueryResp> responses) {
+			return PbResultFactory.convertPbQueryResp(checkAndGetSingleResponse(responses));
+		}
+
+		public String getQueryInfo() {
+			return _sql;
+		}
+	}
+
+	/***
+	 * TsPutReq, the rows' columns left out so they're taken in table order
+	 */
+	static class PbStoreOperation extends PBFutureOperation<Void, RiakTsPB.TsPutResp, String> {
+		private final String _table;
+
+		PbStoreOperation(String table, List<Row> rows) {
+			super(RiakMessageCodes.MSG_TsPutReq, RiakMessageCodes.MSG_TsPutResp, toPutRequest(table, rows),
+					RiakTsPB.TsPutResp.PARSER);
+			_table = table;
+		}
+
+		private static RiakTsPB.TsPutReq.Builder toPutRequest(String table, List<Row> rows) {
+			RiakTsPB.TsPutReq.Builder request = RiakTsPB.TsPutReq.newBuilder().setTable(ByteString.copyFromUtf8(table));
+			for (Row row : rows) request.addRows(row.getPbRow());
+			return request;
+		}
+
+		protected Void convert(List<RiakTsPB.TsPutResp> responses) {
+			return null;
+		}
+
+		public String getQueryInfo() {
+			return _table;
+		}
+	}
+
+	/***
+	 * TsGetReq answered with a TsGetResp of the row found
+	 */
+	static class PbFetchOperation extends PBFutureOperation<QueryResult, RiakTsPB.TsGetResp, String> {
+		private final String _table;
+
+		PbFetchOperation(String table, List<Cell> key) {
+			super(RiakMessageCodes.MSG_TsGetReq, RiakMessageCodes.MSG_TsGetResp,
+					RiakTsPB.TsGetReq.newBuilder().setTable(ByteString.copyFromUtf8(table))
+							.addAllKey(new Row(key).getPbRow().getCellsList()),
+					RiakTsPB.TsGetResp.PARSER);
+			_table = table;
+		}
+
+		protected QueryResult convert(List<RiakTsPB.TsGetResp> responses) {
+			return PbResultFactory.convertPbGetResp(checkAndGetSingleResponse(responses));
+		}
+
+		public String getQueryInfo() {
+			return _table;
+		}
+	}
+
+}
@@ -15,11 +15,17 @@
  */
 package com.basho.riakts.jdbc;
 
+import java.math.BigDecimal;
 import java.sql.Blob;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -30,17 +36,19 @@ import java.util.concurrent.ExecutionException;
 import com.basho.riak.client.api.RiakClient;
 import com.basho.riak.client.api.commands.buckets.ListBuckets;
 import com.basho.riak.client.api.commands.timeseries.Query;
+import com.basho.riak.client.core.RiakNode;
 import com.basho.riak.client.core.query.Namespace;
 import com.basho.riak.client.core.query.timeseries.Cell;
 import com.basho.riak.client.core.query.timeseries.ColumnDescription;
 import com.basho.riak.client.core.query.timeseries.QueryResult;
 import com.basho.riak.client.core.query.timeseries.Row;
+import com.basho.riak.client.core.util.HostAndPort;
+import com.google.common.collect.Iterables;
 import com.google.common.net.InetAddresses;
+import com.google.common.net.InternetDomainName;
 
 public class Utility {
 	
-	static ResultSet _rs;
-	
 	/***
 	 * Executes SQL query against Riak TS and converts the 
 	 * QueryResult object to a ResultSet
@@ -62,136 +70,345 @@ public class Utility {
 	 * @return java.sql.ResultSet
 	 * @throws SQLException 
 	 */
-	private static ResultSet getResultSetFromQueryResult(QueryResult queryResult) throws SQLException {
+	public static ResultSet getResultSetFromQueryResult(QueryResult queryResult) throws SQLException {
+		List<QueryResult> queryResults = new ArrayList<QueryResult>();
+		queryResults.add(queryResult);
+		return getResultSetFromQueryResults(queryResults);
+	}
+	
+	/***
+	 * Converts a list of Riak TS QueryResult objects that share the same columns (e.g. the
+	 * results of the sub-queries of a QueryPlan) to a single JDBC ResultSet, keeping rows
+	 * in list order
+	 * @param queryResults List of com.basho.riak.client.core.query.timeseries.QueryResult
+	 * @return java.sql.ResultSet
+	 * @throws SQLException 
+	 */
+	public static ResultSet getResultSetFromQueryResults(List<QueryResult> queryResults) throws SQLException {
+		return getResultSetFromQueryResults(queryResults, null, null);
+	}
+	
+	/***
+	 * Converts a list of Riak TS QueryResult objects that share the same columns to a single
+	 * JDBC ResultSet, keeping only the cells listed in projection
+	 * @param queryResults List of com.basho.riak.client.core.query.timeseries.QueryResult
+	 * @param columns descriptions of every column in the results, used for the column names and
+	 * types when known so that empty results still have the right shape; may be null
+	 * @param projection index of the cell to use for each ResultSet column, or null for all cells
+	 * @return java.sql.ResultSet
+	 * @throws SQLException 
+	 */
+	static ResultSet getResultSetFromQueryResults(List<QueryResult> queryResults, 
+			List<? extends ColumnDescription> columns, int[] projection) throws SQLException {
+		return getResultSetFromQueryResults(queryResults, columns, projection, null);
+	}
+	
+	/***
+	 * Converts a list of Riak TS QueryResult objects that share the same columns to a single
+	 * JDBC ResultSet, taking the rows from the iterator passed in rather than list order
+	 * @param queryResults List of com.basho.riak.client.core.query.timeseries.QueryResult
+	 * @param columns descriptions of every column in the results, may be null
+	 * @param projection index of the cell to use for each ResultSet column, or null for all cells
+	 * @param rowOrder the rows of queryResults in the order to add them, or null for list order
+	 * @return java.sql.ResultSet
+	 * @throws SQLException 
+	 */
+	static ResultSet getResultSetFromQueryResults(List<QueryResult> queryResults, 
+			List<? extends ColumnDescription> columns, int[] projection, Iterator<Row> rowOrder) throws SQLException {
 		// Create new empty ResultSet
-		_rs = new ResultSet();
+		ResultSet rs = new ResultSet();
+		
+		// Get column names from the columns passed in or the first QueryResult object 
+		// that has them, add to the ResultSetMetaData ColumnInfo List
+		List<? extends ColumnDescription> descriptions = columns;
+		int rowCount = 0;
+		for (QueryResult queryResult : queryResults) {
+			if (descriptions == null || descriptions.isEmpty()) descriptions = queryResult.getColumnDescriptionsCopy();
+			rowCount += queryResult.getRowsCount();
+		}
+		if (descriptions == null) descriptions = new ArrayList<ColumnDescription>();
+		boolean allCells = projection == null;
+		if (allCells) {
+			projection = new int[descriptions.size()];
+			for (int i = 0; i < projection.length; i++) projection[i] = i;
+		}
+		int columnCount = projection.length;
 		
-		// Get column names from the QueryResult object, add to the ResultSetMetaData ColumnInfo List
-		Iterator<ColumnDescription> columns = queryResult.getColumnDescriptionsCopy().iterator();
-		int columnCount = 0;
-		while (columns.hasNext()) {
-			ColumnDescription desc = columns.next();
-			_rs.getMetaData().addColumn(desc.getName());
-			columnCount++;
+		// Tracks which columns have had their data type set in the ResultSetMetaData object
+		boolean[] columnTypesSet = new boolean[columnCount];
+		int columnTypesRemaining = columnCount;
+		for (int i = 0; i < columnCount; i++) {
+			ColumnDescription desc = descriptions.get(projection[i]);
+			rs.getMetaData().addColumn(desc.getName());
+			if (columns != null) {
+				int type = getSqlType(desc.getType());
+				rs.getMetaData().updateColumnType(i, type, getTypeName(type));
+				columnTypesSet[i] = true;
+				columnTypesRemaining--;
+			}
 		}
 		
-		_rs._rsMetaData.setColumnCount(columnCount);
-		_rs._rsMetaData.setRowCount( queryResult.getRowsCount() );
+		rs._rsMetaData.setColumnCount(columnCount);
+		rs._rsMetaData.setRowCount(rowCount);
 		
-		// Iterate over each row in our QueryResult object
-		Iterator<Row> rows = queryResult.iterator();
+		// Iterate over each row of the QueryResult objects
+		Iterator<Row> rows = rowOrder != null ? rowOrder : Iterables.concat(queryResults).iterator();
 		while (rows.hasNext()) {
 			// Retrieve Row from QueryResult set
 			Row row = (Row) rows.next();
 			
 			// Creates new row to add to the ResultSet
-			_rs.moveToInsertRow();
+			rs.moveToInsertRow();
 			
-			// Iterate over each cell in current QueryResult row add matching column to
-			// the current ResultSet row
-			Iterator<Cell> cells = row.iterator();
-			int colIndex = 0;
-			while (cells.hasNext()) {
-				Cell cell = (Cell) cells.next();
+			// Add the projected cells of the current QueryResult row to the
+			// matching columns of the current ResultSet row
+			Iterator<Cell> cells = allCells ? row.iterator() : null;
+			List<Cell> cellList = allCells ? null : row.getCellsCopy();
+			for (int colIndex = 0; colIndex < columnCount; colIndex++) {
+				Cell cell = allCells ? cells.next() : cellList.get(projection[colIndex]);
 				
 				// Update the ResultSetMetaData object ColumnType for this cell
-				if (!allColumnTypesSet && cell != null) setColumnType(colIndex, cell);
-				
-				// Check cell type for the 6 data types and add a new column to the
-				// row of the correct type (boolean, double, long, date, varchar)
-				// Start by handling null cell values returned
-				if (cell == null) {
-					_rs.updateNull(colIndex);
-				}
-				else if (cell.hasBlob()) {
-					Blob blob = new javax.sql.rowset.serial.SerialBlob(cell.getBlob());
-					_rs.updateBlob(colIndex, blob);
-				}
-				else if (cell.hasBoolean()) {
-					_rs.updateBoolean(colIndex, cell.getBoolean());
-				}
-				else if (cell.hasDouble()) {
-					_rs.updateDouble(colIndex, cell.getDouble());
-				}
-				else if (cell.hasLong()) {
-					_rs.updateLong(colIndex, cell.getLong());
-				}
-				else if (cell.hasTimestamp()) {
-					try {
-						// Convert from Epoch as Long to java.sql.Timestamp
-						_rs.updateTimestamp(colIndex, new Timestamp(cell.getTimestamp()));
-					} 
-					catch (Exception e) {
-						_rs.updateDate(colIndex, null);
-					}
-				}
-				else if (cell.hasVarcharValue()) {
-					// Get varchar as plain string for compatibility
-					_rs.updateString(colIndex, cell.getVarcharValue().toString());
+				if (columnTypesRemaining > 0 && cell != null && !columnTypesSet[colIndex]) {
+					setColumnType(rs, colIndex, cell);
+					columnTypesSet[colIndex] = true;
+					columnTypesRemaining--;
 				}
-				colIndex++;
+				
+				updateColumn(rs, colIndex, cell);
 			}	
 			// Adds new row to the ResultSet
-			_rs.insertRow();
+			rs.insertRow();
 		}
-		return _rs;
+		return rs;
 	}
 	
-	
-	private static boolean allColumnTypesSet = false;
-	private static String[] columnTypes = null;
+	/***
+	 * Sets the value of a column in the current insert row of the ResultSet from a Riak TS Cell
+	 * @param rs ResultSet positioned on its insert row
+	 * @param colIndex 0 based column index
+	 * @param cell Riak TS cell, may be null
+	 * @throws SQLException
+	 */
+	static void updateColumn(ResultSet rs, int colIndex, Cell cell) throws SQLException {
+		// Check cell type for the 6 data types and add a new column to the
+		// row of the correct type (boolean, double, long, date, varchar)
+		// Start by handling null cell values returned
+		if (cell == null) {
+			rs.setColumnValue(colIndex, null);
+		}
+		else if (cell.hasBlob()) {
+			Blob blob = new javax.sql.rowset.serial.SerialBlob(cell.getBlob());
+			rs.setColumnValue(colIndex, blob);
+		}
+		else if (cell.hasBoolean()) {
+			rs.setColumnValue(colIndex, cell.getBoolean());
+		}
+		else if (cell.hasDouble()) {
+			rs.setColumnValue(colIndex, cell.getDouble());
+		}
+		else if (cell.hasLong()) {
+			rs.setColumnValue(colIndex, cell.getLong());
+		}
+		else if (cell.hasTimestamp()) {
+			try {
+				// Convert from Epoch as Long to java.sql.Timestamp
+				rs.setColumnValue(colIndex, new Timestamp(cell.getTimestamp()));
+			} 
+			catch (Exception e) {
+				rs.setColumnValue(colIndex, null);
+			}
+		}
+		else if (cell.hasVarcharValue()) {
+			// Get varchar as plain string for compatibility
+			rs.setColumnValue(colIndex, cell.getVarcharValue().toString());
+		}
+	}
 	
 	/***
 	 * Sets the data type associated with the specified column in the
 	 * ResultSetMetaData object
+	 * @param rs
 	 * @param index
 	 * @param cell
 	 * @throws SQLException
 	 */
-	private static void setColumnType(int index, Cell cell) throws SQLException {
-		// Create a new array to hold the data types of each column to help us determine
-		// that they have all been set in the ResultSetMetaData object
-		if (columnTypes == null) columnTypes = new String[ _rs._rsMetaData.getColumnCount() ];
-		
+	private static void setColumnType(ResultSet rs, int index, Cell cell) throws SQLException {
 		// Check the data type and update the correct ColumnType in the ResultSetMetaData object
 		if (cell.hasBoolean()) {
-			_rs.getMetaData().updateColumnType(index, java.sql.Types.BOOLEAN, "java.sql.Types.BOOLEAN");
-			columnTypes[index] = "BOOLEAN";
+			rs.getMetaData().updateColumnType(index, java.sql.Types.BOOLEAN, "java.sql.Types.BOOLEAN");
 		}
 		else if (cell.hasBlob()) {
-			_rs.getMetaData().updateColumnType(index, java.sql.Types.BLOB, "java.sql.Types.BLOB");
-			columnTypes[index] = "BLOB";
+			rs.getMetaData().updateColumnType(index, java.sql.Types.BLOB, "java.sql.Types.BLOB");
 		}
 		else if (cell.hasDouble()) {
-			_rs.getMetaData().updateColumnType(index, java.sql.Types.DOUBLE, "java.sql.Types.DOUBLE");
-			columnTypes[index] = "DOUBLE";
+			rs.getMetaData().updateColumnType(index, java.sql.Types.DOUBLE, "java.sql.Types.DOUBLE");
 		}
 		else if (cell.hasLong()) {
-			_rs.getMetaData().updateColumnType(index, java.sql.Types.BIGINT, "java.sql.Types.BIGINT");
-			columnTypes[index] = "BIGINT";
+			rs.getMetaData().updateColumnType(index, java.sql.Types.BIGINT, "java.sql.Types.BIGINT");
 		}
 		else if (cell.hasTimestamp()) {
-			_rs.getMetaData().updateColumnType(index, java.sql.Types.TIMESTAMP, "java.sql.Types.TIMESTAMP");
-			columnTypes[index] = "TIMESTAMP";
+			rs.getMetaData().updateColumnType(index, java.sql.Types.TIMESTAMP, "java.sql.Types.TIMESTAMP");
 		}
 		else if (cell.hasVarcharValue()) {
-			_rs.getMetaData().updateColumnType(index, java.sql.Types.VARCHAR, "java.sql.Types.VARCHAR");
-			columnTypes[index] = "VARCHAR";
+			rs.getMetaData().updateColumnType(index, java.sql.Types.VARCHAR, "java.sql.Types.VARCHAR");
 		}
-		
-		// Check to see if all column data types are set
-		checkIfAllColumnTypesSet();
 	} // TESTED
 	
+	
+	/***
+	 * Builds a ResultSet from values generated by the driver itself (e.g. EXPLAIN output)
+	 * @param columnNames
+	 * @param columnTypes java.sql.Types value for each column
+	 * @param rows row values in column order
+	 * @return java.sql.ResultSet
+	 * @throws SQLException
+	 */
+	static ResultSet getResultSetFromRows(String[] columnNames, int[] columnTypes, List<Object[]> rows) throws SQLException {
+		ResultSet rs = new ResultSet();
+		for (int i = 0; i < columnNames.length; i++) {
+			rs.getMetaData().addColumn(columnNames[i]);
+			rs.getMetaData().updateColumnType(i, columnTypes[i], getTypeName(columnTypes[i]));
+		}
+		rs._rsMetaData.setColumnCount(columnNames.length);
+		rs._rsMetaData.setRowCount(rows.size());
+		for (Object[] row : rows) {
+			rs.moveToInsertRow();
+			for (int i = 0; i < row.length; i++) rs.setColumnValue(i, row[i]);
+			rs.insertRow();
+		}
+		rs.beforeFirst();
+		return rs;
+	}
+	
 	/***
-	 * Flips allColumnTypesSet to true if we have set the data type for
-	 * each column in the ResultSetMetaData object
+	 * Returns the java.sql.Types value used for a Riak TS column type
+	 * @param type
+	 * @return int
 	 */
-	private static void checkIfAllColumnTypesSet() {
-		for (String type : columnTypes) {
-			if (type == null) return;
+	static int getSqlType(ColumnDescription.ColumnType type) {
+		switch (type) {
+			case BOOLEAN: return java.sql.Types.BOOLEAN;
+			case BLOB: return java.sql.Types.BLOB;
+			case DOUBLE: return java.sql.Types.DOUBLE;
+			case SINT64: return java.sql.Types.BIGINT;
+			case TIMESTAMP: return java.sql.Types.TIMESTAMP;
+			default: return java.sql.Types.VARCHAR;
+		}
+	}
+	
+	/***
+	 * Converts a literal as written in a SQL statement to a Riak TS Cell of the column type passed in
+	 * @param literal literal text, string literals quoted
+	 * @param type Riak TS column type
+	 * @return Cell or null if the literal isn't a valid value for the column type
+	 */
+	static Cell getCellFromLiteral(String literal, ColumnDescription.ColumnType type) {
+		boolean quoted = literal.startsWith("'");
+		try {
+			switch (type) {
+				case VARCHAR: 
+					return quoted ? new Cell(QueryParser.unquote(literal)) : null;
+				case SINT64: 
+					return quoted ? null : new Cell(Long.parseLong(literal));
+				case DOUBLE: 
+					return quoted ? null : new Cell(Double.parseDouble(literal));
+				case BOOLEAN:
+					if (literal.equalsIgnoreCase("true")) return new Cell(true);
+					if (literal.equalsIgnoreCase("false")) return new Cell(false);
+					return null;
+				case TIMESTAMP:
+					Long timestamp = parseTimestampLiteral(literal);
+					return timestamp == null ? null : Cell.newTimestamp(timestamp);
+				default:
+					return null;
+			}
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	} // Tested
+
+	/***
+	 * Formats a Riak TS Cell as a SQL literal: strings quoted with single quotes
+	 * doubled, timestamps as epoch milliseconds
+	 * @param cell
+	 * @return literal or null if the cell is null or a blob
+	 */
+	static String getLiteralFromCell(Cell cell) {
+		if (cell == null) return null;
+		if (cell.hasVarcharValue()) return "'" + cell.getVarcharAsUTF8String().replace("'", "''") + "'";
+		if (cell.hasLong()) return Long.toString(cell.getLong());
+		if (cell.hasTimestamp()) return Long.toString(cell.getTimestamp());
+		if (cell.hasDouble()) return Double.toString(cell.getDouble());
+		if (cell.hasBoolean()) return Boolean.toString(cell.getBoolean());
+		return null;
+	} // Tested
+
+	/***
+	 * Converts a Java value to a Riak TS Cell of the column type passed in. Strings are
+	 * accepted for timestamps and are parsed the same way as timestamp literals in SQL.
+	 * @param value String, Number, Boolean, Date or a Cell (used as is)
+	 * @param type Riak TS column type
+	 * @return Cell or null if the value can't be stored in a column of the type
+	 */
+	static Cell getCellFromObject(Object value, ColumnDescription.ColumnType type) {
+		if (value == null) return null;
+		if (value instanceof Cell) return (Cell) value;
+		switch (type) {
+			case VARCHAR:
+				return value instanceof String ? new Cell((String) value) : null;
+			case SINT64:
+				if (value instanceof Long || value instanceof Integer || value instanceof Short
+						|| value instanceof Byte) return new Cell(((Number) value).longValue());
+				return null;
+			case DOUBLE:
+				return value instanceof Number ? new Cell(((Number) value).doubleValue()) : null;
+			case BOOLEAN:
+				return value instanceof Boolean ? new Cell((Boolean) value) : null;
+			case TIMESTAMP:
+				if (value instanceof Date) return Cell.newTimestamp(((Date) value).getTime());
+				if (value instanceof Long || value instanceof Integer) return Cell.newTimestamp(((Number) value).longValue());
+				if (value instanceof String) {
+					// Either epoch milliseconds or an ISO 8601 date, which needs quoting as a literal
+					Long timestamp = parseTimestampLiteral((String) value);
+					if (timestamp == null) timestamp = parseTimestampLiteral("'" + value + "'");
+					return timestamp == null ? null : Cell.newTimestamp(timestamp);
+				}
+				return null;
+			case BLOB:
+				return value instanceof byte[] ? new Cell((byte[]) value) : null;
+			default:
+				return null;
+		}
+	} // Tested
+
+	/***
+	 * Formats a Java value as a SQL literal, for binding a prepared statement's
+	 * parameters into its text: strings quoted with single quotes doubled, dates as
+	 * epoch milliseconds
+	 * @param value String, Number, Boolean, Date, Cell or null
+	 * @return literal or null if the value has no SQL literal form
+	 */
+	static String getLiteralFromObject(Object value) {
+		if (value == null) return "NULL";
+		if (value instanceof Cell) return getLiteralFromCell((Cell) value);
+		if (value instanceof String) return "'" + ((String) value).replace("'", "''") + "'";
+		if (value instanceof Date) return Long.toString(((Date) value).getTime());
+		if (value instanceof Boolean) return value.toString();
+		if (value instanceof BigDecimal) return ((BigDecimal) value).toPlainString();
+		if (value instanceof Number) return value.toString();
+		return null;
+	} // Tested
+
+	private static String getTypeName(int type) {
+		switch (type) {
+			case java.sql.Types.BOOLEAN: return "java.sql.Types.BOOLEAN";
+			case java.sql.Types.BLOB: return "java.sql.Types.BLOB";
+			case java.sql.Types.DOUBLE: return "java.sql.Types.DOUBLE";
+			case java.sql.Types.BIGINT: return "java.sql.Types.BIGINT";
+			case java.sql.Types.TIMESTAMP: return "java.sql.Types.TIMESTAMP";
+			default: return "java.sql.Types.VARCHAR";
 		}
-		allColumnTypesSet = true;
 	}
 	
 	
@@ -199,17 +416,30 @@ public class Utility {
 	
 	/***
 	 * Creates Properties object with RiakPort and RiakUrl key from
-	 * URL passed in
+	 * URL passed in. A URL listing several nodes also sets RiakNodes to the list,
+	 * and any driver properties after a ? (e.g. ?MaxConnections=32&LoadBalancing=latency)
+	 * are set too.
 	 * @param url Riak connection URL
 	 * @return Properties object with RiakPort and RiakUrl key/value pairs
 	 * @throws SQLException
 	 */
 	public static Properties getRiakPropertiesFromUrl(String url) throws SQLException {
 		if (validateRiakUrl(url)) {
-			String[] urlParsed = url.replace(RIAKTS_URL_PREFIX, "").split(":");
+			String[] address = url.replace(RIAKTS_URL_PREFIX, "").split("\\?", 2);
+			String nodes = address[0];
+			String[] urlParsed = nodes.split(",")[0].trim().split(":");
 			Properties riakProperties = new Properties();
+			if (address.length == 2) {
+				for (String parameter : address[1].split("&")) {
+					String[] pair = parameter.split("=", 2);
+					if (pair[0].trim().length() > 0) {
+						riakProperties.setProperty(pair[0].trim(), pair.length == 2 ? pair[1].trim() : "");
+					}
+				}
+			}
 			riakProperties.setProperty("RiakUrl", urlParsed[0]);
 			riakProperties.setProperty("RiakPort", urlParsed[1]);
+			if (nodes.contains(",")) riakProperties.setProperty(DriverProperties.RIAK_NODES, nodes);
 			return riakProperties;
 		}
 		throw new SQLException();
@@ -224,13 +454,11 @@ public class Utility {
 	 * @return True or False
 	 */
 	public static boolean validateRiakUrl(String url) {
-		// Supported URL Format: riakts://127.0.0.1:8087 or riakts://something.com:8087
-		if (url.startsWith(RIAKTS_URL_PREFIX)) {
-			String[] urlParsed = url.replace(RIAKTS_URL_PREFIX, "").split(":");
-			// Check that the IP Address and port are valid
-			if (isInetAddress( urlParsed[0] ) && isValidPort( urlParsed[1] )) {
-				return true;
-			}
+		// Supported URL Format: riakts://127.0.0.1:8087 or riakts://something.com:8087,
+		// or a list of nodes riakts://10.0.0.1:8087,10.0.0.2:8087, optionally followed
+		// by properties ?name=value&name=value
+		if (url != null && url.startsWith(RIAKTS_URL_PREFIX)) {
+			return isNodeList(url.replace(RIAKTS_URL_PREFIX, "").split("\\?", 2)[0], false);
 		}
 		return false;
 	} // Tested
@@ -238,21 +466,63 @@ public class Utility {
 
 	/***
 	 * Checks to see if RiakUrl and RiakPort exist and if the values appear
-	 * to be of a valid type required to connect to Riak
+	 * to be of a valid type required to connect to Riak, or if RiakNodes lists
+	 * valid nodes
 	 * @param info Properties object with RiakUrl and RiakPort keys
 	 * @return True or False
 	 */
 	public static boolean validateRiakProperties(Properties info) {
 		// Make sure info isn't empty or null
-		if (info.isEmpty() != true && info != null) {
+		if (info != null && info.isEmpty() != true) {
+			if (info.getProperty(DriverProperties.RIAK_NODES) != null) {
+				return isNodeList(info.getProperty(DriverProperties.RIAK_NODES), isValidPort( info.getProperty("RiakPort") ));
+			}
 			// Check that the IP Address and port are valid
-			if (isInetAddress( info.getProperty("RiakUrl") ) && isValidPort( info.getProperty("RiakPort") )) {
+			if (isHost( info.getProperty("RiakUrl") ) && isValidPort( info.getProperty("RiakPort") )) {
 				return true;
 			}
 		}
 		return false;
 	} // Tested
 	
+	/***
+	 * Returns the nodes to connect to: those listed by RiakNodes, any without a port
+	 * on RiakPort, or else RiakUrl on RiakPort
+	 * @param info Properties object with RiakUrl and RiakPort or RiakNodes keys
+	 * @return List of HostAndPort
+	 */
+	public static List<HostAndPort> getRiakNodes(Properties info) {
+		List<HostAndPort> nodes = new ArrayList<HostAndPort>();
+		String port = info.getProperty("RiakPort");
+		int defaultPort = isValidPort(port) ? Integer.parseInt(port.trim()) : RiakNode.Builder.DEFAULT_REMOTE_PORT;
+		String list = info.getProperty(DriverProperties.RIAK_NODES);
+		if (list == null) {
+			nodes.add(HostAndPort.fromParts(info.getProperty("RiakUrl"), defaultPort));
+			return nodes;
+		}
+		for (String node : list.split(",")) {
+			if (node.trim().length() > 0) nodes.add(HostAndPort.fromString(node.trim(), defaultPort));
+		}
+		return nodes;
+	} // Tested
+	
+	/***
+	 * Checks a comma separated list of host:port nodes
+	 * @param nodes
+	 * @param portOptional true if a node may leave out its port
+	 * @return True or False
+	 */
+	private static boolean isNodeList(String nodes, boolean portOptional) {
+		String[] list = nodes.split(",");
+		if (list.length == 0) return false;
+		for (String node : list) {
+			String[] parts = node.trim().split(":");
+			if (!isHost( parts[0] )) return false;
+			if (parts.length > 2 || (parts.length == 2 ? !isValidPort( parts[1] ) : !portOptional)) return false;
+		}
+		return true;
+	}
+	
 	
 	/***
 	 * Simple helper method that converts date strings in the 
@@ -268,6 +538,41 @@ public class Utility {
 	} // Tested
 	
 	
+	/***
+	 * Converts a timestamp literal as written in Riak TS SQL to epoch milliseconds.
+	 * Supports epoch numbers and quoted ISO 8601 dates and date times, which 
+	 * Riak TS treats as UTC unless an offset is given
+	 * @param literal e.g. 1465185600000 or '2016-06-06 04:00:00'
+	 * @return epoch milliseconds or null if the literal isn't a timestamp
+	 */
+	public static Long parseTimestampLiteral(String literal) {
+		if (literal == null) return null;
+		String value = literal.trim();
+		if (value.length() > 1 && value.startsWith("'") && value.endsWith("'")) {
+			value = value.substring(1, value.length() - 1).trim().replace(' ', 'T');
+			try {
+				return OffsetDateTime.parse(value).toInstant().toEpochMilli();
+			}
+			catch (DateTimeParseException e) { }
+			try {
+				return LocalDateTime.parse(value).toInstant(ZoneOffset.UTC).toEpochMilli();
+			}
+			catch (DateTimeParseException e) { }
+			try {
+				return LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+			}
+			catch (DateTimeParseException e) { }
+			return null;
+		}
+		try {
+			return Long.parseLong(value);
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	} // Tested
+	
+	
 	/***
 	 * Returns a list of buckets contained in a given bucket type
 	 * @param client
@@ -290,8 +595,14 @@ public class Utility {
 	
 	
 	
-	private static boolean isInetAddress( String url ) {
-		if ( InetAddresses.isInetAddress( url )) {
+	/***
+	 * Checks for an IP address or a hostname, which is resolved when connecting
+	 */
+	private static boolean isHost( String url ) {
+		if ( url == null ) {
+			return false;
+		}
+		if ( InetAddresses.isInetAddress( url ) || InternetDomainName.isValid( url )) {
 			return true;
 		}
 		return false;
@@ -0,0 +1,280 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.BatchUpdateException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.basho.riak.client.core.query.timeseries.Row;
+
+/***
+ * Buffers the rows of INSERTs and writes them in the background, so a producer only
+ * waits for its rows to be queued. The queue holds up to WriteBehindCapacity rows; when
+ * it is full a producer blocks until writers make room, or with WriteBehindWhenFull=reject
+ * gets an SQLException straight away. WriteBehindThreads writers each take up to
+ * BatchSize rows off the queue at a time and write them with the timeseries Store command.
+ *
+ * Rows are only durable once written, so flush() waits for every row queued so far and
+ * throws a BatchUpdateException if any of them failed since the last flush. The buffer
+ * also keeps the metrics needed to see whether it is keeping up.
+ */
+public class WriteBehindBuffer {
+
+	private final static String REJECT = "reject";
+	private final static int SAMPLE_CAPACITY = 1000;
+
+	private final Connection _connection;
+	private final int _capacity;
+	private final int _batchRows;
+	private final boolean _reject;
+	private final ConcurrentLinkedQueue<BatchWriter.Entry> _queue = new ConcurrentLinkedQueue<BatchWriter.Entry>();
+	// Free space in the queue, in rows
+	private final Semaphore _space;
+	// Released as rows are queued to wake a waiting writer
+	private final Semaphore _ready = new Semaphore(0);
+	private final Object _drained = new Object();
+	// Held to queue rows and to close, so no rows are queued once the writers may exit
+	private final Object _lock = new Object();
+	private final List<Thread> _writers = new ArrayList<Thread>();
+	private volatile boolean _closed = false;
+	private SQLException _error = null;
+
+	private AtomicLong _pendingRows = new AtomicLong();
+	private AtomicLong _writtenRows = new AtomicLong();
+	private AtomicLong _failedRows = new AtomicLong();
+	private AtomicLong _rejectedRows = new AtomicLong();
+	private AtomicLong _batches = new AtomicLong();
+	private LatencyTracker _flushLatency = new LatencyTracker(SAMPLE_CAPACITY);
+
+	WriteBehindBuffer(Connection connection, Properties info) {
+		_connection = connection;
+		_capacity = Math.max(1, DriverProperties.getInt(info, DriverProperties.WRITE_BEHIND_CAPACITY,
+				DriverProperties.DEFAULT_WRITE_BEHIND_CAPACITY));
+		_batchRows = Math.max(1, DriverProperties.getInt(info, DriverProperties.BATCH_SIZE, DriverProperties.DEFAULT_BATCH_SIZE));
+		_reject = REJECT.equalsIgnoreCase(DriverProperties.getString(info, DriverProperties.WRITE_BEHIND_WHEN_FULL,
+				DriverProperties.DEFAULT_WRITE_BEHIND_WHEN_FULL).trim());
+		_space = new Semaphore(_capacity);
+
+		int threads = Math.max(1, DriverProperties.getInt(info, DriverProperties.WRITE_BEHIND_THREADS,
+				DriverProperties.DEFAULT_WRITE_BEHIND_THREADS));
+		for (int i = 0; i < threads; i++) {
+			Thread writer = new Thread(new Runnable() {
+				public void run() {
+					drain();
+				}
+			}, "riakts-jdbc-write-behind-" + i);
+			writer.setDaemon(true);
+			writer.start();
+			_writers.add(writer);
+		}
+	}
+
+	/***
+	 * Queues the rows of an INSERT to be written in the background
+	 * @param table
+	 * @param rows cells in the table's column order
+	 * @throws SQLException if the buffer is full and WriteBehindWhenFull=reject, or the
+	 * connection is closed
+	 */
+	void add(String table, List<Row> rows) throws SQLException {
+		if (_closed) throw new SQLException("Connection is closed");
+		int permits = permits(rows);
+		if (_reject) {
+			if (!_space.tryAcquire(permits)) {
+				_rejectedRows.addAndGet(rows.size());
+				throw new SQLException("Write-behind buffer is full: " + _pendingRows.get() + " rows waiting to be written");
+			}
+		}
+		else {
+			try {
+				_space.acquire(permits);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException(e);
+			}
+		}
+		synchronized (_lock) {
+			if (_closed) {
+				_space.release(permits);
+				throw new SQLException("Connection is closed");
+			}
+			_pendingRows.addAndGet(rows.size());
+			_queue.add(new BatchWriter.Entry(table, rows));
+		}
+		_ready.release();
+	} // Tested
+
+	/***
+	 * Waits until every row queued so far has been written
+	 * @throws SQLException if any row failed to be written since the last flush
+	 */
+	public void flush() throws SQLException {
+		synchronized (_drained) {
+			while (_pendingRows.get() > 0) {
+				try {
+					_drained.wait();
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new SQLException(e);
+				}
+			}
+			SQLException error = _error;
+			_error = null;
+			if (error != null) throw error;
+		}
+	} // Tested
+
+	/***
+	 * Stops the writers once the rows already queued have been written
+	 */
+	void close() {
+		synchronized (_lock) {
+			_closed = true;
+		}
+		_ready.release(_writers.size());
+	}
+
+	/***
+	 * Returns the number of rows queued or being written
+	 * @return long
+	 */
+	public long getPendingRows() {
+		return _pendingRows.get();
+	}
+
+	public long getWrittenRows() {
+		return _writtenRows.get();
+	}
+
+	public long getFailedRows() {
+		return _failedRows.get();
+	}
+
+	/***
+	 * Returns the number of rows turned away because the buffer was full
+	 * @return long
+	 */
+	public long getRejectedRows() {
+		return _rejectedRows.get();
+	}
+
+	/***
+	 * Returns the number of batches the writers have sent
+	 * @return long
+	 */
+	public long getBatches() {
+		return _batches.get();
+	}
+
+	/***
+	 * Returns a percentile of the time taken to write a batch
+	 * @param percentile between 0 and 100
+	 * @return milliseconds or -1 if no batches have been written
+	 */
+	public double getFlushLatencyMillis(double percentile) {
+		return _flushLatency.getPercentileMillis(percentile);
+	}
+
+	public int getCapacity() {
+		return _capacity;
+	}
+
+
+	/***
+	 * Run by each writer: takes batches of rows off the queue and writes them until the
+	 * buffer is closed and the queue is empty
+	 */
+	private void drain() {
+		while (true) {
+			List<BatchWriter.Entry> batch = new ArrayList<BatchWriter.Entry>();
+			int rows = 0;
+			BatchWriter.Entry entry;
+			while (rows < _batchRows && (entry = _queue.poll()) != null) {
+				batch.add(entry);
+				rows += entry.rows.size();
+			}
+			if (!batch.isEmpty()) {
+				write(batch);
+				continue;
+			}
+			if (_closed) {
+				// Rows queued before the buffer closed are still written
+				if (_queue.isEmpty()) return;
+				continue;
+			}
+			try {
+				_ready.tryAcquire(100, TimeUnit.MILLISECONDS);
+			}
+			catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private void write(List<BatchWriter.Entry> batch) {
+		long start = System.nanoTime();
+		int[] counts = null;
+		SQLException error = null;
+		try {
+			_connection.writeBatch(batch);
+		}
+		catch (BatchUpdateException e) {
+			counts = e.getUpdateCounts();
+			error = e;
+		}
+		catch (Throwable e) {
+			// None of the batch is known to be written
+			counts = new int[batch.size()];
+			Arrays.fill(counts, java.sql.Statement.EXECUTE_FAILED);
+			error = new SQLException("Write-behind batch failed: " + e, e);
+		}
+		finally {
+			// Whatever happened, the rows are no longer pending and their space is free,
+			// or flush() would wait for them forever
+			_flushLatency.record(System.nanoTime() - start);
+			_batches.incrementAndGet();
+			int rows = 0;
+			for (int i = 0; i < batch.size(); i++) {
+				int size = batch.get(i).rows.size();
+				rows += size;
+				if (counts != null && counts[i] == java.sql.Statement.EXECUTE_FAILED) _failedRows.addAndGet(size);
+				else _writtenRows.addAndGet(size);
+				_space.release(permits(batch.get(i).rows));
+			}
+			synchronized (_drained) {
+				if (error != null && _error == null) _error = error;
+				_pendingRows.addAndGet(-rows);
+				_drained.notifyAll();
+			}
+		}
+	}
+
+	// An INSERT with more rows than the buffer holds takes all of it
+	private int permits(List<Row> rows) {
+		return Math.min(rows.size(), _capacity);
+	}
+
+}
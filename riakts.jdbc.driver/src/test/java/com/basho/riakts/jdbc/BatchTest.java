@@ -0,0 +1,456 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.sql.BatchUpdateException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.basho.riak.client.core.query.timeseries.Cell;
+import com.basho.riak.client.core.query.timeseries.Row;
+
+/***
+ * Tests batched writes against a stand-in Riak TS node that rejects any Store
+ * command with a row for the name 'Bad', and holds Store commands while a test
+ * has closed its gate
+ */
+public class BatchTest {
+
+	private final static long JOINED = 1467072000000L; // 2016-06-28
+
+	private StandInRiakServer _server;
+	private Connection _conn;
+	private volatile CountDownLatch _gate = null;
+
+	@Before
+	public void setUp() throws Exception {
+		_server = new StandInRiakServer() {
+			protected String store(String table, List<Object[]> rows) {
+				try {
+					if (_gate != null) _gate.await();
+				}
+				catch (InterruptedException e) {
+					return "Interrupted";
+				}
+				for (Object[] row : rows) {
+					if ("Bad".equals(row[0])) return "Invalid data";
+				}
+				return super.store(table, rows);
+			}
+		};
+		_server.createDriverTestTable();
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.BATCH_SIZE, "2");
+		_conn = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), info);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		_conn.close();
+		_server.close();
+	}
+
+	@Test
+	public void testExecuteBatch() throws SQLException {
+		java.sql.Statement statement = _conn.createStatement();
+		for (int i = 0; i < 5; i++) {
+			statement.addBatch("INSERT INTO jdbcDriverTest VALUES ('Craig', " + i + ", '2016-06-28', 190.5, true)");
+		}
+		statement.addBatch("INSERT INTO jdbcDriverTest (age, name, joined) VALUES (30, 'Ann', 0), (31, 'Ann', 0)");
+		int[] counts = statement.executeBatch();
+		assertArrayEquals(new int[] { 1, 1, 1, 1, 1, 2 }, counts);
+		// 7 rows, 2 per Store command
+		assertEquals(4, _server.getStoreCount());
+		assertEquals(7, _server.getStoredRowCount());
+
+		// Rows are written in the table's column order, with nulls for columns not listed
+		java.sql.ResultSet rs = statement.executeQuery("SELECT * FROM jdbcDriverTest WHERE name = 'Ann' AND age = 31 AND joined = 0");
+		assertTrue(rs.next());
+		assertEquals(31, rs.getLong("age"));
+		assertNull(rs.getObject("weight"));
+
+		// The batch is cleared once run
+		assertEquals(0, statement.executeBatch().length);
+	}
+
+	@Test
+	public void testPartialFailure() throws SQLException {
+		java.sql.PreparedStatement statement = _conn.prepareStatement(
+				"INSERT INTO jdbcDriverTest VALUES ('Craig', 1, 0, 1.0, true)");
+		statement.addBatch();
+		statement.addBatch("INSERT INTO jdbcDriverTest VALUES ('Craig', 2, 0, 1.0, true)");
+		statement.addBatch("INSERT INTO jdbcDriverTest VALUES ('Craig', 3, 0, 1.0, true)");
+		statement.addBatch("INSERT INTO jdbcDriverTest VALUES ('Bad', 4, 0, 1.0, true)");
+		// Run as SQL, which the stand-in answers with an empty result
+		statement.addBatch("DELETE FROM jdbcDriverTest WHERE name = 'Craig' AND age = 9 AND joined = 0");
+		statement.addBatch("INSERT INTO jdbcDriverTest VALUES ('Craig', 5, 0, 1.0, true)");
+		try {
+			statement.executeBatch();
+			fail("Expected a BatchUpdateException");
+		}
+		catch (BatchUpdateException e) {
+			// The Store command that failed held the rows of the third and fourth statements
+			assertArrayEquals(new int[] { 1, 1, java.sql.Statement.EXECUTE_FAILED, java.sql.Statement.EXECUTE_FAILED,
+					0, 1 }, e.getUpdateCounts());
+			assertTrue(e.getMessage().startsWith("2 of 6"));
+		}
+		assertEquals(3, _server.getStoredRowCount());
+	}
+
+	@Test
+	public void testPreparedInsert() throws SQLException {
+		java.sql.PreparedStatement statement = _conn.prepareStatement(
+				"INSERT INTO jdbcDriverTest (name, age, joined, weight, active) VALUES (?, ?, ?, ?, true)");
+		statement.setString(1, "Craig");
+		statement.setInt(2, 21);
+		statement.setTimestamp(3, new Timestamp(JOINED));
+		statement.setDouble(4, 190.5);
+		assertEquals(1, statement.executeUpdate());
+		// Written as a typed row, not as SQL text
+		assertEquals(1, _server.getStoreCount());
+		assertEquals(0, _server.getQueryCount());
+
+		for (int i = 0; i < 3; i++) {
+			statement.setInt(2, 30 + i);
+			statement.addBatch();
+		}
+		assertArrayEquals(new int[] { 1, 1, 1 }, statement.executeBatch());
+		assertEquals(4, _server.getStoredRowCount());
+
+		// Parameters of a SELECT are bound into its text
+		java.sql.PreparedStatement select = _conn.prepareStatement(
+				"SELECT * FROM jdbcDriverTest WHERE name = ? AND age = ? AND joined = ?");
+		select.setString(1, "Craig");
+		select.setLong(2, 32);
+		select.setTimestamp(3, new Timestamp(JOINED));
+		ResultSet rs = select.executeQuery();
+		assertTrue(rs.next());
+		assertEquals(190.5, rs.getDouble("weight"), 0);
+		assertTrue(rs.getBoolean("active"));
+	}
+
+	@Test
+	public void testInsertUpdateCounts() throws Exception {
+		String sql = "INSERT INTO jdbcDriverTest VALUES ('Craig', 1, 0, 1.0, true), ('Craig', 2, 0, 1.0, true)";
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.COALESCE_INSERTS, "true");
+		Connection coalescing = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), info);
+		try {
+			// Run as SQL, buffered, or stored as typed rows, an INSERT counts the rows it wrote
+			for (Connection conn : new Connection[] { _conn, coalescing }) {
+				java.sql.Statement statement = conn.createStatement();
+				assertEquals(2, statement.executeUpdate(sql));
+				java.sql.PreparedStatement prepared = conn.prepareStatement(
+						"INSERT INTO jdbcDriverTest VALUES (?, 3, 0, 1.0, true), (?, 4, 0, 1.0, true)");
+				prepared.setString(1, "Craig");
+				prepared.setString(2, "Craig");
+				assertEquals(2, prepared.executeUpdate());
+				statement.addBatch(sql);
+				assertArrayEquals(new int[] { 2 }, statement.executeBatch());
+			}
+		}
+		finally {
+			coalescing.close();
+		}
+	}
+
+	@Test
+	public void testPreparedInsertErrors() throws SQLException {
+		java.sql.PreparedStatement statement = _conn.prepareStatement("INSERT INTO jdbcDriverTest VALUES (?, ?, ?, ?, ?)");
+		statement.setString(1, "Craig");
+		statement.setString(2, "not a number");
+		try {
+			statement.setBoolean(6, true);
+			fail("Expected an SQLException");
+		}
+		catch (SQLException e) {
+			assertTrue(e.getMessage().contains("out of range"));
+		}
+		try {
+			statement.executeUpdate();
+			fail("Expected an SQLException");
+		}
+		catch (SQLException e) {
+			assertEquals("Parameter 2 can't be stored in column age of type SINT64", e.getMessage());
+		}
+		statement.clearParameters();
+		try {
+			statement.executeUpdate();
+			fail("Expected an SQLException");
+		}
+		catch (SQLException e) {
+			assertEquals("Parameter 1 is not set", e.getMessage());
+		}
+		assertEquals(0, _server.getStoreCount());
+	}
+
+	@Test
+	public void testGroupByPartition() throws SQLException {
+		long day = 86400000L;
+		String[][] values = { { "'A'", "0" }, { "'B'", "0" }, { "'A'", "1" }, { "'A'", "" + 6 * day }, { "'B'", "1" } };
+		List<BatchWriter.PendingRow> rows = new ArrayList<BatchWriter.PendingRow>();
+		for (int i = 0; i < values.length; i++) {
+			String sql = "INSERT INTO jdbcDriverTest VALUES (" + values[i][0] + ", 1, " + values[i][1] + ", 1.0, true)";
+			rows.add(new BatchWriter.PendingRow(i, "jdbcDriverTest", _conn.toRows(QueryParser.parseInsert(sql)).get(0)));
+		}
+		// Partitions are (name, age, 5 day quantum of joined), in the order first seen
+		List<BatchWriter.PendingRow> grouped = BatchWriter.groupByPartition(rows,
+				_conn.getSchemaCache().getTableDefinition("jdbcDriverTest"));
+		int[] statements = new int[grouped.size()];
+		for (int i = 0; i < grouped.size(); i++) statements[i] = grouped.get(i).statement;
+		assertArrayEquals(new int[] { 0, 2, 1, 4, 3 }, statements);
+	}
+
+	@Test
+	public void testCollapseDuplicates() throws SQLException {
+		java.sql.Statement statement = _conn.createStatement();
+		// The same key written three times, with a different weight each time
+		for (int i = 0; i < 3; i++) {
+			statement.addBatch("INSERT INTO jdbcDriverTest VALUES ('Craig', 1, 0, " + (100 + i) + ".0, true)");
+		}
+		statement.addBatch("INSERT INTO jdbcDriverTest VALUES ('Craig', 2, 0, 1.0, true)");
+		assertArrayEquals(new int[] { 1, 1, 1, 1 }, statement.executeBatch());
+		assertEquals(2, _server.getStoredRowCount());
+		assertEquals(2, _conn.getCollapsedRows());
+
+		// The last write wins
+		ResultSet rs = statement.executeQuery("SELECT * FROM jdbcDriverTest WHERE name = 'Craig' AND age = 1 AND joined = 0");
+		assertTrue(rs.next());
+		assertEquals(102.0, rs.getDouble("weight"), 0);
+
+		// Statements whose rows were replaced fail with the row that replaced them, here
+		// sent in one Store command with the second statement's row
+		statement.addBatch("INSERT INTO jdbcDriverTest VALUES ('Bad', 1, 0, 1.0, true)");
+		statement.addBatch("INSERT INTO jdbcDriverTest VALUES ('Craig', 3, 0, 1.0, true)");
+		statement.addBatch("INSERT INTO jdbcDriverTest VALUES ('Bad', 1, 0, 2.0, true)");
+		try {
+			statement.executeBatch();
+			fail("Expected a BatchUpdateException");
+		}
+		catch (BatchUpdateException e) {
+			assertArrayEquals(new int[] { java.sql.Statement.EXECUTE_FAILED, java.sql.Statement.EXECUTE_FAILED,
+					java.sql.Statement.EXECUTE_FAILED }, e.getUpdateCounts());
+		}
+		assertEquals(3, _conn.getCollapsedRows());
+	}
+
+	@Test
+	public void testCoalesceInserts() throws Exception {
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.COALESCE_INSERTS, "true");
+		info.setProperty(DriverProperties.COALESCE_ROWS, "3");
+		info.setProperty(DriverProperties.COALESCE_LINGER_MILLIS, "60000");
+		Connection conn = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), info);
+		try {
+			java.sql.Statement statement = conn.createStatement();
+			for (int i = 0; i < 4; i++) {
+				assertEquals(1, statement.executeUpdate("INSERT INTO jdbcDriverTest VALUES ('Craig', " + i + ", 0, 1.0, true)"));
+			}
+			// The first 3 rows are written as one Store command once CoalesceRows is reached
+			assertEquals(1, _server.getStoreCount());
+			assertEquals(3, _server.getStoredRowCount());
+
+			// A query writes the waiting row first so it's seen
+			java.sql.ResultSet rs = statement.executeQuery("SELECT * FROM jdbcDriverTest WHERE name = 'Craig' AND age = 3 AND joined = 0");
+			assertTrue(rs.next());
+			assertEquals(4, _server.getStoredRowCount());
+
+			// A failed batch is reported by the next call that writes
+			statement.executeUpdate("INSERT INTO jdbcDriverTest VALUES ('Bad', 1, 0, 1.0, true)");
+			try {
+				conn.flushInserts();
+				fail("Expected a BatchUpdateException");
+			}
+			catch (BatchUpdateException e) {
+				assertArrayEquals(new int[] { java.sql.Statement.EXECUTE_FAILED }, e.getUpdateCounts());
+			}
+
+			// Rows that aren't flushed by a threshold are written after CoalesceLingerMillis or on close
+			java.sql.PreparedStatement prepared = conn.prepareStatement("INSERT INTO jdbcDriverTest VALUES (?, 9, 0, 1.0, true)");
+			prepared.setString(1, "Ann");
+			assertEquals(1, prepared.executeUpdate());
+			assertEquals(4, _server.getStoredRowCount());
+		}
+		finally {
+			conn.close();
+		}
+		assertEquals(5, _server.getStoredRowCount());
+	}
+
+	@Test
+	public void testExecuteInsert() throws Exception {
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.COALESCE_INSERTS, "true");
+		info.setProperty(DriverProperties.COALESCE_LINGER_MILLIS, "60000");
+		Connection conn = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), info);
+		try {
+			// Statement.execute coalesces an INSERT as executeUpdate does
+			java.sql.Statement statement = conn.createStatement();
+			assertFalse(statement.execute("INSERT INTO jdbcDriverTest VALUES ('Craig', 1, 0, 1.0, true)"));
+			assertNull(statement.getResultSet());
+			java.sql.PreparedStatement prepared = conn.prepareStatement("INSERT INTO jdbcDriverTest VALUES ('Craig', 2, 0, 1.0, true)");
+			assertFalse(prepared.execute("INSERT INTO jdbcDriverTest VALUES ('Craig', 3, 0, 1.0, true)"));
+			assertEquals(0, _server.getStoredRowCount());
+			conn.flushInserts();
+			assertEquals(1, _server.getStoreCount());
+			assertEquals(2, _server.getStoredRowCount());
+			assertEquals(0, _server.getQueryCount());
+		}
+		finally {
+			conn.close();
+		}
+	}
+
+	@Test
+	public void testCoalesceLinger() throws Exception {
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.COALESCE_INSERTS, "true");
+		info.setProperty(DriverProperties.COALESCE_LINGER_MILLIS, "50");
+		Connection conn = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), info);
+		try {
+			_gate = new CountDownLatch(1);
+			conn.createStatement().executeUpdate("INSERT INTO jdbcDriverTest VALUES ('Craig', 1, 0, 1.0, true)");
+			Thread.sleep(200);
+			// The lingering batch is held up writing, but the hedge timers aren't
+			final CountDownLatch hedge = new CountDownLatch(1);
+			HedgingPolicy.getScheduler().execute(new Runnable() {
+				public void run() {
+					hedge.countDown();
+				}
+			});
+			assertTrue(hedge.await(1, TimeUnit.SECONDS));
+			assertEquals(0, _server.getStoredRowCount());
+			_gate.countDown();
+			conn.flushInserts();
+			assertEquals(1, _server.getStoredRowCount());
+		}
+		finally {
+			_gate.countDown();
+			conn.close();
+		}
+	}
+
+	@Test
+	public void testWriteBehind() throws Exception {
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.WRITE_BEHIND, "true");
+		info.setProperty(DriverProperties.WRITE_BEHIND_CAPACITY, "2");
+		info.setProperty(DriverProperties.WRITE_BEHIND_THREADS, "1");
+		info.setProperty(DriverProperties.WRITE_BEHIND_WHEN_FULL, "reject");
+		Connection conn = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), info);
+		try {
+			WriteBehindBuffer buffer = conn.getWriteBehindBuffer();
+			java.sql.Statement statement = conn.createStatement();
+			_gate = new CountDownLatch(1);
+			statement.executeUpdate("INSERT INTO jdbcDriverTest VALUES ('Craig', 1, 0, 1.0, true)");
+			statement.executeUpdate("INSERT INTO jdbcDriverTest VALUES ('Craig', 2, 0, 1.0, true)");
+			// Nothing is written while the gate is closed, so the buffer is full
+			try {
+				statement.executeUpdate("INSERT INTO jdbcDriverTest VALUES ('Craig', 3, 0, 1.0, true)");
+				fail("Expected an SQLException");
+			}
+			catch (SQLException e) {
+				assertTrue(e.getMessage().startsWith("Write-behind buffer is full"));
+			}
+			assertEquals(1, buffer.getRejectedRows());
+			assertEquals(2, buffer.getPendingRows());
+
+			_gate.countDown();
+			conn.flushInserts();
+			assertEquals(0, buffer.getPendingRows());
+			assertEquals(2, buffer.getWrittenRows());
+			assertEquals(2, _server.getStoredRowCount());
+			assertTrue(buffer.getFlushLatencyMillis(50) >= 0);
+
+			statement.executeUpdate("INSERT INTO jdbcDriverTest VALUES ('Bad', 1, 0, 1.0, true)");
+			try {
+				conn.flushInserts();
+				fail("Expected a BatchUpdateException");
+			}
+			catch (BatchUpdateException e) {
+				assertEquals(1, buffer.getFailedRows());
+			}
+		}
+		finally {
+			conn.close();
+		}
+	}
+
+	@Test
+	public void testWriteBehindUnexpectedFailure() throws Exception {
+		Connection conn = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), new Properties()) {
+			int[] writeBatch(List<BatchWriter.Entry> entries) throws BatchUpdateException {
+				throw new IllegalStateException("Client shut down");
+			}
+		};
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.WRITE_BEHIND_CAPACITY, "1");
+		WriteBehindBuffer buffer = new WriteBehindBuffer(conn, info);
+		try {
+			buffer.add("jdbcDriverTest", Arrays.asList(new Row(new Cell("Craig"))));
+			buffer.add("jdbcDriverTest", Arrays.asList(new Row(new Cell("Craig"))));
+			// The writer survives the failure, frees the space and reports it
+			try {
+				buffer.flush();
+				fail("Expected an SQLException");
+			}
+			catch (SQLException e) {
+				assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+			assertEquals(0, buffer.getPendingRows());
+			assertEquals(2, buffer.getFailedRows());
+			buffer.flush();
+
+			buffer.close();
+			try {
+				buffer.add("jdbcDriverTest", Arrays.asList(new Row(new Cell("Craig"))));
+				fail("Expected an SQLException");
+			}
+			catch (SQLException e) {
+				assertEquals("Connection is closed", e.getMessage());
+			}
+		}
+		finally {
+			buffer.close();
+			conn.close();
+		}
+	}
+
+	@Test
+	public void testBindParameters() {
+		String sql = "SELECT * FROM t WHERE a = ? AND b = '?' AND c IN (?, ?)";
+		assertEquals(3, QueryParser.countParameters(sql));
+		assertEquals("SELECT * FROM t WHERE a = 'it''s' AND b = '?' AND c IN (1, 2.5)",
+				QueryParser.bindParameters(sql, Arrays.asList(Utility.getLiteralFromObject("it's"),
+						Utility.getLiteralFromObject(1), Utility.getLiteralFromObject(2.5))));
+		assertEquals("0", Utility.getLiteralFromObject(new Timestamp(0)));
+		assertEquals("NULL", Utility.getLiteralFromObject(null));
+	}
+
+}
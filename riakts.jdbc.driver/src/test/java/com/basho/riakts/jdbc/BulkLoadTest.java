@@ -0,0 +1,144 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/***
+ * Tests loading CSV files with CsvBulkLoader against a stand-in Riak TS node that
+ * rejects any Store command with a row for the name 'Bad'
+ */
+public class BulkLoadTest {
+
+	private StandInRiakServer _server;
+	private Connection _conn;
+	private File _file;
+
+	@Before
+	public void setUp() throws Exception {
+		_server = new StandInRiakServer() {
+			protected String store(String table, List<Object[]> rows) {
+				for (Object[] row : rows) {
+					if ("Bad".equals(row[0])) return "Invalid data";
+				}
+				return super.store(table, rows);
+			}
+		};
+		_server.createDriverTestTable();
+		_conn = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), null);
+		_file = File.createTempFile("bulkload", ".csv");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		_conn.close();
+		_server.close();
+		_file.delete();
+	}
+
+	@Test
+	public void testLoad() throws Exception {
+		StringBuilder csv = new StringBuilder("name,age,joined,weight,active\n");
+		for (int i = 0; i < 1000; i++) csv.append("Craig,").append(i).append(",1467072000000,190.5,true\n");
+		csv.append("\"Smith, \"\"Ann\"\"\", 7 ,6/28/2016,,FALSE\r\n");
+		csv.append("Ann,8,2016-06-28,12.25,true\n");
+		csv.append("\n");
+		csv.append("Ann,not a number,0,1.0,true\n");
+		csv.append("Ann,9,0");
+		write(csv.toString());
+
+		CsvBulkLoader loader = new CsvBulkLoader(_conn, "jdbcDriverTest");
+		loader.setHeader(true);
+		loader.setThreads(3);
+		loader.setBatchRows(100);
+		loader.setTimestampFormat("M/d/yyyy");
+		CsvBulkLoader.Report report = loader.load(_file);
+		assertEquals(1002, report.getRows());
+		assertEquals(1002, _server.getStoredRowCount());
+		assertEquals(2, report.getRejectedLines());
+		assertEquals(2, report.getErrors().size());
+		assertEquals(report.getTotalBytes(), report.getBytesParsed());
+
+		java.sql.ResultSet rs = _conn.createStatement().executeQuery(
+				"SELECT * FROM jdbcDriverTest WHERE name = 'Smith, \"Ann\"' AND age = 7 AND joined = 1467072000000");
+		assertTrue(rs.next());
+		assertNull(rs.getObject("weight"));
+		assertFalse(rs.getBoolean("active"));
+		rs = _conn.createStatement().executeQuery(
+				"SELECT * FROM jdbcDriverTest WHERE name = 'Ann' AND age = 8 AND joined = '2016-06-28'");
+		assertTrue(rs.next());
+		assertEquals(12.25, rs.getDouble("weight"), 0);
+	}
+
+	@Test
+	public void testColumnsAndInvalidAsNull() throws Exception {
+		write("1467072000000;x;Ann;3\n0;1.0;Bad;4\n");
+		CsvBulkLoader loader = new CsvBulkLoader(_conn, "jdbcDriverTest");
+		loader.setDelimiter(';');
+		loader.setColumns(Arrays.asList("joined", "weight", "name", "age"));
+		loader.setInvalidAsNull(true);
+		loader.setThreads(1);
+		loader.setBatchRows(1);
+		CsvBulkLoader.Report report = loader.load(_file);
+		assertEquals(1, report.getRows());
+		// Rows Riak TS fails to store are counted, not rejected
+		assertEquals(1, report.getFailedRows());
+		assertEquals(0, report.getRejectedLines());
+		java.sql.ResultSet rs = _conn.createStatement().executeQuery(
+				"SELECT * FROM jdbcDriverTest WHERE name = 'Ann' AND age = 3 AND joined = 1467072000000");
+		assertTrue(rs.next());
+		assertNull(rs.getObject("weight"));
+	}
+
+	@Test
+	public void testParseNumbers() {
+		String[] doubles = { "0", "-0", "190.5", "0.1", "-12.25", "1e3", "2.5E-3", "123456789012345678", "0.000001",
+				"3.141592653589793238", "1e300", "29.86", ".5", "5." };
+		for (String text : doubles) {
+			byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+			assertEquals(text, Double.parseDouble(text), CsvBulkLoader.parseDouble(bytes, 0, bytes.length), 0);
+		}
+		for (String text : new String[] { "0", "-42", "9223372036854775807", "-9223372036854775808" }) {
+			byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+			assertEquals(Long.parseLong(text), CsvBulkLoader.parseLong(bytes, 0, bytes.length));
+		}
+		for (String text : new String[] { "", "-", "1.5", "9223372036854775808", "T" }) {
+			byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+			try {
+				CsvBulkLoader.parseLong(bytes, 0, bytes.length);
+				fail("Expected a NumberFormatException for " + text);
+			}
+			catch (NumberFormatException e) { }
+		}
+	}
+
+	private void write(String text) throws Exception {
+		FileOutputStream out = new FileOutputStream(_file);
+		out.write(text.getBytes(StandardCharsets.UTF_8));
+		out.close();
+	}
+
+}
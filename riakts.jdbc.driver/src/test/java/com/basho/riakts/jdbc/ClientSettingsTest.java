@@ -0,0 +1,150 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.basho.riak.client.core.RiakNode;
+
+import io.netty.channel.epoll.Epoll;
+
+/***
+ * Tests reading the Riak client's socket and thread settings from connection
+ * properties, URL parameters and profiles
+ */
+public class ClientSettingsTest {
+
+	@Test
+	public void testProfileDefaultsAndOverrides() throws SQLException {
+		ClientSettings settings = new ClientSettings(new Properties());
+		assertEquals(RiakNode.Builder.DEFAULT_MIN_CONNECTIONS, settings.getMinConnections());
+		assertEquals(0, settings.getMaxConnections());
+		assertFalse(settings.getBlockOnMaxConnections());
+
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.CONNECTION_PROFILE, "High-Throughput");
+		info.setProperty(DriverProperties.MAX_CONNECTIONS, "32");
+		settings = new ClientSettings(info);
+		assertEquals(16, settings.getMinConnections());
+		assertEquals(32, settings.getMaxConnections());
+		assertTrue(settings.getBlockOnMaxConnections());
+		assertFalse(settings.getKey().equals(new ClientSettings(new Properties()).getKey()));
+	}
+
+	@Test
+	public void testInvalidSettings() {
+		String[][] invalid = { { DriverProperties.MAX_CONNECTIONS, "many" }, { DriverProperties.IDLE_TIMEOUT_MILLIS, "-1" },
+				{ DriverProperties.BLOCK_ON_MAX_CONNECTIONS, "yes" }, { DriverProperties.CONNECTION_PROFILE, "fast" },
+				{ DriverProperties.MIN_CONNECTIONS, "10" } };
+		for (String[] setting : invalid) {
+			Properties info = new Properties();
+			info.setProperty(DriverProperties.MAX_CONNECTIONS, "4");
+			info.setProperty(setting[0], setting[1]);
+			try {
+				new ClientSettings(info);
+				fail("Expected SQLException for " + setting[0] + "=" + setting[1]);
+			}
+			catch (SQLException e) {
+				// Expected
+			}
+		}
+	}
+
+	@Test
+	public void testGetPropertyInfo() throws SQLException {
+		Driver driver = new Driver();
+		DriverPropertyInfo[] properties = driver.getPropertyInfo(
+				"riakts://127.0.0.1:8087?ConnectionProfile=low-latency&MaxConnections=12", null);
+		assertEquals("8", valueOf(properties, DriverProperties.MIN_CONNECTIONS));
+		assertEquals("12", valueOf(properties, DriverProperties.MAX_CONNECTIONS));
+		assertEquals("127.0.0.1", valueOf(properties, DriverProperties.RIAK_URL));
+		assertEquals(3, choicesOf(properties, DriverProperties.LOAD_BALANCING).length);
+
+		properties = driver.getPropertyInfo(null, new Properties());
+		assertTrue(requiredOf(properties, DriverProperties.RIAK_URL));
+		try {
+			driver.getPropertyInfo("riakts://127.0.0.1:8087?EventLoopThreads=two", null);
+			fail("Expected SQLException");
+		}
+		catch (SQLException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testConnectionUsesSettings() throws Exception {
+		StandInRiakServer server = new StandInRiakServer();
+		Connection conn = new Connection("riakts://" + server.getHost() + ":" + server.getPort()
+				+ "?MinConnections=2&MaxConnections=6&BlockOnMaxConnections=true&EventLoopThreads=2", null);
+		try {
+			RiakNode node = conn._client.getRiakCluster().getNodes().get(0);
+			assertEquals(2, node.getMinConnections());
+			assertEquals(6, node.getMaxConnections());
+			assertTrue(node.getBlockOnMaxConnections());
+		}
+		finally {
+			conn.close();
+			server.close();
+		}
+	}
+
+	@Test
+	public void testNativeTransport() throws Exception {
+		StandInRiakServer server = new StandInRiakServer();
+		server.setQueryResult(new String[] { "name", "value" }, new String[] { "varchar", "sint64" },
+				new ArrayList<Object[]>());
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.NATIVE_TRANSPORT, "true");
+		info.setProperty(DriverProperties.SHARE_CLIENT, "false");
+		assertEquals(Epoll.isAvailable() ? ClientSettings.EPOLL : ClientSettings.NIO, new ClientSettings(info).getTransport());
+		assertEquals(ClientSettings.NIO, new ClientSettings(new Properties()).getTransport());
+		Connection conn = new Connection("riakts://" + server.getHost() + ":" + server.getPort(), info);
+		try {
+			assertFalse(conn.createStatement().executeQuery("SELECT name, value FROM native WHERE value = 1").next());
+		}
+		finally {
+			conn.close();
+			server.close();
+		}
+	}
+
+	private static DriverPropertyInfo find(DriverPropertyInfo[] properties, String name) {
+		for (DriverPropertyInfo property : properties) {
+			if (property.name.equals(name)) return property;
+		}
+		throw new AssertionError("No property " + name);
+	}
+
+	private static String valueOf(DriverPropertyInfo[] properties, String name) {
+		return find(properties, name).value;
+	}
+
+	private static String[] choicesOf(DriverPropertyInfo[] properties, String name) {
+		return find(properties, name).choices;
+	}
+
+	private static boolean requiredOf(DriverPropertyInfo[] properties, String name) {
+		return find(properties, name).required;
+	}
+
+}
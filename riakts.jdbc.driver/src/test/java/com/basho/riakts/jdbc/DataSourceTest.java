@@ -0,0 +1,158 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/***
+ * Tests the DataSource connection pool against a stand-in Riak TS node
+ */
+public class DataSourceTest {
+
+	private StandInRiakServer _server;
+	private DataSource _dataSource;
+
+	@Before
+	public void setUp() throws Exception {
+		_server = new StandInRiakServer();
+		_server.setQueryResult(new String[] { "name", "value" }, new String[] { "varchar", "sint64" },
+				new ArrayList<Object[]>());
+		_dataSource = new DataSource();
+		_dataSource.setUrl("riakts://" + _server.getHost() + ":" + _server.getPort());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		_dataSource.close();
+		_server.close();
+	}
+
+	@Test
+	public void testConnectionsAreReused() throws SQLException {
+		java.sql.Connection first = _dataSource.getConnection();
+		Connection physical = first.unwrap(Connection.class);
+		first.createStatement().executeQuery("SELECT name, value FROM pooled WHERE value = 1");
+		first.close();
+		assertTrue(first.isClosed());
+		try {
+			first.createStatement();
+			fail("Expected SQLException");
+		}
+		catch (SQLException e) {
+			// Expected
+		}
+
+		java.sql.Connection second = _dataSource.getConnection();
+		assertSame(physical, second.unwrap(Connection.class));
+		assertFalse(second.isClosed());
+		ConnectionPool pool = _dataSource.getPool();
+		assertEquals(1, pool.getCreatedConnections());
+		assertEquals(2, pool.getCheckouts());
+		assertEquals(1, pool.getActiveConnections());
+		second.close();
+		assertEquals(1, pool.getIdleConnections());
+		assertEquals(0, pool.getActiveConnections());
+	}
+
+	@Test
+	public void testStatementConnectionIsHandle() throws SQLException {
+		java.sql.Connection first = _dataSource.getConnection();
+		Connection physical = first.unwrap(Connection.class);
+		java.sql.Statement statement = first.createStatement();
+		java.sql.PreparedStatement prepared = first.prepareStatement("SELECT name, value FROM pooled WHERE value = ?");
+		assertSame(first, statement.getConnection());
+		assertSame(first, prepared.getConnection());
+		// Closing the statement's connection hands the physical connection back
+		statement.getConnection().close();
+		assertFalse(physical.isClosed());
+		java.sql.Connection second = _dataSource.getConnection();
+		assertSame(physical, second.unwrap(Connection.class));
+
+		// A physical connection closed behind the pool's back is replaced, not handed out
+		physical.close();
+		second.close();
+		java.sql.Connection third = _dataSource.getConnection();
+		assertNotSame(physical, third.unwrap(Connection.class));
+		assertEquals(1, _dataSource.getPool().getTotalConnections());
+		third.close();
+	}
+
+	@Test
+	public void testMaxSizeAndMinIdle() throws SQLException {
+		_dataSource.setMaxPoolSize(2);
+		_dataSource.setMinIdle(1);
+		_dataSource.setProperty(DriverProperties.POOL_TIMEOUT_MILLIS, "100");
+		ConnectionPool pool = _dataSource.getPool();
+		assertEquals(1, pool.getTotalConnections());
+
+		java.sql.Connection first = _dataSource.getConnection();
+		java.sql.Connection second = _dataSource.getConnection();
+		try {
+			_dataSource.getConnection();
+			fail("Expected SQLTransientConnectionException");
+		}
+		catch (SQLTransientConnectionException e) {
+			// Expected
+		}
+		assertEquals(1, pool.getTimeouts());
+		assertEquals(2, pool.getTotalConnections());
+		first.close();
+		second.close();
+		assertEquals(2, pool.getIdleConnections());
+
+		_dataSource.close();
+		assertTrue(pool.isClosed());
+		assertEquals(0, pool.getTotalConnections());
+	}
+
+	@Test
+	public void testPooledConnectionEvents() throws SQLException {
+		ConnectionPoolDataSource source = new ConnectionPoolDataSource();
+		source.setUrl(_dataSource.getUrl());
+		javax.sql.PooledConnection pooled = source.getPooledConnection();
+		final AtomicInteger closed = new AtomicInteger();
+		pooled.addConnectionEventListener(new ConnectionEventListener() {
+			public void connectionClosed(ConnectionEvent event) {
+				closed.incrementAndGet();
+			}
+
+			public void connectionErrorOccurred(ConnectionEvent event) {
+			}
+		});
+		java.sql.Connection first = pooled.getConnection();
+		// A new handle closes the old one without an event
+		java.sql.Connection second = pooled.getConnection();
+		assertTrue(first.isClosed());
+		assertEquals(0, closed.get());
+		second.close();
+		second.close();
+		assertEquals(1, closed.get());
+		pooled.close();
+	}
+
+}
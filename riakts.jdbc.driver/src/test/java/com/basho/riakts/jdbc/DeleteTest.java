@@ -0,0 +1,173 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/***
+ * Tests DELETE statements and retention pruning against a stand-in Riak TS node that
+ * answers key queries with the keys of the rows still stored in their time range
+ */
+public class DeleteTest {
+
+	private final static long HOUR = 3600000L;
+	private final static long MINUTE = 60000L;
+
+	private EventServer _server;
+	private Connection _conn;
+
+	/***
+	 * Answers "... time >= X AND time < Y" with the time and id of the events stored
+	 * in that range
+	 */
+	static class EventServer extends StandInRiakServer {
+		private final static Pattern RANGE = Pattern.compile("time >= (\\d+) AND time < (\\d+)");
+		private List<Long> _times = new ArrayList<Long>();
+
+		EventServer() throws IOException {
+			super();
+		}
+
+		void putEvent(long time) {
+			put("events", time, "e" + time, 1.0);
+			_times.add(time);
+		}
+
+		protected List<Object[]> rowsFor(String sql) {
+			List<Object[]> rows = new ArrayList<Object[]>();
+			Matcher matcher = RANGE.matcher(sql);
+			if (!matcher.find()) return rows;
+			long start = Long.parseLong(matcher.group(1));
+			long end = Long.parseLong(matcher.group(2));
+			for (long time : _times) {
+				if (time >= start && time < end && get("events", time, "e" + time) != null) {
+					rows.add(new Object[] { time, "e" + time });
+				}
+			}
+			return rows;
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		_server = new EventServer();
+		_server.createTable("events",
+				new String[] { "time", "id", "value" },
+				new String[] { "timestamp", "varchar", "double" },
+				new String[] { "time" }, new String[] { "time", "id" }, "time", 1, "h");
+		_server.setQueryResult(new String[] { "time", "id" }, new String[] { "timestamp", "varchar" },
+				new ArrayList<Object[]>());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (_conn != null) _conn.close();
+		_server.close();
+	}
+
+	@Test
+	public void testDeleteTimeRange() throws Exception {
+		_conn = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), new Properties());
+		// An event every 10 minutes for 5 hours
+		for (long time = 0; time < 5 * HOUR; time += 10 * MINUTE) _server.putEvent(time);
+
+		int deleted = _conn.createStatement().executeUpdate(
+				"DELETE FROM events WHERE time >= " + (30 * MINUTE) + " AND time < " + (3 * HOUR));
+		assertEquals(15, deleted);
+		assertEquals(15, _server.getDeleteCount());
+		// One key query per quantum touched
+		assertEquals(3, _conn.getBulkDeleter().getKeyQueries());
+		assertNotNull(_server.get("events", 20 * MINUTE, "e" + (20 * MINUTE)));
+		assertNull(_server.get("events", 30 * MINUTE, "e" + (30 * MINUTE)));
+		assertNull(_server.get("events", 170 * MINUTE, "e" + (170 * MINUTE)));
+		assertNotNull(_server.get("events", 3 * HOUR, "e" + (3 * HOUR)));
+
+		// Nothing left to delete in the range
+		assertEquals(0, _conn.createStatement().executeUpdate(
+				"DELETE FROM events WHERE time >= " + (30 * MINUTE) + " AND time < " + (3 * HOUR)));
+		assertEquals(15, _conn.getBulkDeleter().getDeletedRows());
+	}
+
+	@Test
+	public void testExecuteDelete() throws Exception {
+		_conn = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), new Properties());
+		for (long time = 0; time < HOUR; time += 10 * MINUTE) _server.putEvent(time);
+
+		// Statement.execute deletes through the BulkDeleter as executeUpdate does
+		java.sql.Statement statement = _conn.createStatement();
+		assertFalse(statement.execute("DELETE FROM events WHERE time >= 0 AND time < " + (30 * MINUTE)));
+		assertNull(statement.getResultSet());
+		assertEquals(3, _server.getDeleteCount());
+		assertEquals(3, _conn.getBulkDeleter().getDeletedRows());
+		assertNotNull(_server.get("events", 30 * MINUTE, "e" + (30 * MINUTE)));
+	}
+
+	@Test
+	public void testRetention() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty(DriverProperties.RETENTION, "events:1h");
+		properties.setProperty(DriverProperties.RETENTION_LOOKBACK, "6h");
+		properties.setProperty(DriverProperties.DELETE_RATE_LIMIT, "1000");
+		_conn = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), properties);
+		// An event every 10 minutes for the last 5 hours, 5 minutes off the hour
+		long now = System.currentTimeMillis();
+		for (int k = 0; k < 30; k++) _server.putEvent(now - k * 10 * MINUTE - 5 * MINUTE);
+
+		RetentionPruner pruner = _conn.getRetentionPruner();
+		assertEquals(24, pruner.prune());
+		assertEquals(24, _server.getDeleteCount());
+		assertTrue(pruner.getPrunedUntil("events") >= now - HOUR);
+		assertNotNull(_server.get("events", now - 55 * MINUTE, "e" + (now - 55 * MINUTE)));
+		assertNull(_server.get("events", now - 65 * MINUTE, "e" + (now - 65 * MINUTE)));
+
+		// The next run only covers the time since the last one
+		assertEquals(0, pruner.prune());
+		assertEquals(2, pruner.getRuns());
+		assertEquals(0, pruner.getFailures());
+	}
+
+	@Test
+	public void testParseRetention() throws SQLException {
+		assertEquals(30 * 24 * HOUR, RetentionPruner.parseAge("30d"));
+		assertEquals(12 * HOUR, RetentionPruner.parseAge(" 12h "));
+		assertEquals(15 * MINUTE, RetentionPruner.parseAge("15m"));
+		assertEquals(90000, RetentionPruner.parseAge("90s"));
+		assertEquals(500, RetentionPruner.parseAge("500"));
+		assertEquals(-1, RetentionPruner.parseAge("week"));
+		assertEquals(2, RetentionPruner.parseRetention("weather:30d, readings:12h").size());
+		assertEquals(Long.valueOf(12 * HOUR), RetentionPruner.parseRetention("weather:30d, readings:12h").get("readings"));
+		try {
+			RetentionPruner.parseRetention("weather");
+			fail("Expected SQLException");
+		}
+		catch (SQLException e) {
+			// Expected
+		}
+	}
+
+}
@@ -0,0 +1,108 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/***
+ * Tests IN lists on the partition key against a stand-in Riak TS node that answers
+ * each station's query with that station's readings
+ */
+public class FanOutTest {
+
+	private final static String RANGE = " AND time >= 0 AND time < 86400000";
+
+	private StandInRiakServer _server;
+	private Connection _conn;
+
+	/***
+	 * Answers "... station = 'X' ..." with readings of X at times 1, 4, 7 ... for 'A',
+	 * 2, 5, 8 ... for 'B' and 3, 6, 9 ... for 'C'
+	 */
+	static class StationServer extends StandInRiakServer {
+		StationServer() throws IOException {
+			super();
+		}
+
+		protected List<Object[]> rowsFor(String sql) {
+			List<Object[]> rows = new ArrayList<Object[]>();
+			for (String station : new String[] { "A", "B", "C" }) {
+				if (!sql.contains("station = '" + station + "'")) continue;
+				long offset = station.charAt(0) - 'A' + 1;
+				for (long i = 0; i < 5; i++) rows.add(new Object[] { station, offset + i * 3, (double) i });
+			}
+			return rows;
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		_server = new StationServer();
+		_server.createTable("readings",
+				new String[] { "station", "time", "temperature" },
+				new String[] { "varchar", "timestamp", "double" },
+				new String[] { "station", "time" }, new String[] { "station", "time" }, "time", 1, "d");
+		_server.setQueryResult(new String[] { "station", "time", "temperature" },
+				new String[] { "varchar", "timestamp", "double" }, new ArrayList<Object[]>());
+		_conn = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), new Properties());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		_conn.close();
+		_server.close();
+	}
+
+	@Test
+	public void testFanOutConcatenates() throws SQLException {
+		java.sql.ResultSet rs = _conn.createStatement().executeQuery(
+				"SELECT * FROM readings WHERE station IN ('C', 'A')" + RANGE);
+		assertEquals(2, _server.getQueryCount());
+		List<String> stations = new ArrayList<String>();
+		while (rs.next()) stations.add(rs.getString("station"));
+		assertEquals(10, stations.size());
+		// Branches are returned in the order the stations were listed
+		assertEquals("C", stations.get(0));
+		assertEquals("A", stations.get(9));
+	}
+
+	@Test
+	public void testFanOutMergesByTime() throws SQLException {
+		java.sql.ResultSet rs = _conn.createStatement().executeQuery(
+				"SELECT * FROM readings WHERE (station = 'A' OR station = 'B' OR station = 'C')" + RANGE + " ORDER BY time");
+		assertEquals(3, _server.getQueryCount());
+		long last = 0;
+		int rows = 0;
+		while (rs.next()) {
+			long time = rs.getTimestamp("time").getTime();
+			assertEquals(last + 1, time);
+			last = time;
+			rows++;
+		}
+		assertEquals(15, rows);
+	}
+
+}
@@ -0,0 +1,136 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/***
+ * Tests primary key lookups against a stand-in Riak TS node
+ */
+public class FetchTest {
+
+	private final static long JOINED = 1467072000000L; // 2016-06-28
+
+	private StandInRiakServer _server;
+	private Connection _conn;
+
+	@Before
+	public void setUp() throws Exception {
+		_server = new StandInRiakServer();
+		_server.createDriverTestTable();
+		_server.put("jdbcDriverTest", "Craig", 21L, JOINED, 190.5, true);
+		_conn = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), new Properties());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		_conn.close();
+		_server.close();
+	}
+
+	@Test
+	public void testPlanFetch() throws SQLException {
+		QueryPlan plan = _conn.plan("SELECT * FROM jdbcDriverTest WHERE name = 'Craig' AND age = 21 AND joined = " + JOINED);
+		assertEquals(QueryPlan.FETCH, plan.getStrategy());
+		assertEquals(3, plan.getFetchKey().size());
+		// Key cells are in local key order
+		assertEquals(JOINED, plan.getFetchKey().get(0).getTimestamp());
+		assertEquals("Craig", plan.getFetchKey().get(1).getVarcharAsUTF8String());
+
+		// Anything short of equality on the whole key goes to the query engine
+		assertEquals(QueryPlan.PASS_THROUGH, _conn.plan(
+				"SELECT * FROM jdbcDriverTest WHERE name = 'Craig' AND age = 21").getStrategy());
+		assertEquals(QueryPlan.PASS_THROUGH, _conn.plan(
+				"SELECT * FROM jdbcDriverTest WHERE name = 'Craig' AND age = 21 AND joined = 1 AND weight = 2.0").getStrategy());
+		assertEquals(QueryPlan.PASS_THROUGH, _conn.plan(
+				"SELECT COUNT(*) FROM jdbcDriverTest WHERE name = 'Craig' AND age = 21 AND joined = 1").getStrategy());
+		assertEquals(QueryPlan.PASS_THROUGH, _conn.plan(
+				"SELECT * FROM jdbcDriverTest WHERE name = 'Craig' AND age = '21' AND joined = 1").getStrategy());
+	}
+
+	@Test
+	public void testFetchRow() throws SQLException {
+		java.sql.ResultSet rs = _conn.createStatement().executeQuery(
+				"SELECT weight, name FROM jdbcDriverTest WHERE joined = '2016-06-28' AND name = 'Craig' AND age = 21");
+		assertEquals(1, _server.getFetchCount());
+		assertEquals(0, _server.getQueryCount());
+		assertEquals(2, rs.getMetaData().getColumnCount());
+		assertEquals("weight", rs.getMetaData().getColumnName(1));
+		assertTrue(rs.first());
+		assertEquals(190.5, rs.getDouble("weight"), 0);
+		assertEquals("Craig", rs.getString("name"));
+
+		rs = _conn.createStatement().executeQuery(
+				"SELECT * FROM jdbcDriverTest WHERE joined = " + JOINED + " AND name = 'Craig' AND age = 21");
+		assertEquals(5, rs.getMetaData().getColumnCount());
+		assertTrue(rs.first());
+		assertEquals(new Timestamp(JOINED), rs.getTimestamp("joined"));
+		assertTrue(rs.getBoolean("active"));
+	}
+
+	@Test
+	public void testFetchMissingRow() throws SQLException {
+		java.sql.ResultSet rs = _conn.createStatement().executeQuery(
+				"SELECT * FROM jdbcDriverTest WHERE joined = " + JOINED + " AND name = 'Nobody' AND age = 21");
+		assertEquals(5, rs.getMetaData().getColumnCount());
+		assertEquals(java.sql.Types.DOUBLE, rs.getMetaData().getColumnType(4));
+		assertFalse(rs.next());
+	}
+
+	@Test
+	public void testFetchAll() throws SQLException {
+		_server.put("jdbcDriverTest", "Alice", 30L, JOINED, 120.0, false);
+		List<List<Object>> keys = new ArrayList<List<Object>>();
+		for (int i = 0; i < 40; i++) {
+			keys.add(Arrays.<Object>asList(JOINED, i % 2 == 0 ? "Alice" : "Craig", i % 2 == 0 ? 30 : 21L));
+		}
+		keys.add(5, Arrays.<Object>asList("2016-06-28", "Nobody", 1));
+
+		java.sql.ResultSet rs = _conn.fetchAll("jdbcDriverTest", keys);
+		// The Riak client retries a Fetch that fails, including one that isn't found
+		assertTrue(_server.getFetchCount() >= 41);
+		int row = 0;
+		while (rs.next()) {
+			assertEquals(row % 2 == 0 ? "Alice" : "Craig", rs.getString("name"));
+			row++;
+		}
+		assertEquals(40, row);
+
+		MissingKeyWarning warning = (MissingKeyWarning) rs.getWarnings();
+		assertEquals(5, warning.getIndex());
+		assertEquals("Nobody", warning.getKey().get(1));
+		assertNull(warning.getNextWarning());
+	}
+
+	@Test(expected = SQLException.class)
+	public void testFetchAllInvalidKey() throws SQLException {
+		List<List<Object>> keys = new ArrayList<List<Object>>();
+		keys.add(Arrays.<Object>asList(JOINED, "Craig"));
+		_conn.fetchAll("jdbcDriverTest", keys);
+	}
+
+}
@@ -0,0 +1,92 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import com.basho.riak.client.api.RiakClient;
+import com.basho.riak.client.core.RiakCluster;
+import com.basho.riak.client.core.RiakNode;
+
+/***
+ * Compares read latency with and without hedging against two stand-in Riak TS
+ * nodes, one of which stalls on a share of its requests. Run main from the test
+ * classpath, optionally passing the number of reads to time.
+ */
+public class HedgingBenchmark {
+
+	private final static String SQL = "SELECT name, value FROM bench WHERE time >= 1 AND time < 2";
+
+	public static void main(String[] args) throws Exception {
+		int reads = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+		StandInRiakServer healthy = new StandInRiakServer();
+		StandInRiakServer stalling = new StandInRiakServer();
+		healthy.setLatency(1, 0.01, 50);
+		stalling.setLatency(1, 0.08, 100);
+
+		List<RiakNode> nodes = new ArrayList<RiakNode>();
+		nodes.add(new RiakNode.Builder().withRemoteAddress(healthy.getHost()).withRemotePort(healthy.getPort()).build());
+		nodes.add(new RiakNode.Builder().withRemoteAddress(stalling.getHost()).withRemotePort(stalling.getPort()).build());
+		RiakCluster cluster = new RiakCluster.Builder(nodes).build();
+		cluster.start();
+		RiakClient client = new RiakClient(cluster);
+
+		try {
+			Properties info = new Properties();
+			info.setProperty(DriverProperties.HEDGE_READS, "false");
+			System.out.println("Without hedging");
+			report(run(client, new HedgingPolicy(info), reads));
+
+			info.setProperty(DriverProperties.HEDGE_READS, "true");
+			System.out.println("With hedging");
+			report(run(client, new HedgingPolicy(info), reads));
+		}
+		finally {
+			client.shutdown();
+			healthy.close();
+			stalling.close();
+		}
+	}
+
+	private static HedgingPolicy run(RiakClient client, HedgingPolicy policy, int reads) throws Exception {
+		QueryExecutor executor = new QueryExecutor(new TimeSeriesProtocol(client.getRiakCluster(), null), policy, new RetryPolicy(null));
+		LatencyTracker latency = new LatencyTracker(reads);
+		// Warm up connections and the policy's latency samples
+		for (int i = 0; i < 200; i++) executor.execute(QueryPlan.passThrough(SQL, "bench"));
+		policy.resetMetrics();
+		for (int i = 0; i < reads; i++) {
+			long start = System.nanoTime();
+			executor.execute(QueryPlan.passThrough(SQL, "bench"));
+			latency.record(System.nanoTime() - start);
+		}
+		System.out.println(String.format("  reads p50 %.1fms p99 %.1fms p99.9 %.1fms",
+				latency.getPercentileMillis(50), latency.getPercentileMillis(99), latency.getPercentileMillis(99.9)));
+		return policy;
+	}
+
+	private static void report(HedgingPolicy policy) {
+		if (policy.isEnabled()) {
+			System.out.println(String.format("  requests to Riak p99 %.1fms, reads p99 %.1fms",
+					policy.getRequestLatencyMillis(99), policy.getReadLatencyMillis(99)));
+			System.out.println(String.format("  reads %d, hedges sent %d, hedge wins %d, capped %d",
+					policy.getReads(), policy.getHedgesSent(), policy.getHedgeWins(), policy.getHedgesCapped()));
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.basho.riak.client.api.RiakClient;
+import com.basho.riak.client.core.RiakCluster;
+import com.basho.riak.client.core.RiakNode;
+import com.basho.riak.client.core.query.timeseries.QueryResult;
+
+public class HedgingPolicyTest {
+
+	@Test
+	public void testLatencyPercentile() {
+		LatencyTracker tracker = new LatencyTracker(100);
+		assertEquals(-1, tracker.getPercentileMicros(99));
+		for (int i = 1; i <= 200; i++) tracker.record(TimeUnit.MILLISECONDS.toNanos(i));
+		// Only the most recent 100 samples (101ms - 200ms) are kept
+		assertEquals(100, tracker.getCount());
+		assertEquals(101000, tracker.getPercentileMicros(0));
+		assertEquals(150000, tracker.getPercentileMicros(50));
+		assertEquals(199000, tracker.getPercentileMicros(99));
+		assertEquals(200.0, tracker.getPercentileMillis(100), 0.001);
+	}
+
+	@Test
+	public void testHedgeDelay() {
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.HEDGE_READS, "true");
+		info.setProperty(DriverProperties.HEDGE_PERCENTILE, "90");
+		info.setProperty(DriverProperties.HEDGE_MIN_DELAY_MILLIS, "2");
+		HedgingPolicy policy = new HedgingPolicy(info);
+		assertTrue(policy.isEnabled());
+
+		// No hedging until enough samples have been collected
+		for (int i = 1; i < HedgingPolicy.MIN_SAMPLES; i++) policy.recordAttempt(TimeUnit.MILLISECONDS.toNanos(1));
+		assertEquals(-1, policy.getHedgeDelayMicros());
+		policy.recordAttempt(TimeUnit.MILLISECONDS.toNanos(1));
+		assertEquals(2000, policy.getHedgeDelayMicros());
+
+		for (int i = 0; i < 100; i++) policy.recordAttempt(TimeUnit.MILLISECONDS.toNanos(10));
+		assertEquals(10000, policy.getHedgeDelayMicros());
+	}
+
+	@Test
+	public void testHedgeRateCap() {
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.HEDGE_MAX_PERCENT, "10");
+		HedgingPolicy policy = new HedgingPolicy(info);
+		assertFalse(policy.isEnabled());
+
+		// An initial burst is allowed, after that one hedge per ten reads
+		int sent = 0;
+		for (int i = 0; i < 1000; i++) {
+			policy.recordRead();
+			if (policy.tryAcquireHedge()) sent++;
+		}
+		assertTrue(sent <= 110);
+		assertTrue(sent >= 100);
+		assertEquals(sent, policy.getHedgesSent());
+		assertEquals(1000 - sent, policy.getHedgesCapped());
+	}
+
+	@Test
+	public void testIsSelect() {
+		assertTrue(QueryParser.isSelect(" select * FROM t WHERE a = 1"));
+		assertFalse(QueryParser.isSelect("INSERT INTO t VALUES (1)"));
+		assertFalse(QueryParser.isSelect("selection"));
+	}
+
+	@Test
+	public void testHedgedReadAgainstSlowNode() throws Exception {
+		StandInRiakServer slow = new StandInRiakServer();
+		StandInRiakServer fast = new StandInRiakServer();
+		slow.setLatency(0, 1, 300);
+		List<Object[]> rows = new ArrayList<Object[]>();
+		rows.add(new Object[] { "a", 1L });
+		slow.setQueryResult(new String[] { "name", "value" }, new String[] { "varchar", "sint64" }, rows);
+		fast.setQueryResult(new String[] { "name", "value" }, new String[] { "varchar", "sint64" }, rows);
+
+		List<RiakNode> nodes = new ArrayList<RiakNode>();
+		nodes.add(new RiakNode.Builder().withRemoteAddress(slow.getHost()).withRemotePort(slow.getPort()).build());
+		nodes.add(new RiakNode.Builder().withRemoteAddress(fast.getHost()).withRemotePort(fast.getPort()).build());
+		RiakCluster cluster = new RiakCluster.Builder(nodes).build();
+		cluster.start();
+		RiakClient client = new RiakClient(cluster);
+
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.HEDGE_READS, "true");
+		info.setProperty(DriverProperties.HEDGE_MAX_PERCENT, "100");
+		HedgingPolicy policy = new HedgingPolicy(info);
+		// Learn that requests normally take about a millisecond
+		for (int i = 0; i < HedgingPolicy.MIN_SAMPLES; i++) policy.recordAttempt(TimeUnit.MILLISECONDS.toNanos(1));
+
+		try {
+			for (int i = 0; i < 4; i++) {
+				long start = System.nanoTime();
+				QueryResult result = new HedgedRead(new TimeSeriesProtocol(cluster, null), policy, "SELECT * FROM t WHERE a = 1").start().get();
+				assertEquals(1, result.getRowsCount());
+				// Reads whose primary went to the slow node are answered by the hedge
+				assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 250);
+			}
+			assertEquals(4, policy.getReads());
+			assertEquals(2, policy.getHedgeWins());
+		}
+		finally {
+			client.shutdown();
+			slow.close();
+			fast.close();
+		}
+	}
+
+}
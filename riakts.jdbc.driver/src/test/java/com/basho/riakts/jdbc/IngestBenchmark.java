@@ -0,0 +1,105 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.Timestamp;
+import java.util.Properties;
+
+/***
+ * Compares ingest throughput of INSERTs sent as SQL text with prepared INSERTs whose
+ * parameters are written as typed rows with the Store command, one row per call and in
+ * batches. With no arguments it runs against a stand-in node, which shows the client
+ * side cost of each path; pass a Riak TS URL and the name of a table created with
+ * (station VARCHAR NOT NULL, time TIMESTAMP NOT NULL, temperature DOUBLE,
+ * PRIMARY KEY ((station, QUANTUM(time, 1, 'd')), station, time)) to measure against
+ * a real cluster.
+ */
+public class IngestBenchmark {
+
+	private final static long START = 1470009600000L; // 2016-08-01
+	private final static int BATCH = 500;
+
+	public static void main(String[] args) throws Exception {
+		int rows = 20000;
+		StandInRiakServer server = null;
+		String url;
+		String table;
+		if (args.length >= 2) {
+			url = args[0];
+			table = args[1];
+		}
+		else {
+			server = new StandInRiakServer();
+			table = "bench";
+			server.createTable(table,
+					new String[] { "station", "time", "temperature" },
+					new String[] { "varchar", "timestamp", "double" },
+					new String[] { "station", "time" }, new String[] { "station", "time" }, "time", 1, "d");
+			url = "riakts://" + server.getHost() + ":" + server.getPort();
+		}
+
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.BATCH_SIZE, "100");
+		java.sql.Connection conn = new Connection(url, info);
+		try {
+			// Warm up every path
+			for (int mode = 0; mode < 4; mode++) run(conn, table, mode, 2000, 0);
+
+			String[] names = { "Statement.executeUpdate, SQL text per row", "PreparedStatement.executeUpdate, typed Store per row",
+					"Statement.executeBatch, SQL text in batches of " + BATCH,
+					"PreparedStatement.executeBatch, typed rows in batches of " + BATCH };
+			for (int mode = 0; mode < 4; mode++) {
+				long start = System.nanoTime();
+				run(conn, table, mode, rows, rows);
+				double seconds = (System.nanoTime() - start) / 1e9;
+				System.out.println(String.format("%s%n  %.0f rows/s", names[mode], rows / seconds));
+			}
+		}
+		finally {
+			conn.close();
+			if (server != null) server.close();
+		}
+	}
+
+	private static void run(java.sql.Connection conn, String table, int mode, int rows, int offset) throws Exception {
+		java.sql.Statement statement = conn.createStatement();
+		java.sql.PreparedStatement prepared = conn.prepareStatement("INSERT INTO " + table + " VALUES (?, ?, ?)");
+		for (int i = 0; i < rows; i++) {
+			String station = "S" + (i % 50);
+			long time = START + (offset + i) * 1000L;
+			double temperature = 20 + (i % 100) / 10.0;
+			if (mode == 0 || mode == 2) {
+				String sql = "INSERT INTO " + table + " VALUES ('" + station + "', " + time + ", " + temperature + ")";
+				if (mode == 0) statement.executeUpdate(sql);
+				else statement.addBatch(sql);
+			}
+			else {
+				prepared.setString(1, station);
+				prepared.setTimestamp(2, new Timestamp(time));
+				prepared.setDouble(3, temperature);
+				if (mode == 1) prepared.executeUpdate();
+				else prepared.addBatch();
+			}
+			if ((i + 1) % BATCH == 0 || i == rows - 1) {
+				if (mode == 2) statement.executeBatch();
+				if (mode == 3) prepared.executeBatch();
+			}
+		}
+		statement.close();
+		prepared.close();
+	}
+
+}
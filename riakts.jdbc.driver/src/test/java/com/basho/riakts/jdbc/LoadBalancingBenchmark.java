@@ -0,0 +1,129 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/***
+ * Measures query throughput against one to four stand-in Riak TS nodes, each taking
+ * 2ms per request and handling four at a time, to show it scaling with the nodes of a
+ * multi-node URL. Then compares the balancing policies on four nodes, one of which is
+ * five times slower. Run main from the test classpath, optionally passing the number
+ * of queries to time.
+ */
+public class LoadBalancingBenchmark {
+
+	private final static int THREADS = 32;
+	private final static String SQL = "SELECT name, value FROM bench WHERE time >= 1 AND time < 2";
+
+	public static void main(String[] args) throws Exception {
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+
+		StandInRiakServer[] servers = new StandInRiakServer[4];
+		for (int i = 0; i < servers.length; i++) {
+			servers[i] = new StandInRiakServer();
+			servers[i].createTable("bench", new String[] { "name", "time", "value" },
+					new String[] { "varchar", "timestamp", "sint64" }, new String[] { "name", "time" },
+					new String[] { "name", "time" }, "time", 1, "d");
+			servers[i].setQueryResult(new String[] { "name", "value" }, new String[] { "varchar", "sint64" },
+					new ArrayList<Object[]>());
+			servers[i].setLatency(2, 0, 0);
+			servers[i].setCapacity(4);
+		}
+
+		try {
+			System.out.println("Round-robin, " + THREADS + " threads");
+			for (int nodes = 1; nodes <= servers.length; nodes++) {
+				System.out.print("  " + nodes + (nodes == 1 ? " node " : " nodes"));
+				run(urlOf(servers, nodes), NodeBalancer.ROUND_ROBIN, queries, servers);
+			}
+
+			servers[0].setLatency(10, 0, 0);
+			System.out.println("4 nodes, one 5x slower");
+			String[] policies = { NodeBalancer.ROUND_ROBIN, NodeBalancer.LEAST_OUTSTANDING, NodeBalancer.LATENCY };
+			for (String policy : policies) {
+				System.out.print(String.format("  %-17s", policy));
+				run(urlOf(servers, servers.length), policy, queries, servers);
+			}
+		}
+		finally {
+			for (StandInRiakServer server : servers) server.close();
+		}
+	}
+
+	private static String urlOf(StandInRiakServer[] servers, int nodes) {
+		StringBuilder url = new StringBuilder("riakts://");
+		for (int i = 0; i < nodes; i++) {
+			if (i > 0) url.append(",");
+			url.append(servers[i].getHost()).append(":").append(servers[i].getPort());
+		}
+		return url.toString();
+	}
+
+	private static void run(String url, String policy, final int queries, StandInRiakServer[] servers) throws Exception {
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.LOAD_BALANCING, policy);
+		final Connection conn = new Connection(url, info);
+		ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+		try {
+			// Warm up the nodes' connections and the balancer's latency samples
+			query(conn, 500, new LatencyTracker(500));
+			long[] before = new long[servers.length];
+			for (int i = 0; i < servers.length; i++) before[i] = servers[i].getQueryCount();
+
+			final LatencyTracker latency = new LatencyTracker(queries);
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			long start = System.nanoTime();
+			for (int i = 0; i < THREADS; i++) {
+				results.add(threads.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						query(conn, queries / THREADS, latency);
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) result.get();
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			StringBuilder share = new StringBuilder();
+			for (int i = 0; i < servers.length; i++) {
+				long count = servers[i].getQueryCount() - before[i];
+				if (count > 0) share.append(share.length() == 0 ? "" : "/").append(Math.round(100.0 * count / queries));
+			}
+			System.out.println(String.format(" %6.0f queries/s, p99 %5.1fms, %% per node %s",
+					queries / seconds, latency.getPercentileMillis(99), share));
+		}
+		finally {
+			threads.shutdown();
+			conn.close();
+		}
+	}
+
+	private static void query(Connection conn, int queries, LatencyTracker latency) throws Exception {
+		for (int i = 0; i < queries; i++) {
+			long start = System.nanoTime();
+			conn.createStatement().executeQuery(SQL).close();
+			latency.record(System.nanoTime() - start);
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/***
+ * Tests spreading requests over several stand-in Riak TS nodes
+ */
+public class LoadBalancingTest {
+
+	private final static String SQL = "SELECT name, value FROM balanced WHERE value = 1";
+
+	private StandInRiakServer[] _servers;
+	private Connection _conn;
+
+	@Before
+	public void setUp() throws Exception {
+		_servers = new StandInRiakServer[3];
+		for (int i = 0; i < _servers.length; i++) {
+			_servers[i] = new StandInRiakServer();
+			_servers[i].setQueryResult(new String[] { "name", "value" }, new String[] { "varchar", "sint64" },
+					new ArrayList<Object[]>());
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (_conn != null) _conn.close();
+		for (StandInRiakServer server : _servers) server.close();
+	}
+
+	@Test
+	public void testRoundRobin() throws Exception {
+		_conn = connect(NodeBalancer.ROUND_ROBIN);
+		assertEquals(3, _conn.getNodeBalancer().getHealthyNodes());
+		for (int i = 0; i < 30; i++) _conn.createStatement().executeQuery(SQL);
+		for (StandInRiakServer server : _servers) assertTrue(server.getQueryCount() >= 9);
+		assertEquals(3, _conn.getNodeBalancer().getRequests().size());
+		for (long sent : _conn.getNodeBalancer().getRequests().values()) assertTrue(sent >= 18);
+	}
+
+	@Test
+	public void testLatencyAvoidsSlowNode() throws Exception {
+		_servers[0].setLatency(50, 0, 0);
+		_conn = connect(NodeBalancer.LATENCY);
+		for (int i = 0; i < 60; i++) _conn.createStatement().executeQuery(SQL);
+		// A third each without balancing
+		assertTrue(_servers[0].getQueryCount() < 15);
+		assertTrue(_servers[1].getQueryCount() + _servers[2].getQueryCount() > 45);
+	}
+
+	@Test
+	public void testUnknownPolicy() throws Exception {
+		try {
+			connect("random");
+			fail("Expected SQLException");
+		}
+		catch (SQLException e) {
+			// Expected
+		}
+	}
+
+	private Connection connect(String policy) throws Exception {
+		StringBuilder url = new StringBuilder("riakts://");
+		for (int i = 0; i < _servers.length; i++) {
+			if (i > 0) url.append(",");
+			url.append(_servers[i].getHost()).append(":").append(_servers[i].getPort());
+		}
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.LOAD_BALANCING, policy);
+		return new Connection(url.toString(), info);
+	}
+
+}
@@ -0,0 +1,113 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.basho.riak.client.api.RiakClient;
+import com.basho.riak.client.api.commands.timeseries.Query;
+import com.basho.riak.client.core.RiakCluster;
+import com.basho.riak.client.core.RiakFuture;
+import com.basho.riak.client.core.query.timeseries.QueryResult;
+import com.basho.riak.client.core.util.HostAndPort;
+
+/***
+ * Tests resolving hostnames to nodes and adding and removing nodes as the addresses
+ * change, with a stand-in resolver
+ */
+public class NodeDiscoveryTest {
+
+	private StandInRiakServer _server;
+	private volatile InetAddress[] _addresses;
+	private RiakCluster _cluster;
+
+	@Before
+	public void setUp() throws Exception {
+		_server = new StandInRiakServer();
+		_server.setQueryResult(new String[] { "name", "value" }, new String[] { "varchar", "sint64" },
+				new ArrayList<Object[]>());
+		_addresses = new InetAddress[] { InetAddress.getByName("127.0.0.1"), InetAddress.getByName("127.0.0.2") };
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		if (_cluster != null) _cluster.shutdown();
+		_server.close();
+	}
+
+	@Test
+	public void testResolvesEveryAddress() throws Exception {
+		NodeDiscovery discovery = discovery(Arrays.asList(HostAndPort.fromParts("riak.test", 8087),
+				HostAndPort.fromParts("127.0.0.1", 8087), HostAndPort.fromParts("10.0.0.5", 9000)));
+		List<HostAndPort> nodes = discovery.resolve();
+		assertEquals(3, nodes.size());
+		assertEquals("127.0.0.2", nodes.get(1).getHost());
+		assertEquals(9000, nodes.get(2).getPort());
+		assertEquals(1, discovery.getLookups());
+	}
+
+	@Test
+	public void testRefreshAddsAndRemovesNodes() throws Exception {
+		_addresses = new InetAddress[] { InetAddress.getByName("127.0.0.1") };
+		NodeDiscovery discovery = discovery(Arrays.asList(HostAndPort.fromParts("riak.test", _server.getPort())));
+		_cluster = new RiakCluster.Builder(discovery.resolve(), RiakClient.createDefaultNodeBuilder())
+				.withNodeManager(new NodeBalancer(NodeBalancer.ROUND_ROBIN)).build();
+		_cluster.start();
+		discovery.start(_cluster);
+		assertEquals(1, _cluster.getNodes().size());
+
+		// A request in flight to a node whose address goes is still answered
+		_server.setLatency(300, 0, 0);
+		RiakFuture<QueryResult, String> inFlight = new RiakClient(_cluster)
+				.executeAsync(new Query.Builder("SELECT name, value FROM discovered WHERE value = 1").build());
+		Thread.sleep(50);
+		_addresses = new InetAddress[] { InetAddress.getByName("127.0.0.2") };
+		discovery.refresh();
+		assertEquals(1, _cluster.getNodes().size());
+		assertEquals("127.0.0.2", _cluster.getNodes().get(0).getRemoteAddress());
+		assertEquals(1, discovery.getAddedNodes());
+		assertEquals(1, discovery.getRemovedNodes());
+		assertNotNull(inFlight.get());
+
+		// A failed lookup keeps the nodes there are
+		_addresses = null;
+		discovery.refresh();
+		assertEquals(1, discovery.getFailedLookups());
+		assertEquals(1, _cluster.getNodes().size());
+		discovery.stop();
+	}
+
+	private NodeDiscovery discovery(List<HostAndPort> hosts) {
+		return new NodeDiscovery(hosts, RiakClient.createDefaultNodeBuilder(), 0) {
+			InetAddress[] lookup(String host) throws UnknownHostException {
+				InetAddress[] addresses = _addresses;
+				if (addresses == null) throw new UnknownHostException(host);
+				return addresses;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,153 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Shows how the socket and thread settings of the Riak client, and the connection
+ * profiles, affect queries against a stand-in Riak TS node taking 1ms per request.
+ * For each it times a burst of concurrent queries straight after connecting, the
+ * throughput and p99 latency of 32 threads querying flat out, and a burst after the
+ * client has been idle for 1.5s. Run main from the test classpath, optionally passing
+ * the number of queries to time.
+ */
+public class NodeTuningBenchmark {
+
+	private final static int THREADS = 32;
+	private final static String SQL = "SELECT name, value FROM bench WHERE time >= 1 AND time < 2";
+
+	public static void main(String[] args) throws Exception {
+		int queries = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+		StandInRiakServer server = new StandInRiakServer();
+		server.createTable("bench", new String[] { "name", "time", "value" },
+				new String[] { "varchar", "timestamp", "sint64" }, new String[] { "name", "time" },
+				new String[] { "name", "time" }, "time", 1, "d");
+		server.setQueryResult(new String[] { "name", "value" }, new String[] { "varchar", "sint64" },
+				new ArrayList<Object[]>());
+		server.setLatency(1, 0, 0);
+		String url = "riakts://" + server.getHost() + ":" + server.getPort();
+
+		String[][] settings = {
+				{ "defaults" },
+				{ "MinConnections=16" },
+				{ "MaxConnections=4", "BlockOnMaxConnections=true" },
+				{ "MaxConnections=16", "BlockOnMaxConnections=true" },
+				{ "MaxConnections=16", "BlockOnMaxConnections=false" },
+				{ "IdleTimeoutMillis=60000" },
+				{ "EventLoopThreads=1" },
+				{ "ConnectionProfile=low-latency" },
+				{ "ConnectionProfile=high-throughput" } };
+		System.out.println(String.format("%-48s %9s %10s %8s %7s %9s", "", "cold", "queries/s", "p99", "errors", "idle"));
+		try {
+			// Warm up the JIT so the first settings aren't penalised
+			Properties warmUp = new Properties();
+			warmUp.setProperty(DriverProperties.SHARE_CLIENT, "false");
+			for (int i = 0; i < 3; i++) run(null, url, warmUp, queries);
+			for (String[] setting : settings) {
+				Properties info = new Properties();
+				info.setProperty(DriverProperties.SHARE_CLIENT, "false");
+				info.setProperty(DriverProperties.RETRY_MAX_ATTEMPTS, "1");
+				StringBuilder name = new StringBuilder();
+				for (String property : setting) {
+					String[] pair = property.split("=");
+					if (pair.length == 2) info.setProperty(pair[0], pair[1]);
+					name.append(name.length() == 0 ? "" : ", ").append(property);
+				}
+				run(name.toString(), url, info, queries);
+			}
+		}
+		finally {
+			server.close();
+		}
+	}
+
+	private static void run(String name, String url, Properties info, int queries) throws Exception {
+		final Connection conn = new Connection(url, info);
+		ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+		try {
+			// Let MinConnections connect, as an application would between starting and its first query
+			Thread.sleep(200);
+			double cold = burst(conn, threads);
+
+			final LatencyTracker latency = new LatencyTracker(queries);
+			final AtomicLong errors = new AtomicLong();
+			final int perThread = queries / THREADS;
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			long start = System.nanoTime();
+			for (int i = 0; i < THREADS; i++) {
+				results.add(threads.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						for (int i = 0; i < perThread; i++) {
+							long started = System.nanoTime();
+							try {
+								conn.createStatement().executeQuery(SQL).close();
+								latency.record(System.nanoTime() - started);
+							}
+							catch (Exception e) {
+								errors.incrementAndGet();
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) result.get();
+			double seconds = (System.nanoTime() - start) / 1e9;
+
+			Thread.sleep(1500);
+			double idle = burst(conn, threads);
+			if (name != null) System.out.println(String.format("%-48s %7.1fms %10.0f %6.1fms %7d %7.1fms", name, cold,
+					(perThread * THREADS - errors.get()) / seconds, latency.getPercentileMillis(99), errors.get(), idle));
+		}
+		finally {
+			threads.shutdown();
+			conn.close();
+		}
+	}
+
+	/***
+	 * Returns the milliseconds THREADS concurrent queries take to all be answered
+	 */
+	private static double burst(final Connection conn, ExecutorService threads) throws Exception {
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		long start = System.nanoTime();
+		for (int i = 0; i < THREADS; i++) {
+			results.add(threads.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					try {
+						conn.createStatement().executeQuery(SQL).close();
+					}
+					catch (Exception e) {
+						// Counted as part of the burst's time
+					}
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> result : results) result.get();
+		return (System.nanoTime() - start) / 1e6;
+	}
+
+}
@@ -0,0 +1,107 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/***
+ * Measures batched writes of a multi-series workload, readings from many stations
+ * arriving interleaved, with and without BatchGroupPartitions. Against a stand-in node
+ * it reports the driver's throughput and how many partitions (station and quantum) each
+ * Store command reached, which is what decides how many vnodes a command touches; pass a
+ * Riak TS URL and the name of a table created with (station VARCHAR NOT NULL, time
+ * TIMESTAMP NOT NULL, temperature DOUBLE, PRIMARY KEY ((station, QUANTUM(time, 1, 'h')),
+ * station, time)) to measure throughput and server CPU against a real cluster.
+ */
+public class PartitionBatchBenchmark {
+
+	private final static long START = 1470009600000L; // 2016-08-01
+	private final static int STATIONS = 200;
+	private final static int BATCH = 5000;
+
+	public static void main(String[] args) throws Exception {
+		int rows = 200000;
+		final AtomicLong partitions = new AtomicLong();
+		StandInRiakServer server = null;
+		String url;
+		String table;
+		if (args.length >= 2) {
+			url = args[0];
+			table = args[1];
+		}
+		else {
+			server = new StandInRiakServer() {
+				protected String store(String name, List<Object[]> batch) {
+					Set<String> reached = new HashSet<String>();
+					for (Object[] row : batch) reached.add(row[0] + "/" + ((Number) row[1]).longValue() / 3600000L);
+					partitions.addAndGet(reached.size());
+					return super.store(name, batch);
+				}
+			};
+			table = "bench";
+			server.createTable(table,
+					new String[] { "station", "time", "temperature" },
+					new String[] { "varchar", "timestamp", "double" },
+					new String[] { "station", "time" }, new String[] { "station", "time" }, "time", 1, "h");
+			url = "riakts://" + server.getHost() + ":" + server.getPort();
+		}
+
+		try {
+			for (int run = 0; run < 4; run++) {
+				for (String group : new String[] { "false", "true" }) {
+					Properties info = new Properties();
+					info.setProperty(DriverProperties.BATCH_GROUP_PARTITIONS, group);
+					java.sql.Connection conn = new Connection(url, info);
+					long stores = server == null ? 0 : server.getStoreCount();
+					partitions.set(0);
+					long start = System.nanoTime();
+					write(conn, table, rows, run * rows);
+					double seconds = (System.nanoTime() - start) / 1e9;
+					conn.close();
+					// The first run warms up
+					if (run == 0) continue;
+					System.out.println(String.format("BatchGroupPartitions=%s%n  %.0f rows/s", group, rows / seconds));
+					if (server != null) {
+						System.out.println(String.format("  %.1f partitions per Store command",
+								partitions.get() / (double) (server.getStoreCount() - stores)));
+					}
+				}
+			}
+		}
+		finally {
+			if (server != null) server.close();
+		}
+	}
+
+	private static void write(java.sql.Connection conn, String table, int rows, int offset) throws Exception {
+		java.sql.PreparedStatement insert = conn.prepareStatement("INSERT INTO " + table + " VALUES (?, ?, ?)");
+		for (int i = 0; i < rows; i++) {
+			// Every station reports once a second
+			insert.setString(1, "S" + (i % STATIONS));
+			insert.setTimestamp(2, new Timestamp(START + ((offset + i) / STATIONS) * 1000L));
+			insert.setDouble(3, 20 + (i % 100) / 10.0);
+			insert.addBatch();
+			if ((i + 1) % BATCH == 0 || i == rows - 1) insert.executeBatch();
+		}
+		insert.close();
+	}
+
+}
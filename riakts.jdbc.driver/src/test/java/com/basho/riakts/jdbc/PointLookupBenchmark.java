@@ -0,0 +1,116 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/***
+ * Compares primary key lookups sent through the query engine with the FETCH fast path,
+ * reporting single threaded latency and multi-threaded throughput. With no arguments it
+ * runs against a stand-in node, which only shows the client side cost of each path; pass
+ * a Riak TS URL and a point lookup SELECT to measure against a real cluster.
+ */
+public class PointLookupBenchmark {
+
+	private final static int THREADS = 8;
+
+	public static void main(String[] args) throws Exception {
+		int lookups = 5000;
+		StandInRiakServer server = null;
+		String url;
+		String sql;
+		if (args.length >= 2) {
+			url = args[0];
+			sql = args[1];
+		}
+		else {
+			server = new StandInRiakServer();
+			server.createTable("bench",
+					new String[] { "station", "time", "temperature" },
+					new String[] { "varchar", "timestamp", "double" },
+					new String[] { "station", "time" }, new String[] { "station", "time" }, "time", 1, "d");
+			server.put("bench", "KBOS", 1470009600000L, 21.5);
+			List<Object[]> rows = new ArrayList<Object[]>();
+			rows.add(new Object[] { "KBOS", 1470009600000L, 21.5 });
+			server.setQueryResult(new String[] { "station", "time", "temperature" },
+					new String[] { "varchar", "timestamp", "double" }, rows);
+			url = "riakts://" + server.getHost() + ":" + server.getPort();
+			sql = "SELECT * FROM bench WHERE station = 'KBOS' AND time = 1470009600000";
+		}
+
+		Connection conn = new Connection(url, new Properties());
+		try {
+			QueryPlan fetch = conn.plan(sql);
+			if (!fetch.getStrategy().equals(QueryPlan.FETCH)) {
+				System.out.println("Not a primary key lookup: " + sql);
+				return;
+			}
+			QueryPlan query = QueryPlan.passThrough(sql, fetch.getTable());
+			QueryExecutor executor = new QueryExecutor(conn._protocol, null, new RetryPolicy(null));
+
+			// Warm up both paths
+			run(executor, query, 1000);
+			run(executor, fetch, 1000);
+
+			System.out.println("Query engine");
+			report(executor, query, lookups);
+			System.out.println("Fetch");
+			report(executor, fetch, lookups);
+		}
+		finally {
+			conn.close();
+			if (server != null) server.close();
+		}
+	}
+
+	private static LatencyTracker run(QueryExecutor executor, QueryPlan plan, int lookups) throws Exception {
+		LatencyTracker latency = new LatencyTracker(lookups);
+		for (int i = 0; i < lookups; i++) {
+			long start = System.nanoTime();
+			executor.execute(plan).close();
+			latency.record(System.nanoTime() - start);
+		}
+		return latency;
+	}
+
+	private static void report(final QueryExecutor executor, final QueryPlan plan, final int lookups) throws Exception {
+		LatencyTracker latency = run(executor, plan, lookups);
+		System.out.println(String.format("  latency p50 %.3fms p99 %.3fms",
+				latency.getPercentileMillis(50), latency.getPercentileMillis(99)));
+
+		ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+		List<Future<LatencyTracker>> results = new ArrayList<Future<LatencyTracker>>();
+		long start = System.nanoTime();
+		for (int i = 0; i < THREADS; i++) {
+			results.add(threads.submit(new Callable<LatencyTracker>() {
+				public LatencyTracker call() throws Exception {
+					return run(executor, plan, lookups / THREADS);
+				}
+			}));
+		}
+		for (Future<LatencyTracker> result : results) result.get();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		threads.shutdown();
+		System.out.println(String.format("  throughput %.0f lookups/s with %d threads", lookups / seconds, THREADS));
+	}
+
+}
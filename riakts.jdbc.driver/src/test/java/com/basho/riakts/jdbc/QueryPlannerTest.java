@@ -0,0 +1,221 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.basho.riak.client.core.query.timeseries.ColumnDescription.ColumnType;
+import com.basho.riak.client.core.query.timeseries.FullColumnDescription;
+import com.basho.riak.client.core.query.timeseries.Quantum;
+import com.basho.riak.client.core.query.timeseries.TableDefinition;
+
+public class QueryPlannerTest {
+
+	private final static long DAY = 86400000L;
+
+	private QueryPlanner _planner;
+
+	/***
+	 * Schema cache that returns a fixed definition of the jdbcDriverTest table
+	 * used by DriverTest (quantum of 5 days on joined) without talking to Riak TS
+	 */
+	static class FixedSchemaCache extends TableSchemaCache {
+		private TableDefinition _definition;
+
+		FixedSchemaCache() {
+			super(null);
+			List<FullColumnDescription> columns = new ArrayList<FullColumnDescription>();
+			columns.add(new FullColumnDescription("name", ColumnType.VARCHAR, false, 1, 2));
+			columns.add(new FullColumnDescription("age", ColumnType.SINT64, false, 2, 3));
+			columns.add(new FullColumnDescription("joined", ColumnType.TIMESTAMP, false, 3, 1, new Quantum(5, TimeUnit.DAYS)));
+			columns.add(new FullColumnDescription("weight", ColumnType.DOUBLE, false));
+			_definition = new TableDefinition("jdbcDriverTest", columns);
+		}
+
+		public TableDefinition getTableDefinition(String table) {
+			return table.equalsIgnoreCase("jdbcDriverTest") ? _definition : null;
+		}
+	}
+
+	@Before
+	public void setUp() {
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.MAX_QUANTA_PER_QUERY, "2");
+		_planner = new QueryPlanner(new FixedSchemaCache(), info);
+	}
+
+	@Test
+	public void testParseSelect() {
+		QueryParser.ParsedQuery query = QueryParser.parse(
+				"SELECT name, age FROM jdbcDriverTest WHERE joined >= 1 AND joined < '2016-06-08' AND name = 'O''Neil';");
+		assertNotNull(query);
+		assertEquals("name, age", query.getSelectList());
+		assertEquals("jdbcDriverTest", query.getTable());
+		assertEquals(3, query.getPredicates().size());
+		assertEquals("<", query.getPredicates().get(1).getOperator());
+		assertEquals("'O''Neil'", query.getPredicates().get(2).getValues().get(0));
+		assertTrue(query.isSplittable());
+
+		assertFalse(QueryParser.parse("SELECT COUNT(*) FROM t WHERE a = 1").isSplittable());
+		assertFalse(QueryParser.parse("SELECT * FROM t WHERE a = 1 LIMIT 5").isSplittable());
+		assertNull(QueryParser.parse("DESCRIBE jdbcDriverTest"));
+	}
+
+	@Test
+	public void testExplainKeyword() {
+		assertTrue(QueryParser.isExplain("  explain SELECT * FROM t"));
+		assertFalse(QueryParser.isExplain("EXPLAINED"));
+		assertEquals("SELECT * FROM t", QueryParser.stripExplain("EXPLAIN SELECT * FROM t"));
+	}
+
+	@Test
+	public void testSplitRange() {
+		List<long[]> ranges = QueryPlanner.splitRange(DAY, 11 * DAY, DAY, 4 * DAY);
+		assertEquals(3, ranges.size());
+		assertEquals(DAY, ranges.get(0)[0]);
+		assertEquals(5 * DAY, ranges.get(0)[1]);
+		assertEquals(9 * DAY, ranges.get(1)[1]);
+		assertEquals(11 * DAY, ranges.get(2)[1]);
+		assertEquals(10, QueryPlanner.countQuanta(DAY, 11 * DAY, DAY));
+		assertEquals(1, QueryPlanner.countQuanta(DAY + 5, DAY + 6, DAY));
+	}
+
+	@Test
+	public void testPlanSplitsLongRanges() throws SQLException {
+		// 30 days with a 5 day quantum and at most 2 quanta per query gives 3 sub-queries
+		String sql = "SELECT * FROM jdbcDriverTest WHERE joined >= 0 AND joined <= " + (30 * DAY - 1) + " AND name = 'x'";
+		QueryPlan plan = _planner.plan(sql);
+		assertEquals(QueryPlan.SPLIT, plan.getStrategy());
+		assertEquals(3, plan.getSubQueries().size());
+		assertEquals(6, plan.getQuantaTouched());
+		assertEquals("SELECT * FROM jdbcDriverTest WHERE name = 'x' AND joined >= 0 AND joined < " + (10 * DAY),
+				plan.getSubQueries().get(0).getSql());
+		assertEquals("SELECT * FROM jdbcDriverTest WHERE name = 'x' AND joined >= " + (20 * DAY) + " AND joined <= " + (30 * DAY - 1),
+				plan.getSubQueries().get(2).getSql());
+
+		ResultSet rs = plan.toResultSet();
+		assertTrue(rs.next());
+		assertEquals(1L, rs.getLong("Step"));
+		assertEquals(QueryPlan.SOURCE_RIAK, rs.getString("Source"));
+		assertTrue(rs.last());
+		assertEquals(3L, rs.getLong("Step"));
+	}
+
+	@Test
+	public void testPlanPassesThroughUnsplittableQueries() {
+		String sql = "SELECT COUNT(*) FROM jdbcDriverTest WHERE joined >= 0 AND joined < " + (30 * DAY) + " AND name = 'x'";
+		QueryPlan plan = _planner.plan(sql);
+		assertEquals(QueryPlan.PASS_THROUGH, plan.getStrategy());
+		assertEquals(sql, plan.getSubQueries().get(0).getSql());
+		assertEquals(6, plan.getQuantaTouched());
+
+		assertEquals(QueryPlan.PASS_THROUGH, _planner.plan("DESCRIBE jdbcDriverTest").getStrategy());
+	}
+
+	@Test
+	public void testEstimatedRows() {
+		_planner.getStatistics("jdbcDriverTest").recordQuery(2, 200, 10);
+		QueryPlan plan = _planner.plan("SELECT * FROM jdbcDriverTest WHERE joined > 0 AND joined < " + (20 * DAY) + " AND name = 'x'");
+		assertEquals(400, plan.getEstimatedRows());
+	}
+
+	@Test
+	public void testPlanSizesSubQueriesToTargetRows() {
+		// 50000 rows per 5 day quantum with a 10000 row target gives 1 day sub-queries
+		_planner.getStatistics("jdbcDriverTest").recordQuery(1, 50000, 10);
+		QueryPlan plan = _planner.plan("SELECT * FROM jdbcDriverTest WHERE joined >= 0 AND joined < " + (5 * DAY) + " AND name = 'x'");
+		assertEquals(QueryPlan.SPLIT, plan.getStrategy());
+		assertEquals(5, plan.getSubQueries().size());
+		assertEquals(DAY, plan.getSubQueries().get(0).getRangeEnd());
+		assertEquals(10000, plan.getSubQueries().get(0).getEstimatedRows());
+	}
+
+	@Test
+	public void testTooMuchDataLimitsLaterPlans() {
+		TableStatistics statistics = _planner.getStatistics("jdbcDriverTest");
+		statistics.recordTooMuchData(1);
+		assertEquals(DAY * 5 / 2, _planner.getRangeMillis(statistics, 5 * DAY));
+		assertTrue(QueryExecutor.isTooMuchDataError(new Exception(new Exception("Query error: too_much_data"))));
+		assertFalse(QueryExecutor.isTooMuchDataError(new Exception("timeout")));
+	}
+
+	@Test
+	public void testBisect() {
+		QueryPlan plan = _planner.plan("SELECT * FROM jdbcDriverTest WHERE joined >= 0 AND joined < " + (10 * DAY) + " AND name = 'x'");
+		assertEquals(QueryPlan.PASS_THROUGH, plan.getStrategy());
+		List<QueryPlan.SubQuery> halves = QueryExecutor.bisect(plan, plan.getSubQueries().get(0));
+		assertEquals(2, halves.size());
+		assertEquals(5 * DAY, halves.get(0).getRangeEnd());
+		assertEquals("SELECT * FROM jdbcDriverTest WHERE name = 'x' AND joined >= " + (5 * DAY) + " AND joined < " + (10 * DAY),
+				halves.get(1).getSql());
+
+		// Ranges within a single quantum are split in the middle
+		halves = QueryExecutor.bisect(plan, halves.get(0));
+		assertEquals(5 * DAY / 2, halves.get(0).getRangeEnd());
+	}
+
+	@Test
+	public void testParseInList() {
+		QueryParser.ParsedQuery query = QueryParser.parse(
+				"SELECT * FROM t WHERE name IN ('a', 'b''c') AND (age = 1 OR age = 2 OR age = 3) AND (age = 1 OR name = 'a') ORDER BY joined");
+		assertEquals(QueryParser.IN, query.getPredicates().get(0).getOperator());
+		assertEquals("'b''c'", query.getPredicates().get(0).getValues().get(1));
+		assertEquals("age", query.getPredicates().get(1).getColumn());
+		assertEquals(3, query.getPredicates().get(1).getValues().size());
+		// OR chains over different columns aren't understood
+		assertNull(query.getPredicates().get(2).getOperator());
+		assertEquals("joined", query.getAscendingOrderColumn());
+		assertNull(QueryParser.parse("SELECT * FROM t WHERE a = 1 ORDER BY joined DESC").getAscendingOrderColumn());
+	}
+
+	@Test
+	public void testPlanFanOut() {
+		String range = " AND joined >= 0 AND joined < " + DAY;
+		QueryPlan plan = _planner.plan("SELECT * FROM jdbcDriverTest WHERE name IN ('a', 'b', 'a') AND age IN (1, 2)" + range);
+		assertEquals(QueryPlan.FAN_OUT, plan.getStrategy());
+		assertNull(plan.getMergeColumn());
+		assertEquals(4, plan.getSubQueries().size());
+		assertEquals("SELECT * FROM jdbcDriverTest WHERE name = 'a' AND age = 1" + range, plan.getSubQueries().get(0).getSql());
+		assertEquals("SELECT * FROM jdbcDriverTest WHERE name = 'b' AND age = 2" + range, plan.getSubQueries().get(3).getSql());
+
+		// Each branch is split on time like any other query
+		plan = _planner.plan("SELECT * FROM jdbcDriverTest WHERE (name = 'a' OR name = 'b') AND age = 1 AND joined >= 0 AND joined < " + (20 * DAY));
+		assertEquals(QueryPlan.FAN_OUT, plan.getStrategy());
+		assertEquals(4, plan.getSubQueries().size());
+		assertEquals(10 * DAY, plan.getSubQueries().get(2).getRangeEnd());
+
+		plan = _planner.plan("SELECT name, joined FROM jdbcDriverTest WHERE name IN ('a', 'b') AND age = 1" + range + " ORDER BY joined");
+		assertEquals("joined", plan.getMergeColumn());
+
+		// Results that can't simply be combined, or IN lists off the partition key, go to Riak TS
+		assertEquals(QueryPlan.PASS_THROUGH, _planner.plan(
+				"SELECT COUNT(*) FROM jdbcDriverTest WHERE name IN ('a', 'b') AND age = 1" + range).getStrategy());
+		assertEquals(QueryPlan.PASS_THROUGH, _planner.plan(
+				"SELECT * FROM jdbcDriverTest WHERE name IN ('a', 'b') AND age = 1" + range + " ORDER BY weight").getStrategy());
+		assertEquals(QueryPlan.PASS_THROUGH, _planner.plan(
+				"SELECT * FROM jdbcDriverTest WHERE weight IN (1.0, 2.0) AND name = 'a' AND age = 1" + range).getStrategy());
+	}
+
+}
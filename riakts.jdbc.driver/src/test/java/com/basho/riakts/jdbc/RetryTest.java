@@ -0,0 +1,133 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.basho.riak.client.core.netty.RiakResponseException;
+
+/***
+ * Tests retries against a stand-in Riak TS node that reports itself overloaded the
+ * first time it is sent a Store command with a row for the name 'Flaky'
+ */
+public class RetryTest {
+
+	private StandInRiakServer _server;
+	private Connection _conn;
+	private AtomicInteger _flakyStores = new AtomicInteger();
+
+	@Before
+	public void setUp() throws Exception {
+		_server = new StandInRiakServer() {
+			protected String store(String table, List<Object[]> rows) {
+				for (Object[] row : rows) {
+					if ("Flaky".equals(row[0]) && _flakyStores.getAndIncrement() == 0) return "overload";
+				}
+				return super.store(table, rows);
+			}
+		};
+		_server.createDriverTestTable();
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.BATCH_SIZE, "2");
+		info.setProperty(DriverProperties.RETRY_BASE_DELAY_MILLIS, "1");
+		_conn = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), info);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		_conn.close();
+		_server.close();
+	}
+
+	@Test
+	public void testRetryStatement() throws SQLException {
+		RetryPolicy retry = _conn.getRetryPolicy();
+		java.sql.Statement statement = _conn.createStatement();
+		// Overloaded twice, then answered
+		_server.setError("overload", 2);
+		assertEquals(1, statement.executeUpdate("INSERT INTO jdbcDriverTest VALUES ('Craig', 1, 0, 1.0, true)"));
+		assertEquals(2, retry.getRetries());
+		assertEquals(1, retry.getRecoveries());
+		assertEquals(0, retry.getGiveUps());
+
+		// Overloaded for longer than RetryMaxAttempts allows
+		_server.setError("overload");
+		try {
+			statement.executeUpdate("INSERT INTO jdbcDriverTest VALUES ('Craig', 2, 0, 1.0, true)");
+			fail("Expected an SQLException");
+		}
+		catch (SQLException e) {
+		}
+		assertEquals(4, retry.getRetries());
+		assertEquals(1, retry.getGiveUps());
+
+		// Errors about the request itself aren't retried
+		retry.resetMetrics();
+		_server.setError("Invalid data");
+		try {
+			statement.executeUpdate("INSERT INTO jdbcDriverTest VALUES ('Craig', 3, 0, 1.0, true)");
+			fail("Expected an SQLException");
+		}
+		catch (SQLException e) {
+		}
+		assertEquals(0, retry.getRetries());
+		assertEquals(0, retry.getGiveUps());
+		_server.setError(null);
+	}
+
+	@Test
+	public void testReplayFailedBatch() throws SQLException {
+		java.sql.Statement statement = _conn.createStatement();
+		statement.addBatch("INSERT INTO jdbcDriverTest VALUES ('Craig', 1, 0, 1.0, true)");
+		statement.addBatch("INSERT INTO jdbcDriverTest VALUES ('Craig', 2, 0, 1.0, true)");
+		statement.addBatch("INSERT INTO jdbcDriverTest VALUES ('Flaky', 3, 0, 1.0, true)");
+		statement.addBatch("INSERT INTO jdbcDriverTest VALUES ('Craig', 4, 0, 1.0, true)");
+		assertArrayEquals(new int[] { 1, 1, 1, 1 }, statement.executeBatch());
+		// Only the Store command that failed is sent again
+		assertEquals(3, _server.getStoreCount());
+		assertEquals(4, _server.getStoredRowCount());
+		assertEquals(1, _conn.getRetryPolicy().getRecoveries());
+	}
+
+	@Test
+	public void testPolicy() {
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.RETRY_BASE_DELAY_MILLIS, "100");
+		info.setProperty(DriverProperties.RETRY_MAX_DELAY_MILLIS, "300");
+		RetryPolicy retry = new RetryPolicy(info);
+		for (int i = 0; i < 100; i++) {
+			assertTrue(retry.getBackoffMillis(1) <= 100);
+			assertTrue(retry.getBackoffMillis(2) <= 200);
+			assertTrue(retry.getBackoffMillis(10) <= 300);
+		}
+		assertTrue(RetryPolicy.isRetryable(new IOException("Connection reset")));
+		assertTrue(RetryPolicy.isRetryable(new RiakResponseException(1, "overload")));
+		assertTrue(RetryPolicy.isRetryable(new SQLException(new RiakResponseException(1, "Request timed out"))));
+		assertFalse(RetryPolicy.isRetryable(new RiakResponseException(1, "Invalid data")));
+		assertFalse(RetryPolicy.isRetryable(new RiakResponseException(1001, "notfound")));
+	}
+
+}
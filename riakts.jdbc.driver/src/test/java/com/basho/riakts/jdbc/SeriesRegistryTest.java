@@ -0,0 +1,163 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.basho.riak.client.api.RiakClient;
+import com.basho.riak.client.core.RiakCluster;
+import com.basho.riak.client.core.RiakNode;
+import com.basho.riak.client.core.query.timeseries.ColumnDescription.ColumnType;
+import com.basho.riak.client.core.query.timeseries.FullColumnDescription;
+
+public class SeriesRegistryTest {
+
+	private final static String RANGE = " AND joined >= 0 AND joined < 86400000";
+
+	@Test
+	public void testAddAndMatch() {
+		SeriesRegistry registry = new SeriesRegistry(2);
+		// Enough series to grow the key array and rehash the slots several times
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(registry.add(Arrays.asList("'s" + (i % 10) + "'", String.valueOf(i))));
+		}
+		assertFalse(registry.add(Arrays.asList("'s3'", "3")));
+		assertEquals(1000, registry.size());
+		assertTrue(registry.contains(Arrays.asList("'s7'", "997")));
+		assertFalse(registry.contains(Arrays.asList("'s7'", "998")));
+
+		List<Set<String>> allowed = new ArrayList<Set<String>>();
+		allowed.add(new HashSet<String>(Arrays.asList("'s1'", "'nope'")));
+		allowed.add(null);
+		List<List<String>> series = registry.match(allowed);
+		assertEquals(100, series.size());
+		assertEquals(Arrays.asList("'s1'", "1"), series.get(0));
+		assertEquals(Arrays.asList("'s1'", "11"), series.get(1));
+
+		allowed.set(1, new HashSet<String>(Arrays.asList("11", "12")));
+		assertEquals(1, registry.match(allowed).size());
+		assertEquals(1000, registry.match(null).size());
+	}
+
+	@Test
+	public void testParseInsert() {
+		QueryParser.ParsedInsert insert = QueryParser.parseInsert(
+				"INSERT INTO jdbcDriverTest (name, age, joined) VALUES ('O''Neil', 1, '2016-06-06'), ('b', -2, 0);");
+		assertEquals("jdbcDriverTest", insert.getTable());
+		assertEquals(Arrays.asList("name", "age", "joined"), insert.getColumns());
+		assertEquals(2, insert.getRows().size());
+		assertEquals(Arrays.asList("'O''Neil'", "1", "'2016-06-06'"), insert.getRows().get(0));
+		assertEquals("-2", insert.getRows().get(1).get(1));
+
+		assertNull(QueryParser.parseInsert("INSERT INTO t VALUES ('a', NOW())"));
+		assertNull(QueryParser.parseInsert("SELECT * FROM t"));
+		assertNull(QueryParser.parseInsert("INSERT INTO t VALUES ('a', 1"));
+	}
+
+	@Test
+	public void testCanonical() {
+		assertEquals("'a'", SeriesCatalog.canonical("'a'", ColumnType.VARCHAR));
+		assertEquals(SeriesCatalog.canonical("0", ColumnType.TIMESTAMP),
+				SeriesCatalog.canonical("'1970-01-01T00:00:00Z'", ColumnType.TIMESTAMP));
+		assertNull(SeriesCatalog.canonical("'x'", ColumnType.SINT64));
+
+		List<FullColumnDescription> columns = new ArrayList<FullColumnDescription>();
+		columns.add(new FullColumnDescription("name", ColumnType.VARCHAR, false, 1, 2));
+		columns.add(new FullColumnDescription("age", ColumnType.SINT64, false, 2, 3));
+		List<String> series = Arrays.asList("'it''s, here'", "42");
+		assertEquals(series, SeriesCatalog.parseSeries(SeriesCatalog.joinSeries(series), columns));
+		assertNull(SeriesCatalog.parseSeries("'a'", columns));
+	}
+
+	@Test
+	public void testFailedPersistIsRetried() throws Exception {
+		StandInRiakServer server = new StandInRiakServer();
+		server.setQueryResult(new String[] { "series" }, new String[] { "varchar" }, new ArrayList<Object[]>());
+		RiakCluster cluster = new RiakCluster.Builder(new RiakNode.Builder().withRemoteAddress(server.getHost())
+				.withRemotePort(server.getPort()).build()).withExecutionAttempts(1).build();
+		cluster.start();
+		try {
+			Properties info = new Properties();
+			info.setProperty(DriverProperties.SERIES_TABLE, "SeriesRegistry");
+			SeriesCatalog catalog = new SeriesCatalog(new RiakClient(cluster), new QueryPlannerTest.FixedSchemaCache(), info);
+			server.setError("Side table unavailable", 1);
+			catalog.recordInsert("INSERT INTO jdbcDriverTest VALUES ('a', 1, 0, 1.0)");
+			// Registered on this connection, and kept to write to the side table again
+			assertEquals(1, catalog.getFailedPersists());
+			assertEquals(1, catalog.getUnpersistedSeries());
+			assertEquals(0, server.getQueryCount());
+
+			// The refresh reads the side table and writes the series it missed
+			catalog.refresh("jdbcDriverTest");
+			assertEquals(2, server.getQueryCount());
+			assertEquals(0, catalog.getUnpersistedSeries());
+			assertEquals(1, catalog.getFailedPersists());
+		}
+		finally {
+			cluster.shutdown();
+			server.close();
+		}
+	}
+
+	@Test
+	public void testPlanSeriesFanOut() {
+		QueryPlannerTest.FixedSchemaCache cache = new QueryPlannerTest.FixedSchemaCache();
+		Properties info = new Properties();
+		SeriesCatalog catalog = new SeriesCatalog(null, cache, info);
+		QueryPlanner planner = new QueryPlanner(cache, catalog, info);
+
+		// Nothing registered yet so the query goes to Riak TS as written
+		String sql = "SELECT * FROM jdbcDriverTest WHERE name = 'a'" + RANGE;
+		assertEquals(QueryPlan.PASS_THROUGH, planner.plan(sql).getStrategy());
+
+		catalog.recordInsert("INSERT INTO jdbcDriverTest (weight, age, name, joined) VALUES (1.0, 1, 'a', 0), (1.0, 2, 'a', 0), (1.0, 1, 'b', 0)");
+		catalog.recordInsert("INSERT INTO jdbcDriverTest VALUES ('a', 1, 5, 2.0)");
+		assertEquals(3, catalog.getRegistry("jdbcDriverTest").size());
+
+		QueryPlan plan = planner.plan(sql);
+		assertEquals(QueryPlan.FAN_OUT, plan.getStrategy());
+		assertEquals(2, plan.getSubQueries().size());
+		assertEquals("SELECT * FROM jdbcDriverTest WHERE name = 'a' AND age = 1" + RANGE, plan.getSubQueries().get(0).getSql());
+		assertEquals("SELECT * FROM jdbcDriverTest WHERE name = 'a' AND age = 2" + RANGE, plan.getSubQueries().get(1).getSql());
+
+		plan = planner.plan("SELECT * FROM jdbcDriverTest WHERE age IN (1, 3)" + RANGE + " ORDER BY joined");
+		assertEquals(2, plan.getSubQueries().size());
+		assertEquals("joined", plan.getMergeColumn());
+		assertEquals("SELECT * FROM jdbcDriverTest WHERE name = 'b' AND age = 1" + RANGE + " ORDER BY joined",
+				plan.getSubQueries().get(1).getSql());
+
+		// Series exist but none match, so there is nothing to read
+		plan = planner.plan("SELECT * FROM jdbcDriverTest WHERE name = 'c'" + RANGE);
+		assertEquals(QueryPlan.FAN_OUT, plan.getStrategy());
+		assertEquals(0, plan.getSubQueries().size());
+
+		// A full partition key, or results that can't be combined, go to Riak TS
+		assertEquals(QueryPlan.PASS_THROUGH, planner.plan(
+				"SELECT * FROM jdbcDriverTest WHERE name = 'a' AND age = 1" + RANGE).getStrategy());
+		assertEquals(QueryPlan.PASS_THROUGH, planner.plan(
+				"SELECT COUNT(*) FROM jdbcDriverTest WHERE name = 'a'" + RANGE).getStrategy());
+	}
+
+}
@@ -0,0 +1,151 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/***
+ * Tests connections to the same stand-in Riak TS node sharing one RiakClient
+ */
+public class SharedClientTest {
+
+	private StandInRiakServer _server;
+	private String _url;
+
+	@Before
+	public void setUp() throws Exception {
+		_server = new StandInRiakServer();
+		_server.setQueryResult(new String[] { "name", "value" }, new String[] { "varchar", "sint64" },
+				new ArrayList<Object[]>());
+		_url = "riakts://" + _server.getHost() + ":" + _server.getPort();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		_server.close();
+	}
+
+	@Test
+	public void testConnectionsShareClient() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty(DriverProperties.CLIENT_LINGER_SECONDS, "0");
+		Connection first = new Connection(_url, properties);
+		Connection second = new Connection(_url, properties);
+		assertSame(first._client, second._client);
+
+		// Closing one connection leaves the client running for the other
+		first.close();
+		first.close();
+		assertTrue(first.isClosed());
+		assertFalse(second.isClosed());
+		second.createStatement().executeQuery("SELECT name, value FROM shared WHERE value = 1");
+		assertEquals(1, _server.getQueryCount());
+		second.close();
+
+		// The last close shut the client down, so the next connection starts another
+		Connection third = new Connection(_url, properties);
+		assertNotSame(first._client, third._client);
+		third.close();
+	}
+
+	@Test
+	public void testLingerAndUnshared() throws Exception {
+		Connection first = new Connection(_url, new Properties());
+		first.close();
+		// Kept for ClientLingerSeconds after its last connection closed
+		Connection second = new Connection(_url, new Properties());
+		assertSame(first._client, second._client);
+
+		Properties properties = new Properties();
+		properties.setProperty(DriverProperties.SHARE_CLIENT, "false");
+		Connection unshared = new Connection(_url, properties);
+		assertNotSame(second._client, unshared._client);
+		unshared.close();
+		second.close();
+	}
+
+	@Test
+	public void testFailedOpenReleasesClient() throws Exception {
+		int clients = ClientRegistry.getClientCount();
+		Properties properties = new Properties();
+		properties.setProperty(DriverProperties.RETENTION, "forever");
+		try {
+			new Connection(_url, properties);
+			fail("Expected SQLException");
+		}
+		catch (SQLException e) {
+			// Expected
+		}
+		assertEquals(clients, ClientRegistry.getClientCount());
+	}
+
+	@Test
+	public void testIsValidPings() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty(DriverProperties.CLIENT_LINGER_SECONDS, "0");
+		properties.setProperty(DriverProperties.VALIDATION_CACHE_MILLIS, "60000");
+		Connection first = new Connection(_url, properties);
+		Connection second = new Connection(_url, properties);
+		// A burst of validations of connections sharing a client is one ping
+		for (int i = 0; i < 10; i++) {
+			assertTrue(first.isValid(1));
+			assertTrue(second.isValid(1));
+		}
+		PingValidator validator = first.getPingValidator();
+		assertSame(validator, second.getPingValidator());
+		assertEquals(1, _server.getPingCount());
+		assertEquals(1, validator.getPings());
+		assertEquals(19, validator.getCachedValidations());
+		try {
+			first.isValid(-1);
+			fail("Expected SQLException");
+		}
+		catch (SQLException e) {
+			// Expected
+		}
+		first.close();
+		assertTrue(first.isClosed());
+		assertFalse(first.isValid(1));
+		assertFalse(second.isClosed());
+		second.close();
+	}
+
+	@Test
+	public void testIsValidTimeout() throws Exception {
+		Properties properties = new Properties();
+		properties.setProperty(DriverProperties.SHARE_CLIENT, "false");
+		properties.setProperty(DriverProperties.VALIDATION_CACHE_MILLIS, "0");
+		Connection connection = new Connection(_url, properties);
+		assertTrue(connection.isValid(1));
+
+		// A node slower than the timeout fails validation, but isn't closed
+		_server.setLatency(2500, 0, 0);
+		long start = System.nanoTime();
+		assertFalse(connection.isValid(1));
+		assertTrue(System.nanoTime() - start < 2000000000L);
+		assertFalse(connection.isClosed());
+		connection.close();
+	}
+
+}
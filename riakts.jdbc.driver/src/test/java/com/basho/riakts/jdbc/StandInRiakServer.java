@@ -0,0 +1,662 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ericsson.otp.erlang.OtpErlangAtom;
+import com.ericsson.otp.erlang.OtpErlangBinary;
+import com.ericsson.otp.erlang.OtpErlangDecodeException;
+import com.ericsson.otp.erlang.OtpErlangDouble;
+import com.ericsson.otp.erlang.OtpErlangList;
+import com.ericsson.otp.erlang.OtpErlangLong;
+import com.ericsson.otp.erlang.OtpErlangObject;
+import com.ericsson.otp.erlang.OtpErlangTuple;
+import com.ericsson.otp.erlang.OtpInputStream;
+import com.ericsson.otp.erlang.OtpOutputStream;
+
+import shaded.com.basho.riak.protobuf.RiakMessageCodes;
+import shaded.com.basho.riak.protobuf.RiakPB;
+import shaded.com.basho.riak.protobuf.RiakTsPB;
+import shaded.com.google.protobuf.ByteString;
+
+/***
+ * Minimal stand-in for a Riak TS node used by tests and benchmarks. Speaks the
+ * Riak protocol buffers framing, answers pings, DESCRIBE, queries (with a fixed
+ * result), fetches of rows from in-memory tables and stores of rows into them, each
+ * either TTB or protocol buffers encoded, and can inject latency into its responses to
+ * simulate a slow node.
+ */
+public class StandInRiakServer {
+
+	// Erlang external term format version byte
+	private final static int VERSION_TAG = 131;
+
+	private ServerSocket _serverSocket;
+	private List<Socket> _sockets = new ArrayList<Socket>();
+	private volatile boolean _running = false;
+	private Random _random = new Random(42);
+
+	private volatile long _baseDelayMillis = 0;
+	private volatile double _slowFraction = 0;
+	private volatile long _slowDelayMillis = 0;
+	// Requests handled at once, across connections, or null for no limit
+	private volatile Semaphore _capacity = null;
+
+	private String[] _columnNames = { "name", "value" };
+	private String[] _columnTypes = { "varchar", "sint64" };
+	private List<Object[]> _rows = new ArrayList<Object[]>();
+	private volatile String _error = null;
+	// Requests left to fail with _error, or -1 for all of them
+	private AtomicInteger _errorsLeft = new AtomicInteger(-1);
+	private AtomicLong _pings = new AtomicLong();
+	private AtomicLong _queries = new AtomicLong();
+	private AtomicLong _fetches = new AtomicLong();
+	private AtomicLong _stores = new AtomicLong();
+	private AtomicLong _storedRows = new AtomicLong();
+	private AtomicLong _deletes = new AtomicLong();
+	private AtomicLong _bytesReceived = new AtomicLong();
+	private AtomicLong _bytesSent = new AtomicLong();
+	private Map<String, Table> _tables = new ConcurrentHashMap<String, Table>();
+
+	/***
+	 * Starts the server on a free port of the loopback interface
+	 * @throws IOException
+	 */
+	public StandInRiakServer() throws IOException {
+		_serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+		_running = true;
+		Thread acceptor = new Thread(new Runnable() {
+			public void run() {
+				accept();
+			}
+		}, "stand-in-riak-" + getPort());
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	public int getPort() {
+		return _serverSocket.getLocalPort();
+	}
+
+	public String getHost() {
+		return _serverSocket.getInetAddress().getHostAddress();
+	}
+
+	/***
+	 * Adds latency to every response: baseDelayMillis always, plus slowDelayMillis
+	 * for a random slowFraction of responses
+	 */
+	public void setLatency(long baseDelayMillis, double slowFraction, long slowDelayMillis) {
+		_baseDelayMillis = baseDelayMillis;
+		_slowFraction = slowFraction;
+		_slowDelayMillis = slowDelayMillis;
+	}
+
+	/***
+	 * Limits the requests the server handles at once, across all its connections, as a
+	 * node's CPU and vnodes would; the rest wait their turn
+	 */
+	public void setCapacity(int requests) {
+		_capacity = new Semaphore(requests);
+	}
+
+	/***
+	 * Sets the result returned for every query. Types are Riak TS column types in lower
+	 * case, e.g. varchar, sint64, double, timestamp or boolean.
+	 */
+	public synchronized void setQueryResult(String[] columnNames, String[] columnTypes, List<Object[]> rows) {
+		_columnNames = columnNames;
+		_columnTypes = columnTypes;
+		_rows = rows;
+	}
+
+	/***
+	 * Makes every query fail with the error message passed in, or succeed again if null
+	 */
+	public void setError(String error) {
+		setError(error, -1);
+	}
+
+	/***
+	 * Makes the next count requests fail with the error message passed in, then
+	 * succeed again
+	 */
+	public void setError(String error, int count) {
+		_errorsLeft.set(count);
+		_error = error;
+	}
+
+	private boolean failNext() {
+		if (_error == null) return false;
+		if (_errorsLeft.get() < 0 || _errorsLeft.getAndDecrement() > 0) return true;
+		_error = null;
+		return false;
+	}
+
+	public long getPingCount() {
+		return _pings.get();
+	}
+
+	public long getQueryCount() {
+		return _queries.get();
+	}
+
+	public long getFetchCount() {
+		return _fetches.get();
+	}
+
+	public long getStoreCount() {
+		return _stores.get();
+	}
+
+	public long getStoredRowCount() {
+		return _storedRows.get();
+	}
+
+	public long getDeleteCount() {
+		return _deletes.get();
+	}
+
+	/***
+	 * Returns the bytes of all the messages received, framing included
+	 */
+	public long getBytesReceived() {
+		return _bytesReceived.get();
+	}
+
+	/***
+	 * Returns the bytes of all the messages sent, framing included
+	 */
+	public long getBytesSent() {
+		return _bytesSent.get();
+	}
+
+	/***
+	 * Creates an in-memory table that can be described and fetched from
+	 * @param table table name
+	 * @param names column names in table order
+	 * @param types Riak TS column types in lower case
+	 * @param partitionKey columns of the partition key in key order
+	 * @param localKey columns of the local key in key order
+	 * @param quantumColumn partition key column that is quantized, or null
+	 * @param interval quantum interval
+	 * @param unit quantum unit, e.g. d, h or m
+	 */
+	public void createTable(String table, String[] names, String[] types, String[] partitionKey,
+			String[] localKey, String quantumColumn, long interval, String unit) {
+		_tables.put(table, new Table(names, types, partitionKey, localKey, quantumColumn, interval, unit));
+	}
+
+	/***
+	 * Creates the jdbcDriverTest table of DriverTest: name, age and joined as the key,
+	 * joined quantized by 5 days, with weight and active columns
+	 */
+	public void createDriverTestTable() {
+		createTable("jdbcDriverTest",
+				new String[] { "name", "age", "joined", "weight", "active" },
+				new String[] { "varchar", "sint64", "timestamp", "double", "boolean" },
+				new String[] { "name", "age", "joined" }, new String[] { "joined", "name", "age" },
+				"joined", 5, "d");
+	}
+
+	/***
+	 * Stores a row in a table created by createTable, values in column order
+	 */
+	public void put(String table, Object... values) {
+		Table definition = _tables.get(table);
+		definition.rows.put(definition.keyOf(values), values);
+	}
+
+	/***
+	 * Returns the row of a table created by createTable with the key passed in, values in
+	 * local key order, or null if there is none
+	 */
+	public Object[] get(String table, Object... key) {
+		return _tables.get(table).rows.get(Arrays.asList(key));
+	}
+
+	public void close() throws IOException {
+		_running = false;
+		_serverSocket.close();
+		synchronized (_sockets) {
+			for (Socket socket : _sockets) socket.close();
+		}
+	}
+
+
+	private void accept() {
+		while (_running) {
+			try {
+				final Socket socket = _serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				synchronized (_sockets) {
+					_sockets.add(socket);
+				}
+				Thread handler = new Thread(new Runnable() {
+					public void run() {
+						serve(socket);
+					}
+				}, "stand-in-riak-connection");
+				handler.setDaemon(true);
+				handler.start();
+			}
+			catch (IOException e) {
+				// Closed
+			}
+		}
+	}
+
+	private void serve(Socket socket) {
+		try {
+			DataInputStream in = new DataInputStream(socket.getInputStream());
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			while (_running) {
+				int length = in.readInt();
+				int code = in.readUnsignedByte();
+				byte[] payload = new byte[length - 1];
+				in.readFully(payload);
+				_bytesReceived.addAndGet(length + 4);
+				Semaphore capacity = _capacity;
+				if (capacity != null) capacity.acquireUninterruptibly();
+				int sent = out.size();
+				try {
+					delay();
+					respond(out, code, payload);
+				}
+				finally {
+					if (capacity != null) capacity.release();
+				}
+				// size() wraps past Integer.MAX_VALUE, the difference doesn't
+				_bytesSent.addAndGet(out.size() - sent);
+			}
+		}
+		catch (IOException e) {
+			// Client disconnected
+		}
+		finally {
+			try {
+				socket.close();
+			}
+			catch (IOException e) {
+				// Ignore
+			}
+		}
+	}
+
+	private void delay() {
+		long delay = _baseDelayMillis;
+		synchronized (_random) {
+			if (_slowFraction > 0 && _random.nextDouble() < _slowFraction) delay += _slowDelayMillis;
+		}
+		if (delay <= 0) return;
+		try {
+			Thread.sleep(delay);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void respond(DataOutputStream out, int code, byte[] payload) throws IOException {
+		if (code == RiakMessageCodes.MSG_PingReq) {
+			_pings.incrementAndGet();
+			write(out, RiakMessageCodes.MSG_PingResp, new byte[0]);
+		}
+		else if (code == RiakMessageCodes.MSG_TsQueryReq || code == RiakMessageCodes.MSG_TsPutReq
+				|| code == RiakMessageCodes.MSG_TsGetReq || code == RiakMessageCodes.MSG_TsDelReq) {
+			respondPb(out, code, payload);
+		}
+		else if (code == RiakMessageCodes.MSG_TsTtbMsg) {
+			OtpErlangTuple request = decode(payload);
+			String type = request.elementAt(0).toString();
+			String error = _error;
+			if (failNext()) {
+				writeError(out, error, 1);
+			}
+			else if (type.equals("tsqueryreq")) {
+				_queries.incrementAndGet();
+				OtpErlangTuple query = (OtpErlangTuple) request.elementAt(1);
+				String sql = new String(((OtpErlangBinary) query.elementAt(1)).binaryValue(), StandardCharsets.UTF_8);
+				write(out, RiakMessageCodes.MSG_TsTtbMsg, encodeQueryResponse(sql));
+			}
+			else if (type.equals("tsgetreq")) {
+				_fetches.incrementAndGet();
+				String name = new String(((OtpErlangBinary) request.elementAt(1)).binaryValue(), StandardCharsets.UTF_8);
+				Table table = _tables.get(name);
+				Object[] row = table == null ? null : table.rows.get(toJava((OtpErlangList) request.elementAt(2)));
+				// Riak TS reports missing keys as an error
+				if (row == null) writeError(out, "notfound", 1001);
+				else write(out, RiakMessageCodes.MSG_TsTtbMsg, table.encodeRow(row));
+			}
+			else if (type.equals("tsputreq")) {
+				_stores.incrementAndGet();
+				String name = new String(((OtpErlangBinary) request.elementAt(1)).binaryValue(), StandardCharsets.UTF_8);
+				List<Object[]> rows = new ArrayList<Object[]>();
+				for (OtpErlangObject row : (OtpErlangList) request.elementAt(3)) {
+					rows.add(toJava(new OtpErlangList(((OtpErlangTuple) row).elements())).toArray());
+				}
+				error = store(name, rows);
+				if (error != null) writeError(out, error, 1);
+				else write(out, RiakMessageCodes.MSG_TsTtbMsg, encodeAtom("tsputresp"));
+			}
+			else {
+				writeError(out, "Unsupported request " + type, 1);
+			}
+		}
+		else {
+			writeError(out, "Unsupported message code " + code, 1);
+		}
+		out.flush();
+	}
+
+	private void respondPb(DataOutputStream out, int code, byte[] payload) throws IOException {
+		if (code == RiakMessageCodes.MSG_TsQueryReq) {
+			String sql = RiakTsPB.TsQueryReq.parseFrom(payload).getQuery().getBase().toStringUtf8();
+			String[] words = sql.trim().split("\\s+");
+			if (words[0].equalsIgnoreCase("DESCRIBE")) {
+				Table table = words.length == 2 ? _tables.get(words[1]) : null;
+				if (table == null) writeError(out, "Unsupported query " + sql, 1);
+				else write(out, RiakMessageCodes.MSG_TsQueryResp, table.describe());
+				return;
+			}
+		}
+		String error = _error;
+		if (failNext()) {
+			writeError(out, error, 1);
+		}
+		else if (code == RiakMessageCodes.MSG_TsQueryReq) {
+			_queries.incrementAndGet();
+			String sql = RiakTsPB.TsQueryReq.parseFrom(payload).getQuery().getBase().toStringUtf8();
+			List<Object[]> rows;
+			String[] names;
+			String[] types;
+			synchronized (this) {
+				rows = rowsFor(sql);
+				names = _columnNames;
+				types = _columnTypes;
+			}
+			write(out, RiakMessageCodes.MSG_TsQueryResp, encodePbRows(names, types, rows));
+		}
+		else if (code == RiakMessageCodes.MSG_TsGetReq) {
+			_fetches.incrementAndGet();
+			RiakTsPB.TsGetReq request = RiakTsPB.TsGetReq.parseFrom(payload);
+			Table table = _tables.get(request.getTable().toStringUtf8());
+			Object[] row = table == null ? null : table.rows.get(toJava(request.getKeyList()));
+			if (row == null) writeError(out, "notfound", 1001);
+			else write(out, RiakMessageCodes.MSG_TsGetResp, encodePbRows(table.names, table.types, Arrays.<Object[]>asList(row)));
+		}
+		else if (code == RiakMessageCodes.MSG_TsDelReq) {
+			_deletes.incrementAndGet();
+			RiakTsPB.TsDelReq request = RiakTsPB.TsDelReq.parseFrom(payload);
+			Table table = _tables.get(request.getTable().toStringUtf8());
+			if (table != null) table.rows.remove(toJava(request.getKeyList()));
+			write(out, RiakMessageCodes.MSG_TsDelResp, RiakTsPB.TsDelResp.getDefaultInstance().toByteArray());
+		}
+		else {
+			_stores.incrementAndGet();
+			RiakTsPB.TsPutReq request = RiakTsPB.TsPutReq.parseFrom(payload);
+			List<Object[]> rows = new ArrayList<Object[]>();
+			for (RiakTsPB.TsRow row : request.getRowsList()) rows.add(toJava(row.getCellsList()).toArray());
+			error = store(request.getTable().toStringUtf8(), rows);
+			if (error != null) writeError(out, error, 1);
+			else write(out, RiakMessageCodes.MSG_TsPutResp, RiakTsPB.TsPutResp.getDefaultInstance().toByteArray());
+		}
+	}
+
+	private static List<Object> toJava(List<RiakTsPB.TsCell> cells) {
+		List<Object> values = new ArrayList<Object>();
+		for (RiakTsPB.TsCell cell : cells) {
+			if (cell.hasVarcharValue()) values.add(cell.getVarcharValue().toStringUtf8());
+			else if (cell.hasSint64Value()) values.add(cell.getSint64Value());
+			else if (cell.hasTimestampValue()) values.add(cell.getTimestampValue());
+			else if (cell.hasDoubleValue()) values.add(cell.getDoubleValue());
+			else if (cell.hasBooleanValue()) values.add(cell.getBooleanValue());
+			else values.add(null);
+		}
+		return values;
+	}
+
+	/***
+	 * Encodes a TsQueryResp, which a TsGetResp shares the layout of
+	 */
+	static byte[] encodePbRows(String[] names, String[] types, List<Object[]> rows) {
+		RiakTsPB.TsQueryResp.Builder response = RiakTsPB.TsQueryResp.newBuilder();
+		for (int i = 0; i < names.length; i++) {
+			response.addColumns(RiakTsPB.TsColumnDescription.newBuilder().setName(ByteString.copyFromUtf8(names[i]))
+					.setType(RiakTsPB.TsColumnType.valueOf(types[i].toUpperCase())));
+		}
+		for (Object[] row : rows) {
+			RiakTsPB.TsRow.Builder pbRow = RiakTsPB.TsRow.newBuilder();
+			for (int i = 0; i < row.length; i++) {
+				RiakTsPB.TsCell.Builder cell = RiakTsPB.TsCell.newBuilder();
+				Object value = row[i];
+				if (value == null) {
+					// An empty cell is a null
+				}
+				else if (types[i].equals("varchar") || types[i].equals("blob")) cell.setVarcharValue(ByteString.copyFromUtf8(value.toString()));
+				else if (types[i].equals("timestamp")) cell.setTimestampValue(((Number) value).longValue());
+				else if (types[i].equals("double")) cell.setDoubleValue(((Number) value).doubleValue());
+				else if (types[i].equals("boolean")) cell.setBooleanValue((Boolean) value);
+				else cell.setSint64Value(((Number) value).longValue());
+				pbRow.addCells(cell);
+			}
+			response.addRows(pbRow);
+		}
+		return response.build().toByteArray();
+	}
+
+	private static List<Object> toJava(OtpErlangList cells) {
+		List<Object> values = new ArrayList<Object>();
+		for (OtpErlangObject cell : cells) {
+			if (cell instanceof OtpErlangBinary) values.add(new String(((OtpErlangBinary) cell).binaryValue(), StandardCharsets.UTF_8));
+			else if (cell instanceof OtpErlangLong) values.add(((OtpErlangLong) cell).longValue());
+			else if (cell instanceof OtpErlangDouble) values.add(((OtpErlangDouble) cell).doubleValue());
+			else if (cell instanceof OtpErlangAtom) values.add(((OtpErlangAtom) cell).booleanValue());
+			else values.add(null);
+		}
+		return values;
+	}
+
+	private static OtpErlangTuple decode(byte[] payload) throws IOException {
+		try {
+			return (OtpErlangTuple) new OtpInputStream(payload).read_any();
+		}
+		catch (OtpErlangDecodeException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/***
+	 * Stores rows written with the timeseries Store command, in column order, into the
+	 * in-memory table if there is one. Tests override this to reject some rows.
+	 * @return error message to answer with, or null if the rows were stored
+	 */
+	protected String store(String table, List<Object[]> rows) {
+		_storedRows.addAndGet(rows.size());
+		Table definition = _tables.get(table);
+		if (definition != null) {
+			for (Object[] row : rows) definition.rows.put(definition.keyOf(row), row);
+		}
+		return null;
+	}
+
+	private static byte[] encodeAtom(String atom) {
+		OtpOutputStream stream = new OtpOutputStream();
+		stream.write(VERSION_TAG);
+		stream.write_atom(atom);
+		return stream.toByteArray();
+	}
+
+	/***
+	 * Returns the rows answered for a query, by default those set by setQueryResult.
+	 * Tests override this to answer different queries with different rows.
+	 */
+	protected List<Object[]> rowsFor(String sql) {
+		return _rows;
+	}
+
+	/***
+	 * Encodes {tsqueryresp, {ColumnNames, ColumnTypes, Rows}}
+	 */
+	protected synchronized byte[] encodeQueryResponse(String sql) throws IOException {
+		return encodeTtbRows(_columnNames, _columnTypes, rowsFor(sql));
+	}
+
+	static byte[] encodeTtbRows(String[] names, String[] types, List<Object[]> rows) {
+		OtpOutputStream stream = new OtpOutputStream();
+		stream.write(VERSION_TAG);
+		stream.write_tuple_head(2);
+		stream.write_atom("tsqueryresp");
+		stream.write_tuple_head(3);
+		stream.write_list_head(names.length);
+		for (String name : names) stream.write_binary(name.getBytes(StandardCharsets.UTF_8));
+		stream.write_nil();
+		stream.write_list_head(types.length);
+		for (String type : types) stream.write_atom(type);
+		stream.write_nil();
+		if (!rows.isEmpty()) {
+			stream.write_list_head(rows.size());
+			for (Object[] row : rows) {
+				stream.write_tuple_head(row.length);
+				for (Object value : row) writeValue(stream, value);
+			}
+		}
+		stream.write_nil();
+		return stream.toByteArray();
+	}
+
+	private static void writeValue(OtpOutputStream stream, Object value) {
+		if (value == null) stream.write_nil();
+		else if (value instanceof String) stream.write_binary(((String) value).getBytes(StandardCharsets.UTF_8));
+		else if (value instanceof Boolean) stream.write_boolean((Boolean) value);
+		else if (value instanceof Double) stream.write_double((Double) value);
+		else if (value instanceof Number) stream.write_long(((Number) value).longValue());
+		else if (value instanceof OtpErlangObject) stream.write_any((OtpErlangObject) value);
+		else throw new IllegalArgumentException("Unsupported value " + value);
+	}
+
+	private static void writeError(DataOutputStream out, String message, int errorCode) throws IOException {
+		byte[] payload = RiakPB.RpbErrorResp.newBuilder().setErrmsg(ByteString.copyFromUtf8(message))
+				.setErrcode(errorCode).build().toByteArray();
+		write(out, RiakMessageCodes.MSG_ErrorResp, payload);
+	}
+
+	private static void write(DataOutputStream out, int code, byte[] payload) throws IOException {
+		out.writeInt(payload.length + 1);
+		out.writeByte(code);
+		out.write(payload);
+	}
+
+
+	/***
+	 * An in-memory table, rows keyed by their local key values
+	 */
+	private static class Table {
+		final String[] names;
+		final String[] types;
+		final String[] partitionKey;
+		final String[] localKey;
+		final String quantumColumn;
+		final long interval;
+		final String unit;
+		final Map<List<Object>, Object[]> rows = new ConcurrentHashMap<List<Object>, Object[]>();
+
+		Table(String[] names, String[] types, String[] partitionKey, String[] localKey, String quantumColumn,
+				long interval, String unit) {
+			this.names = names;
+			this.types = types;
+			this.partitionKey = partitionKey;
+			this.localKey = localKey;
+			this.quantumColumn = quantumColumn;
+			this.interval = interval;
+			this.unit = unit;
+		}
+
+		List<Object> keyOf(Object[] values) {
+			List<Object> key = new ArrayList<Object>();
+			for (String column : localKey) key.add(values[Arrays.asList(names).indexOf(column)]);
+			return key;
+		}
+
+		/***
+		 * Encodes the DESCRIBE output: Column, Type, Is Null, Primary Key, Local Key, Interval, Unit
+		 */
+		byte[] describe() {
+			RiakTsPB.TsQueryResp.Builder response = RiakTsPB.TsQueryResp.newBuilder();
+			String[] columns = { "Column", "Type", "Is Null", "Primary Key", "Local Key", "Interval", "Unit" };
+			RiakTsPB.TsColumnType[] columnTypes = { RiakTsPB.TsColumnType.VARCHAR, RiakTsPB.TsColumnType.VARCHAR,
+					RiakTsPB.TsColumnType.BOOLEAN, RiakTsPB.TsColumnType.SINT64, RiakTsPB.TsColumnType.SINT64,
+					RiakTsPB.TsColumnType.SINT64, RiakTsPB.TsColumnType.VARCHAR };
+			for (int i = 0; i < columns.length; i++) {
+				response.addColumns(RiakTsPB.TsColumnDescription.newBuilder()
+						.setName(ByteString.copyFromUtf8(columns[i])).setType(columnTypes[i]));
+			}
+			for (String name : names) {
+				int partitionOrdinal = Arrays.asList(partitionKey).indexOf(name) + 1;
+				int localOrdinal = Arrays.asList(localKey).indexOf(name) + 1;
+				boolean quantized = name.equals(quantumColumn);
+				response.addRows(RiakTsPB.TsRow.newBuilder()
+						.addCells(RiakTsPB.TsCell.newBuilder().setVarcharValue(ByteString.copyFromUtf8(name)))
+						.addCells(RiakTsPB.TsCell.newBuilder().setVarcharValue(ByteString.copyFromUtf8(types[Arrays.asList(names).indexOf(name)])))
+						.addCells(RiakTsPB.TsCell.newBuilder().setBooleanValue(localOrdinal == 0))
+						.addCells(partitionOrdinal > 0 ? RiakTsPB.TsCell.newBuilder().setSint64Value(partitionOrdinal) : RiakTsPB.TsCell.newBuilder())
+						.addCells(localOrdinal > 0 ? RiakTsPB.TsCell.newBuilder().setSint64Value(localOrdinal) : RiakTsPB.TsCell.newBuilder())
+						.addCells(quantized ? RiakTsPB.TsCell.newBuilder().setSint64Value(interval) : RiakTsPB.TsCell.newBuilder())
+						.addCells(quantized ? RiakTsPB.TsCell.newBuilder().setVarcharValue(ByteString.copyFromUtf8(unit)) : RiakTsPB.TsCell.newBuilder()));
+			}
+			return response.build().toByteArray();
+		}
+
+		/***
+		 * Encodes {tsgetresp, {ColumnNames, ColumnTypes, [Row]}}
+		 */
+		byte[] encodeRow(Object[] row) {
+			OtpOutputStream stream = new OtpOutputStream();
+			stream.write(VERSION_TAG);
+			stream.write_tuple_head(2);
+			stream.write_atom("tsgetresp");
+			stream.write_tuple_head(3);
+			stream.write_list_head(names.length);
+			for (String name : names) stream.write_binary(name.getBytes(StandardCharsets.UTF_8));
+			stream.write_nil();
+			stream.write_list_head(types.length);
+			for (String type : types) stream.write_atom(type);
+			stream.write_nil();
+			stream.write_list_head(1);
+			stream.write_tuple_head(row.length);
+			for (Object value : row) writeValue(stream, value);
+			stream.write_nil();
+			return stream.toByteArray();
+		}
+	}
+
+}
@@ -0,0 +1,166 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.netty.channel.epoll.Epoll;
+
+/***
+ * Compares the NIO transport with NativeTransport (epoll and pooled direct buffers)
+ * writing batches of 100 rows and reading queries of 100 rows from 32 threads against
+ * a stand-in Riak TS node. For each it reports throughput, the process CPU time and the
+ * bytes allocated by the driver's and Netty's threads per batch or query, and the
+ * garbage collections. The stand-in node runs in the same process, so its CPU time is
+ * included but is the same for both. Run main from the test classpath, optionally
+ * passing the number of batches and queries to time.
+ */
+public class TransportBenchmark {
+
+	private final static int THREADS = 32;
+	private final static int ROWS = 100;
+
+	private static com.sun.management.ThreadMXBean _threads =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+	private static com.sun.management.OperatingSystemMXBean _os =
+			(com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+	public static void main(String[] args) throws Exception {
+		int operations = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+
+		StandInRiakServer server = new StandInRiakServer();
+		server.createTable("bench", new String[] { "name", "time", "value", "reading" },
+				new String[] { "varchar", "timestamp", "sint64", "double" }, new String[] { "name", "time" },
+				new String[] { "name", "time" }, "time", 1, "d");
+		List<Object[]> rows = new ArrayList<Object[]>();
+		for (int i = 0; i < ROWS; i++) rows.add(new Object[] { "sensor-" + i, 1470009600000L + i, (long) i, i / 3.0 });
+		server.setQueryResult(new String[] { "name", "time", "value", "reading" },
+				new String[] { "varchar", "timestamp", "sint64", "double" }, rows);
+		String url = "riakts://" + server.getHost() + ":" + server.getPort();
+		System.out.println("Epoll available: " + Epoll.isAvailable());
+
+		try {
+			// The first pass warms up
+			for (int pass = 0; pass < 2; pass++) {
+				for (String nativeTransport : new String[] { "false", "true" }) {
+					Properties info = new Properties();
+					info.setProperty(DriverProperties.SHARE_CLIENT, "false");
+					info.setProperty(DriverProperties.NATIVE_TRANSPORT, nativeTransport);
+					String name = "NativeTransport=" + nativeTransport + " ("
+							+ new ClientSettings(info).getTransport() + ")";
+					run(url, info, operations, pass == 0 ? null : name);
+				}
+			}
+		}
+		finally {
+			server.close();
+		}
+	}
+
+	private static void run(String url, Properties info, int operations, String name) throws Exception {
+		final Connection conn = new Connection(url, info);
+		ExecutorService threads = Executors.newFixedThreadPool(THREADS);
+		try {
+			if (name != null) System.out.println(name);
+			measure("write", conn, threads, operations, name != null, new Operation() {
+				public void run(Connection conn) throws Exception {
+					PreparedStatement insert = conn.prepareStatement("INSERT INTO bench VALUES (?, ?, ?, ?)");
+					for (int i = 0; i < ROWS; i++) {
+						insert.setString(1, "sensor-" + i);
+						insert.setTimestamp(2, new Timestamp(1470009600000L + i));
+						insert.setLong(3, i);
+						insert.setDouble(4, i / 3.0);
+						insert.addBatch();
+					}
+					insert.executeBatch();
+				}
+			});
+			measure("read", conn, threads, operations, name != null, new Operation() {
+				public void run(Connection conn) throws Exception {
+					ResultSet results = conn.createStatement().executeQuery("SELECT * FROM bench WHERE time >= 1 AND time < 2");
+					while (results.next()) results.getObject(4);
+					results.close();
+				}
+			});
+		}
+		finally {
+			threads.shutdown();
+			conn.close();
+		}
+	}
+
+	private static void measure(String label, final Connection conn, ExecutorService threads, int operations,
+			boolean report, final Operation operation) throws Exception {
+		final int perThread = operations / THREADS;
+		long allocated = allocatedBytes();
+		long cpu = _os.getProcessCpuTime();
+		long collections = collections();
+		long start = System.nanoTime();
+		List<Future<Void>> results = new ArrayList<Future<Void>>();
+		for (int i = 0; i < THREADS; i++) {
+			results.add(threads.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					for (int i = 0; i < perThread; i++) operation.run(conn);
+					return null;
+				}
+			}));
+		}
+		for (Future<Void> result : results) result.get();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		int done = perThread * THREADS;
+		if (!report) return;
+		System.out.println(String.format("  %-5s %8.0f/s  %7.1f us CPU  %,9d bytes allocated  %4d GCs", label,
+				done / seconds, (_os.getProcessCpuTime() - cpu) / 1e3 / done, (allocatedBytes() - allocated) / done,
+				collections() - collections));
+	}
+
+	/***
+	 * Returns the bytes allocated by the threads other than the stand-in node's
+	 */
+	private static long allocatedBytes() {
+		long bytes = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().startsWith("stand-in-riak")) continue;
+			long allocated = _threads.getThreadAllocatedBytes(thread.getId());
+			if (allocated > 0) bytes += allocated;
+		}
+		return bytes;
+	}
+
+	private static long collections() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+
+	private interface Operation {
+		void run(Connection conn) throws Exception;
+	}
+
+}
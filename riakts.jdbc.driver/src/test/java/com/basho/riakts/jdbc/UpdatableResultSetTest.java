@@ -0,0 +1,128 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/***
+ * Tests writing changes made through CONCUR_UPDATABLE result sets to a stand-in Riak TS node
+ */
+public class UpdatableResultSetTest {
+
+	private final static long JOINED = 1467072000000L; // 2016-06-28
+	private final static String CRAIG = "SELECT * FROM jdbcDriverTest WHERE name = 'Craig' AND age = 21 AND joined = " + JOINED;
+
+	private StandInRiakServer _server;
+	private Connection _conn;
+
+	@Before
+	public void setUp() throws Exception {
+		_server = new StandInRiakServer();
+		_server.createDriverTestTable();
+		_server.put("jdbcDriverTest", "Craig", 21L, JOINED, 190.5, true);
+		_conn = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), new Properties());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		_conn.close();
+		_server.close();
+	}
+
+	@Test
+	public void testInsertRow() throws SQLException {
+		java.sql.Statement statement = _conn.createStatement(java.sql.ResultSet.TYPE_FORWARD_ONLY,
+				java.sql.ResultSet.CONCUR_UPDATABLE);
+		java.sql.ResultSet rs = statement.executeQuery(CRAIG);
+		assertEquals(java.sql.ResultSet.CONCUR_UPDATABLE, rs.getConcurrency());
+
+		rs.moveToInsertRow();
+		for (String name : new String[] { "Ann", "Bob" }) {
+			rs.updateString("name", name);
+			rs.updateLong(2, 30);
+			rs.updateTimestamp(3, new Timestamp(JOINED));
+			rs.updateDouble("weight", 120.0);
+			rs.updateBoolean(5, false);
+			rs.insertRow();
+		}
+		rs.moveToCurrentRow();
+		// Rows are buffered until the connection runs something else
+		assertEquals(0, _server.getStoreCount());
+
+		_conn.flushInserts();
+		assertEquals(1, _server.getStoreCount());
+		assertEquals(2, _server.getStoredRowCount());
+		assertEquals(120.0, _server.get("jdbcDriverTest", JOINED, "Bob", 30L)[3]);
+		assertTrue(rs.last());
+		assertTrue(rs.rowInserted());
+		assertEquals("Bob", rs.getString(1));
+	}
+
+	@Test
+	public void testUpdateAndDeleteRow() throws SQLException {
+		java.sql.Statement statement = _conn.createStatement(java.sql.ResultSet.TYPE_FORWARD_ONLY,
+				java.sql.ResultSet.CONCUR_UPDATABLE);
+		java.sql.ResultSet rs = statement.executeQuery(CRAIG);
+		assertTrue(rs.next());
+		rs.updateDouble("weight", 185.0);
+		rs.cancelRowUpdates();
+		assertEquals(190.5, rs.getDouble("weight"), 0);
+		rs.updateDouble("weight", 185.0);
+		rs.updateRow();
+		assertTrue(rs.rowUpdated());
+		assertEquals(185.0, rs.getDouble("weight"), 0);
+		rs.close();
+		assertEquals(185.0, _server.get("jdbcDriverTest", JOINED, "Craig", 21L)[3]);
+
+		// Changing the key deletes the row with the old one
+		rs = statement.executeQuery(CRAIG);
+		assertTrue(rs.next());
+		rs.updateLong("age", 22);
+		rs.updateRow();
+		assertEquals(1, _server.getDeleteCount());
+		assertNull(_server.get("jdbcDriverTest", JOINED, "Craig", 21L));
+		_conn.flushInserts();
+		assertEquals(185.0, _server.get("jdbcDriverTest", JOINED, "Craig", 22L)[3]);
+
+		rs.deleteRow();
+		assertEquals(2, _server.getDeleteCount());
+		assertNull(_server.get("jdbcDriverTest", JOINED, "Craig", 22L));
+		assertFalse(rs.next());
+	}
+
+	@Test
+	public void testReadOnly() throws SQLException {
+		java.sql.Statement statement = _conn.createStatement();
+		assertEquals(java.sql.ResultSet.CONCUR_READ_ONLY, statement.getResultSetConcurrency());
+		assertEquals(java.sql.ResultSet.CONCUR_READ_ONLY, statement.executeQuery(CRAIG).getConcurrency());
+
+		// Without the whole primary key rows can't be written back
+		statement = _conn.createStatement(java.sql.ResultSet.TYPE_FORWARD_ONLY, java.sql.ResultSet.CONCUR_UPDATABLE);
+		java.sql.ResultSet rs = statement.executeQuery(
+				"SELECT name, weight FROM jdbcDriverTest WHERE name = 'Craig' AND age = 21 AND joined = " + JOINED);
+		assertEquals(java.sql.ResultSet.CONCUR_READ_ONLY, rs.getConcurrency());
+		assertNotNull(rs.getWarnings());
+	}
+
+}
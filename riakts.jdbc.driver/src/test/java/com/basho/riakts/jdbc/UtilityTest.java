@@ -20,6 +20,8 @@ import java.util.Properties;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
+import com.basho.riak.client.core.query.timeseries.ColumnDescription.ColumnType;
+
 public class UtilityTest {
 
 	@Test
@@ -27,6 +29,13 @@ public class UtilityTest {
 		assertTrue( Utility.validateRiakUrl("riakts://127.0.0.1:8087") );
 	}
 	
+	@Test
+	public void testValidateHostnameUrl() {
+		assertTrue( Utility.validateRiakUrl("riakts://riak.internal:8087") );
+		assertTrue( Utility.validateRiakUrl("riakts://localhost:8087,riak-2.internal:8087") );
+		assertFalse( Utility.validateRiakUrl("riakts://riak_internal!:8087") );
+	}
+	
 	@Test
 	public void testGetRiakProperties() throws SQLException {
 		Properties info = Utility.getRiakPropertiesFromUrl("riakts://127.0.0.1:8087");
@@ -40,5 +49,41 @@ public class UtilityTest {
 		info.setProperty("RiakPort", "8087");
 		assertTrue( Utility.validateRiakProperties(info) );
 	}
+	
+	@Test
+	public void testMultiNodeUrl() throws SQLException {
+		assertTrue( Utility.validateRiakUrl("riakts://10.0.0.1:8087,10.0.0.2:8087, 10.0.0.3:8088") );
+		assertFalse( Utility.validateRiakUrl("riakts://10.0.0.1:8087,10.0.0.2") );
+		Properties info = Utility.getRiakPropertiesFromUrl("riakts://10.0.0.1:8087,10.0.0.2:8087, 10.0.0.3:8088");
+		assertEquals( "10.0.0.1", info.getProperty("RiakUrl") );
+		assertEquals( 3, Utility.getRiakNodes(info).size() );
+		assertEquals( 8088, Utility.getRiakNodes(info).get(2).getPort() );
+		
+		info = new Properties();
+		info.setProperty(DriverProperties.RIAK_NODES, "10.0.0.1,10.0.0.2:8088");
+		assertFalse( Utility.validateRiakProperties(info) );
+		info.setProperty("RiakPort", "8087");
+		assertTrue( Utility.validateRiakProperties(info) );
+		assertEquals( 8087, Utility.getRiakNodes(info).get(0).getPort() );
+	}
+	
+	@Test
+	public void testParseTimestampLiteral() {
+		assertEquals( Long.valueOf(1465185600000L), Utility.parseTimestampLiteral("1465185600000") );
+		assertEquals( Long.valueOf(1465185600000L), Utility.parseTimestampLiteral("'2016-06-06 04:00:00'") );
+		assertEquals( Long.valueOf(1465185600000L), Utility.parseTimestampLiteral("'2016-06-06T04:00:00Z'") );
+		assertEquals( Long.valueOf(1465171200000L), Utility.parseTimestampLiteral("'2016-06-06'") );
+		assertNull( Utility.parseTimestampLiteral("'not a date'") );
+	}
+
+	@Test
+	public void testGetCellFromObject() {
+		assertEquals( 21L, Utility.getCellFromObject(21, ColumnType.SINT64).getLong() );
+		assertEquals( 1465171200000L, Utility.getCellFromObject("2016-06-06", ColumnType.TIMESTAMP).getTimestamp() );
+		assertEquals( 1465171200000L, Utility.getCellFromObject(new java.util.Date(1465171200000L), ColumnType.TIMESTAMP).getTimestamp() );
+		assertEquals( 1.5, Utility.getCellFromObject(1.5f, ColumnType.DOUBLE).getDouble(), 0 );
+		assertNull( Utility.getCellFromObject(1.5, ColumnType.SINT64) );
+		assertNull( Utility.getCellFromObject(21, ColumnType.VARCHAR) );
+	}
 
 }
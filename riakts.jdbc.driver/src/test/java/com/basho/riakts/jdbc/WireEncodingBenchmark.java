@@ -0,0 +1,216 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import com.basho.riak.client.core.FutureOperation;
+import com.basho.riak.client.core.RiakMessage;
+import com.basho.riak.client.core.query.timeseries.Cell;
+import com.basho.riak.client.core.query.timeseries.QueryResult;
+import com.basho.riak.client.core.query.timeseries.Row;
+
+import shaded.com.basho.riak.protobuf.RiakMessageCodes;
+
+/***
+ * Compares the ttb and pb WireEncodings on rows of the BayAreaWeatherData table
+ * (riakts.jdbc.driver.test) at 10k, 100k and 1M rows. For each encoding it reports
+ * the driver's CPU time to encode Store commands of BatchSize rows and to decode query
+ * responses of 10000 rows, measured in process without a network, with the bytes of
+ * each; then the time to write the rows through JDBC and read them back from a
+ * stand-in node, with the bytes the node received and sent.
+ */
+public class WireEncodingBenchmark {
+
+	private final static String TABLE = "BayAreaWeatherData";
+	private final static String[] NAMES = { "date", "max_temp", "mean_temp", "min_temp", "max_dew_point",
+			"mean_dew_point", "min_dew_point", "max_humidity", "mean_humidity", "min_humidity", "max_pressure",
+			"mean_pressure", "min_pressure", "max_visibility", "mean_visibility", "min_visibility", "max_wind_speed",
+			"mean_wind_speed", "max_wind_gust", "precipitation_in", "cloud_cover", "events", "wind_direction",
+			"zip_code" };
+	private final static String[] EVENTS = { "", "Rain", "Fog", "Fog-Rain", "Rain-Thunderstorm" };
+	private final static long START = 1420070400000L; // 2015-01-01
+	private final static int STORE_ROWS = DriverProperties.DEFAULT_BATCH_SIZE;
+	private final static int RESPONSE_ROWS = 10000;
+
+	private static ThreadMXBean _threads = ManagementFactory.getThreadMXBean();
+
+	public static void main(String[] args) throws Exception {
+		String[] types = new String[NAMES.length];
+		for (int i = 0; i < NAMES.length; i++) {
+			if (i == 0) types[i] = "timestamp";
+			else if (NAMES[i].endsWith("_pressure")) types[i] = "double";
+			else if (NAMES[i].equals("events")) types[i] = "varchar";
+			else types[i] = "sint64";
+		}
+		StandInRiakServer server = new StandInRiakServer();
+		server.createTable(TABLE, NAMES, types, new String[] { "date" }, new String[] { "date", "zip_code" },
+				"date", 365, "d");
+		String url = "riakts://" + server.getHost() + ":" + server.getPort();
+		try {
+			// The first pass warms up
+			run(server, url, types, 10000, false);
+			for (int rows : new int[] { 10000, 100000, 1000000 }) run(server, url, types, rows, true);
+		}
+		finally {
+			server.close();
+		}
+	}
+
+	private static void run(StandInRiakServer server, String url, String[] types, int count, boolean report)
+			throws Exception {
+		List<Object[]> values = new ArrayList<Object[]>(count);
+		Random random = new Random(count);
+		for (int i = 0; i < count; i++) values.add(reading(random, i));
+		List<Row> rows = new ArrayList<Row>(count);
+		for (Object[] row : values) rows.add(toRow(row));
+		List<Object[]> page = values.subList(0, Math.min(RESPONSE_ROWS, count));
+		byte[] ttbPage = StandInRiakServer.encodeTtbRows(NAMES, types, page);
+		byte[] pbPage = StandInRiakServer.encodePbRows(NAMES, types, page);
+		server.setQueryResult(NAMES, types, page);
+
+		if (report) System.out.println(String.format("%,d rows", count));
+		for (String encoding : new String[] { TimeSeriesProtocol.TTB, TimeSeriesProtocol.PB }) {
+			Properties info = new Properties();
+			info.setProperty(DriverProperties.WIRE_ENCODING, encoding);
+			TimeSeriesProtocol protocol = new TimeSeriesProtocol(null, info);
+
+			long cpu = _threads.getCurrentThreadCpuTime();
+			long encodedBytes = 0;
+			for (int start = 0; start < count; start += STORE_ROWS) {
+				FutureOperation<Void, ?, String> store = protocol.newStore(TABLE, rows.subList(start, Math.min(count, start + STORE_ROWS)));
+				encodedBytes += ((RiakMessage) store.channelMessage()).getData().length;
+			}
+			double encodeMillis = (_threads.getCurrentThreadCpuTime() - cpu) / 1e6;
+
+			byte[] response = encoding.equals(TimeSeriesProtocol.PB) ? pbPage : ttbPage;
+			byte code = encoding.equals(TimeSeriesProtocol.PB) ? RiakMessageCodes.MSG_TsQueryResp : RiakMessageCodes.MSG_TsTtbMsg;
+			cpu = _threads.getCurrentThreadCpuTime();
+			long decodedBytes = 0;
+			long cells = 0;
+			for (int read = 0; read < count; read += page.size()) {
+				FutureOperation<QueryResult, ?, String> query = protocol.newQuery("SELECT * FROM " + TABLE);
+				query.channelMessage();
+				query.setResponse(new RiakMessage(code, response));
+				query.setComplete();
+				decodedBytes += response.length;
+				cells += touch(query.get());
+			}
+			double decodeMillis = (_threads.getCurrentThreadCpuTime() - cpu) / 1e6;
+
+			long received = server.getBytesReceived();
+			long start = System.nanoTime();
+			write(url, info, values);
+			double writeSeconds = (System.nanoTime() - start) / 1e9;
+			received = server.getBytesReceived() - received;
+			long sent = server.getBytesSent();
+			start = System.nanoTime();
+			cells += read(url, info, count);
+			double readSeconds = (System.nanoTime() - start) / 1e9;
+			sent = server.getBytesSent() - sent;
+
+			if (!report || cells == 0) continue;
+			System.out.println(String.format("  WireEncoding=%s", encoding));
+			System.out.println(String.format("    encode Store: %8.1f ms CPU  %6.2f us/row  %,14d bytes  %6.1f bytes/row",
+					encodeMillis, encodeMillis * 1000 / count, encodedBytes, encodedBytes / (double) count));
+			System.out.println(String.format("    decode Query: %8.1f ms CPU  %6.2f us/row  %,14d bytes  %6.1f bytes/row",
+					decodeMillis, decodeMillis * 1000 / count, decodedBytes, decodedBytes / (double) count));
+			System.out.println(String.format("    write:   %8.0f rows/s  %,14d bytes received by the node", count / writeSeconds, received));
+			System.out.println(String.format("    read:    %8.0f rows/s  %,14d bytes sent by the node", count / readSeconds, sent));
+		}
+	}
+
+	/***
+	 * A daily reading of one of 50 zip codes
+	 */
+	private static Object[] reading(Random random, int i) {
+		Object[] row = new Object[NAMES.length];
+		row[0] = START + (i / 50) * 86400000L;
+		for (int c = 1; c < NAMES.length; c++) {
+			if (NAMES[c].endsWith("_pressure")) row[c] = 29 + random.nextInt(200) / 100.0;
+			else if (NAMES[c].equals("events")) row[c] = EVENTS[random.nextInt(EVENTS.length)];
+			else if (NAMES[c].equals("zip_code")) row[c] = 94000L + i % 50;
+			// Gusts often go unrecorded
+			else if (NAMES[c].equals("max_wind_gust") && random.nextInt(3) == 0) row[c] = null;
+			else row[c] = (long) random.nextInt(100);
+		}
+		return row;
+	}
+
+	private static Row toRow(Object[] values) {
+		List<Cell> cells = new ArrayList<Cell>(values.length);
+		for (int c = 0; c < values.length; c++) {
+			Object value = values[c];
+			if (value == null) cells.add(null);
+			else if (c == 0) cells.add(Cell.newTimestamp((Long) value));
+			else if (value instanceof Double) cells.add(new Cell((Double) value));
+			else if (value instanceof String) cells.add(new Cell((String) value));
+			else cells.add(new Cell((Long) value));
+		}
+		return new Row(cells);
+	}
+
+	/***
+	 * Reads every cell, as a ResultSet would, so lazily decoded results pay for decoding
+	 */
+	private static long touch(QueryResult result) {
+		long cells = 0;
+		for (Row row : result) {
+			for (Cell cell : row) {
+				if (cell != null) cells++;
+			}
+		}
+		return cells;
+	}
+
+	private static void write(String url, Properties info, List<Object[]> values) throws Exception {
+		java.sql.Connection conn = new Connection(url, info);
+		StringBuilder sql = new StringBuilder("INSERT INTO " + TABLE + " VALUES (?");
+		for (int c = 1; c < NAMES.length; c++) sql.append(", ?");
+		java.sql.PreparedStatement insert = conn.prepareStatement(sql.append(")").toString());
+		for (int i = 0; i < values.size(); i++) {
+			Object[] row = values.get(i);
+			insert.setTimestamp(1, new Timestamp((Long) row[0]));
+			for (int c = 1; c < row.length; c++) insert.setObject(c + 1, row[c]);
+			insert.addBatch();
+			if ((i + 1) % 10000 == 0 || i == values.size() - 1) insert.executeBatch();
+		}
+		conn.close();
+	}
+
+	private static long read(String url, Properties info, int count) throws Exception {
+		java.sql.Connection conn = new Connection(url, info);
+		java.sql.Statement statement = conn.createStatement();
+		long cells = 0;
+		for (int read = 0; read < count; read += RESPONSE_ROWS) {
+			java.sql.ResultSet rs = statement.executeQuery("SELECT * FROM " + TABLE + " WHERE date >= 0 AND date < 1");
+			while (rs.next()) {
+				for (int c = 1; c <= NAMES.length; c++) {
+					if (rs.getObject(c) != null) cells++;
+				}
+			}
+		}
+		conn.close();
+		return cells;
+	}
+
+}
@@ -0,0 +1,142 @@
+/** 
+ * Copyright (C) 2016 Basho Technologies Inc
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *  http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.basho.riakts.jdbc;
+
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/***
+ * Tests writing, fetching and querying rows with each WireEncoding against a
+ * stand-in Riak TS node, which answers requests in the encoding they were sent in
+ */
+public class WireEncodingTest {
+
+	private final static long JOINED = 1467072000000L; // 2016-06-28
+
+	private StandInRiakServer _server;
+
+	@Before
+	public void setUp() throws Exception {
+		_server = new StandInRiakServer();
+		_server.createDriverTestTable();
+		_server.setQueryResult(new String[] { "name", "joined" }, new String[] { "varchar", "timestamp" },
+				Arrays.asList(new Object[] { "Craig", JOINED }, new Object[] { "Ann", null }));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		_server.close();
+	}
+
+	@Test
+	public void testTtb() throws Exception {
+		roundTrip(TimeSeriesProtocol.TTB);
+	}
+
+	@Test
+	public void testPb() throws Exception {
+		roundTrip(TimeSeriesProtocol.PB);
+	}
+
+	@Test
+	public void testInvalidEncoding() throws Exception {
+		Properties info = new Properties();
+		assertEquals(TimeSeriesProtocol.TTB, TimeSeriesProtocol.getEncoding(info));
+		info.setProperty(DriverProperties.WIRE_ENCODING, " PB ");
+		assertEquals(TimeSeriesProtocol.PB, TimeSeriesProtocol.getEncoding(info));
+		info.setProperty(DriverProperties.WIRE_ENCODING, "protobuf");
+		try {
+			new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), info);
+			fail("Expected SQLException");
+		}
+		catch (SQLException e) {
+			assertEquals("Invalid WireEncoding: protobuf", e.getMessage());
+		}
+		try {
+			new Driver().getPropertyInfo("riakts://" + _server.getHost() + ":" + _server.getPort(), info);
+			fail("Expected SQLException");
+		}
+		catch (SQLException e) {
+			// Expected
+		}
+	}
+
+	private void roundTrip(String encoding) throws Exception {
+		Properties info = new Properties();
+		info.setProperty(DriverProperties.WIRE_ENCODING, encoding);
+		Connection conn = new Connection("riakts://" + _server.getHost() + ":" + _server.getPort(), info);
+		try {
+			assertEquals(encoding, conn._protocol.getEncoding());
+			java.sql.Statement statement = conn.createStatement();
+			statement.addBatch("INSERT INTO jdbcDriverTest VALUES ('Craig', 1, " + JOINED + ", 190.5, true)");
+			statement.addBatch("INSERT INTO jdbcDriverTest (name, age, joined) VALUES ('Ann', 2, 0)");
+			assertArrayEquals(new int[] { 1, 1 }, statement.executeBatch());
+
+			java.sql.PreparedStatement insert = conn.prepareStatement("INSERT INTO jdbcDriverTest VALUES (?, ?, ?, ?, ?)");
+			insert.setString(1, "Bob");
+			insert.setLong(2, 3);
+			insert.setTimestamp(3, new Timestamp(JOINED));
+			insert.setDouble(4, 80.25);
+			insert.setBoolean(5, false);
+			assertEquals(1, insert.executeUpdate());
+			assertEquals(3, _server.getStoredRowCount());
+
+			// Fetched by primary key
+			java.sql.ResultSet rs = statement.executeQuery(
+					"SELECT * FROM jdbcDriverTest WHERE name = 'Craig' AND age = 1 AND joined = " + JOINED);
+			assertTrue(rs.next());
+			assertEquals(new Timestamp(JOINED), rs.getTimestamp("joined"));
+			assertEquals(190.5, rs.getDouble("weight"), 0);
+			assertTrue(rs.getBoolean("active"));
+			rs = statement.executeQuery("SELECT * FROM jdbcDriverTest WHERE name = 'Ann' AND age = 2 AND joined = 0");
+			assertTrue(rs.next());
+			assertNull(rs.getObject("weight"));
+			rs = statement.executeQuery("SELECT * FROM jdbcDriverTest WHERE name = 'Nobody' AND age = 2 AND joined = 0");
+			assertFalse(rs.next());
+			assertEquals(3, _server.getFetchCount());
+
+			rs = statement.executeQuery("SELECT name, joined FROM jdbcDriverTest WHERE joined > 0 AND joined < 10 AND name = 'Craig' AND age = 1");
+			assertTrue(rs.next());
+			assertEquals("Craig", rs.getString("name"));
+			assertEquals(new Timestamp(JOINED), rs.getTimestamp("joined"));
+			assertTrue(rs.next());
+			assertNull(rs.getTimestamp("joined"));
+			assertFalse(rs.next());
+
+			// Errors come back the same either way
+			_server.setError("Invalid data");
+			try {
+				statement.executeUpdate("INSERT INTO jdbcDriverTest VALUES ('Craig', 4, 0, 1.0, true)");
+				fail("Expected an SQLException");
+			}
+			catch (SQLException e) {
+				assertTrue(e.getCause().getMessage().contains("Invalid data"));
+			}
+		}
+		finally {
+			conn.close();
+		}
+	}
+
+}